@@ -66,8 +66,18 @@ public class FilterCache {
     @Param({"true:true:1", "true:false:1", "true:true:0", "true:false:0", "false:false:0"})
     String cacheEnabledAsyncSize;
 
+    /** Whether the cached filters are compressed as RoaringDocSets when they are smaller so. */
+    @Param({"false", "true"})
+    String compact;
+
     QueryRequest q1 = new QueryRequest(new SolrQuery("q", "*:*", "fq", "Ea_b:true"));
     QueryRequest q2 = new QueryRequest(new SolrQuery("q", "*:*", "fq", "FB_b:true"));
+    // intersects the cached filters, and counts facets on the result
+    QueryRequest q3 =
+        new QueryRequest(
+            new SolrQuery(
+                "q", "*:*", "fq", "Ea_b:true", "fq", "FB_b:true", "facet", "true", "facet.field",
+                "FB_b"));
 
     @Setup(Level.Trial)
     public void setupTrial(MiniClusterState.MiniClusterBenchState miniClusterState)
@@ -79,6 +89,7 @@ public class FilterCache {
       System.setProperty("filterCache.size", cacheSize);
       System.setProperty("filterCache.initialSize", cacheSize);
       System.setProperty("filterCache.async", asyncCache);
+      System.setProperty("solr.docSet.compact", compact);
 
       miniClusterState.startMiniCluster(1);
       miniClusterState.createCollection(COLLECTION, 1, 1);
@@ -103,6 +114,7 @@ public class FilterCache {
       String base = miniClusterState.nodes.get(0);
       q1.setBasePath(base);
       q2.setBasePath(base);
+      q3.setBasePath(base);
     }
 
     @Setup(Level.Iteration)
@@ -149,4 +161,11 @@ public class FilterCache {
       throws SolrServerException, IOException {
     return miniClusterState.client.request(benchState.q1, COLLECTION);
   }
+
+  @Benchmark
+  public Object filterCacheIntersectedQueries(
+      BenchState benchState, MiniClusterState.MiniClusterBenchState miniClusterState)
+      throws SolrServerException, IOException {
+    return miniClusterState.client.request(benchState.q3, COLLECTION);
+  }
 }
@@ -92,8 +92,14 @@ public class JsonFaceting {
     @Param({"3000"})
     int facetCard2;
 
+    // whether the stats of the nested facets are collected for all the buckets in a single pass
+    @Param({"true", "false"})
+    boolean sweepStats;
+
     private ModifiableSolrParams params;
 
+    private ModifiableSolrParams nestedParams;
+
     @Setup(Level.Trial)
     public void setup(
         BenchmarkParams benchmarkParams, MiniClusterState.MiniClusterBenchState miniClusterState)
@@ -158,6 +164,26 @@ public class JsonFaceting {
               + " , f8:{type:terms, field:'facet_s', limit:2, sort:'x desc', facet:{x:'countvals(int4_i_dv)'}  } "
               + '}');
 
+      String stats =
+          "sum:'sum(int2_i_dv)', avg:'avg(int3_i_dv)', min:'min(int4_i_dv)',"
+              + " max:'max(int4_i_dv)', u:'unique(int2_i_dv)', dev:'stddev(int3_i_dv)'";
+      String terms = "{method:'" + fm + "', type:terms, sweepStats:" + sweepStats;
+      nestedParams = new ModifiableSolrParams();
+      MiniClusterState.params(
+          nestedParams,
+          "q",
+          "*:*",
+          "json.facet",
+          "{f1:"
+              + terms
+              + ", field:'facet3_s', limit:20, facet:{"
+              + stats
+              + ", f2:"
+              + terms
+              + ", field:'facet_s', limit:10, facet:{"
+              + stats
+              + "}}}}}");
+
       // MiniClusterState.log("params: " + params + "\n");
     }
 
@@ -190,4 +216,19 @@ public class JsonFaceting {
 
     return result;
   }
+
+  /** Nested terms facets with several stats per bucket, which are computed for the top buckets. */
+  @Benchmark
+  @Timeout(time = 500, timeUnit = TimeUnit.SECONDS)
+  public Object jsonFacetNested(
+      MiniClusterState.MiniClusterBenchState miniClusterState,
+      BenchState state,
+      BenchState.ThreadState threadState)
+      throws Exception {
+    QueryRequest queryRequest = new QueryRequest(state.nestedParams);
+    queryRequest.setBasePath(
+        miniClusterState.nodes.get(threadState.random.nextInt(state.nodeCount)));
+
+    return miniClusterState.client.request(queryRequest, state.collection);
+  }
 }
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.search;
+
+import static org.apache.solr.bench.generators.SourceDSL.integers;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import org.apache.solr.bench.BaseBenchState;
+import org.apache.solr.bench.Docs;
+import org.apache.solr.bench.MiniClusterState;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the on-heap {@code CaffeineCache} filterCache with {@code OffHeapDocSetCache}. Every
+ * query picks one of many dense filters so that the cache holds lots of large bitsets, and
+ * periodic commits force those bitsets to be regenerated by autowarming. Run with {@code -prof gc}
+ * for allocation rates; the accumulated GC pause time of each iteration is logged as well.
+ */
+@Fork(value = 1)
+@Warmup(time = 5, iterations = 5)
+@Measurement(time = 5, iterations = 9)
+@Threads(value = 4)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+public class OffHeapFilterCache {
+
+  static final String COLLECTION = "c1";
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    @Param({"solr.CaffeineCache", "solr.OffHeapDocSetCache"})
+    String filterCacheClass;
+
+    @Param("200000")
+    int docCount;
+
+    /** Number of distinct filters; most of them match a large fraction of the docs. */
+    @Param("64")
+    int filterCount;
+
+    @Param("32")
+    int autowarmCount;
+
+    long gcTimeMs;
+    long gcCount;
+
+    @Setup(Level.Trial)
+    public void setupTrial(MiniClusterState.MiniClusterBenchState miniClusterState)
+        throws Exception {
+      System.setProperty("filterCache.enabled", "true");
+      System.setProperty("filterCache.class", filterCacheClass);
+      System.setProperty("filterCache.size", Integer.toString(filterCount));
+      System.setProperty("filterCache.initialSize", Integer.toString(filterCount));
+      System.setProperty("filterCache.autowarmCount", Integer.toString(autowarmCount));
+      System.setProperty("filterCache.minOffHeapBytes", "0");
+
+      miniClusterState.startMiniCluster(1);
+      miniClusterState.createCollection(COLLECTION, 1, 1);
+
+      Docs docs =
+          Docs.docs()
+              .field("id", integers().incrementing())
+              .field("filter_i", integers().between(0, filterCount - 1));
+
+      miniClusterState.index(COLLECTION, docs, docCount);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration(MiniClusterState.MiniClusterBenchState miniClusterState)
+        throws SolrServerException, IOException {
+      // Reload the collection/core to drop existing caches
+      CollectionAdminRequest.Reload reload = CollectionAdminRequest.reloadCollection(COLLECTION);
+      reload.setBasePath(miniClusterState.nodes.get(0));
+      miniClusterState.client.request(reload);
+
+      gcTimeMs = 0;
+      gcCount = 0;
+      for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+        gcTimeMs -= Math.max(0, gc.getCollectionTime());
+        gcCount -= Math.max(0, gc.getCollectionCount());
+      }
+    }
+
+    @TearDown(Level.Iteration)
+    public void dumpGcStats() {
+      for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+        gcTimeMs += Math.max(0, gc.getCollectionTime());
+        gcCount += Math.max(0, gc.getCollectionCount());
+      }
+      BaseBenchState.log(
+          String.format(
+              Locale.ROOT,
+              "%s: %d collections, %d ms total GC time",
+              filterCacheClass,
+              gcCount,
+              gcTimeMs));
+    }
+
+    QueryRequest randomFilterQuery(MiniClusterState.MiniClusterBenchState miniClusterState) {
+      int filter = miniClusterState.getRandom().nextInt(filterCount);
+      QueryRequest q =
+          new QueryRequest(
+              new SolrQuery("q", "*:*", "fq", "filter_i:[" + filter + " TO *]", "rows", "10"));
+      q.setBasePath(miniClusterState.nodes.get(0));
+      return q;
+    }
+  }
+
+  @Benchmark
+  public Object filteredQuery(
+      BenchState benchState, MiniClusterState.MiniClusterBenchState miniClusterState)
+      throws SolrServerException, IOException {
+    return miniClusterState.client.request(
+        benchState.randomFilterQuery(miniClusterState), COLLECTION);
+  }
+
+  @Benchmark
+  public Object filteredQueryWithCommits(
+      BenchState benchState, MiniClusterState.MiniClusterBenchState miniClusterState)
+      throws SolrServerException, IOException {
+    if (miniClusterState.getRandom().nextInt(500) == 0) {
+      // a soft commit opens a new searcher, autowarming the filterCache
+      UpdateRequest commit = new UpdateRequest();
+      commit.setBasePath(miniClusterState.nodes.get(0));
+      commit.setAction(UpdateRequest.ACTION.COMMIT, false, false, true);
+      miniClusterState.client.request(commit, COLLECTION);
+    }
+    return miniClusterState.client.request(
+        benchState.randomFilterQuery(miniClusterState), COLLECTION);
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.search;
+
+import static org.apache.solr.bench.generators.SourceDSL.integers;
+import static org.apache.solr.bench.generators.SourceDSL.strings;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.solr.bench.BaseBenchState;
+import org.apache.solr.bench.Docs;
+import org.apache.solr.bench.MiniClusterState;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how the queryResultCache, filterCache and documentCache interact under near real time
+ * indexing. While the benchmark threads query, a background indexer adds docs and soft commits at
+ * a fixed interval, so that every commit opens a new searcher whose caches are autowarmed.
+ *
+ * <p>Queries are skewed towards a few popular filters and ranges, page through the results, and
+ * fetch stored fields. Throughput and the latency distribution (including p99 and p99.9) are
+ * reported for each cache configuration; run with {@code -prof gc} for allocation rates. The
+ * cache statistics and warmup times are logged after every iteration.
+ *
+ * <p>Cache implementations are compared through the {@code SolrCache} interface by setting {@code
+ * cacheClass} and {@code filterCacheClass}, e.g. {@code -p
+ * filterCacheClass=solr.OffHeapDocSetCache}.
+ */
+@Fork(value = 1)
+@Warmup(time = 5, iterations = 3)
+@Measurement(time = 10, iterations = 5)
+@Threads(value = 4)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+public class SearcherCaches {
+
+  static final String COLLECTION = "c1";
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    /** The caches that are enabled: a comma separated list, or "none" */
+    @Param({"none", "filter", "filter,queryResult", "filter,queryResult,document"})
+    String caches;
+
+    /** The SolrCache implementation of the queryResultCache and the documentCache */
+    @Param("solr.CaffeineCache")
+    String cacheClass;
+
+    /** The SolrCache implementation of the filterCache */
+    @Param("solr.CaffeineCache")
+    String filterCacheClass;
+
+    @Param("512")
+    int cacheSize;
+
+    @Param("64")
+    int autowarmCount;
+
+    @Param("false")
+    boolean backgroundWarming;
+
+    @Param("100000")
+    int docCount;
+
+    /** The interval between soft commits of the background indexer; 0 disables indexing */
+    @Param({"0", "1000"})
+    int commitIntervalMs;
+
+    /** The number of docs added or updated before each soft commit */
+    @Param("500")
+    int docsPerCommit;
+
+    @Param("200")
+    int categoryCount;
+
+    Docs docs;
+    ScheduledExecutorService indexer;
+    final AtomicLong commits = new AtomicLong();
+    // split for each benchmark thread and the indexer, as a SplittableRandom isn't thread safe
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setupTrial(MiniClusterState.MiniClusterBenchState miniClusterState)
+        throws Exception {
+      List<String> enabled = Arrays.asList(caches.split(","));
+      setCacheProperties("queryResultCache", enabled.contains("queryResult"), cacheClass);
+      setCacheProperties("documentCache", enabled.contains("document"), cacheClass);
+      setCacheProperties("filterCache", enabled.contains("filter"), filterCacheClass);
+      System.setProperty("queryResultWindowSize", "20");
+      System.setProperty("backgroundWarming", Boolean.toString(backgroundWarming));
+
+      random = new SplittableRandom(BaseBenchState.getRandomSeed());
+      miniClusterState.startMiniCluster(1);
+      miniClusterState.createCollection(COLLECTION, 1, 1);
+
+      docs =
+          Docs.docs()
+              .field("id", integers().incrementing())
+              .field("category_i", integers().between(0, categoryCount - 1))
+              .field("rank_i", integers().between(0, 999))
+              .field("body_ts", strings().basicLatinAlphabet().ofLengthBetween(16, 256));
+
+      miniClusterState.index(COLLECTION, docs, docCount);
+    }
+
+    private void setCacheProperties(String cache, boolean enabled, String cacheClassName) {
+      String size = enabled ? Integer.toString(cacheSize) : "0";
+      System.setProperty(cache + ".enabled", Boolean.toString(enabled));
+      System.setProperty(cache + ".class", cacheClassName);
+      System.setProperty(cache + ".size", size);
+      System.setProperty(cache + ".initialSize", size);
+      System.setProperty(cache + ".autowarmCount", enabled ? Integer.toString(autowarmCount) : "0");
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration(MiniClusterState.MiniClusterBenchState miniClusterState)
+        throws SolrServerException, IOException {
+      // Reload the collection/core to drop existing caches
+      CollectionAdminRequest.Reload reload = CollectionAdminRequest.reloadCollection(COLLECTION);
+      reload.setBasePath(miniClusterState.nodes.get(0));
+      miniClusterState.client.request(reload);
+
+      commits.set(0);
+      if (commitIntervalMs > 0) {
+        SplittableRandom indexerRandom = splitRandom();
+        indexer =
+            Executors.newSingleThreadScheduledExecutor(
+                new SolrNamedThreadFactory("SolrJMH NRT Indexer"));
+        indexer.scheduleWithFixedDelay(
+            () -> indexAndCommit(miniClusterState, indexerRandom),
+            commitIntervalMs,
+            commitIntervalMs,
+            TimeUnit.MILLISECONDS);
+      }
+    }
+
+    synchronized SplittableRandom splitRandom() {
+      return random.split();
+    }
+
+    private void indexAndCommit(
+        MiniClusterState.MiniClusterBenchState miniClusterState, SplittableRandom random) {
+      UpdateRequest updateRequest = new UpdateRequest();
+      updateRequest.setBasePath(miniClusterState.nodes.get(0));
+      for (int i = 0; i < docsPerCommit; i++) {
+        SolrInputDocument doc = docs.inputDocument();
+        // mostly updates of existing docs, so that the index size stays stable
+        if (random.nextInt(10) != 0) {
+          doc.setField("id", Integer.toString(random.nextInt(docCount)));
+        }
+        updateRequest.add(doc);
+      }
+      // a soft commit opens a new searcher, autowarming its caches
+      updateRequest.setAction(UpdateRequest.ACTION.COMMIT, false, true, true);
+      try {
+        miniClusterState.client.request(updateRequest, COLLECTION);
+        commits.incrementAndGet();
+      } catch (SolrServerException | IOException e) {
+        BaseBenchState.log("indexing failed: " + e.getMessage());
+      }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration(MiniClusterState.MiniClusterBenchState miniClusterState) {
+      if (indexer != null) {
+        ExecutorUtil.shutdownAndAwaitTermination(indexer);
+        indexer = null;
+      }
+      BaseBenchState.log(caches + ": " + commits.get() + " soft commits");
+
+      String url =
+          miniClusterState.nodes.get(0)
+              + "/admin/metrics?group=core&omitHeader=true"
+              + "&prefix=CACHE.searcher,SEARCHER.searcher.warmupTime";
+      HttpURLConnection conn = null;
+      try {
+        conn = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        conn.connect();
+        BaseBenchState.log(
+            new String(conn.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        // ignored
+      } finally {
+        if (conn != null) conn.disconnect();
+      }
+    }
+
+    /** Low values are much more likely, so that some queries repeat often and others rarely. */
+    private static int skewed(SplittableRandom random, int bound) {
+      return Math.min(random.nextInt(bound), random.nextInt(bound));
+    }
+
+    QueryRequest randomQuery(
+        MiniClusterState.MiniClusterBenchState miniClusterState, SplittableRandom random) {
+      SolrQuery query =
+          new SolrQuery(
+              "q",
+              "rank_i:[" + skewed(random, 10) * 100 + " TO *]",
+              "fq",
+              "category_i:" + skewed(random, categoryCount),
+              "start",
+              Integer.toString(skewed(random, 5) * 10),
+              "rows",
+              "10",
+              "fl",
+              "id,body_ts");
+      if (random.nextInt(4) == 0) {
+        query.addFilterQuery("rank_i:[" + skewed(random, 10) * 50 + " TO *]");
+      }
+      QueryRequest q = new QueryRequest(query);
+      q.setBasePath(miniClusterState.nodes.get(0));
+      return q;
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+      private SplittableRandom random;
+
+      @Setup(Level.Trial)
+      public void setup(BenchState benchState) {
+        this.random = benchState.splitRandom();
+      }
+    }
+  }
+
+  @Benchmark
+  public Object query(
+      BenchState benchState,
+      BenchState.ThreadState threadState,
+      MiniClusterState.MiniClusterBenchState miniClusterState)
+      throws SolrServerException, IOException {
+    return miniClusterState.client.request(
+        benchState.randomQuery(miniClusterState, threadState.random), COLLECTION);
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.stream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.comp.ComparatorOrder;
+import org.apache.solr.client.solrj.io.comp.FieldComparator;
+import org.apache.solr.client.solrj.io.comp.MultipleFieldComparator;
+import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.eq.FieldEqualitor;
+import org.apache.solr.client.solrj.io.ops.GroupOperation;
+import org.apache.solr.client.solrj.io.stream.HashJoinStream;
+import org.apache.solr.client.solrj.io.stream.ReducerStream;
+import org.apache.solr.client.solrj.io.stream.RollupStream;
+import org.apache.solr.client.solrj.io.stream.SelectStream;
+import org.apache.solr.client.solrj.io.stream.SortStream;
+import org.apache.solr.client.solrj.io.stream.StreamContext;
+import org.apache.solr.client.solrj.io.stream.TupleStream;
+import org.apache.solr.client.solrj.io.stream.expr.Explanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExplanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MaxMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of the stream decorators reading the tuples of their children one by one
+ * ({@code batchSize=1}) and in batches. The tuples are read from memory so that only the
+ * decorators are measured.
+ */
+@Fork(value = 1)
+@Warmup(time = 5, iterations = 3)
+@Measurement(time = 5, iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+public class TupleStreams {
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    @Param({"1", "256"})
+    int batchSize;
+
+    @Param("100000")
+    int tupleCount;
+
+    /** Number of distinct values of the field the tuples are sorted, grouped and joined on. */
+    @Param("1000")
+    int cardinality;
+
+    List<Tuple> tuples;
+    List<Tuple> hashed;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+      SplittableRandom random = new SplittableRandom(0);
+      tuples = new ArrayList<>(tupleCount);
+      for (int i = 0; i < tupleCount; i++) {
+        Tuple tuple = new Tuple("id", String.valueOf(i), "a_s", "a" + random.nextInt(cardinality));
+        tuple.put("b_i", (long) random.nextInt(100));
+        tuple.put("c_d", random.nextDouble());
+        tuples.add(tuple);
+      }
+      tuples.sort(new FieldComparator("a_s", ComparatorOrder.ASCENDING));
+      hashed = new ArrayList<>(cardinality);
+      for (int i = 0; i < cardinality; i++) {
+        hashed.add(new Tuple("a_s", "a" + i, "name_s", "name" + i));
+      }
+    }
+
+    TupleStream source() {
+      return new ListTupleStream(tuples);
+    }
+  }
+
+  /** The tuples of a list, read one by one like the streams that don't read batches. */
+  static class ListTupleStream extends TupleStream {
+    private final List<Tuple> tuples;
+    private int index;
+
+    ListTupleStream(List<Tuple> tuples) {
+      this.tuples = tuples;
+    }
+
+    @Override
+    public void setStreamContext(StreamContext context) {}
+
+    @Override
+    public List<TupleStream> children() {
+      return new ArrayList<>();
+    }
+
+    @Override
+    public void open() {
+      index = 0;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public Tuple read() {
+      return index < tuples.size() ? tuples.get(index++) : Tuple.EOF();
+    }
+
+    @Override
+    public StreamComparator getStreamSort() {
+      return null;
+    }
+
+    @Override
+    public Explanation toExplanation(StreamFactory factory) {
+      return new StreamExplanation(getStreamNodeId().toString());
+    }
+  }
+
+  /** Reads all the tuples of the stream, returning their number. */
+  private static long readAll(BenchState state, TupleStream stream) throws IOException {
+    StreamContext context = new StreamContext();
+    context.setBatchSize(state.batchSize);
+    stream.setStreamContext(context);
+    long count = 0;
+    try {
+      stream.open();
+      while (!stream.read().EOF) {
+        count++;
+      }
+    } finally {
+      stream.close();
+    }
+    return count;
+  }
+
+  private static Metric[] metrics() {
+    return new Metric[] {new SumMetric("c_d"), new MaxMetric("b_i"), new CountMetric()};
+  }
+
+  @Benchmark
+  public long select(BenchState state) throws IOException {
+    return readAll(
+        state, new SelectStream(state.source(), Map.of("id", "id", "a_s", "a", "c_d", "c")));
+  }
+
+  @Benchmark
+  public long sort(BenchState state) throws IOException {
+    return readAll(
+        state,
+        new SortStream(
+            state.source(),
+            new MultipleFieldComparator(
+                new FieldComparator("b_i", ComparatorOrder.DESCENDING),
+                new FieldComparator("c_d", ComparatorOrder.ASCENDING))));
+  }
+
+  @Benchmark
+  public long rollup(BenchState state) throws IOException {
+    return readAll(
+        state, new RollupStream(state.source(), new Bucket[] {new Bucket("a_s")}, metrics()));
+  }
+
+  @Benchmark
+  public long reduce(BenchState state) throws IOException {
+    return readAll(
+        state,
+        new ReducerStream(
+            state.source(),
+            new FieldEqualitor("a_s"),
+            new GroupOperation(new FieldComparator("b_i", ComparatorOrder.DESCENDING), 5)));
+  }
+
+  @Benchmark
+  public long hashJoin(BenchState state) throws IOException {
+    return readAll(
+        state,
+        new HashJoinStream(state.source(), new ListTupleStream(state.hashed), List.of("a_s")));
+  }
+
+  /** A rollup of the selected fields of the tuples joined with the hashed tuples. */
+  @Benchmark
+  public long pipeline(BenchState state) throws IOException {
+    TupleStream join =
+        new HashJoinStream(state.source(), new ListTupleStream(state.hashed), List.of("a_s"));
+    TupleStream select =
+        new SelectStream(join, Map.of("a_s", "a_s", "b_i", "b_i", "c_d", "c_d", "name_s", "n"));
+    return readAll(state, new RollupStream(select, new Bucket[] {new Bucket("a_s")}, metrics()));
+  }
+}
@@ -234,6 +234,12 @@ public class CoreContainer {
 
   private final OrderedExecutor replayUpdatesExecutor;
 
+  private final ExecutorService indexSearcherExecutor;
+
+  private final ExecutorService facetExecutor;
+
+  private final ExecutorService exportExecutor;
+
   protected volatile LogWatcher<?> logging = null;
 
   private volatile CloserThread backgroundCloser = null;
@@ -412,6 +418,22 @@ public class CoreContainer {
             ExecutorUtil.newMDCAwareCachedThreadPool(
                 cfg.getReplayUpdatesThreads(),
                 new SolrNamedThreadFactory("replayUpdatesExecutor")));
+    this.indexSearcherExecutor =
+        cfg.getIndexSearcherExecutorThreads() > 0
+            ? ExecutorUtil.newMDCAwareFixedThreadPool(
+                cfg.getIndexSearcherExecutorThreads(),
+                new SolrNamedThreadFactory("indexSearcherExecutor"))
+            : null;
+    this.facetExecutor =
+        cfg.getFacetExecutorThreads() > 0
+            ? ExecutorUtil.newMDCAwareFixedThreadPool(
+                cfg.getFacetExecutorThreads(), new SolrNamedThreadFactory("facetExecutor"))
+            : null;
+    this.exportExecutor =
+        cfg.getExportExecutorThreads() > 0
+            ? ExecutorUtil.newMDCAwareFixedThreadPool(
+                cfg.getExportExecutorThreads(), new SolrNamedThreadFactory("exportExecutor"))
+            : null;
     this.appHandlersByConfigSetId = new JerseyAppHandlerCache();
 
     SolrPaths.AllowPathBuilder allowPathBuilder = new SolrPaths.AllowPathBuilder();
@@ -651,6 +673,9 @@ public class CoreContainer {
     cfg = null;
     containerProperties = null;
     replayUpdatesExecutor = null;
+    indexSearcherExecutor = null;
+    facetExecutor = null;
+    exportExecutor = null;
     distributedCollectionCommandRunner = Optional.empty();
     allowPaths = null;
     allowListUrlChecker = null;
@@ -704,6 +729,35 @@ public class CoreContainer {
     return replayUpdatesExecutor;
   }
 
+  /**
+   * The executor used to search the segments of an index in parallel, or null if not configured.
+   *
+   * @see NodeConfig#getIndexSearcherExecutorThreads()
+   */
+  public ExecutorService getIndexSearcherExecutor() {
+    return indexSearcherExecutor;
+  }
+
+  /**
+   * The executor used to collect the segments of JSON facets in parallel, or null if not
+   * configured.
+   *
+   * @see NodeConfig#getFacetExecutorThreads()
+   */
+  public ExecutorService getFacetExecutor() {
+    return facetExecutor;
+  }
+
+  /**
+   * The executor used to fill the priority queues of the segments of /export requests in the
+   * background, or null if not configured.
+   *
+   * @see NodeConfig#getExportExecutorThreads()
+   */
+  public ExecutorService getExportExecutor() {
+    return exportExecutor;
+  }
+
   public SolrPackageLoader getPackageLoader() {
     return packageLoader;
   }
@@ -1279,6 +1333,27 @@ public class CoreContainer {
             replayUpdatesExecutor.shutdownAndAwaitTermination();
           });
 
+      if (indexSearcherExecutor != null) {
+        customThreadPool.submit(
+            () -> {
+              ExecutorUtil.shutdownAndAwaitTermination(indexSearcherExecutor);
+            });
+      }
+
+      if (facetExecutor != null) {
+        customThreadPool.submit(
+            () -> {
+              ExecutorUtil.shutdownAndAwaitTermination(facetExecutor);
+            });
+      }
+
+      if (exportExecutor != null) {
+        customThreadPool.submit(
+            () -> {
+              ExecutorUtil.shutdownAndAwaitTermination(exportExecutor);
+            });
+      }
+
       if (metricManager != null) {
         metricManager.closeReporters(SolrMetricManager.getRegistryName(SolrInfoBean.Group.node));
         metricManager.closeReporters(SolrMetricManager.getRegistryName(SolrInfoBean.Group.jvm));
@@ -99,6 +99,14 @@ public class NodeConfig {
 
   private final int replayUpdatesThreads;
 
+  private final int indexSearcherExecutorThreads;
+
+  private final int indexSearcherMaxThreadsPerRequest;
+
+  private final int facetExecutorThreads;
+
+  private final int exportExecutorThreads;
+
   @Deprecated private final int transientCacheSize;
 
   private final boolean useSchemaCache;
@@ -136,6 +144,10 @@ public class NodeConfig {
       CloudConfig cloudConfig,
       Integer coreLoadThreads,
       int replayUpdatesThreads,
+      int indexSearcherExecutorThreads,
+      int indexSearcherMaxThreadsPerRequest,
+      int facetExecutorThreads,
+      int exportExecutorThreads,
       int transientCacheSize,
       boolean useSchemaCache,
       String managementPath,
@@ -171,6 +183,10 @@ public class NodeConfig {
     this.cloudConfig = cloudConfig;
     this.coreLoadThreads = coreLoadThreads;
     this.replayUpdatesThreads = replayUpdatesThreads;
+    this.indexSearcherExecutorThreads = indexSearcherExecutorThreads;
+    this.indexSearcherMaxThreadsPerRequest = indexSearcherMaxThreadsPerRequest;
+    this.facetExecutorThreads = facetExecutorThreads;
+    this.exportExecutorThreads = exportExecutorThreads;
     this.transientCacheSize = transientCacheSize;
     this.useSchemaCache = useSchemaCache;
     this.managementPath = managementPath;
@@ -310,6 +326,39 @@ public class NodeConfig {
     return replayUpdatesThreads;
   }
 
+  /**
+   * The number of threads shared by all cores of this node to search the segments of an index in
+   * parallel, or 0 if searches are never parallelized.
+   */
+  public int getIndexSearcherExecutorThreads() {
+    return indexSearcherExecutorThreads;
+  }
+
+  /**
+   * The maximum number of threads, including the request thread, that a single request may use to
+   * search the segments of an index in parallel.
+   */
+  public int getIndexSearcherMaxThreadsPerRequest() {
+    return indexSearcherMaxThreadsPerRequest;
+  }
+
+  /**
+   * The number of threads shared by all cores of this node to collect the segments of JSON facets
+   * in parallel, or 0 if facets are never collected in parallel.
+   */
+  public int getFacetExecutorThreads() {
+    return facetExecutorThreads;
+  }
+
+  /**
+   * The number of threads shared by all cores of this node to fill the priority queues of the
+   * segments of /export requests in the background, or 0 if they are always filled by the thread
+   * of the request.
+   */
+  public int getExportExecutorThreads() {
+    return exportExecutorThreads;
+  }
+
   /**
    * Returns a directory, optionally a comma separated list of directories that will be added to
    * Solr's class path for searching for classes and plugins. The path is either absolute or
@@ -594,6 +643,10 @@ public class NodeConfig {
     private CloudConfig cloudConfig;
     private int coreLoadThreads = DEFAULT_CORE_LOAD_THREADS;
     private int replayUpdatesThreads = Runtime.getRuntime().availableProcessors();
+    private int indexSearcherExecutorThreads = 0;
+    private int indexSearcherMaxThreadsPerRequest = DEFAULT_INDEX_SEARCHER_MAX_THREADS_PER_REQUEST;
+    private int facetExecutorThreads = 0;
+    private int exportExecutorThreads = 0;
     @Deprecated private int transientCacheSize = -1;
     private boolean useSchemaCache = false;
     private String managementPath;
@@ -613,6 +666,8 @@ public class NodeConfig {
     // No:of core load threads in cloud mode is set to a default of 8
     public static final int DEFAULT_CORE_LOAD_THREADS_IN_CLOUD = 8;
 
+    public static final int DEFAULT_INDEX_SEARCHER_MAX_THREADS_PER_REQUEST = 4;
+
     private static final String DEFAULT_ADMINHANDLERCLASS =
         "org.apache.solr.handler.admin.CoreAdminHandler";
     private static final String DEFAULT_INFOHANDLERCLASS =
@@ -737,6 +792,27 @@ public class NodeConfig {
       return this;
     }
 
+    public NodeConfigBuilder setIndexSearcherExecutorThreads(int indexSearcherExecutorThreads) {
+      this.indexSearcherExecutorThreads = indexSearcherExecutorThreads;
+      return this;
+    }
+
+    public NodeConfigBuilder setIndexSearcherMaxThreadsPerRequest(
+        int indexSearcherMaxThreadsPerRequest) {
+      this.indexSearcherMaxThreadsPerRequest = indexSearcherMaxThreadsPerRequest;
+      return this;
+    }
+
+    public NodeConfigBuilder setFacetExecutorThreads(int facetExecutorThreads) {
+      this.facetExecutorThreads = facetExecutorThreads;
+      return this;
+    }
+
+    public NodeConfigBuilder setExportExecutorThreads(int exportExecutorThreads) {
+      this.exportExecutorThreads = exportExecutorThreads;
+      return this;
+    }
+
     // Remove in Solr 10.0
     @Deprecated
     public NodeConfigBuilder setTransientCacheSize(int transientCacheSize) {
@@ -873,6 +949,10 @@ public class NodeConfig {
           cloudConfig,
           coreLoadThreads,
           replayUpdatesThreads,
+          indexSearcherExecutorThreads,
+          indexSearcherMaxThreadsPerRequest,
+          facetExecutorThreads,
+          exportExecutorThreads,
           transientCacheSize,
           useSchemaCache,
           managementPath,
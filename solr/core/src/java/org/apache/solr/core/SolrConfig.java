@@ -37,6 +37,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -53,6 +54,7 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.index.IndexDeletionPolicy;
 import org.apache.lucene.search.BooleanQuery;
@@ -309,15 +311,52 @@ public class SolrConfig implements MapSerializable {
       queryResultWindowSize = Math.max(1, get("query").get("queryResultWindowSize").intVal(1));
       queryResultMaxDocsCached =
           get("query").get("queryResultMaxDocsCached").intVal(Integer.MAX_VALUE);
+      queryResultIncrementalPaging =
+          get("query").get("queryResultIncrementalPaging").boolVal(false);
+      filterPlanner = get("query").get("filterPlanner").boolVal(false);
+      queryResultCoalescing = get("query").get("queryResultCoalescing").boolVal(false);
+      queryResultCoalescingMaxWaitMs =
+          Math.max(0, get("query").get("queryResultCoalescingMaxWaitMs").intVal(1000));
       enableLazyFieldLoading = get("query").get("enableLazyFieldLoading").boolVal(false);
 
       filterCacheConfig =
           CacheConfig.getConfig(this, get("query").get("filterCache"), "query/filterCache");
+      ConfigNode filterCacheNode = get("query").get("filterCache");
+      perSegmentFilterCache =
+          filterCacheConfig != null && filterCacheNode.boolAttr("perSegment", false);
+      perSegmentFilterCacheMaxRamMB = filterCacheNode.intAttr("perSegmentMaxRamMB", 256);
       queryResultCacheConfig =
           CacheConfig.getConfig(
               this, get("query").get("queryResultCache"), "query/queryResultCache");
       documentCacheConfig =
           CacheConfig.getConfig(this, get("query").get("documentCache"), "query/documentCache");
+      ConfigNode documentCacheNode = get("query").get("documentCache");
+      perSegmentDocumentCache =
+          documentCacheConfig != null && documentCacheNode.boolAttr("perSegment", false);
+      perSegmentDocumentCacheMaxRamMB = documentCacheNode.intAttr("perSegmentMaxRamMB", 256);
+      ConfigNode facetCountCacheNode = get("query").get("facetCountCache");
+      facetCountCache =
+          facetCountCacheNode.exists() && facetCountCacheNode.boolAttr("enabled", true);
+      facetCountCacheMaxRamMB = facetCountCacheNode.intAttr("maxRamMB", 64);
+      ConfigNode ordinalMapCacheNode = get("query").get("ordinalMapCache");
+      ordinalMapCache =
+          ordinalMapCacheNode.exists() && ordinalMapCacheNode.boolAttr("enabled", true);
+      ordinalMapCacheWarmFields =
+          Arrays.stream(ordinalMapCacheNode.attr("warmFields", "").split(","))
+              .map(String::trim)
+              .filter(f -> !f.isEmpty())
+              .collect(Collectors.toUnmodifiableList());
+      ConfigNode rangeRollupsNode = get("query").get("rangeRollups");
+      rangeRollups = rangeRollupsNode.exists() && rangeRollupsNode.boolAttr("enabled", true);
+      rangeRollupsMaxBucketsPerSegment = rangeRollupsNode.intAttr("maxBucketsPerSegment", 100000);
+      rangeRollupDefinitions =
+          rangeRollupsNode.getAll("rollup").stream()
+              .map(n -> n.attributes().asMap())
+              .collect(Collectors.toUnmodifiableList());
+      ConfigNode offHeapUninvertedFieldsNode = get("query").get("offHeapUninvertedFields");
+      offHeapUninvertedFields =
+          offHeapUninvertedFieldsNode.exists()
+              && offHeapUninvertedFieldsNode.boolAttr("enabled", true);
       CacheConfig conf =
           CacheConfig.getConfig(this, get("query").get("fieldValueCache"), "query/fieldValueCache");
       if (conf == null) {
@@ -329,6 +368,7 @@ public class SolrConfig implements MapSerializable {
       }
       fieldValueCacheConfig = conf;
       useColdSearcher = get("query").get("useColdSearcher").boolVal(false);
+      backgroundWarming = get("query").get("backgroundWarming").boolVal(false);
       dataDir = get("dataDir").txt();
       if (dataDir != null && dataDir.length() == 0) dataDir = null;
 
@@ -669,14 +709,30 @@ public class SolrConfig implements MapSerializable {
   //  public final float filtOptThreshold;
   // SolrIndexSearcher - caches configurations
   public final CacheConfig filterCacheConfig;
+  public final boolean perSegmentFilterCache;
+  public final int perSegmentFilterCacheMaxRamMB;
   public final CacheConfig queryResultCacheConfig;
   public final CacheConfig documentCacheConfig;
+  public final boolean perSegmentDocumentCache;
+  public final int perSegmentDocumentCacheMaxRamMB;
+  public final boolean facetCountCache;
+  public final int facetCountCacheMaxRamMB;
+  public final boolean ordinalMapCache;
+  public final List<String> ordinalMapCacheWarmFields;
+  public final boolean rangeRollups;
+  public final int rangeRollupsMaxBucketsPerSegment;
+  public final List<Map<String, String>> rangeRollupDefinitions;
+  public final boolean offHeapUninvertedFields;
   public final CacheConfig fieldValueCacheConfig;
   public final Map<String, CacheConfig> userCacheConfigs;
   // SolrIndexSearcher - more...
   public final boolean useFilterForSortedQuery;
   public final int queryResultWindowSize;
   public final int queryResultMaxDocsCached;
+  public final boolean queryResultIncrementalPaging;
+  public final boolean filterPlanner;
+  public final boolean queryResultCoalescing;
+  public final int queryResultCoalescingMaxWaitMs;
   public final boolean enableLazyFieldLoading;
 
   // IndexConfig settings
@@ -688,6 +744,7 @@ public class SolrConfig implements MapSerializable {
 
   public final int maxWarmingSearchers;
   public final boolean useColdSearcher;
+  public final boolean backgroundWarming;
   public final Version luceneMatchVersion;
   protected String dataDir;
   public final int slowQueryThresholdMillis; // threshold above which a query is considered slow
@@ -1012,6 +1069,18 @@ public class SolrConfig implements MapSerializable {
     m.put("useFilterForSortedQuery", useFilterForSortedQuery);
     m.put("queryResultWindowSize", queryResultWindowSize);
     m.put("queryResultMaxDocsCached", queryResultMaxDocsCached);
+    m.put("queryResultIncrementalPaging", queryResultIncrementalPaging);
+    m.put("filterPlanner", filterPlanner);
+    m.put("queryResultCoalescing", queryResultCoalescing);
+    m.put("queryResultCoalescingMaxWaitMs", queryResultCoalescingMaxWaitMs);
+    m.put("facetCountCache", facetCountCache);
+    m.put("facetCountCacheMaxRamMB", facetCountCacheMaxRamMB);
+    m.put("ordinalMapCache", ordinalMapCache);
+    m.put("ordinalMapCacheWarmFields", ordinalMapCacheWarmFields);
+    m.put("rangeRollups", rangeRollups);
+    m.put("rangeRollupsMaxBucketsPerSegment", rangeRollupsMaxBucketsPerSegment);
+    m.put("rangeRollupDefinitions", rangeRollupDefinitions);
+    m.put("offHeapUninvertedFields", offHeapUninvertedFields);
     m.put("enableLazyFieldLoading", enableLazyFieldLoading);
     m.put("maxBooleanClauses", booleanQueryMaxClauseCount);
 
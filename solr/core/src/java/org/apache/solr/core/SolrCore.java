@@ -61,6 +61,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -146,10 +147,15 @@ import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.ManagedIndexSchema;
 import org.apache.solr.schema.SimilarityFactory;
+import org.apache.solr.search.OrdinalMapCache;
+import org.apache.solr.search.PerSegmentDocSetCache;
+import org.apache.solr.search.PerSegmentStoredFieldsCache;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SolrFieldCacheBean;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.ValueSourceParser;
+import org.apache.solr.search.facet.PerSegmentFacetCountCache;
+import org.apache.solr.search.facet.RangeRollupCache;
 import org.apache.solr.search.stats.LocalStatsCache;
 import org.apache.solr.search.stats.StatsCache;
 import org.apache.solr.update.DefaultSolrCoreState;
@@ -258,6 +264,9 @@ public class SolrCore implements SolrInfoBean, Closeable {
   private Counter newSearcherCounter;
   private Counter newSearcherMaxReachedCounter;
   private Counter newSearcherOtherErrorsCounter;
+  private Timer backgroundWarmupTimer;
+  private Counter backgroundWarmupStoppedCounter;
+  private Counter backgroundWarmupTimeSavedCounter;
 
   private final String metricTag = SolrMetricProducer.getUniqueMetricTag(this, null);
   private final SolrMetricsContext solrMetricsContext;
@@ -275,6 +284,12 @@ public class SolrCore implements SolrInfoBean, Closeable {
   private final Map<IndexReader.CacheKey, IndexFingerprint> perSegmentFingerprintCache =
       new WeakHashMap<>();
 
+  private final PerSegmentDocSetCache perSegmentFilterCache;
+  private final PerSegmentStoredFieldsCache perSegmentDocumentCache;
+  private final PerSegmentFacetCountCache facetCountCache;
+  private final OrdinalMapCache ordinalMapCache;
+  private final RangeRollupCache rangeRollupCache;
+
   public long getStartNanoTime() {
     return startNanoTime;
   }
@@ -1067,6 +1082,7 @@ public class SolrCore implements SolrInfoBean, Closeable {
 
     // ensure that in unclean shutdown tests we still close this
     assert ObjectReleaseTracker.track(searcherExecutor);
+    assert ObjectReleaseTracker.track(backgroundWarmingExecutor);
 
     final CountDownLatch latch = new CountDownLatch(1);
     try {
@@ -1118,6 +1134,52 @@ public class SolrCore implements SolrInfoBean, Closeable {
       solrFieldCacheBean.initializeMetrics(solrMetricsContext, "core");
       infoRegistry.put("fieldCache", solrFieldCacheBean);
 
+      if (solrConfig.perSegmentFilterCache) {
+        // shared by all searchers of this core, so that unchanged segments keep their filters
+        perSegmentFilterCache =
+            new PerSegmentDocSetCache(solrConfig.perSegmentFilterCacheMaxRamMB);
+        perSegmentFilterCache.initializeMetrics(solrMetricsContext, "core");
+        infoRegistry.put("perSegmentFilterCache", perSegmentFilterCache);
+      } else {
+        perSegmentFilterCache = null;
+      }
+
+      if (solrConfig.perSegmentDocumentCache) {
+        // replaces the documentCache of each searcher
+        perSegmentDocumentCache =
+            new PerSegmentStoredFieldsCache(solrConfig.perSegmentDocumentCacheMaxRamMB);
+        perSegmentDocumentCache.initializeMetrics(solrMetricsContext, "core");
+        infoRegistry.put("perSegmentDocumentCache", perSegmentDocumentCache);
+      } else {
+        perSegmentDocumentCache = null;
+      }
+
+      if (solrConfig.facetCountCache) {
+        facetCountCache = new PerSegmentFacetCountCache(solrConfig.facetCountCacheMaxRamMB);
+        facetCountCache.initializeMetrics(solrMetricsContext, "core");
+        infoRegistry.put("facetCountCache", facetCountCache);
+      } else {
+        facetCountCache = null;
+      }
+
+      if (solrConfig.ordinalMapCache) {
+        ordinalMapCache = new OrdinalMapCache(solrConfig.ordinalMapCacheWarmFields);
+        ordinalMapCache.initializeMetrics(solrMetricsContext, "core");
+        infoRegistry.put("ordinalMapCache", ordinalMapCache);
+      } else {
+        ordinalMapCache = null;
+      }
+
+      if (solrConfig.rangeRollups) {
+        rangeRollupCache =
+            new RangeRollupCache(
+                solrConfig.rangeRollupDefinitions, solrConfig.rangeRollupsMaxBucketsPerSegment);
+        rangeRollupCache.initializeMetrics(solrMetricsContext, "core");
+        infoRegistry.put("rangeRollupCache", rangeRollupCache);
+      } else {
+        rangeRollupCache = null;
+      }
+
       this.maxWarmingSearchers = solrConfig.maxWarmingSearchers;
       this.slowQueryThresholdMillis = solrConfig.slowQueryThresholdMillis;
 
@@ -1340,6 +1402,12 @@ public class SolrCore implements SolrInfoBean, Closeable {
         parentContext.counter("maxReached", Category.SEARCHER.toString(), "new");
     newSearcherOtherErrorsCounter =
         parentContext.counter("errors", Category.SEARCHER.toString(), "new");
+    backgroundWarmupTimer =
+        parentContext.timer("backgroundWarmup", Category.SEARCHER.toString(), "new");
+    backgroundWarmupStoppedCounter =
+        parentContext.counter("backgroundWarmupStopped", Category.SEARCHER.toString(), "new");
+    backgroundWarmupTimeSavedCounter =
+        parentContext.counter("warmupTimeSavedMs", Category.SEARCHER.toString(), "new");
 
     parentContext.gauge(
         () -> name == null ? parentContext.nullString() : name,
@@ -1835,6 +1903,22 @@ public class SolrCore implements SolrInfoBean, Closeable {
     }
     assert ObjectReleaseTracker.release(searcherExecutor);
 
+    try {
+      // no new background warming can be submitted now that the searcherExecutor is shut down
+      synchronized (searcherLock) {
+        if (_searcher != null) {
+          _searcher.get().stopWarming();
+        }
+      }
+      ExecutorUtil.shutdownAndAwaitTermination(backgroundWarmingExecutor);
+    } catch (Throwable e) {
+      log.error("Exception shutting down backgroundWarmingExecutor", e);
+      if (e instanceof Error) {
+        throw (Error) e;
+      }
+    }
+    assert ObjectReleaseTracker.release(backgroundWarmingExecutor);
+
     try {
       // Since we waited for the searcherExecutor to shut down,
       // there should be no more searchers warming in the background
@@ -1859,6 +1943,22 @@ public class SolrCore implements SolrInfoBean, Closeable {
       }
     }
 
+    if (perSegmentFilterCache != null) {
+      perSegmentFilterCache.clear();
+    }
+    if (perSegmentDocumentCache != null) {
+      perSegmentDocumentCache.clear();
+    }
+    if (facetCountCache != null) {
+      facetCountCache.clear();
+    }
+    if (ordinalMapCache != null) {
+      ordinalMapCache.clear();
+    }
+    if (rangeRollupCache != null) {
+      rangeRollupCache.clear();
+    }
+
     try {
       infoRegistry.clear();
     } catch (Throwable e) {
@@ -2069,6 +2169,10 @@ public class SolrCore implements SolrInfoBean, Closeable {
 
   final ExecutorService searcherExecutor =
       ExecutorUtil.newMDCAwareSingleThreadExecutor(new SolrNamedThreadFactory("searcherExecutor"));
+  // autowarms searchers that were registered with cold caches, see solrConfig.backgroundWarming
+  final ExecutorService backgroundWarmingExecutor =
+      ExecutorUtil.newMDCAwareSingleThreadExecutor(
+          new SolrNamedThreadFactory("backgroundWarmingExecutor"));
   private int onDeckSearchers; // number of searchers preparing
   // Lock ordering: one can acquire the openSearcherLock and then the searcherLock, but not
   // vice-versa.
@@ -2207,6 +2311,46 @@ public class SolrCore implements SolrInfoBean, Closeable {
     return f;
   }
 
+  /**
+   * Returns the per-segment filter cache shared by all searchers of this core, or null if the
+   * filterCache isn't configured with <code>perSegment="true"</code>.
+   */
+  public PerSegmentDocSetCache getPerSegmentFilterCache() {
+    return perSegmentFilterCache;
+  }
+
+  /**
+   * Returns the per-segment document cache shared by all searchers of this core, or null if the
+   * documentCache isn't configured with <code>perSegment="true"</code>.
+   */
+  public PerSegmentStoredFieldsCache getPerSegmentDocumentCache() {
+    return perSegmentDocumentCache;
+  }
+
+  /**
+   * Returns the per-segment cache of facet counts shared by all searchers of this core, or null if
+   * <code>facetCountCache</code> isn't enabled.
+   */
+  public PerSegmentFacetCountCache getFacetCountCache() {
+    return facetCountCache;
+  }
+
+  /**
+   * Returns the cache of the global ords of string fields shared by all searchers of this core, or
+   * null if <code>ordinalMapCache</code> isn't enabled.
+   */
+  public OrdinalMapCache getOrdinalMapCache() {
+    return ordinalMapCache;
+  }
+
+  /**
+   * Returns the per segment rollups of the time fields configured in <code>rangeRollups</code>, or
+   * null if <code>rangeRollups</code> isn't enabled.
+   */
+  public RangeRollupCache getRangeRollupCache() {
+    return rangeRollupCache;
+  }
+
   /**
    * Returns the current registered searcher with its reference count incremented, or null if none
    * are registered.
@@ -2615,12 +2759,16 @@ public class SolrCore implements SolrInfoBean, Closeable {
 
       Future<Void> future = null;
 
+      // register the new searcher with cold caches, and warm them once it is registered
+      final boolean backgroundWarming =
+          solrConfig.backgroundWarming && currSearcher != null && newSearcher != currSearcher;
+
       // if the underlying searcher has not changed, no warming is needed
       if (newSearcher != currSearcher) {
 
         // warm the new searcher based on the current searcher.
         // should this go before the other event handlers or after?
-        if (currSearcher != null) {
+        if (currSearcher != null && !backgroundWarming) {
           future =
               searcherExecutor.submit(
                   () -> {
@@ -2693,9 +2841,14 @@ public class SolrCore implements SolrInfoBean, Closeable {
                       throw (Error) e;
                     }
                   } finally {
-                    // we are all done with the old searcher we used
-                    // for warming...
-                    if (currSearcherHolderF != null) currSearcherHolderF.decref();
+                    if (backgroundWarming) {
+                      // the old searcher is still needed to warm the new one
+                      warmInBackground(newSearchHolder, currSearcherHolderF);
+                    } else if (currSearcherHolderF != null) {
+                      // we are all done with the old searcher we used
+                      // for warming...
+                      currSearcherHolderF.decref();
+                    }
                   }
                   return null;
                 });
@@ -2792,6 +2945,46 @@ public class SolrCore implements SolrInfoBean, Closeable {
   //
   // onDeckSearchers will also be decremented (it should have been incremented
   // as a result of opening a new searcher).
+  /**
+   * Autowarms the caches of a registered searcher from the searcher it replaced, in the background.
+   * The warming stops early if another searcher is registered in the meantime. Takes over the
+   * reference to the replaced searcher.
+   */
+  private void warmInBackground(
+      RefCounted<SolrIndexSearcher> newSearcherHolder,
+      RefCounted<SolrIndexSearcher> currSearcherHolder) {
+    newSearcherHolder.incref();
+    try {
+      backgroundWarmingExecutor.submit(
+          () -> {
+            SolrIndexSearcher newSearcher = newSearcherHolder.get();
+            Timer.Context warmupContext = backgroundWarmupTimer.time();
+            try {
+              newSearcher.warm(currSearcherHolder.get());
+            } catch (Throwable e) {
+              log.error("Exception warming new searcher in the background", e);
+              if (e instanceof Error) {
+                throw (Error) e;
+              }
+            } finally {
+              // the time that registering the searcher would have waited for
+              backgroundWarmupTimeSavedCounter.inc(
+                  TimeUnit.NANOSECONDS.toMillis(warmupContext.stop()));
+              if (newSearcher.isWarmingStopped()) {
+                backgroundWarmupStoppedCounter.inc();
+              }
+              currSearcherHolder.decref();
+              newSearcherHolder.decref();
+            }
+            return null;
+          });
+    } catch (RejectedExecutionException e) {
+      // the core is closing
+      currSearcherHolder.decref();
+      newSearcherHolder.decref();
+    }
+  }
+
   private void registerSearcher(RefCounted<SolrIndexSearcher> newSearcherHolder) {
     synchronized (searcherLock) {
       try {
@@ -2806,6 +2999,8 @@ public class SolrCore implements SolrInfoBean, Closeable {
         }
 
         if (_searcher != null) {
+          // no need to keep warming a searcher that is being replaced
+          _searcher.get().stopWarming();
           _searcher.decref(); // dec refcount for this._searcher
           _searcher = null;
         }
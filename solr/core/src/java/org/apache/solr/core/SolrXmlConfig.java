@@ -382,6 +382,18 @@ public class SolrXmlConfig {
               case "replayUpdatesThreads":
                 builder.setReplayUpdatesThreads(it.intVal(-1));
                 break;
+              case "indexSearcherExecutorThreads":
+                builder.setIndexSearcherExecutorThreads(it.intVal(-1));
+                break;
+              case "indexSearcherMaxThreadsPerRequest":
+                builder.setIndexSearcherMaxThreadsPerRequest(it.intVal(-1));
+                break;
+              case "facetExecutorThreads":
+                builder.setFacetExecutorThreads(it.intVal(-1));
+                break;
+              case "exportExecutorThreads":
+                builder.setExportExecutorThreads(it.intVal(-1));
+                break;
               case "transientCacheSize":
                 log.warn("solr.xml transientCacheSize -- transient cores is deprecated");
                 builder.setTransientCacheSize(it.intVal(-1));
@@ -29,6 +29,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.solr.client.solrj.io.ModelCache;
 import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.Tuple;
@@ -57,6 +58,7 @@ import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.PluginInfo;
 import org.apache.solr.core.SolrConfig;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.pkg.PackagePluginHolder;
 import org.apache.solr.pkg.SolrPackageLoader;
 import org.apache.solr.request.SolrQueryRequest;
@@ -88,12 +90,29 @@ public class StreamHandler extends RequestHandlerBase
   private String coreName;
   private SolrClientCache solrClientCache;
   private Map<String, DaemonStream> daemons = new ConcurrentHashMap<>();
+  // the bytes spilled to disk by the streams of all the requests
+  private final LongAdder spilledBytes = new LongAdder();
+  private final String spillDirectory = System.getProperty("solr.streaming.spillDir");
+  // the memory budget of the requests that don't have one, and the min budget of any request, so
+  // that a request can't make the streams spill all their tuples
+  private final long defaultMemoryBudget =
+      Long.getLong("solr.streaming.memoryBudget", Long.MAX_VALUE);
+  private final long minMemoryBudget = Long.getLong("solr.streaming.minMemoryBudget", 1L << 20);
+  // the max bytes that the streams of a request may spill
+  private final long maxSpillBytes = Long.getLong("solr.streaming.maxSpillBytes", 10L << 30);
 
   @Override
   public PermissionNameProvider.Name getPermissionName(AuthorizationContext request) {
     return PermissionNameProvider.Name.READ_PERM;
   }
 
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    super.initializeMetrics(parentContext, scope);
+    solrMetricsContext.gauge(
+        spilledBytes::sum, true, "spilledBytes", getCategory().toString(), scope);
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public void inform(SolrCore core) {
@@ -182,6 +201,9 @@ public class StreamHandler extends RequestHandlerBase
     try {
       StreamExpression streamExpression =
           StreamExpressionParser.parse(params.get(StreamParams.EXPR));
+      if (params.getBool(StreamParams.PUSH_DOWN, false)) {
+        streamExpression = this.streamFactory.pushDownAggregations(streamExpression);
+      }
       if (this.streamFactory.isEvaluator(streamExpression)) {
         StreamExpression tupleExpression = new StreamExpression(StreamParams.TUPLE);
         tupleExpression.addParameter(
@@ -233,6 +255,13 @@ public class StreamHandler extends RequestHandlerBase
     context.put("core", this.coreName);
     context.put("solr-core", req.getCore());
     context.setLocal(local);
+    context.setMemoryBudget(
+        Math.max(minMemoryBudget, params.getLong(StreamParams.MEMORY_BUDGET, defaultMemoryBudget)));
+    context.setMaxSpillBytes(maxSpillBytes);
+    context.setSpilledBytes(spilledBytes);
+    if (spillDirectory != null) {
+      context.setSpillDirectory(spillDirectory);
+    }
     tupleStream.setStreamContext(context);
 
     // if asking for explanation then go get it
@@ -131,6 +131,10 @@ public class DebugComponent extends SearchComponent {
             fqs.add(QueryParsing.toString(fq, rb.req.getSchema()));
           }
           info.add("parsed_filter_queries", fqs);
+          Object filterPlans = rb.req.getContext().get(SolrIndexSearcher.FILTER_PLAN_CONTEXT_KEY);
+          if (filterPlans != null) {
+            info.add("filter_plan", filterPlans);
+          }
         }
 
         // Add this directly here?
@@ -51,6 +51,7 @@ import org.apache.solr.search.DocSet;
 import org.apache.solr.search.QueryParsing;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.search.facet.FacetDebugInfo;
+import org.apache.solr.search.facet.LegacyPivotFacet;
 import org.apache.solr.util.RTimer;
 import org.apache.solr.util.SolrResponseUtil;
 import org.slf4j.Logger;
@@ -72,7 +73,7 @@ public class FacetComponent extends SearchComponent {
   public static final String FACET_RANGES_KEY = "facet_ranges";
   public static final String FACET_INTERVALS_KEY = "facet_intervals";
 
-  private static final String PIVOT_KEY = "facet_pivot";
+  public static final String PIVOT_KEY = "facet_pivot";
   private static final String PIVOT_REFINE_PREFIX = "{!" + PivotFacet.REFINE_PARAM + "=";
 
   @Override
@@ -276,7 +277,8 @@ public class FacetComponent extends SearchComponent {
 
       NamedList<Object> counts = FacetComponent.getFacetCounts(f, fdebug);
       String[] pivots = params.getParams(FacetParams.FACET_PIVOT);
-      if (pivots != null && Array.getLength(pivots) != 0) {
+      // the pivots may be computed as JSON facets by the FacetModule instead
+      if (pivots != null && Array.getLength(pivots) != 0 && !LegacyPivotFacet.isEnabled(params)) {
         PivotFacetProcessor pivotProcessor =
             new PivotFacetProcessor(rb.req, rb.getResults().docSet, params, rb);
         SimpleOrderedMap<List<NamedList<Object>>> v = pivotProcessor.process(pivots);
@@ -1283,7 +1285,7 @@ public class FacetComponent extends SearchComponent {
 
       // Develop Pivot Facet Information
       String[] facetPFs = params.getParams(FacetParams.FACET_PIVOT);
-      if (facetPFs != null) {
+      if (facetPFs != null && !LegacyPivotFacet.isEnabled(params)) {
         for (String fieldGroup : facetPFs) {
           PivotFacet pf = new PivotFacet(rb, fieldGroup);
           pivotFacets.add(pf.getKey(), pf);
@@ -26,6 +26,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import net.jcip.annotations.NotThreadSafe;
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrResponse;
@@ -223,7 +224,7 @@ public class HttpShardHandler extends ShardHandler {
    */
   @Override
   public ShardResponse takeCompletedIncludingErrors() {
-    return take(false);
+    return take(false, null);
   }
 
   /**
@@ -232,10 +233,15 @@ public class HttpShardHandler extends ShardHandler {
    */
   @Override
   public ShardResponse takeCompletedOrError() {
-    return take(true);
+    return take(true, null);
   }
 
-  private ShardResponse take(boolean bailOnError) {
+  @Override
+  public ShardResponse takeCompleted(boolean bailOnError, Consumer<ShardResponse> onResponse) {
+    return take(bailOnError, onResponse);
+  }
+
+  private ShardResponse take(boolean bailOnError, Consumer<ShardResponse> onResponse) {
     try {
       while (pending.get() > 0) {
         ShardResponse rsp = responses.take();
@@ -249,6 +255,9 @@ public class HttpShardHandler extends ShardHandler {
         // for a request was received.  Otherwise we might return the same
         // request more than once.
         rsp.getShardRequest().responses.add(rsp);
+        if (onResponse != null && rsp.getException() == null) {
+          onResponse.accept(rsp);
+        }
         if (rsp.getShardRequest().responses.size() == rsp.getShardRequest().actualShards.length) {
           return rsp;
         }
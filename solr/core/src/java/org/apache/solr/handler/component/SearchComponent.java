@@ -68,6 +68,14 @@ public abstract class SearchComponent implements SolrInfoBean, NamedListInitiali
   /** Called after another component adds a request */
   public void modifyRequest(ResponseBuilder rb, SearchComponent who, ShardRequest sreq) {}
 
+  /**
+   * Called with each response of a request as soon as it's received, before {@link
+   * #handleResponses} is called with all the responses of the request. Components can merge a
+   * response here and remove what they merged from it, so that the coordinator doesn't hold that
+   * part of the responses of all shards at once.
+   */
+  public void handleShardResponse(ResponseBuilder rb, ShardResponse srsp) {}
+
   /** Called after all responses for a single request were received */
   public void handleResponses(ResponseBuilder rb, ShardRequest sreq) {}
 
@@ -527,10 +527,15 @@ public class SearchHandler extends RequestHandlerBase
           // this loop)
           boolean tolerant = ShardParams.getShardsTolerantAsBool(rb.req.getParams());
           while (rb.outgoing.size() == 0) {
+            // let the components see each response as soon as it's received
             ShardResponse srsp =
-                tolerant
-                    ? shardHandler1.takeCompletedIncludingErrors()
-                    : shardHandler1.takeCompletedOrError();
+                shardHandler1.takeCompleted(
+                    !tolerant,
+                    shardRsp -> {
+                      for (SearchComponent c : components) {
+                        c.handleShardResponse(rb, shardRsp);
+                      }
+                    });
             if (srsp == null) break; // no more requests to wait for
 
             // Was there an exception?
@@ -16,6 +16,7 @@
  */
 package org.apache.solr.handler.component;
 
+import java.util.function.Consumer;
 import org.apache.solr.common.params.ModifiableSolrParams;
 
 public abstract class ShardHandler {
@@ -27,6 +28,24 @@ public abstract class ShardHandler {
 
   public abstract ShardResponse takeCompletedOrError();
 
+  /**
+   * Like {@link #takeCompletedOrError()} if <code>bailOnError</code> or else {@link
+   * #takeCompletedIncludingErrors()}, and calls <code>onResponse</code> with each successful
+   * response as soon as it's received. The default implementation calls it with the responses of
+   * the request once they were all received.
+   */
+  public ShardResponse takeCompleted(boolean bailOnError, Consumer<ShardResponse> onResponse) {
+    ShardResponse srsp = bailOnError ? takeCompletedOrError() : takeCompletedIncludingErrors();
+    if (srsp != null && srsp.getException() == null) {
+      for (ShardResponse response : srsp.getShardRequest().responses) {
+        if (response.getException() == null) {
+          onResponse.accept(response);
+        }
+      }
+    }
+    return srsp;
+  }
+
   public abstract void cancelAll();
 
   public abstract ShardHandlerFactory getShardHandlerFactory();
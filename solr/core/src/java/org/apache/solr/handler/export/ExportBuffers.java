@@ -33,6 +33,7 @@ import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.common.IteratorWriter;
 import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.core.CoreContainer;
 import org.apache.solr.handler.export.ExportWriter.MergeIterator;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.slf4j.Logger;
@@ -58,6 +59,8 @@ class ExportBuffers {
   Buffer outputBuffer;
   Runnable filler;
   ExecutorService service;
+  // fills the priority queues of the segments in the background, if any
+  SegmentExecutor segmentExecutor;
   Throwable error;
   LongAdder outputCounter = new LongAdder();
   volatile boolean shutDown = false;
@@ -94,7 +97,23 @@ class ExportBuffers {
     outputBuffer = bufferTwo;
     SortDoc writerSortDoc = exportWriter.getSortDoc(searcher, sort.getSort());
 
-    MergeIterator mergeIterator = exportWriter.getMergeIterator(leaves, sets, writerSortDoc);
+    CoreContainer coreContainer = searcher.getCore().getCoreContainer();
+    ExecutorService exportExecutor = coreContainer.getExportExecutor();
+    if (exportWriter.segmentThreads > 0 && exportExecutor != null && !leaves.isEmpty()) {
+      // a request uses at most as many threads as the shared executor has
+      int threads =
+          Math.min(
+              Math.min(exportWriter.segmentThreads, leaves.size()),
+              coreContainer.getConfig().getExportExecutorThreads());
+      segmentExecutor = new SegmentExecutor(exportExecutor, threads);
+    }
+    MergeIterator mergeIterator;
+    try {
+      mergeIterator = exportWriter.getMergeIterator(leaves, sets, writerSortDoc, segmentExecutor);
+    } catch (Throwable t) {
+      shutdownNow();
+      throw t;
+    }
 
     bufferOne.initialize(writerSortDoc);
     bufferTwo.initialize(writerSortDoc);
@@ -200,6 +219,10 @@ class ExportBuffers {
       service.shutdownNow();
       service = null;
     }
+    if (segmentExecutor != null) {
+      segmentExecutor.cancel();
+      segmentExecutor = null;
+    }
     shutDown = true;
   }
 
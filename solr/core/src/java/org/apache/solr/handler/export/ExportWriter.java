@@ -30,6 +30,8 @@ import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedDocValues;
@@ -40,6 +42,7 @@ import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.client.solrj.impl.BinaryResponseParser;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.stream.ColumnarBatchWriter;
 import org.apache.solr.client.solrj.io.stream.StreamContext;
 import org.apache.solr.client.solrj.io.stream.TupleStream;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
@@ -90,6 +93,13 @@ import org.slf4j.LoggerFactory;
  * that haven't been sent yet and stores them in a Priority Queue. They are then exported (written
  * across the wire) and marked as sent (unset in the bitmap). This process repeats until all
  * matching documents have been sent.
+ *
+ * <p>With {@link #SEGMENT_THREADS_PARAM} the next docs of each segment are found by background
+ * threads while the current ones are merged and written, so that the passes over the bitmaps of the
+ * segments run in parallel.
+ *
+ * <p>With {@link StreamParams#COLUMNAR} the documents, or the tuples of the streaming expression,
+ * are written in batches of columns by a {@link ColumnarBatchWriter}.
  */
 public class ExportWriter implements SolrCore.RawWriter, Closeable {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -97,6 +107,15 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   public static final String BATCH_SIZE_PARAM = "batchSize";
   public static final String QUEUE_SIZE_PARAM = "queueSize";
 
+  /**
+   * The max number of threads that fill the priority queues of the segments in the background, 0
+   * (the default) to fill them in the thread that merges the segments. The threads are those of
+   * the export executor of the node, and never more than it has.
+   *
+   * @see org.apache.solr.core.CoreContainer#getExportExecutor()
+   */
+  public static final String SEGMENT_THREADS_PARAM = "segmentThreads";
+
   public static final int DEFAULT_BATCH_SIZE = 30000;
   public static final int DEFAULT_QUEUE_SIZE = 150000;
 
@@ -110,6 +129,8 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   final int batchSize;
   // The max combined size of the segment level priority queues.
   private int priorityQueueSize;
+  // The max number of threads filling the segment level priority queues.
+  final int segmentThreads;
   StreamExpression streamExpression;
   StreamContext streamContext;
   FieldWriter[] fieldWriters;
@@ -117,6 +138,8 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   FixedBitSet[] sets = null;
   PushWriter writer;
   private String wt;
+  // whether the docs are written in batches of columns
+  boolean columnar;
 
   public ExportWriter(
       SolrQueryRequest req,
@@ -133,6 +156,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     this.metricsPath = metricsPath;
     this.priorityQueueSize = req.getParams().getInt(QUEUE_SIZE_PARAM, DEFAULT_QUEUE_SIZE);
     this.batchSize = DEFAULT_BATCH_SIZE;
+    this.segmentThreads = Math.max(0, req.getParams().getInt(SEGMENT_THREADS_PARAM, 0));
   }
 
   @Override
@@ -283,6 +307,13 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       }
     }
 
+    columnar = params.getBool(StreamParams.COLUMNAR, false);
+    if (columnar && !(writer instanceof JavaBinCodec)) {
+      writeException(
+          (new IOException(new SyntaxError("columnar export requires wt=javabin"))), writer, true);
+      return;
+    }
+
     try {
       fieldWriters = getFieldWriters(fields, req.getSearcher());
     } catch (Exception e) {
@@ -393,6 +424,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
         buffers.getWriter().add((MapWriter) ew -> Tuple.EXCEPTION(e, true).writeMap(ew));
         return;
       }
+      final ColumnarBatchWriter batch = columnar ? new ColumnarBatchWriter() : null;
       buffers.run(
           () -> {
             for (; ; ) {
@@ -403,6 +435,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
               try {
                 t = tupleStream.read();
               } catch (final Exception e) {
+                writeBatch(buffers.getWriter(), batch);
                 buffers.getWriter().add((MapWriter) ew -> Tuple.EXCEPTION(e, true).writeMap(ew));
                 break;
               }
@@ -412,6 +445,14 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
               if (t.EOF && !t.EXCEPTION) {
                 break;
               }
+              if (batch != null && !t.EXCEPTION) {
+                batch.addRow(t);
+                if (batch.size() >= batchSize) {
+                  writeBatch(buffers.getWriter(), batch);
+                }
+                continue;
+              }
+              writeBatch(buffers.getWriter(), batch);
               // use decorated writer to monitor the number of output writes
               // and flush the output quickly in case of very few (reduced) output items
               buffers.getWriter().add((MapWriter) ew -> t.writeMap(ew));
@@ -419,10 +460,12 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
                 break;
               }
             }
+            writeBatch(buffers.getWriter(), batch);
             return true;
           });
       tupleStream.close();
     } else {
+      final ColumnarBatchWriter batch = columnar ? new ColumnarBatchWriter() : null;
       buffers.run(
           () -> {
             // get the initial buffer
@@ -440,8 +483,14 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
                 // reduction in the number of output items, unlike when using
                 // streaming expressions
                 final SortDoc currentDoc = buffer.outDocs[i];
-                writer.add((MapWriter) ew -> writeDoc(currentDoc, leaves, ew, fieldWriters));
+                if (batch != null) {
+                  batch.addRow(ew -> writeDoc(currentDoc, leaves, ew, fieldWriters));
+                } else {
+                  writer.add((MapWriter) ew -> writeDoc(currentDoc, leaves, ew, fieldWriters));
+                }
               }
+              // a batch of columns for each buffer
+              writeBatch(writer, batch);
               // log.debug("--- writer exchanging from {}", buffer);
               long startExchangeBuffers = System.nanoTime();
               buffers.exchangeBuffers();
@@ -459,6 +508,14 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     }
   }
 
+  private static void writeBatch(IteratorWriter.ItemWriter writer, ColumnarBatchWriter batch)
+      throws IOException {
+    if (batch != null && batch.size() > 0) {
+      writer.add(batch);
+      batch.reset();
+    }
+  }
+
   void fillOutDocs(MergeIterator mergeIterator, ExportBuffers.Buffer buffer) throws IOException {
     transferBatchToBufferForOutput(mergeIterator, buffer);
   }
@@ -685,6 +742,16 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
 
   public MergeIterator getMergeIterator(
       List<LeafReaderContext> leaves, FixedBitSet[] bits, SortDoc sortDoc) throws IOException {
+    return getMergeIterator(leaves, bits, sortDoc, null);
+  }
+
+  /**
+   * Returns an iterator merging the docs of the segments, whose priority queues are filled by the
+   * given executor in the background if it isn't null.
+   */
+  MergeIterator getMergeIterator(
+      List<LeafReaderContext> leaves, FixedBitSet[] bits, SortDoc sortDoc, SegmentExecutor executor)
+      throws IOException {
     try {
       long totalDocs = 0;
       for (int i = 0; i < leaves.size(); i++) {
@@ -707,6 +774,11 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
             Math.min(
                 (int) (((double) maxDoc / (double) totalDocs) * this.priorityQueueSize), batchSize);
 
+        // Each segment has a second queue that is filled in the background
+        if (executor != null) {
+          sortQueueSize /= 2;
+        }
+
         // Protect against too small a queue size as well
         if (sortQueueSize < 10) {
           sortQueueSize = 10;
@@ -726,9 +798,8 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
 
       SegmentIterator[] segmentIterators = new SegmentIterator[leaves.size()];
       for (int i = 0; i < segmentIterators.length; i++) {
-        SortQueue sortQueue = new SortQueue(sizes[i], sortDoc.copy());
         segmentIterators[i] =
-            new SegmentIterator(bits[i], leaves.get(i), sortQueue, sortDoc.copy());
+            new SegmentIterator(bits[i], leaves.get(i), sizes[i], sortDoc, executor);
       }
 
       return new MergeIterator(segmentIterators, sortDoc);
@@ -739,41 +810,48 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   private static class SegmentIterator {
 
     private final FixedBitSet bits;
-    private final SortQueue queue;
-    private final SortDoc sortDoc;
     private final LeafReaderContext context;
-    private final SortDoc[] outDocs;
+    private final SegmentExecutor executor;
+
+    // the docs being merged, and the next docs of the segment when filled in the background
+    private Batch batch;
+    private Batch nextBatch;
+    private Future<Batch> pending;
 
     private SortDoc nextDoc;
-    private int index;
 
     public SegmentIterator(
-        FixedBitSet bits, LeafReaderContext context, SortQueue sortQueue, SortDoc sortDoc)
+        FixedBitSet bits,
+        LeafReaderContext context,
+        int queueSize,
+        SortDoc sortDoc,
+        SegmentExecutor executor)
         throws IOException {
       this.bits = bits;
-      this.queue = sortQueue;
-      this.sortDoc = sortDoc;
-      this.nextDoc = sortDoc.copy();
       this.context = context;
-      this.outDocs = new SortDoc[sortQueue.maxSize];
-      topDocs();
+      this.executor = executor;
+      this.nextDoc = sortDoc.copy();
+      this.batch = new Batch(new SortQueue(queueSize, sortDoc.copy()), sortDoc.copy());
+      if (executor == null) {
+        batch.topDocs();
+      } else {
+        // the first docs are merged once filled
+        nextBatch = new Batch(new SortQueue(queueSize, sortDoc.copy()), sortDoc.copy());
+        pending = executor.submit(nextBatch::topDocs);
+      }
     }
 
     public SortDoc next() throws IOException {
+      if (batch.index < 0) {
+        nextBatch();
+      }
+
       SortDoc _sortDoc = null;
-      if (index > -1) {
-        _sortDoc = outDocs[index--];
-      } else {
-        topDocs();
-        if (index > -1) {
-          _sortDoc = outDocs[index--];
-        }
+      if (batch.index > -1) {
+        _sortDoc = batch.outDocs[batch.index--];
       }
 
       if (_sortDoc != null) {
-        // Clear the bit so it's not loaded again.
-        bits.clear(_sortDoc.docId);
-
         // Load the global ordinal (only matters for strings)
         _sortDoc.setGlobalValues(nextDoc);
 
@@ -786,35 +864,80 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       return nextDoc;
     }
 
-    private void topDocs() throws IOException {
+    private void nextBatch() throws IOException {
+      if (executor == null) {
+        batch.topDocs();
+        return;
+      }
+      if (pending == null) {
+        return; // no more docs
+      }
+      Batch filled;
       try {
-        queue.reset();
-        SortDoc top = queue.top();
-        this.sortDoc.setNextReader(context);
-        DocIdSetIterator it = new BitSetIterator(bits, 0); // cost is not useful here
-        int docId;
-        while ((docId = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-          this.sortDoc.setValues(docId);
-          // Always set the top doc if previously not set, otherwise
-          // set the top if the sortDoc is greater than current
-          if (top.lessThan(this.sortDoc) || top.docId == -1) {
-            top.setValues(this.sortDoc);
-            top = queue.updateTop();
+        filled = pending.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        throw new IOException(e.getCause());
+      }
+      nextBatch = batch;
+      batch = filled;
+      if (batch.index > -1) {
+        // The docs of this batch are cleared from the bits, so the next ones can be found while
+        // this batch is merged
+        pending = executor.submit(nextBatch::topDocs);
+      } else {
+        pending = null;
+      }
+    }
+
+    /** The top docs of the segment that weren't merged yet, in reverse order. */
+    private class Batch {
+      private final SortQueue queue;
+      private final SortDoc sortDoc;
+      private final SortDoc[] outDocs;
+      private int index = -1;
+
+      Batch(SortQueue queue, SortDoc sortDoc) {
+        this.queue = queue;
+        this.sortDoc = sortDoc;
+        this.outDocs = new SortDoc[queue.maxSize];
+      }
+
+      Batch topDocs() throws IOException {
+        try {
+          queue.reset();
+          SortDoc top = queue.top();
+          this.sortDoc.setNextReader(context);
+          DocIdSetIterator it = new BitSetIterator(bits, 0); // cost is not useful here
+          int docId;
+          while ((docId = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            this.sortDoc.setValues(docId);
+            // Always set the top doc if previously not set, otherwise
+            // set the top if the sortDoc is greater than current
+            if (top.lessThan(this.sortDoc) || top.docId == -1) {
+              top.setValues(this.sortDoc);
+              top = queue.updateTop();
+            }
           }
-        }
 
-        // Pop the queue and load up the array.
-        index = -1;
+          // Pop the queue and load up the array.
+          index = -1;
 
-        SortDoc _sortDoc;
-        while ((_sortDoc = queue.pop()) != null) {
-          if (_sortDoc.docId > -1) {
-            outDocs[++index] = _sortDoc;
+          SortDoc _sortDoc;
+          while ((_sortDoc = queue.pop()) != null) {
+            if (_sortDoc.docId > -1) {
+              outDocs[++index] = _sortDoc;
+              // Clear the bit so it's not loaded again.
+              bits.clear(_sortDoc.docId);
+            }
           }
+          return this;
+        } catch (Exception e) {
+          log.error("Segment Iterator Error:", e);
+          throw new IOException(e);
         }
-      } catch (Exception e) {
-        log.error("Segment Iterator Error:", e);
-        throw new IOException(e);
       }
     }
   }
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.export;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the tasks of a single export request on the executor shared by the node, at most a given
+ * number of them at once, so that a request can't take all the threads of the executor.
+ */
+class SegmentExecutor {
+  private final ExecutorService executor;
+  private final Semaphore permits;
+  private final Set<Future<?>> tasks = ConcurrentHashMap.newKeySet();
+  private volatile boolean cancelled;
+
+  SegmentExecutor(ExecutorService executor, int maxThreads) {
+    this.executor = executor;
+    this.permits = new Semaphore(maxThreads);
+  }
+
+  /** Submits the task, waiting until fewer than the max number of tasks are running. */
+  <T> Future<T> submit(Callable<T> callable) throws IOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    FutureTask<T> task =
+        new FutureTask<>(callable) {
+          @Override
+          protected void done() {
+            tasks.remove(this);
+            permits.release();
+          }
+        };
+    tasks.add(task);
+    if (cancelled) {
+      task.cancel(false);
+      throw new RejectedExecutionException("the export request was cancelled");
+    }
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.cancel(false);
+      throw e;
+    }
+    return task;
+  }
+
+  /** Cancels the tasks that didn't complete yet, interrupting the running ones. */
+  void cancel() {
+    cancelled = true;
+    for (Future<?> task : tasks) {
+      task.cancel(true);
+    }
+  }
+}
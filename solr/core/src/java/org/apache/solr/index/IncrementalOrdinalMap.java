@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+
+/**
+ * Maps the ords of the sorted (set) doc values of each segment to global ords, like Lucene's {@link
+ * OrdinalMap}, but can be built incrementally from the map of a previous reader of the same index.
+ *
+ * <p>Segments are identified by their core key, whose doc values dictionary never changes. The
+ * global ords of the previous reader are remapped for the segments that are still there, and only
+ * the terms of the new segments are merged into the global terms: each new term is looked up by
+ * binary search in the previous global terms, instead of merging the terms of all the segments
+ * again. The global ords are the same as those of an {@link OrdinalMap} of the same segments.
+ *
+ * <p>Global ords are limited to {@link Integer#MAX_VALUE}, like the ords of facets.
+ *
+ * @since solr 10.0
+ */
+public final class IncrementalOrdinalMap implements Accountable {
+
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(IncrementalOrdinalMap.class);
+
+  private final String field;
+  private final boolean multiValued;
+  private final IndexReader.CacheKey[] segmentKeys;
+  private final long[] segmentValueCounts;
+  private final PackedLongValues[] segmentToGlobalOrds;
+  private final PackedLongValues firstSegments;
+  private final PackedLongValues globalOrdDeltas;
+  private final long valueCount;
+  private final int reusedSegments;
+  private final long ramBytesUsed;
+
+  private IncrementalOrdinalMap(
+      String field,
+      boolean multiValued,
+      IndexReader.CacheKey[] segmentKeys,
+      long[] segmentValueCounts,
+      PackedLongValues[] segmentToGlobalOrds,
+      PackedLongValues firstSegments,
+      PackedLongValues globalOrdDeltas,
+      int reusedSegments) {
+    this.field = field;
+    this.multiValued = multiValued;
+    this.segmentKeys = segmentKeys;
+    this.segmentValueCounts = segmentValueCounts;
+    this.segmentToGlobalOrds = segmentToGlobalOrds;
+    this.firstSegments = firstSegments;
+    this.globalOrdDeltas = globalOrdDeltas;
+    this.valueCount = firstSegments.size();
+    this.reusedSegments = reusedSegments;
+    long ramBytes =
+        BASE_RAM_BYTES_USED
+            + RamUsageEstimator.shallowSizeOf(segmentKeys)
+            + RamUsageEstimator.sizeOf(segmentValueCounts)
+            + RamUsageEstimator.shallowSizeOf(segmentToGlobalOrds)
+            + firstSegments.ramBytesUsed()
+            + globalOrdDeltas.ramBytesUsed();
+    for (PackedLongValues values : segmentToGlobalOrds) {
+      ramBytes += values.ramBytesUsed();
+    }
+    this.ramBytesUsed = ramBytes;
+  }
+
+  /**
+   * Builds the map of the sorted (set) doc values of the field in the leaves.
+   *
+   * @param multiValued true for {@link SortedSetDocValues}, false for {@link SortedDocValues}
+   * @param previous the map of a previous reader of the same index, or null to merge the terms of
+   *     all segments
+   */
+  public static IncrementalOrdinalMap build(
+      String field,
+      boolean multiValued,
+      List<LeafReaderContext> leaves,
+      IncrementalOrdinalMap previous)
+      throws IOException {
+    if (previous != null
+        && (!previous.field.equals(field) || previous.multiValued != multiValued)) {
+      throw new IllegalArgumentException("The previous map is for another field: " + previous);
+    }
+    final int numSegments = leaves.size();
+    final IndexReader.CacheKey[] segmentKeys = new IndexReader.CacheKey[numSegments];
+    final long[] segmentValueCounts = new long[numSegments];
+    final SortedSetDocValues[] values = new SortedSetDocValues[numSegments];
+
+    // the index in the previous map of each segment, or -1 for a new segment
+    final Map<IndexReader.CacheKey, Integer> previousIndexes = new HashMap<>();
+    if (previous != null) {
+      for (int i = 0; i < previous.segmentKeys.length; i++) {
+        previousIndexes.put(previous.segmentKeys[i], i);
+      }
+    }
+    final int[] previousIndex = new int[numSegments];
+    final int[] newIndexOfPrevious =
+        new int[previous == null ? 0 : previous.segmentKeys.length];
+    Arrays.fill(newIndexOfPrevious, -1);
+    final List<Integer> newSegments = new ArrayList<>();
+    for (int i = 0; i < numSegments; i++) {
+      LeafReader reader = leaves.get(i).reader();
+      IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+      segmentKeys[i] = cacheHelper == null ? null : cacheHelper.getKey();
+      values[i] = getValues(reader, field, multiValued);
+      segmentValueCounts[i] = values[i].getValueCount();
+      Integer p = segmentKeys[i] == null ? null : previousIndexes.get(segmentKeys[i]);
+      if (p != null && previous.segmentValueCounts[p] == segmentValueCounts[i]) {
+        previousIndex[i] = p;
+        newIndexOfPrevious[p] = i;
+      } else {
+        previousIndex[i] = -1;
+        newSegments.add(i);
+      }
+    }
+
+    // where to look up the terms of the previous global ords. If a segment was removed, some of
+    // the previous terms may not be in any segment anymore: only the alive ones are kept
+    final int previousValueCount = previous == null ? 0 : Math.toIntExact(previous.valueCount);
+    final int[] lookupSegments = new int[previousValueCount];
+    final int[] lookupOrds = new int[previousValueCount];
+    FixedBitSet alive = null;
+    boolean allReused = true;
+    for (int i : newIndexOfPrevious) {
+      allReused &= i >= 0;
+    }
+    if (allReused) {
+      for (int g = 0; g < previousValueCount; g++) {
+        lookupSegments[g] = newIndexOfPrevious[(int) previous.firstSegments.get(g)];
+        lookupOrds[g] = (int) (g - previous.globalOrdDeltas.get(g));
+      }
+    } else {
+      alive = new FixedBitSet(Math.max(1, previousValueCount));
+      for (int i = 0; i < numSegments; i++) {
+        if (previousIndex[i] < 0) continue;
+        PackedLongValues.Iterator it = previous.segmentToGlobalOrds[previousIndex[i]].iterator();
+        for (int segOrd = 0; it.hasNext(); segOrd++) {
+          int g = (int) it.next();
+          if (!alive.getAndSet(g)) {
+            lookupSegments[g] = i;
+            lookupOrds[g] = segOrd;
+          }
+        }
+      }
+    }
+
+    // the union of the terms of the new segments
+    final NewTerms newTerms = new NewTerms(newSegments, values);
+
+    // the position of each new term in the previous global terms
+    final int[] positions = new int[newTerms.valueCount];
+    final FixedBitSet matched = new FixedBitSet(Math.max(1, newTerms.valueCount));
+    int from = 0;
+    for (int u = 0; u < newTerms.valueCount; u++) {
+      BytesRef term = BytesRef.deepCopyOf(newTerms.lookupOrd(u));
+      int lo = from;
+      int hi = previousValueCount;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        int g = nextAlive(alive, mid, hi);
+        if (g == hi) {
+          hi = mid;
+          continue;
+        }
+        if (values[lookupSegments[g]].lookupOrd(lookupOrds[g]).compareTo(term) < 0) {
+          lo = g + 1;
+        } else {
+          hi = g;
+        }
+      }
+      int g = nextAlive(alive, lo, previousValueCount);
+      if (g < previousValueCount
+          && values[lookupSegments[g]].lookupOrd(lookupOrds[g]).bytesEquals(term)) {
+        matched.set(u);
+        lo = g;
+      }
+      positions[u] = lo;
+      from = lo;
+    }
+
+    // merge the previous terms that are still there with the new terms
+    final int[] previousToGlobal = new int[previousValueCount];
+    final int[] newTermToGlobal = new int[newTerms.valueCount];
+    final PackedLongValues.Builder firstSegments =
+        PackedLongValues.deltaPackedBuilder(PackedInts.COMPACT);
+    final PackedLongValues.Builder globalOrdDeltas =
+        PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+    long next = 0;
+    int u = 0;
+    for (int g = nextAlive(alive, 0, previousValueCount); ; ) {
+      while (u < newTerms.valueCount && !matched.get(u) && positions[u] <= g) {
+        newTermToGlobal[u] = toIntExact(next);
+        firstSegments.add(newTerms.firstSegment(u));
+        globalOrdDeltas.add(next - newTerms.firstSegmentOrd(u));
+        next++;
+        u++;
+      }
+      if (g >= previousValueCount) {
+        break;
+      }
+      previousToGlobal[g] = toIntExact(next);
+      firstSegments.add(lookupSegments[g]);
+      globalOrdDeltas.add(next - lookupOrds[g]);
+      if (u < newTerms.valueCount && matched.get(u) && positions[u] == g) {
+        newTermToGlobal[u] = (int) next;
+        u++;
+      }
+      next++;
+      g = nextAlive(alive, g + 1, previousValueCount);
+    }
+    assert u == newTerms.valueCount;
+
+    final PackedLongValues[] segmentToGlobalOrds = new PackedLongValues[numSegments];
+    int reusedSegments = 0;
+    for (int i = 0; i < numSegments; i++) {
+      PackedLongValues.Builder segmentToGlobal =
+          PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+      if (previousIndex[i] >= 0) {
+        reusedSegments++;
+        PackedLongValues.Iterator it = previous.segmentToGlobalOrds[previousIndex[i]].iterator();
+        while (it.hasNext()) {
+          segmentToGlobal.add(previousToGlobal[(int) it.next()]);
+        }
+      } else {
+        LongValues segmentToNewTerms = newTerms.getNewTermOrds(i);
+        for (long segOrd = 0; segOrd < segmentValueCounts[i]; segOrd++) {
+          segmentToGlobal.add(newTermToGlobal[(int) segmentToNewTerms.get(segOrd)]);
+        }
+      }
+      segmentToGlobalOrds[i] = segmentToGlobal.build();
+    }
+
+    return new IncrementalOrdinalMap(
+        field,
+        multiValued,
+        segmentKeys,
+        segmentValueCounts,
+        segmentToGlobalOrds,
+        firstSegments.build(),
+        globalOrdDeltas.build(),
+        reusedSegments);
+  }
+
+  private static int toIntExact(long globalOrd) {
+    if (globalOrd >= Integer.MAX_VALUE) {
+      throw new IllegalStateException("Too many unique values to map: " + globalOrd);
+    }
+    return (int) globalOrd;
+  }
+
+  /** Returns the first alive ord in [from, to), or <code>to</code> if there is none. */
+  private static int nextAlive(FixedBitSet alive, int from, int to) {
+    if (from >= to) {
+      return to;
+    }
+    if (alive == null) {
+      return from;
+    }
+    int next = alive.nextSetBit(from);
+    return next == FixedBitSet.NO_MORE_DOCS || next >= to ? to : next;
+  }
+
+  private static SortedSetDocValues getValues(LeafReader reader, String field, boolean multiValued)
+      throws IOException {
+    if (multiValued) {
+      SortedSetDocValues values = reader.getSortedSetDocValues(field);
+      return values == null ? DocValues.emptySortedSet() : values;
+    }
+    SortedDocValues values = reader.getSortedDocValues(field);
+    return DocValues.singleton(values == null ? DocValues.emptySorted() : values);
+  }
+
+  /** The sorted union of the terms of the new segments. */
+  private static final class NewTerms {
+    final List<Integer> segments;
+    final SortedSetDocValues[] values;
+    final OrdinalMap map; // null with at most one new segment
+    final int valueCount;
+
+    NewTerms(List<Integer> segments, SortedSetDocValues[] values) throws IOException {
+      this.segments = segments;
+      this.values = values;
+      if (segments.size() > 1) {
+        SortedSetDocValues[] newValues = new SortedSetDocValues[segments.size()];
+        for (int j = 0; j < newValues.length; j++) {
+          newValues[j] = values[segments.get(j)];
+        }
+        map = OrdinalMap.build(null, newValues, PackedInts.DEFAULT);
+        valueCount = toIntExact(map.getValueCount());
+      } else {
+        map = null;
+        valueCount = segments.isEmpty() ? 0 : toIntExact(values[segments.get(0)].getValueCount());
+      }
+    }
+
+    int firstSegment(int ord) {
+      return map == null ? segments.get(0) : segments.get(map.getFirstSegmentNumber(ord));
+    }
+
+    long firstSegmentOrd(int ord) {
+      return map == null ? ord : map.getFirstSegmentOrd(ord);
+    }
+
+    BytesRef lookupOrd(int ord) throws IOException {
+      return values[firstSegment(ord)].lookupOrd(firstSegmentOrd(ord));
+    }
+
+    LongValues getNewTermOrds(int segment) {
+      return map == null ? LongValues.IDENTITY : map.getGlobalOrds(segments.indexOf(segment));
+    }
+  }
+
+  /** Returns the name of the field. */
+  public String getField() {
+    return field;
+  }
+
+  /** Returns true if this maps {@link SortedSetDocValues}, false for {@link SortedDocValues}. */
+  public boolean isMultiValued() {
+    return multiValued;
+  }
+
+  /** Returns the number of unique values of all segments. */
+  public long getValueCount() {
+    return valueCount;
+  }
+
+  /** Returns the number of segments whose ords were remapped from the previous map. */
+  public int getReusedSegmentCount() {
+    return reusedSegments;
+  }
+
+  /** Returns the number of segments. */
+  public int getSegmentCount() {
+    return segmentKeys.length;
+  }
+
+  /** Returns the global ords of the segment ords of the segment at this index. */
+  public LongValues getGlobalOrds(int segmentIndex) {
+    return segmentToGlobalOrds[segmentIndex];
+  }
+
+  /** Returns the index of a segment that contains the value of this global ord. */
+  public int getFirstSegmentNumber(long globalOrd) {
+    return (int) firstSegments.get(globalOrd);
+  }
+
+  /** Returns the segment ord of the value of this global ord in its first segment. */
+  public long getFirstSegmentOrd(long globalOrd) {
+    return globalOrd - globalOrdDeltas.get(globalOrd);
+  }
+
+  /** Returns the global values of the leaves this map was built from. */
+  public LookupValues getLookupValues(List<LeafReaderContext> leaves) throws IOException {
+    final SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = getValues(leaves.get(i).reader(), field, multiValued);
+    }
+    return new LookupValues() {
+      @Override
+      public BytesRef lookupOrd(long ord) throws IOException {
+        return values[getFirstSegmentNumber(ord)].lookupOrd(getFirstSegmentOrd(ord));
+      }
+
+      @Override
+      public long getValueCount() {
+        return valueCount;
+      }
+    };
+  }
+
+  /**
+   * The sorted values of the ords of a field, that can only be looked up, unlike {@link
+   * SortedSetDocValues} that also iterates over the values of the documents.
+   */
+  public interface LookupValues {
+    /**
+     * Returns the value of the ord, in a {@link BytesRef} that may be reused by the next lookup.
+     *
+     * @see SortedSetDocValues#lookupOrd(long)
+     */
+    BytesRef lookupOrd(long ord) throws IOException;
+
+    /**
+     * Returns the number of unique values.
+     *
+     * @see SortedSetDocValues#getValueCount()
+     */
+    long getValueCount();
+
+    /**
+     * Returns the ord of the key if found, otherwise <code>(-insertionPoint - 1)</code>.
+     *
+     * @see SortedSetDocValues#lookupTerm(BytesRef)
+     */
+    default long lookupTerm(BytesRef key) throws IOException {
+      long low = 0;
+      long high = getValueCount() - 1;
+      while (low <= high) {
+        long mid = (low + high) >>> 1;
+        int cmp = lookupOrd(mid).compareTo(key);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+
+    /** Returns the lookups of the values of the doc values. */
+    static LookupValues of(SortedSetDocValues values) {
+      return new LookupValues() {
+        @Override
+        public BytesRef lookupOrd(long ord) throws IOException {
+          return values.lookupOrd(ord);
+        }
+
+        @Override
+        public long getValueCount() {
+          return values.getValueCount();
+        }
+
+        @Override
+        public long lookupTerm(BytesRef key) throws IOException {
+          return values.lookupTerm(key);
+        }
+      };
+    }
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  @Override
+  public String toString() {
+    return "IncrementalOrdinalMap(field="
+        + field
+        + ", segments="
+        + segmentKeys.length
+        + ", valueCount="
+        + valueCount
+        + ")";
+  }
+}
@@ -396,7 +396,11 @@ public class CaffeineCache<K, V> extends SolrCacheBase
           other.cache.policy().eviction().map(p -> p.hottest(size)).orElse(Collections.emptyMap());
     }
 
+    // the hottest entries come first, so stopping early still keeps the most useful ones
     for (Entry<K, V> entry : hottest.entrySet()) {
+      if (searcher != null && searcher.isWarmingStopped()) {
+        break;
+      }
       try {
         boolean continueRegen =
             regenerator.regenerateItem(searcher, this, old, entry.getKey(), entry.getValue());
@@ -408,9 +412,13 @@ public class CaffeineCache<K, V> extends SolrCacheBase
       }
     }
 
-    hits.reset();
-    inserts.reset();
-    lookups.reset();
+    // the stats of the warming itself are dropped, unless the cache was registered before it was
+    // warmed (see backgroundWarming): the stats of the requests it served meanwhile are kept
+    if (getState() != State.LIVE) {
+      hits.reset();
+      inserts.reset();
+      lookups.reset();
+    }
     CacheStats oldStats = other.cache.stats();
     priorStats = oldStats.plus(other.priorStats);
     priorHits = oldStats.hitCount() + other.hits.sum() + other.priorHits;
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricsContext;
+
+/**
+ * Common base class of the caches of a core that outlive its searchers, unlike the {@link
+ * SolrCache}s that are regenerated for each new searcher. Counts the lookups and hits of the cache,
+ * and reports them with the other metrics of the cache in a {@link MetricsMap}.
+ *
+ * @since solr 10.0
+ */
+public abstract class CoreCacheBase implements SolrInfoBean {
+
+  protected final LongAdder lookups = new LongAdder();
+  protected final LongAdder hits = new LongAdder();
+
+  private final String metricName;
+  private final String description;
+  private SolrMetricsContext solrMetricsContext;
+
+  /**
+   * @param metricName the name of the {@link MetricsMap} of the cache
+   * @param description the description of the cache
+   */
+  protected CoreCacheBase(String metricName, String description) {
+    this.metricName = metricName;
+    this.description = description;
+  }
+
+  /** Removes all the entries of the cache. */
+  public abstract void clear();
+
+  /** Writes the metrics of the cache, besides its lookups, hits and hit ratio. */
+  protected abstract void writeMetrics(MapWriter.EntryWriter map) throws IOException;
+
+  @Override
+  public void close() throws IOException {
+    SolrInfoBean.super.close();
+    clear();
+  }
+
+  @Override
+  public String getName() {
+    return this.getClass().getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+  @Override
+  public Category getCategory() {
+    return Category.CACHE;
+  }
+
+  @Override
+  public SolrMetricsContext getSolrMetricsContext() {
+    return solrMetricsContext;
+  }
+
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    this.solrMetricsContext = parentContext;
+    MetricsMap metricsMap =
+        new MetricsMap(
+            map -> {
+              long lookupCount = lookups.sum();
+              long hitCount = hits.sum();
+              map.put(SolrCache.LOOKUPS_PARAM, lookupCount);
+              map.put(SolrCache.HITS_PARAM, hitCount);
+              map.put(
+                  SolrCache.HIT_RATIO_PARAM,
+                  lookupCount == 0 ? 1.0 : (double) hitCount / lookupCount);
+              writeMetrics(map);
+            });
+    solrMetricsContext.gauge(metricsMap, true, metricName, Category.CACHE.toString(), scope);
+  }
+}
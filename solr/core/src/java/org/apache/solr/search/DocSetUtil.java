@@ -42,6 +42,9 @@ import org.apache.lucene.util.FixedBitSet;
  */
 public class DocSetUtil {
 
+  // opt-in, as the compressed sets miss the fast paths that many callers have for BitDocSet
+  private static final boolean COMPACT_DOCSETS = Boolean.getBoolean("solr.docSet.compact");
+
   /**
    * The cut-off point for small sets (SortedIntDocSet) vs large sets (BitDocSet)
    *
@@ -115,6 +118,31 @@ public class DocSetUtil {
     return docs;
   }
 
+  /**
+   * Returns a {@link RoaringDocSet} copy of a {@link BitDocSet} if it uses at most 3/4 of the
+   * memory, or the set itself otherwise. Medium density sets, and sets that are clustered by doc
+   * id, are a lot smaller compressed, so caches bounded by maxRamMB can hold more of them. Sets
+   * that match all the live docs are left alone, as they are usually shared with the searcher.
+   *
+   * <p>The sets are only compressed when the <code>solr.docSet.compact</code> system property is
+   * true, since a lot of code has faster paths for a {@link BitDocSet}, e.g. to intersect filters
+   * or to count facets.
+   *
+   * @lucene.experimental
+   */
+  public static DocSet toCompactSet(DocSet docs, SolrIndexSearcher searcher) {
+    if (!COMPACT_DOCSETS
+        || docs.getClass() != BitDocSet.class
+        || docs.size() == searcher.numDocs()) {
+      return docs;
+    }
+    FixedBitSet bits = ((BitDocSet) docs).getBits();
+    if (RoaringDocSet.estimateRamBytesUsed(bits) * 4 > docs.ramBytesUsed() * 3) {
+      return docs;
+    }
+    return RoaringDocSet.fromBits(bits);
+  }
+
   // implementers of DocSetProducer should not call this with themselves or it will result in an
   // infinite loop
   public static DocSet createDocSet(SolrIndexSearcher searcher, Query query, DocSet filter)
@@ -127,18 +155,18 @@ public class DocSetUtil {
     if (query instanceof TermQuery) {
       DocSet set = createDocSet(searcher, ((TermQuery) query).getTerm());
       // assert equals(set, createDocSetGeneric(searcher, query));
-      return set;
+      return toCompactSet(set, searcher);
     } else if (query instanceof DocSetProducer) {
       DocSet set = ((DocSetProducer) query).createDocSet(searcher);
       // assert equals(set, createDocSetGeneric(searcher, query));
-      return set;
+      return toCompactSet(set, searcher);
     } else if (query instanceof MatchAllDocsQuery) {
       DocSet set = searcher.getLiveDocSet();
       // assert equals(set, createDocSetGeneric(searcher, query));
       return set;
     }
 
-    return createDocSetGeneric(searcher, query);
+    return toCompactSet(createDocSetGeneric(searcher, query), searcher);
   }
 
   // code to produce docsets for non-docsetproducer queries
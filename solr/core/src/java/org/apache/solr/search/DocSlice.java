@@ -18,6 +18,8 @@ package org.apache.solr.search;
 
 import java.util.Collection;
 import java.util.Collections;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.RamUsageEstimator;
@@ -40,6 +42,7 @@ public class DocSlice implements DocList, Accountable {
   final long matches;
   final TotalHits.Relation matchesRelation;
   final float maxScore;
+  final ScoreDoc lastScoreDoc; // optional sort values of the last doc, to collect the next docs
   final long ramBytesUsed; // cached value
 
   /**
@@ -60,18 +63,43 @@ public class DocSlice implements DocList, Accountable {
       long matches,
       float maxScore,
       TotalHits.Relation matchesRelation) {
+    this(offset, len, docs, scores, matches, maxScore, matchesRelation, null);
+  }
+
+  /**
+   * Creates a DocSlice that also keeps the {@link ScoreDoc} (or {@link FieldDoc}) of its last doc,
+   * so that the docs that follow it can be collected later.
+   *
+   * @see QueryCommand#getSearchAfter()
+   */
+  DocSlice(
+      int offset,
+      int len,
+      int[] docs,
+      float[] scores,
+      long matches,
+      float maxScore,
+      TotalHits.Relation matchesRelation,
+      ScoreDoc lastScoreDoc) {
     this.offset = offset;
     this.len = len;
     this.docs = docs;
     this.scores = scores;
     this.matches = matches;
     this.maxScore = maxScore;
+    this.lastScoreDoc = lastScoreDoc;
     this.ramBytesUsed =
         BASE_RAM_BYTES_USED
             + (docs == null ? 0 : ((long) docs.length << 2))
             + (scores == null
                 ? 0
-                : ((long) scores.length << 2) + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER);
+                : ((long) scores.length << 2) + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER)
+            + (lastScoreDoc == null
+                ? 0
+                : RamUsageEstimator.shallowSizeOf(lastScoreDoc)
+                    + (lastScoreDoc instanceof FieldDoc
+                        ? RamUsageEstimator.sizeOfObject(((FieldDoc) lastScoreDoc).fields)
+                        : 0));
     this.matchesRelation = matchesRelation;
   }
 
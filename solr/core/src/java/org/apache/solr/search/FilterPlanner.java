@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/**
+ * Plans how the cacheable filters of a request are executed, based on an estimate of the number of
+ * docs each of them matches. The estimate comes from the filterCache, from the docFreq of a term,
+ * or from the points index for a range.
+ *
+ * <p>Filters are intersected from the most to the least selective. A filter that isn't cached and
+ * matches many more docs than the most selective filter is not materialized as a {@link DocSet}:
+ * it is executed as a non-cached clause instead, so that it is only advanced to the docs that match
+ * the other filters. A term that matches few docs is cheap to iterate, so it is not cached either.
+ * Negative filters and filters whose size can't be estimated are executed as before.
+ *
+ * @see SolrIndexSearcher#getProcessedFilter(List)
+ * @since solr 10.0
+ */
+final class FilterPlanner {
+
+  /**
+   * A filter that matches this many times more docs than the most selective filter is executed
+   * as a non-cached clause.
+   */
+  static final int LEAP_FROG_RATIO = 8;
+
+  enum Execution {
+    /** Found in the filterCache */
+    CACHED,
+    /** Materialized as a DocSet, and cached */
+    MATERIALIZE,
+    /** Advanced along with the other filters, without being materialized */
+    LEAP_FROG,
+    /** Cheap enough to be iterated every time, so not cached */
+    SKIP_CACHE
+  }
+
+  /** How a single filter is executed. */
+  static final class Step {
+    final Query query;
+    final long estimate; // -1 if unknown
+    final String source;
+    Execution execution = Execution.MATERIALIZE;
+    DocSet docSet; // if it was found in the filterCache
+
+    Step(Query query, long estimate, String source) {
+      this.query = query;
+      this.estimate = estimate;
+      this.source = source;
+    }
+  }
+
+  private static final Comparator<Step> BY_ESTIMATE =
+      Comparator.comparingLong(step -> step.estimate < 0 ? Long.MAX_VALUE : step.estimate);
+
+  private final List<Query> queries;
+  private final List<Step> steps;
+  private final Map<Query, DocSet> cachedDocSets;
+
+  private FilterPlanner(List<Query> queries, List<Step> steps, Map<Query, DocSet> cachedDocSets) {
+    this.queries = queries;
+    this.steps = steps;
+    this.cachedDocSets = cachedDocSets;
+  }
+
+  /**
+   * Plans the execution of the filters. Callers must ensure that the filterCache exists.
+   *
+   * @param queries the filters, as passed to {@link SolrIndexSearcher#getProcessedFilter(List)}
+   */
+  static FilterPlanner plan(SolrIndexSearcher searcher, List<Query> queries) throws IOException {
+    List<Step> steps = new ArrayList<>(queries.size());
+    List<Query> others = new ArrayList<>();
+    long lead = Long.MAX_VALUE;
+    for (Query q : queries) {
+      if (q instanceof ExtendedQuery && !((ExtendedQuery) q).getCache()) {
+        others.add(q); // already not cached, or a post filter
+        continue;
+      }
+      Query posQuery = QueryUtils.getAbs(q);
+      Step step;
+      if (!Objects.equals(q, posQuery)) {
+        step = new Step(q, -1, "negative");
+      } else {
+        step = estimate(searcher, q);
+        if (step.estimate >= 0) {
+          lead = Math.min(lead, step.estimate);
+        }
+      }
+      steps.add(step);
+    }
+    steps.sort(BY_ESTIMATE);
+
+    int cheapSize = DocSetUtil.smallSetSize(searcher.maxDoc());
+    Map<Query, DocSet> cachedDocSets = new HashMap<>();
+    List<Query> planned = new ArrayList<>(queries.size());
+    List<Query> leapFrogs = new ArrayList<>();
+    for (Step step : steps) {
+      if (step.estimate >= 0) {
+        if (step.estimate <= cheapSize && step.query instanceof TermQuery) {
+          step.execution = Execution.SKIP_CACHE;
+        } else if (step.estimate / LEAP_FROG_RATIO >= Math.max(lead, 1)) {
+          step.execution = Execution.LEAP_FROG;
+        }
+      }
+      if (step.execution != Execution.MATERIALIZE) {
+        // only worth it if the filter isn't already cached
+        DocSet docSet = searcher.getFilterCache().get(step.query);
+        if (docSet != null) {
+          step.execution = Execution.CACHED;
+          step.docSet = docSet;
+          cachedDocSets.put(step.query, docSet);
+        }
+      }
+      if (step.execution == Execution.LEAP_FROG || step.execution == Execution.SKIP_CACHE) {
+        WrappedQuery uncached = new WrappedQuery(step.query);
+        uncached.setCache(false);
+        leapFrogs.add(uncached);
+      } else {
+        planned.add(step.query);
+      }
+    }
+    planned.addAll(leapFrogs);
+    planned.addAll(others);
+    return new FilterPlanner(planned, steps, cachedDocSets);
+  }
+
+  /** Estimates the number of docs that a positive filter matches. */
+  private static Step estimate(SolrIndexSearcher searcher, Query q) throws IOException {
+    Query query = q;
+    if (query instanceof ConstantScoreQuery) {
+      query = ((ConstantScoreQuery) query).getQuery();
+    }
+    if (query instanceof IndexOrDocValuesQuery) {
+      query = ((IndexOrDocValuesQuery) query).getIndexQuery();
+    }
+    if (query instanceof TermQuery) {
+      Term term = ((TermQuery) query).getTerm();
+      return new Step(q, searcher.getIndexReader().docFreq(term), "docFreq");
+    }
+    if (query instanceof PointRangeQuery) {
+      return new Step(q, estimatePointCount(searcher, (PointRangeQuery) query), "points");
+    }
+    return new Step(q, -1, "unknown");
+  }
+
+  private static long estimatePointCount(SolrIndexSearcher searcher, PointRangeQuery query)
+      throws IOException {
+    final int numDims = query.getNumDims();
+    final int bytesPerDim = query.getBytesPerDim();
+    final byte[] lower = query.getLowerPoint();
+    final byte[] upper = query.getUpperPoint();
+    PointValues.IntersectVisitor visitor =
+        new PointValues.IntersectVisitor() {
+          @Override
+          public void visit(int docID) {}
+
+          @Override
+          public void visit(int docID, byte[] packedValue) {}
+
+          @Override
+          public PointValues.Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            boolean crosses = false;
+            for (int dim = 0; dim < numDims; dim++) {
+              int from = dim * bytesPerDim;
+              int to = from + bytesPerDim;
+              if (Arrays.compareUnsigned(minPackedValue, from, to, upper, from, to) > 0
+                  || Arrays.compareUnsigned(maxPackedValue, from, to, lower, from, to) < 0) {
+                return PointValues.Relation.CELL_OUTSIDE_QUERY;
+              }
+              crosses |=
+                  Arrays.compareUnsigned(minPackedValue, from, to, lower, from, to) < 0
+                      || Arrays.compareUnsigned(maxPackedValue, from, to, upper, from, to) > 0;
+            }
+            return crosses
+                ? PointValues.Relation.CELL_CROSSES_QUERY
+                : PointValues.Relation.CELL_INSIDE_QUERY;
+          }
+        };
+    long estimate = 0;
+    for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+      PointValues values = leaf.reader().getPointValues(query.getField());
+      if (values != null) {
+        estimate += values.estimateDocCount(visitor);
+      }
+    }
+    return estimate;
+  }
+
+  /** The filters, reordered, with the ones that shouldn't be cached wrapped as non-cached. */
+  List<Query> getQueries() {
+    return queries;
+  }
+
+  /** Returns the DocSet of a filter that the planner found in the filterCache, if any. */
+  DocSet getCachedDocSet(Query query) {
+    return cachedDocSets.get(query);
+  }
+
+  /** Describes the plan, for debug output. */
+  List<NamedList<Object>> toNamedList() {
+    List<NamedList<Object>> list = new ArrayList<>(steps.size());
+    for (Step step : steps) {
+      NamedList<Object> info = new SimpleOrderedMap<>();
+      info.add("query", step.query.toString());
+      info.add("estimate", step.docSet != null ? step.docSet.size() : step.estimate);
+      info.add("source", step.docSet != null ? "filterCache" : step.source);
+      info.add("execution", step.execution.name().toLowerCase(Locale.ROOT));
+      list.add(info);
+    }
+    return list;
+  }
+}
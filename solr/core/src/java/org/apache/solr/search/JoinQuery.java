@@ -386,8 +386,12 @@ class JoinQuery extends Query {
               } else {
                 if (toTermSet instanceof BitDocSet) {
                   resultBits = ((BitDocSet) toTermSet).getBits().clone();
-                } else {
+                } else if (toTermSet instanceof SortedIntDocSet) {
                   resultList.add(toTermSet);
+                } else {
+                  // e.g. a compressed set; only small int sets are deferred
+                  resultBits = new FixedBitSet(toSearcher.maxDoc());
+                  toTermSet.addAllTo(resultBits);
                 }
               }
             } else {
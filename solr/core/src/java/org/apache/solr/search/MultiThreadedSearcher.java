@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.lucene.index.ExitableDirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.NodeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Searches the segments of a {@link SolrIndexSearcher} with several threads of the node's {@link
+ * CoreContainer#getIndexSearcherExecutor()}. The segments are split into slices of about the same
+ * number of documents, and each slice collects the top docs, the {@link DocSet} and the max score
+ * into its own collectors, which are merged once all slices are done.
+ *
+ * <p>The request thread searches a slice itself, and then any slice that no thread of the executor
+ * has started yet, so a busy executor never makes a request slower than a sequential search; see
+ * {@link ParallelTasks}.
+ *
+ * @see org.apache.solr.common.params.CommonParams#MULTI_THREADED
+ * @since solr 10.0
+ */
+public class MultiThreadedSearcher {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Tie-break on the (global) doc id, like a sequential search does. */
+  private static final Comparator<ScoreDoc> BY_DOC = Comparator.comparingInt(sd -> sd.doc);
+
+  private final SolrIndexSearcher searcher;
+  private final ExecutorService executor;
+
+  MultiThreadedSearcher(SolrIndexSearcher searcher) {
+    this.searcher = searcher;
+    this.executor = searcher.getCore().getCoreContainer().getIndexSearcherExecutor();
+  }
+
+  /** The merged results of all slices. */
+  static class Result {
+    TopDocs topDocs;
+    DocSet docSet;
+    float maxScore = Float.NaN;
+  }
+
+  /**
+   * Returns the number of threads to search the command with, or 1 if it must be searched
+   * sequentially. Post filters, rank queries, early termination and cancellable queries rely on a
+   * single collector seeing all segments in order, and are always searched sequentially.
+   */
+  static int getNumThreads(
+      SolrIndexSearcher searcher, QueryCommand cmd, SolrIndexSearcher.ProcessedFilter pf) {
+    if (!cmd.isMultiThreaded()
+        || pf.postFilter != null
+        || cmd.getQuery() instanceof RankQuery
+        || cmd.getTerminateEarly()
+        || cmd.getSegmentTerminateEarly()
+        || cmd.isQueryCancellable()) {
+      return 1;
+    }
+    CoreContainer cc = searcher.getCore().getCoreContainer();
+    if (cc.getIndexSearcherExecutor() == null) {
+      return 1;
+    }
+    NodeConfig cfg = cc.getConfig();
+    int maxThreads =
+        Math.min(
+            cfg.getIndexSearcherMaxThreadsPerRequest(), cfg.getIndexSearcherExecutorThreads() + 1);
+    return Math.max(1, Math.min(maxThreads, searcher.getTopReaderContext().leaves().size()));
+  }
+
+  /**
+   * Splits the leaves into at most <code>numSlices</code> slices with about the same number of
+   * documents. The leaves of each slice are in doc id order.
+   */
+  public static List<List<LeafReaderContext>> slices(
+      List<LeafReaderContext> leaves, int numSlices) {
+    LeafReaderContext[] bySize = leaves.toArray(new LeafReaderContext[0]);
+    Arrays.sort(bySize, (a, b) -> Integer.compare(b.reader().maxDoc(), a.reader().maxDoc()));
+    numSlices = Math.min(numSlices, bySize.length);
+
+    List<List<LeafReaderContext>> slices = new ArrayList<>(numSlices);
+    long[] sliceDocs = new long[numSlices];
+    for (int i = 0; i < numSlices; i++) {
+      slices.add(new ArrayList<>());
+    }
+    // largest first, each into the smallest slice so far
+    for (LeafReaderContext leaf : bySize) {
+      int smallest = 0;
+      for (int i = 1; i < numSlices; i++) {
+        if (sliceDocs[i] < sliceDocs[smallest]) smallest = i;
+      }
+      slices.get(smallest).add(leaf);
+      sliceDocs[smallest] += leaf.reader().maxDoc();
+    }
+    for (List<LeafReaderContext> slice : slices) {
+      slice.sort(Comparator.comparingInt(leaf -> leaf.ord));
+    }
+    return slices;
+  }
+
+  /**
+   * Searches the query with <code>numThreads</code> threads.
+   *
+   * @param len the number of top docs to collect, or 0 to collect none
+   * @param needDocSet whether to collect the DocSet of all matches
+   * @param needScores whether to collect the max score
+   */
+  Result search(
+      QueryResult qr,
+      Query query,
+      QueryCommand cmd,
+      int len,
+      boolean needDocSet,
+      boolean needScores,
+      int numThreads)
+      throws IOException {
+    final List<List<LeafReaderContext>> slices =
+        slices(searcher.getTopReaderContext().leaves(), numThreads);
+    final int numSlices = slices.size();
+    final int maxDoc = searcher.maxDoc();
+    final Sort sort = cmd.getSort() == null ? null : searcher.weightSort(cmd.getSort());
+
+    final CollectorManager<? extends TopDocsCollector<?>, ?> topDocsManager;
+    if (len <= 0) {
+      topDocsManager = null;
+    } else if (sort == null) {
+      topDocsManager =
+          TopScoreDocCollector.createSharedManager(
+              len, cmd.getSearchAfter(), cmd.getMinExactCount());
+    } else {
+      final CursorMark cursor = cmd.getCursorMark();
+      final FieldDoc searchAfter =
+          (null != cursor ? cursor.getSearchAfterFieldDoc() : (FieldDoc) cmd.getSearchAfter());
+      topDocsManager =
+          TopFieldCollector.createSharedManager(sort, len, searchAfter, cmd.getMinExactCount());
+    }
+
+    final TopDocsCollector<?>[] topCollectors = new TopDocsCollector<?>[numSlices];
+    final DocSetCollector[] setCollectors = new DocSetCollector[numSlices];
+    final MaxScoreCollector[] maxScoreCollectors = new MaxScoreCollector[numSlices];
+    final Collector[] sliceCollectors = new Collector[numSlices];
+    for (int i = 0; i < numSlices; i++) {
+      List<Collector> collectors = new ArrayList<>(3);
+      if (topDocsManager != null) {
+        collectors.add(topCollectors[i] = topDocsManager.newCollector());
+      }
+      if (needDocSet) {
+        collectors.add(setCollectors[i] = new DocSetCollector(maxDoc));
+      }
+      if (needScores) {
+        collectors.add(maxScoreCollectors[i] = new MaxScoreCollector());
+      }
+      Collector collector = MultiCollector.wrap(collectors);
+      if (cmd.getTimeAllowed() > 0) {
+        collector =
+            new TimeLimitingCollector(
+                collector, TimeLimitingCollector.getGlobalCounter(), cmd.getTimeAllowed());
+      }
+      sliceCollectors[i] = collector;
+    }
+
+    final Query rewritten = searcher.rewrite(query);
+    final Weight weight = searcher.createWeight(rewritten, sliceCollectors[0].scoreMode(), 1f);
+    final AtomicBoolean partialResults = new AtomicBoolean();
+
+    final List<Callable<Void>> tasks = new ArrayList<>(numSlices);
+    for (int i = 0; i < numSlices; i++) {
+      final List<LeafReaderContext> slice = slices.get(i);
+      final Collector collector = sliceCollectors[i];
+      tasks.add(
+          () -> {
+            searchSlice(rewritten, slice, weight, collector, partialResults);
+            return null;
+          });
+    }
+    ParallelTasks.run(executor, tasks);
+
+    if (partialResults.get()) {
+      qr.setPartialResults(true);
+    }
+
+    Result result = new Result();
+    if (topDocsManager != null) {
+      result.topDocs = mergeTopDocs(sort, len, topCollectors);
+    }
+    if (needDocSet) {
+      result.docSet = DocSetUtil.getDocSet(unionDocSets(setCollectors, maxDoc), searcher);
+    }
+    if (needScores) {
+      for (MaxScoreCollector collector : maxScoreCollectors) {
+        float score = collector.getMaxScore();
+        if (Float.isNaN(result.maxScore) || score > result.maxScore) {
+          result.maxScore = score;
+        }
+      }
+    }
+    return result;
+  }
+
+  private void searchSlice(
+      Query query,
+      List<LeafReaderContext> leaves,
+      Weight weight,
+      Collector collector,
+      AtomicBoolean partialResults)
+      throws IOException {
+    try {
+      searcher.search(leaves, weight, collector);
+    } catch (TimeLimitingCollector.TimeExceededException
+        | ExitableDirectoryReader.ExitingReaderException x) {
+      log.warn("Query: [{}]; ", query, x);
+      partialResults.set(true);
+    }
+  }
+
+  private static TopDocs mergeTopDocs(Sort sort, int len, TopDocsCollector<?>[] collectors) {
+    if (sort == null) {
+      TopDocs[] topDocs = new TopDocs[collectors.length];
+      for (int i = 0; i < collectors.length; i++) {
+        topDocs[i] = collectors[i].topDocs();
+      }
+      return TopDocs.merge(0, len, topDocs, BY_DOC);
+    }
+    TopFieldDocs[] topDocs = new TopFieldDocs[collectors.length];
+    for (int i = 0; i < collectors.length; i++) {
+      topDocs[i] = (TopFieldDocs) collectors[i].topDocs();
+    }
+    return TopDocs.merge(sort, 0, len, topDocs, BY_DOC);
+  }
+
+  /** The union of the disjoint DocSets collected by the slices. */
+  private static DocSet unionDocSets(DocSetCollector[] collectors, int maxDoc) {
+    int size = 0;
+    for (DocSetCollector collector : collectors) {
+      size += collector.size();
+    }
+    if (size <= DocSetUtil.smallSetSize(maxDoc)) {
+      int[] docs = new int[size];
+      int pos = 0;
+      for (DocSetCollector collector : collectors) {
+        for (DocIterator it = collector.getDocSet().iterator(); it.hasNext(); ) {
+          docs[pos++] = it.nextDoc();
+        }
+      }
+      Arrays.sort(docs);
+      return new SortedIntDocSet(docs);
+    }
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (DocSetCollector collector : collectors) {
+      collector.getDocSet().addAllTo(bits);
+    }
+    return new BitDocSet(bits, size);
+  }
+}
@@ -0,0 +1,451 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.util.SuppressForbidden;
+
+/**
+ * An immutable bitset based {@link DocSet} whose words live outside of the java heap, either in a
+ * direct {@link ByteBuffer} or in a read-only memory-mapped temporary file. Operations read the
+ * words in place; only operations that produce a new set (intersection, union, andNot) copy the
+ * bits back onto the heap, and they return ordinary {@link BitDocSet} instances.
+ *
+ * <p>{@link #ramBytesUsed()} includes the off-heap words so that caches bounded by {@code
+ * maxRamMB} account for them; {@link #offHeapBytesUsed()} reports the off-heap part alone.
+ *
+ * <p>The words are {@link #free() freed} explicitly by the owner of the set once it can't be used
+ * anymore, or else by the garbage collector.
+ *
+ * @see OffHeapDocSetCache
+ * @since solr 10.0
+ */
+public class OffHeapBitDocSet extends DocSet {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(OffHeapBitDocSet.class)
+          + 2 * RamUsageEstimator.shallowSizeOfInstance(ByteBuffer.class)
+          + RamUsageEstimator.shallowSizeOfInstance(LongBuffer.class);
+
+  /** Frees a direct or mapped buffer right away, null if the JVM doesn't give access to it. */
+  private static final MethodHandle BUFFER_CLEANER = lookupBufferCleaner();
+
+  /** The direct or mapped buffer that was allocated, which holds the words. */
+  private final ByteBuffer buffer;
+
+  /** The memory-mapped file of the words, null for a direct buffer. */
+  private final Path file;
+
+  private final LongBuffer words;
+  private final int numWords;
+  private final int numBits;
+  private final int size;
+
+  private OffHeapBitDocSet(ByteBuffer buffer, Path file, int numBits, int size) {
+    this.buffer = buffer;
+    this.file = file;
+    this.words = buffer.asReadOnlyBuffer().order(ByteOrder.nativeOrder()).asLongBuffer();
+    this.numWords = words.capacity();
+    this.numBits = numBits;
+    this.size = size;
+  }
+
+  @SuppressForbidden(reason = "Needs sun.misc.Unsafe to free direct buffers before they're GCed")
+  private static MethodHandle lookupBufferCleaner() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      return MethodHandles.lookup()
+          .findVirtual(
+              unsafeClass,
+              "invokeCleaner",
+              MethodType.methodType(void.class, ByteBuffer.class))
+          .bindTo(theUnsafe.get(null));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /** Copies the bits of the provided set into a newly allocated direct buffer. */
+  public static OffHeapBitDocSet copyOf(BitDocSet docSet) {
+    FixedBitSet bits = docSet.getBits();
+    long[] src = bits.getBits();
+    int numWords = FixedBitSet.bits2words(bits.length());
+    ByteBuffer buffer =
+        ByteBuffer.allocateDirect(numWords * Long.BYTES).order(ByteOrder.nativeOrder());
+    buffer.asLongBuffer().put(src, 0, numWords);
+    return new OffHeapBitDocSet(buffer, null, bits.length(), docSet.size());
+  }
+
+  /**
+   * Copies the bits of the provided set into a temporary file in {@code dir} and maps it
+   * read-only. The file is unmapped and deleted when the set is {@link #free() freed}.
+   */
+  public static OffHeapBitDocSet mappedCopyOf(BitDocSet docSet, Path dir) throws IOException {
+    FixedBitSet bits = docSet.getBits();
+    long[] src = bits.getBits();
+    int numWords = FixedBitSet.bits2words(bits.length());
+    Path file = Files.createTempFile(dir, "docset", ".bits");
+    try (FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) numWords * Long.BYTES);
+      buffer.order(ByteOrder.nativeOrder()).asLongBuffer().put(src, 0, numWords);
+      return new OffHeapBitDocSet(buffer, file, bits.length(), docSet.size());
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+  }
+
+  /**
+   * Frees the words of this set, which must not be used anymore: a read after this call may crash
+   * the JVM. A mapped file is unmapped and deleted. If the JVM doesn't give access to the cleaner
+   * of the buffers, the words are freed once the set is garbage collected instead, and a mapped
+   * file is only deleted, which the platforms that can't delete a mapped file refuse.
+   */
+  void free() throws IOException {
+    if (BUFFER_CLEANER != null) {
+      try {
+        BUFFER_CLEANER.invokeExact(buffer);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new IOException(t);
+      }
+    }
+    if (file != null) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /** Returns the number of bytes held outside of the java heap by this set. */
+  public long offHeapBytesUsed() {
+    return (long) numWords * Long.BYTES;
+  }
+
+  /** Copies the bits back onto the heap. The returned set may be modified by the caller. */
+  public BitDocSet toBitDocSet() {
+    return new BitDocSet(getFixedBitSetClone(), size);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean exists(int doc) {
+    return doc < numBits && (words.get(doc >> 6) & (1L << doc)) != 0;
+  }
+
+  /**
+   * Returns the index of the first set bit starting at the index specified, or {@link
+   * DocIdSetIterator#NO_MORE_DOCS} if there are no more set bits.
+   */
+  int nextSetBit(int index) {
+    if (index >= numBits) {
+      return DocIdSetIterator.NO_MORE_DOCS;
+    }
+    int i = index >> 6;
+    long word = words.get(i) >> index; // skip all the bits to the right of index
+
+    if (word != 0) {
+      return index + Long.numberOfTrailingZeros(word);
+    }
+
+    while (++i < numWords) {
+      word = words.get(i);
+      if (word != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+      }
+    }
+
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private int pos = nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return pos != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        return nextDoc();
+      }
+
+      /** The remove operation is not supported by this Iterator. */
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException(
+            "The remove  operation is not supported by this Iterator.");
+      }
+
+      @Override
+      public int nextDoc() {
+        int old = pos;
+        pos = old + 1 >= numBits ? DocIdSetIterator.NO_MORE_DOCS : nextSetBit(old + 1);
+        return old;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  @Override
+  public DocIdSetIterator iterator(LeafReaderContext context) {
+    if (size == 0) {
+      return null;
+    }
+
+    final int base;
+    final int max;
+    if (context.isTopLevel) {
+      base = 0;
+      max = numBits;
+    } else {
+      final int maxDoc = context.reader().maxDoc();
+      if (maxDoc < 1) {
+        // entirely empty segment
+        return null;
+      }
+      base = context.docBase;
+      max = Math.min(base + maxDoc, numBits); // one past the max doc in this segment.
+    }
+
+    return new DocIdSetIterator() {
+      int pos = base - 1;
+      int adjustedDoc = -1;
+
+      @Override
+      public int docID() {
+        return adjustedDoc;
+      }
+
+      @Override
+      public int nextDoc() {
+        return advanceTo(pos + 1);
+      }
+
+      @Override
+      public int advance(int target) {
+        if (target == NO_MORE_DOCS) return adjustedDoc = NO_MORE_DOCS;
+        return advanceTo(target + base);
+      }
+
+      private int advanceTo(int next) {
+        if (next >= max) {
+          return adjustedDoc = NO_MORE_DOCS;
+        }
+        pos = nextSetBit(next);
+        return adjustedDoc = pos < max ? pos - base : NO_MORE_DOCS;
+      }
+
+      @Override
+      public long cost() {
+        // pro-rate the size for the segment
+        return (long) (size * ((max - base) / (float) Math.max(numBits, 1)));
+      }
+    };
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof BitDocSet) {
+      FixedBitSet newbits = other.getFixedBitSetClone();
+      long[] arr = newbits.getBits();
+      int n = Math.min(arr.length, numWords);
+      for (int i = 0; i < n; i++) {
+        arr[i] &= words.get(i);
+      }
+      for (int i = n; i < arr.length; i++) {
+        arr[i] = 0L;
+      }
+      return new BitDocSet(newbits);
+    } else if (other instanceof OffHeapBitDocSet) {
+      return ((OffHeapBitDocSet) other).intersection(toBitDocSet());
+    }
+    // smaller sets are better at driving the intersection, so dispatch off of them.
+    return other.intersection(this);
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof BitDocSet) {
+      long[] arr = ((BitDocSet) other).getBits().getBits();
+      int n = Math.min(arr.length, numWords);
+      long count = 0;
+      for (int i = 0; i < n; i++) {
+        count += Long.bitCount(arr[i] & words.get(i));
+      }
+      return (int) count;
+    } else if (other instanceof OffHeapBitDocSet) {
+      LongBuffer otherWords = ((OffHeapBitDocSet) other).words;
+      int n = Math.min(otherWords.capacity(), numWords);
+      long count = 0;
+      for (int i = 0; i < n; i++) {
+        count += Long.bitCount(otherWords.get(i) & words.get(i));
+      }
+      return (int) count;
+    }
+    // they had better not call us back!
+    return other.intersectionSize(this);
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    if (other instanceof BitDocSet) {
+      long[] arr = ((BitDocSet) other).getBits().getBits();
+      int n = Math.min(arr.length, numWords);
+      for (int i = 0; i < n; i++) {
+        if ((arr[i] & words.get(i)) != 0) return true;
+      }
+      return false;
+    } else if (other instanceof OffHeapBitDocSet) {
+      LongBuffer otherWords = ((OffHeapBitDocSet) other).words;
+      int n = Math.min(otherWords.capacity(), numWords);
+      for (int i = 0; i < n; i++) {
+        if ((otherWords.get(i) & words.get(i)) != 0) return true;
+      }
+      return false;
+    }
+    // they had better not call us back!
+    return other.intersects(this);
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    FixedBitSet newbits = getFixedBitSetClone();
+    if (other instanceof BitDocSet) {
+      FixedBitSet otherBits = other.getFixedBitSet();
+      newbits = FixedBitSet.ensureCapacity(newbits, otherBits.length());
+      newbits.or(otherBits);
+    } else {
+      DocIterator iter = other.iterator();
+      while (iter.hasNext()) {
+        int doc = iter.nextDoc();
+        newbits = FixedBitSet.ensureCapacity(newbits, doc);
+        newbits.set(doc);
+      }
+    }
+    return new BitDocSet(newbits);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    FixedBitSet newbits = getFixedBitSetClone();
+    BitDocSet.andNot(newbits, other);
+    return new BitDocSet(newbits);
+  }
+
+  @Override
+  public DocSetQuery makeQuery() {
+    return new DocSetQuery(this);
+  }
+
+  @Override
+  public void addAllTo(FixedBitSet target) {
+    long[] arr = target.getBits();
+    int n = Math.min(arr.length, numWords);
+    for (int i = 0; i < n; i++) {
+      arr[i] |= words.get(i);
+    }
+  }
+
+  /** Off-heap sets are immutable, so a clone is an on-heap copy. */
+  @Override
+  public DocSet clone() {
+    return toBitDocSet();
+  }
+
+  @Override
+  public Bits getBits() {
+    return new Bits() {
+      @Override
+      public boolean get(int index) {
+        return exists(index);
+      }
+
+      @Override
+      public int length() {
+        return numBits;
+      }
+    };
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSet() {
+    return getFixedBitSetClone();
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSetClone() {
+    long[] arr = new long[numWords];
+    LongBuffer src = words.duplicate();
+    src.position(0);
+    src.get(arr);
+    return new FixedBitSet(arr, numBits);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + offHeapBytesUsed();
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapBitDocSet{"
+        + "size="
+        + size()
+        + ",offHeapUsed="
+        + RamUsageEstimator.humanReadableUnits(offHeapBytesUsed())
+        + '}';
+  }
+}
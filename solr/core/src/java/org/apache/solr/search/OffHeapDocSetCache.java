@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.apache.solr.util.IOFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A filterCache implementation that keeps large {@link BitDocSet} entries outside of the java heap
+ * as {@link OffHeapBitDocSet} instances, so that multi-GB filter caches don't have to be traced and
+ * copied by the garbage collector. Small {@link SortedIntDocSet} entries stay on the heap.
+ * Eviction, {@code maxRamMB} accounting and autowarming behave exactly like {@link CaffeineCache};
+ * the off-heap bytes count towards {@code maxRamMB}.
+ *
+ * <p>The off-heap bytes of the entries of all the caches are limited by the <code>
+ * solr.offHeapFilterCache.maxMB</code> system property, a quarter of the max heap size by default:
+ * once the limit is reached, the new entries stay on the heap. The requests of the searcher of a
+ * cache may still read the entries it evicted, so their bytes are only freed, and released from
+ * the limit, when the cache is closed with its searcher.
+ *
+ * <p>Additional init args:
+ *
+ * <ul>
+ *   <li><code>minOffHeapBytes</code> - bitsets smaller than this many bytes stay on the heap
+ *       (default 65536).
+ *   <li><code>mmapDir</code> - if set, bitsets are written to temporary memory-mapped files in this
+ *       directory instead of direct buffers, which lets the OS page them out under memory pressure.
+ * </ul>
+ *
+ * @since solr 10.0
+ */
+public class OffHeapDocSetCache extends CaffeineCache<Query, DocSet> {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String MIN_OFF_HEAP_BYTES_PARAM = "minOffHeapBytes";
+  public static final String MMAP_DIR_PARAM = "mmapDir";
+  public static final String OFF_HEAP_BYTES_USED_PARAM = "offHeapBytesUsed";
+
+  /** The max number of bytes of the entries of all the caches that are stored off-heap. */
+  static final long MAX_OFF_HEAP_BYTES =
+      Long.getLong("solr.offHeapFilterCache.maxMB", Runtime.getRuntime().maxMemory() >> 22) << 20;
+
+  private static final AtomicLong reservedBytes = new AtomicLong();
+
+  private long minOffHeapBytes;
+  private Path mmapDir;
+  private final LongAdder offHeapBytes = new LongAdder();
+
+  /** The evicted entries, freed when the cache is closed. */
+  private final List<OffHeapBitDocSet> evicted = new ArrayList<>();
+
+  private boolean closed;
+
+  @Override
+  public Object init(Map<String, String> args, Object persistence, CacheRegenerator regenerator) {
+    String str = args.get(MIN_OFF_HEAP_BYTES_PARAM);
+    minOffHeapBytes = str == null ? 65536L : Long.parseLong(str);
+    str = args.get(MMAP_DIR_PARAM);
+    if (str != null) {
+      mmapDir = Paths.get(str);
+      try {
+        Files.createDirectories(mmapDir);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Unable to create " + MMAP_DIR_PARAM + ": " + str, e);
+      }
+    }
+    return super.init(args, persistence, regenerator);
+  }
+
+  /** Returns the number of bytes of the entries of all the caches that are stored off-heap. */
+  public static long reservedOffHeapBytes() {
+    return reservedBytes.get();
+  }
+
+  static boolean reserve(long bytes) {
+    long reserved;
+    do {
+      reserved = reservedBytes.get();
+      if (reserved + bytes > MAX_OFF_HEAP_BYTES) {
+        return false;
+      }
+    } while (!reservedBytes.compareAndSet(reserved, reserved + bytes));
+    return true;
+  }
+
+  static void unreserve(long bytes) {
+    reservedBytes.addAndGet(-bytes);
+  }
+
+  /** Moves large bitsets off-heap, within the limit; everything else is returned as-is. */
+  DocSet toOffHeap(DocSet docSet) throws IOException {
+    if (docSet instanceof OffHeapBitDocSet) {
+      // each entry owns its words, which are freed with it
+      docSet = ((OffHeapBitDocSet) docSet).toBitDocSet();
+    }
+    if (!(docSet instanceof BitDocSet) || docSet instanceof MutableBitDocSet) {
+      return docSet;
+    }
+    BitDocSet bitDocSet = (BitDocSet) docSet;
+    long bytes = (long) FixedBitSet.bits2words(bitDocSet.getBits().length()) << 3;
+    if (bytes < minOffHeapBytes || !reserve(bytes)) {
+      return docSet;
+    }
+    OffHeapBitDocSet offHeap;
+    try {
+      offHeap =
+          mmapDir == null
+              ? OffHeapBitDocSet.copyOf(bitDocSet)
+              : OffHeapBitDocSet.mappedCopyOf(bitDocSet, mmapDir);
+    } catch (IOException | RuntimeException e) {
+      unreserve(bytes);
+      throw e;
+    }
+    offHeapBytes.add(offHeap.offHeapBytesUsed());
+    return offHeap;
+  }
+
+  @Override
+  public DocSet put(Query key, DocSet val) {
+    try {
+      return super.put(key, toOffHeap(val));
+    } catch (IOException e) {
+      // couldn't map the set; keep it on the heap rather than failing the request
+      return super.put(key, val);
+    }
+  }
+
+  @Override
+  public DocSet computeIfAbsent(
+      Query key, IOFunction<? super Query, ? extends DocSet> mappingFunction) throws IOException {
+    return super.computeIfAbsent(key, k -> toOffHeap(mappingFunction.apply(k)));
+  }
+
+  @Override
+  public void onRemoval(Query key, DocSet value, RemovalCause cause) {
+    super.onRemoval(key, value, cause);
+    if (value instanceof OffHeapBitDocSet) {
+      OffHeapBitDocSet offHeap = (OffHeapBitDocSet) value;
+      offHeapBytes.add(-offHeap.offHeapBytesUsed());
+      synchronized (evicted) {
+        if (!closed) {
+          evicted.add(offHeap);
+          return;
+        }
+      }
+      // removed after the cache was closed, e.g. by the cleanup thread
+      free(offHeap);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    List<OffHeapBitDocSet> toFree;
+    synchronized (evicted) {
+      closed = true;
+      toFree = new ArrayList<>(evicted);
+      evicted.clear();
+    }
+    for (OffHeapBitDocSet offHeap : toFree) {
+      free(offHeap);
+    }
+  }
+
+  private static void free(OffHeapBitDocSet offHeap) {
+    try {
+      offHeap.free();
+    } catch (IOException e) {
+      log.warn("Unable to free the off-heap filter {}", offHeap, e);
+    } finally {
+      unreserve(offHeap.offHeapBytesUsed());
+    }
+  }
+
+  /** Returns the number of bytes held outside of the java heap by the cached entries. */
+  public long offHeapBytesUsed() {
+    return offHeapBytes.sum();
+  }
+
+  @Override
+  public String getName() {
+    return OffHeapDocSetCache.class.getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return "Off-heap DocSet " + super.getDescription();
+  }
+
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    super.initializeMetrics(parentContext, scope);
+    getSolrMetricsContext()
+        .gauge(
+            this::offHeapBytesUsed,
+            true,
+            OFF_HEAP_BYTES_USED_PARAM,
+            getCategory().toString(),
+            scope);
+  }
+}
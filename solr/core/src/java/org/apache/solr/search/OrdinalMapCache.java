@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.index.IncrementalOrdinalMap;
+import org.apache.solr.schema.SchemaField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A core level cache of the global ords of string fields, used by terms facets on several segments
+ * when <code>&lt;ordinalMapCache/&gt;</code> is enabled in the query section of solrconfig.xml.
+ *
+ * <p>The map of a new searcher is built incrementally from the latest map of the same field, so
+ * that only the terms of the segments that are new since then are merged. The maps of the fields
+ * listed in <code>warmFields</code> are built while the new searcher is warmed, before it serves
+ * any request.
+ *
+ * @see IncrementalOrdinalMap
+ * @since solr 10.0
+ */
+public class OrdinalMapCache extends CoreCacheBase {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final Collection<String> warmFields;
+  private final Map<String, FieldMaps> fields = new ConcurrentHashMap<>();
+  private final LongAdder fullBuilds = new LongAdder();
+  private final LongAdder incrementalBuilds = new LongAdder();
+
+  /** The maps of a field for each open searcher, and the latest map to build new ones from. */
+  private static final class FieldMaps {
+    final Map<IndexReader.CacheKey, IncrementalOrdinalMap> byReader = new ConcurrentHashMap<>();
+    volatile IncrementalOrdinalMap latest;
+    volatile long buildTimeNs;
+  }
+
+  public OrdinalMapCache(Collection<String> warmFields) {
+    super("ordinalMapCache", "Global ords of string fields, built incrementally across searchers");
+    this.warmFields = warmFields;
+  }
+
+  /**
+   * Returns the global ords of the field for the segments of the searcher, or null if the searcher
+   * has less than two segments or its segments can't be identified.
+   */
+  public IncrementalOrdinalMap get(SolrIndexSearcher searcher, SchemaField sf) throws IOException {
+    IndexReader reader = searcher.getIndexReader();
+    IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+    List<LeafReaderContext> leaves = reader.leaves();
+    if (cacheHelper == null || leaves.size() < 2) {
+      return null;
+    }
+    for (LeafReaderContext leaf : leaves) {
+      if (leaf.reader().getCoreCacheHelper() == null) {
+        return null;
+      }
+    }
+
+    lookups.increment();
+    FieldMaps maps = fields.computeIfAbsent(sf.getName(), k -> new FieldMaps());
+    IncrementalOrdinalMap map = maps.byReader.get(cacheHelper.getKey());
+    if (map != null) {
+      hits.increment();
+      return map;
+    }
+    // one build at a time for a field, so that concurrent requests on a new searcher wait for the
+    // same map, and a map can be built from the previous one
+    synchronized (maps) {
+      map = maps.byReader.get(cacheHelper.getKey());
+      if (map != null) {
+        hits.increment();
+        return map;
+      }
+      boolean multiValued = sf.multiValued() || sf.getType().multiValuedFieldCache();
+      IncrementalOrdinalMap previous = maps.latest;
+      if (previous != null && previous.isMultiValued() != multiValued) {
+        previous = null;
+      }
+      long start = System.nanoTime();
+      map = IncrementalOrdinalMap.build(sf.getName(), multiValued, leaves, previous);
+      maps.buildTimeNs = System.nanoTime() - start;
+      if (previous == null) {
+        fullBuilds.increment();
+      } else {
+        incrementalBuilds.increment();
+      }
+      if (log.isDebugEnabled()) {
+        log.debug(
+            "Built {} in {} ms, reusing {} segments",
+            map,
+            TimeUnit.NANOSECONDS.toMillis(maps.buildTimeNs),
+            map.getReusedSegmentCount());
+      }
+      maps.latest = map;
+      maps.byReader.put(cacheHelper.getKey(), map);
+      cacheHelper.addClosedListener(maps.byReader::remove);
+      return map;
+    }
+  }
+
+  /** Builds the maps of the <code>warmFields</code> for a new searcher. */
+  public void warm(SolrIndexSearcher searcher) {
+    for (String field : warmFields) {
+      SchemaField sf = searcher.getSchema().getFieldOrNull(field);
+      if (sf == null) {
+        log.warn("Unknown field {} in the warmFields of the ordinalMapCache", field);
+        continue;
+      }
+      try {
+        get(searcher, sf);
+      } catch (Exception e) {
+        log.warn("Error warming the global ords of {}", field, e);
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    fields.clear();
+  }
+
+  @Override
+  protected void writeMetrics(MapWriter.EntryWriter map) throws IOException {
+    map.put("fullBuilds", fullBuilds.sum());
+    map.put("incrementalBuilds", incrementalBuilds.sum());
+    // a map may be shared by several searchers, and is the latest one of its field
+    Map<IncrementalOrdinalMap, Boolean> distinct = new IdentityHashMap<>();
+    long ramBytesUsed = 0;
+    for (Map.Entry<String, FieldMaps> entry : fields.entrySet()) {
+      FieldMaps maps = entry.getValue();
+      long fieldRamBytesUsed = 0;
+      IncrementalOrdinalMap latest = maps.latest;
+      if (latest != null && distinct.put(latest, Boolean.TRUE) == null) {
+        fieldRamBytesUsed += latest.ramBytesUsed();
+      }
+      for (IncrementalOrdinalMap m : maps.byReader.values()) {
+        if (distinct.put(m, Boolean.TRUE) == null) {
+          fieldRamBytesUsed += m.ramBytesUsed();
+        }
+      }
+      String prefix = entry.getKey() + ".";
+      map.put(prefix + "buildTimeMs", TimeUnit.NANOSECONDS.toMillis(maps.buildTimeNs));
+      map.put(prefix + SolrCache.RAM_BYTES_USED_PARAM, fieldRamBytesUsed);
+      if (latest != null) {
+        map.put(prefix + "valueCount", latest.getValueCount());
+        map.put(prefix + "segments", latest.getSegmentCount());
+        map.put(prefix + "reusedSegments", latest.getReusedSegmentCount());
+      }
+      ramBytesUsed += fieldRamBytesUsed;
+    }
+    map.put(SolrCache.RAM_BYTES_USED_PARAM, ramBytesUsed);
+  }
+}
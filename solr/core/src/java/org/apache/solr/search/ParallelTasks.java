@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.solr.common.SolrException;
+
+/**
+ * Runs the independent tasks of a request with the threads of an executor of the node, e.g. the
+ * slices of a {@link MultiThreadedSearcher} or the segments of a facet.
+ *
+ * <p>The request thread runs the first task itself, and then any task that no thread of the
+ * executor has started yet, so a busy executor never makes a request slower than running the tasks
+ * sequentially. The timeout of the request applies to the tasks in all threads.
+ *
+ * @since solr 10.0
+ */
+public final class ParallelTasks {
+
+  private ParallelTasks() {}
+
+  /**
+   * Runs the tasks, and returns their results in the same order. Once a task fails, the tasks that
+   * didn't start yet are skipped, and the first failure is thrown when all the started tasks are
+   * done.
+   */
+  public static <T> List<T> run(ExecutorService executor, List<Callable<T>> tasks)
+      throws IOException {
+    final AtomicBoolean failed = new AtomicBoolean();
+    final Long timeoutAtNs = SolrQueryTimeoutImpl.getTimeoutAtNs();
+
+    final List<FutureTask<T>> futures = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(
+          new FutureTask<>(
+              () -> {
+                if (failed.get()) {
+                  return null; // no need to run the tasks that didn't start yet
+                }
+                // the timeout of the request is tracked per thread
+                final Long previousTimeoutAtNs = SolrQueryTimeoutImpl.getTimeoutAtNs();
+                SolrQueryTimeoutImpl.setTimeoutAtNs(timeoutAtNs);
+                try {
+                  return task.call();
+                } catch (Throwable t) {
+                  failed.set(true);
+                  throw t;
+                } finally {
+                  SolrQueryTimeoutImpl.setTimeoutAtNs(previousTimeoutAtNs);
+                }
+              }));
+    }
+    for (int i = 1; i < futures.size(); i++) {
+      try {
+        executor.execute(futures.get(i));
+      } catch (RejectedExecutionException e) {
+        // the request thread will run it
+      }
+    }
+    for (FutureTask<T> future : futures) {
+      future.run(); // no-op if a thread of the executor started it already
+    }
+
+    // wait for all tasks, so that none is still running once the searcher may be closed
+    Throwable failure = null;
+    List<T> results = new ArrayList<>(futures.size());
+    for (FutureTask<T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException e) {
+        if (failure == null) failure = e.getCause();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        if (failure == null) {
+          failure = new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+        }
+      }
+    }
+    if (failure instanceof IOException) throw (IOException) failure;
+    if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+    if (failure instanceof Error) throw (Error) failure;
+    if (failure != null) throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, failure);
+    return results;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.lucene.index.IndexReader;
+import org.apache.solr.common.MapWriter;
+
+/**
+ * Common base class of the core level caches whose entries belong to a segment, and are shared by
+ * all the searchers that have this segment. The entries of a segment are removed as soon as the
+ * segment (core or reader, depending on the {@link SegmentKey keys}) is closed; otherwise the cache
+ * is bounded by its max RAM.
+ *
+ * @param <K> the keys of the entries, that identify their segment
+ * @param <V> the cached values
+ * @since solr 10.0
+ */
+public abstract class PerSegmentCacheBase<K extends PerSegmentCacheBase.SegmentKey, V>
+    extends CoreCacheBase {
+
+  private final Cache<K, V> cache;
+  private final Set<IndexReader.CacheKey> trackedSegments = ConcurrentHashMap.newKeySet();
+  private final long maxRamBytes;
+
+  /**
+   * @param maxRamMB the max RAM of the entries, or a negative value for no limit
+   */
+  protected PerSegmentCacheBase(String metricName, String description, int maxRamMB) {
+    super(metricName, description);
+    this.maxRamBytes = maxRamMB < 0 ? Long.MAX_VALUE : maxRamMB * 1024L * 1024L;
+    this.cache =
+        Caffeine.newBuilder()
+            .executor(Runnable::run)
+            .maximumWeight(maxRamBytes)
+            .weigher((K k, V v) -> (int) Math.min(Integer.MAX_VALUE, ramBytesUsed(k, v)))
+            .build();
+  }
+
+  /** Returns the approximate number of bytes used by an entry, i.e. its weight in the cache. */
+  protected abstract long ramBytesUsed(K key, V value);
+
+  /** Returns the cached value of the key, or null if it isn't cached. */
+  protected V get(K key) {
+    lookups.increment();
+    V value = cache.getIfPresent(key);
+    if (value != null) {
+      hits.increment();
+    }
+    return value;
+  }
+
+  /**
+   * Caches the value until its segment is closed.
+   *
+   * @param cacheHelper the cache helper of the segment whose key is the segment of the key
+   */
+  protected void put(IndexReader.CacheHelper cacheHelper, K key, V value) {
+    if (trackedSegments.add(key.segmentKey)) {
+      cacheHelper.addClosedListener(this::onSegmentClosed);
+    }
+    cache.put(key, value);
+  }
+
+  private void onSegmentClosed(IndexReader.CacheKey segmentKey) {
+    trackedSegments.remove(segmentKey);
+    cache.asMap().keySet().removeIf(k -> k.segmentKey == segmentKey);
+  }
+
+  /** Returns the number of cached entries. */
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  protected void writeMetrics(MapWriter.EntryWriter map) throws IOException {
+    map.put(SolrCache.SIZE_PARAM, cache.estimatedSize());
+    map.put("segments", trackedSegments.size());
+    map.put(
+        SolrCache.RAM_BYTES_USED_PARAM,
+        cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+    map.put(
+        SolrCache.MAX_RAM_MB_PARAM,
+        maxRamBytes == Long.MAX_VALUE ? -1L : maxRamBytes / 1024L / 1024L);
+  }
+
+  /** The key of an entry, that identifies its segment by the segment core or reader key. */
+  protected abstract static class SegmentKey {
+    protected final IndexReader.CacheKey segmentKey;
+
+    protected SegmentKey(IndexReader.CacheKey segmentKey) {
+      this.segmentKey = segmentKey;
+    }
+  }
+}
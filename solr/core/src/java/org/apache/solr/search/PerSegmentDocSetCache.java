@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.RoaringDocIdSet;
+import org.apache.solr.common.MapWriter;
+
+/**
+ * A core level cache of filter matches per segment, used to build the top-level DocSets of the
+ * filterCache when it is configured with <code>perSegment="true"</code>. Entries are keyed by the
+ * segment core key and the filter, and contain the matching documents of the segment regardless
+ * of deletions, so that a new searcher only needs to compute filters for the segments that are new
+ * since the previous searcher. Live docs are applied when the top-level DocSet is assembled.
+ *
+ * <p>Entries of a segment are removed as soon as the segment core is closed; otherwise the cache is
+ * bounded by <code>perSegmentMaxRamMB</code>.
+ *
+ * @since solr 10.0
+ */
+public class PerSegmentDocSetCache
+    extends PerSegmentCacheBase<PerSegmentDocSetCache.SegmentQueryKey, DocIdSet> {
+
+  private final LongAdder uncacheable = new LongAdder();
+
+  public PerSegmentDocSetCache(int maxRamMB) {
+    super(
+        "perSegmentFilterCache",
+        "Per-segment filterCache entries that are shared across searchers",
+        maxRamMB);
+  }
+
+  @Override
+  protected long ramBytesUsed(SegmentQueryKey key, DocIdSet value) {
+    return RamUsageEstimator.sizeOfObject(key.query, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED)
+        + value.ramBytesUsed();
+  }
+
+  /**
+   * Returns the DocSet matching the (positive) query, assembled from the cached per-segment
+   * matches, or null if the query can't be cached per segment. Matches of segments that aren't
+   * cached yet are computed and cached.
+   */
+  public DocSet getDocSet(SolrIndexSearcher searcher, Query query) throws IOException {
+    if (query instanceof DocSetProducer || query instanceof MatchAllDocsQuery) {
+      // these are computed against the top-level reader, or are trivially cheap
+      return null;
+    }
+    Query rewritten = searcher.rewrite(query);
+    Weight weight = searcher.createWeight(rewritten, ScoreMode.COMPLETE_NO_SCORES, 1f);
+
+    List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    for (LeafReaderContext leaf : leaves) {
+      if (leaf.reader().getCoreCacheHelper() == null || !weight.isCacheable(leaf)) {
+        uncacheable.increment();
+        return null;
+      }
+    }
+
+    DocIdSetIterator[] iterators = new DocIdSetIterator[leaves.size()];
+    long cost = 0;
+    for (LeafReaderContext leaf : leaves) {
+      DocIdSetIterator it = getSegmentDocs(leaf, query, weight).iterator();
+      if (it != null) {
+        iterators[leaf.ord] = it;
+        cost += it.cost();
+      }
+    }
+
+    DocSetBuilder builder = new DocSetBuilder(searcher.maxDoc(), cost);
+    for (LeafReaderContext leaf : leaves) {
+      DocIdSetIterator it = iterators[leaf.ord];
+      if (it == null) continue;
+      Bits liveDocs = leaf.reader().getLiveDocs();
+      int base = leaf.docBase;
+      for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+        if (liveDocs == null || liveDocs.get(doc)) {
+          builder.add(doc + base);
+        }
+      }
+    }
+    DocSet docs = DocSetUtil.getDocSet(builder.buildUniqueInOrder(null), searcher);
+    return DocSetUtil.toCompactSet(docs, searcher);
+  }
+
+  private DocIdSet getSegmentDocs(LeafReaderContext leaf, Query query, Weight weight)
+      throws IOException {
+    IndexReader.CacheHelper cacheHelper = leaf.reader().getCoreCacheHelper();
+    SegmentQueryKey key = new SegmentQueryKey(cacheHelper.getKey(), query);
+    DocIdSet cached = get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    DocIdSet docs = computeSegmentDocs(leaf, weight);
+    put(cacheHelper, key, docs);
+    return docs;
+  }
+
+  /** Collects the matches of the segment ignoring deletions, in the same way as LRUQueryCache. */
+  private static DocIdSet computeSegmentDocs(LeafReaderContext leaf, Weight weight)
+      throws IOException {
+    Scorer scorer = weight.scorer(leaf);
+    if (scorer == null) {
+      return DocIdSet.EMPTY;
+    }
+    DocIdSetIterator it = scorer.iterator();
+    int maxDoc = leaf.reader().maxDoc();
+    if (it.cost() * 100 >= maxDoc) {
+      // dense: one bit per doc is cheaper than the sparse representation
+      FixedBitSet bits = new FixedBitSet(maxDoc);
+      bits.or(it);
+      return new BitDocIdSet(bits);
+    }
+    RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(maxDoc);
+    for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+      builder.add(doc);
+    }
+    return builder.build();
+  }
+
+  @Override
+  protected void writeMetrics(MapWriter.EntryWriter map) throws IOException {
+    map.put("uncacheable", uncacheable.sum());
+    super.writeMetrics(map);
+  }
+
+  static final class SegmentQueryKey extends SegmentKey {
+    final Query query;
+    final int hash;
+
+    SegmentQueryKey(IndexReader.CacheKey coreKey, Query query) {
+      super(coreKey);
+      this.query = query;
+      this.hash = 31 * System.identityHashCode(coreKey) + query.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SegmentQueryKey)) return false;
+      SegmentQueryKey other = (SegmentQueryKey) obj;
+      return segmentKey == other.segmentKey && Objects.equals(query, other.query);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A core level cache of the stored fields of documents, used instead of the documentCache when it
+ * is configured with <code>perSegment="true"</code>. Entries are keyed by the segment core key and
+ * the docid within the segment, so that a new searcher still finds the documents of the segments
+ * that are unchanged since the previous searcher. The stored fields of a document are kept
+ * serialized in a compact byte array rather than as a {@link org.apache.lucene.document.Document},
+ * and are replayed to the {@link StoredFieldVisitor} of each request, which avoids decompressing
+ * the stored fields block of the document again.
+ *
+ * <p>Values of "large" fields are not cached: they are read from the index when a visitor wants
+ * them. Entries of a segment are removed as soon as the segment core is closed; otherwise the cache
+ * is bounded by <code>perSegmentMaxRamMB</code>.
+ *
+ * @since solr 10.0
+ */
+public class PerSegmentStoredFieldsCache
+    extends PerSegmentCacheBase<PerSegmentStoredFieldsCache.SegmentDocKey, byte[]> {
+
+  private static final byte STRING = 0;
+  private static final byte BINARY = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte FLOAT = 4;
+  private static final byte DOUBLE = 5;
+  private static final byte NOT_CACHED = 6;
+
+  private static final long BASE_RAM_BYTES_PER_ENTRY =
+      RamUsageEstimator.shallowSizeOfInstance(SegmentDocKey.class)
+          + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+
+  public PerSegmentStoredFieldsCache(int maxRamMB) {
+    super(
+        "perSegmentDocumentCache",
+        "Per-segment stored fields of documents that are shared across searchers",
+        maxRamMB);
+  }
+
+  @Override
+  protected long ramBytesUsed(SegmentDocKey key, byte[] value) {
+    return BASE_RAM_BYTES_PER_ENTRY + value.length;
+  }
+
+  /**
+   * Visits the stored fields of a document of the segment, from the cache if possible. The stored
+   * fields of the document are cached if they weren't already.
+   *
+   * @param leaf the segment
+   * @param docId the docid within the segment
+   * @param largeFields the fields whose values aren't cached
+   */
+  public void document(
+      LeafReaderContext leaf, int docId, Set<String> largeFields, StoredFieldVisitor visitor)
+      throws IOException {
+    LeafReader reader = leaf.reader();
+    IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+    if (cacheHelper == null) {
+      reader.document(docId, visitor);
+      return;
+    }
+
+    SegmentDocKey key = new SegmentDocKey(cacheHelper.getKey(), docId);
+    byte[] fields = get(key);
+    if (fields == null) {
+      RecordingVisitor recorder = new RecordingVisitor(largeFields);
+      reader.document(docId, recorder);
+      fields = recorder.out.toArrayCopy();
+      put(cacheHelper, key, fields);
+    }
+    replay(reader, docId, fields, visitor);
+  }
+
+  private static void replay(
+      LeafReader reader, int docId, byte[] fields, StoredFieldVisitor visitor) throws IOException {
+    FieldInfos fieldInfos = reader.getFieldInfos();
+    ByteArrayDataInput in = new ByteArrayDataInput(fields);
+    while (!in.eof()) {
+      FieldInfo fieldInfo = fieldInfos.fieldInfo(in.readVInt());
+      byte type = in.readByte();
+      StoredFieldVisitor.Status status = visitor.needsField(fieldInfo);
+      if (status == StoredFieldVisitor.Status.STOP) {
+        return;
+      }
+      boolean needed = status == StoredFieldVisitor.Status.YES;
+      switch (type) {
+        case STRING:
+          String value = in.readString();
+          if (needed) visitor.stringField(fieldInfo, value);
+          break;
+        case BINARY:
+          byte[] bytes = new byte[in.readVInt()];
+          in.readBytes(bytes, 0, bytes.length);
+          if (needed) visitor.binaryField(fieldInfo, bytes);
+          break;
+        case INT:
+          int intValue = in.readInt();
+          if (needed) visitor.intField(fieldInfo, intValue);
+          break;
+        case LONG:
+          long longValue = in.readLong();
+          if (needed) visitor.longField(fieldInfo, longValue);
+          break;
+        case FLOAT:
+          float floatValue = Float.intBitsToFloat(in.readInt());
+          if (needed) visitor.floatField(fieldInfo, floatValue);
+          break;
+        case DOUBLE:
+          double doubleValue = Double.longBitsToDouble(in.readLong());
+          if (needed) visitor.doubleField(fieldInfo, doubleValue);
+          break;
+        case NOT_CACHED:
+          if (needed) reader.document(docId, new SingleFieldVisitor(fieldInfo, visitor));
+          break;
+        default:
+          throw new IllegalStateException("Unknown stored field type: " + type);
+      }
+    }
+  }
+
+  /** Serializes all the stored fields of a document, except the values of large fields. */
+  private static final class RecordingVisitor extends StoredFieldVisitor {
+    final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+    final Set<String> largeFields;
+    final Set<Integer> recordedLargeFields = new HashSet<>();
+
+    RecordingVisitor(Set<String> largeFields) {
+      this.largeFields = largeFields;
+    }
+
+    @Override
+    public Status needsField(FieldInfo fieldInfo) throws IOException {
+      if (largeFields.contains(fieldInfo.name)) {
+        // all the values of a large field are read back at once
+        if (recordedLargeFields.add(fieldInfo.number)) {
+          out.writeVInt(fieldInfo.number);
+          out.writeByte(NOT_CACHED);
+        }
+        return Status.NO;
+      }
+      return Status.YES;
+    }
+
+    @Override
+    public void stringField(FieldInfo fieldInfo, String value) throws IOException {
+      out.writeVInt(fieldInfo.number);
+      out.writeByte(STRING);
+      out.writeString(value);
+    }
+
+    @Override
+    public void binaryField(FieldInfo fieldInfo, byte[] value) throws IOException {
+      out.writeVInt(fieldInfo.number);
+      out.writeByte(BINARY);
+      out.writeVInt(value.length);
+      out.writeBytes(value, 0, value.length);
+    }
+
+    @Override
+    public void intField(FieldInfo fieldInfo, int value) throws IOException {
+      out.writeVInt(fieldInfo.number);
+      out.writeByte(INT);
+      out.writeInt(value);
+    }
+
+    @Override
+    public void longField(FieldInfo fieldInfo, long value) throws IOException {
+      out.writeVInt(fieldInfo.number);
+      out.writeByte(LONG);
+      out.writeLong(value);
+    }
+
+    @Override
+    public void floatField(FieldInfo fieldInfo, float value) throws IOException {
+      out.writeVInt(fieldInfo.number);
+      out.writeByte(FLOAT);
+      out.writeInt(Float.floatToIntBits(value));
+    }
+
+    @Override
+    public void doubleField(FieldInfo fieldInfo, double value) throws IOException {
+      out.writeVInt(fieldInfo.number);
+      out.writeByte(DOUBLE);
+      out.writeLong(Double.doubleToLongBits(value));
+    }
+  }
+
+  /** Passes the values of a single field on to another visitor. */
+  private static final class SingleFieldVisitor extends StoredFieldVisitor {
+    final FieldInfo field;
+    final StoredFieldVisitor delegate;
+
+    SingleFieldVisitor(FieldInfo field, StoredFieldVisitor delegate) {
+      this.field = field;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Status needsField(FieldInfo fieldInfo) {
+      return fieldInfo.number == field.number ? Status.YES : Status.NO;
+    }
+
+    @Override
+    public void stringField(FieldInfo fieldInfo, String value) throws IOException {
+      delegate.stringField(fieldInfo, value);
+    }
+
+    @Override
+    public void binaryField(FieldInfo fieldInfo, byte[] value) throws IOException {
+      delegate.binaryField(fieldInfo, value);
+    }
+
+    @Override
+    public void intField(FieldInfo fieldInfo, int value) throws IOException {
+      delegate.intField(fieldInfo, value);
+    }
+
+    @Override
+    public void longField(FieldInfo fieldInfo, long value) throws IOException {
+      delegate.longField(fieldInfo, value);
+    }
+
+    @Override
+    public void floatField(FieldInfo fieldInfo, float value) throws IOException {
+      delegate.floatField(fieldInfo, value);
+    }
+
+    @Override
+    public void doubleField(FieldInfo fieldInfo, double value) throws IOException {
+      delegate.doubleField(fieldInfo, value);
+    }
+  }
+
+  static final class SegmentDocKey extends SegmentKey {
+    final int docId;
+
+    SegmentDocKey(IndexReader.CacheKey coreKey, int docId) {
+      super(coreKey);
+      this.docId = docId;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(segmentKey) + docId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SegmentDocKey)) return false;
+      SegmentDocKey other = (SegmentDocKey) obj;
+      return segmentKey == other.segmentKey && docId == other.docId;
+    }
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.solr.search;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 
 /**
@@ -38,6 +39,8 @@ public class QueryCommand {
   private int flags;
   private long timeAllowed = -1;
   private int minExactCount = Integer.MAX_VALUE;
+  private boolean multiThreaded;
+  private ScoreDoc searchAfter;
   private CursorMark cursorMark;
 
   public CursorMark getCursorMark() {
@@ -169,6 +172,28 @@ public class QueryCommand {
     return this;
   }
 
+  public boolean isMultiThreaded() {
+    return multiThreaded;
+  }
+
+  public QueryCommand setMultiThreaded(boolean multiThreaded) {
+    this.multiThreaded = multiThreaded;
+    return this;
+  }
+
+  /**
+   * The last doc of a cached {@link DocList} that the docs to collect follow, so that more docs of
+   * the list can be collected without collecting the cached ones again.
+   */
+  ScoreDoc getSearchAfter() {
+    return searchAfter;
+  }
+
+  QueryCommand setSearchAfter(ScoreDoc searchAfter) {
+    this.searchAfter = searchAfter;
+    return this;
+  }
+
   public boolean isNeedDocSet() {
     return (flags & SolrIndexSearcher.GET_DOCSET) != 0;
   }
@@ -0,0 +1,1048 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A compressed implementation of a {@link DocSet}, in the style of Roaring bitmaps. The doc id
+ * space is split in blocks of 65536 docs, and every non-empty block is stored in the smallest of
+ * three containers: a sorted array of doc offsets for sparse blocks, a bitmap for dense blocks, or
+ * a list of runs for blocks of consecutive docs. Good for medium density sets, and for sets that
+ * are clustered by doc id, which would otherwise need a large int[] or a mostly empty bitset.
+ *
+ * <p>Instances are immutable. See {@link DocSetUtil#toCompactSet(DocSet, SolrIndexSearcher)}.
+ *
+ * @since solr 10.0
+ */
+public class RoaringDocSet extends DocSet {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(RoaringDocSet.class);
+
+  static final int BLOCK_SHIFT = 16;
+  static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+  static final int BLOCK_MASK = BLOCK_SIZE - 1;
+  static final int BLOCK_WORDS = BLOCK_SIZE >>> 6;
+
+  private final Container[] containers; // indexed by block; null for empty blocks
+  private final int size;
+  private final long ramBytesUsed;
+
+  private RoaringDocSet(Container[] containers) {
+    int numBlocks = containers.length;
+    while (numBlocks > 0 && containers[numBlocks - 1] == null) {
+      numBlocks--;
+    }
+    this.containers =
+        numBlocks == containers.length ? containers : Arrays.copyOf(containers, numBlocks);
+
+    int size = 0;
+    long ramBytesUsed = BASE_RAM_BYTES_USED + RamUsageEstimator.shallowSizeOf(this.containers);
+    for (Container container : this.containers) {
+      if (container != null) {
+        size += container.cardinality();
+        ramBytesUsed += container.ramBytesUsed();
+      }
+    }
+    this.size = size;
+    this.ramBytesUsed = ramBytesUsed;
+  }
+
+  /** Creates a compressed copy of the bits. */
+  public static RoaringDocSet fromBits(FixedBitSet bits) {
+    long[] words = bits.getBits();
+    int numWords = Math.min(words.length, FixedBitSet.bits2words(bits.length()));
+    Container[] containers = new Container[(numWords + BLOCK_WORDS - 1) / BLOCK_WORDS];
+    for (int block = 0; block < containers.length; block++) {
+      containers[block] = Container.fromWords(words, block * BLOCK_WORDS, numWords);
+    }
+    return new RoaringDocSet(containers);
+  }
+
+  /**
+   * Creates a compressed set of docs
+   *
+   * @param docs Sorted list of ids
+   * @param len Number of ids in the list
+   */
+  public static RoaringDocSet fromSortedDocs(int[] docs, int len) {
+    Container[] containers =
+        new Container[len == 0 ? 0 : (docs[len - 1] >>> BLOCK_SHIFT) + 1];
+    long[] scratch = new long[BLOCK_WORDS];
+    int i = 0;
+    while (i < len) {
+      int block = docs[i] >>> BLOCK_SHIFT;
+      Arrays.fill(scratch, 0L);
+      for (; i < len && (docs[i] >>> BLOCK_SHIFT) == block; i++) {
+        int value = docs[i] & BLOCK_MASK;
+        scratch[value >>> 6] |= 1L << value;
+      }
+      containers[block] = Container.fromWords(scratch, 0, BLOCK_WORDS);
+    }
+    return new RoaringDocSet(containers);
+  }
+
+  /** Returns the set itself if it's already compressed, or a compressed copy of it. */
+  public static RoaringDocSet copyOf(DocSet docs) {
+    if (docs instanceof RoaringDocSet) {
+      return (RoaringDocSet) docs;
+    } else if (docs instanceof BitDocSet) {
+      return fromBits(((BitDocSet) docs).getBits());
+    } else if (docs instanceof SortedIntDocSet) {
+      return fromSortedDocs(((SortedIntDocSet) docs).getDocs(), docs.size());
+    }
+    return fromBits(docs.getFixedBitSet());
+  }
+
+  /**
+   * Returns the number of bytes {@link #fromBits(FixedBitSet)} would use for these bits, without
+   * creating the set.
+   */
+  public static long estimateRamBytesUsed(FixedBitSet bits) {
+    long[] words = bits.getBits();
+    int numWords = Math.min(words.length, FixedBitSet.bits2words(bits.length()));
+    int numBlocks = (numWords + BLOCK_WORDS - 1) / BLOCK_WORDS;
+    long ramBytesUsed =
+        BASE_RAM_BYTES_USED
+            + RamUsageEstimator.alignObjectSize(
+                RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                    + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * numBlocks);
+    for (int offset = 0; offset < numWords; offset += BLOCK_WORDS) {
+      int end = Math.min(offset + BLOCK_WORDS, numWords);
+      int cardinality = 0;
+      int runs = 0;
+      long prev = 0;
+      for (int i = offset; i < end; i++) {
+        long word = words[i];
+        cardinality += Long.bitCount(word);
+        runs += Long.bitCount(word & ~((word << 1) | (prev >>> 63)));
+        prev = word;
+      }
+      if (cardinality > 0) {
+        ramBytesUsed += Container.ramBytesUsed(cardinality, runs);
+      }
+    }
+    return ramBytesUsed;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean exists(int doc) {
+    int block = doc >>> BLOCK_SHIFT;
+    if (block >= containers.length) return false;
+    Container container = containers[block];
+    return container != null && container.contains(doc & BLOCK_MASK);
+  }
+
+  /** the {@link Bits#length()} or maxdoc (1 greater than largest possible doc number) */
+  private int getLength() {
+    return containers.length == 0
+        ? 0
+        : ((containers.length - 1) << BLOCK_SHIFT) + containers[containers.length - 1].last() + 1;
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private final DocIdSetIterator iter = new RoaringIterator();
+      private int pos = iter.nextDoc();
+
+      @Override
+      public boolean hasNext() {
+        return pos != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        return nextDoc();
+      }
+
+      /** The remove operation is not supported by this Iterator. */
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException(
+            "The remove operation is not supported by this Iterator.");
+      }
+
+      @Override
+      public int nextDoc() {
+        int old = pos;
+        pos = iter.nextDoc();
+        return old;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  @Override
+  public DocIdSetIterator iterator(LeafReaderContext context) {
+    if (context.isTopLevel) {
+      return size == 0 ? null : new RoaringIterator();
+    }
+
+    final int maxDoc = context.reader().maxDoc();
+    final int base = context.docBase;
+    final int max = base + maxDoc; // one past the max doc in this segment.
+    if (maxDoc < 1 || base >= getLength()) {
+      return null;
+    }
+
+    long cost = 0;
+    for (int block = base >>> BLOCK_SHIFT;
+        block <= (max - 1) >>> BLOCK_SHIFT && block < containers.length;
+        block++) {
+      if (containers[block] != null) {
+        cost += containers[block].cardinality();
+      }
+    }
+    if (cost == 0) {
+      return null;
+    }
+    final long segmentCost = Math.min(cost, maxDoc);
+
+    final DocIdSetIterator iter = new RoaringIterator();
+    return new DocIdSetIterator() {
+      int adjustedDoc = -1;
+
+      @Override
+      public int docID() {
+        return adjustedDoc;
+      }
+
+      @Override
+      public int nextDoc() {
+        return adjust(adjustedDoc == -1 ? iter.advance(base) : iter.nextDoc());
+      }
+
+      @Override
+      public int advance(int target) {
+        if (target == NO_MORE_DOCS) return adjustedDoc = NO_MORE_DOCS;
+        return adjust(iter.advance(target + base));
+      }
+
+      private int adjust(int doc) {
+        return adjustedDoc = doc < max ? doc - base : NO_MORE_DOCS;
+      }
+
+      @Override
+      public long cost() {
+        return segmentCost;
+      }
+    };
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof SortedIntDocSet) {
+      // smaller sets are better at driving the intersection, so dispatch off of them.
+      return other.intersection(this);
+    }
+
+    Container[] result = new Container[containers.length];
+    if (other instanceof RoaringDocSet) {
+      Container[] otherContainers = ((RoaringDocSet) other).containers;
+      long[] scratch = new long[BLOCK_WORDS];
+      for (int block = 0; block < Math.min(result.length, otherContainers.length); block++) {
+        Container container = containers[block];
+        Container otherContainer = otherContainers[block];
+        if (container == null || otherContainer == null) continue;
+        result[block] = container.and(otherContainer.toWords(scratch), 0);
+      }
+    } else if (other instanceof BitDocSet) {
+      long[] words = ((BitDocSet) other).getBits().getBits();
+      for (int block = 0; block < result.length; block++) {
+        if (containers[block] == null || block * BLOCK_WORDS >= words.length) continue;
+        result[block] = containers[block].and(words, block * BLOCK_WORDS);
+      }
+    } else {
+      for (int block = 0; block < result.length; block++) {
+        if (containers[block] == null) continue;
+        result[block] = filter(block, other, true);
+      }
+    }
+    return new RoaringDocSet(result);
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof SortedIntDocSet) {
+      return other.intersectionSize(this);
+    }
+
+    int count = 0;
+    if (other instanceof RoaringDocSet) {
+      Container[] otherContainers = ((RoaringDocSet) other).containers;
+      long[] scratch = new long[BLOCK_WORDS];
+      for (int block = 0; block < Math.min(containers.length, otherContainers.length); block++) {
+        Container container = containers[block];
+        Container otherContainer = otherContainers[block];
+        if (container == null || otherContainer == null) continue;
+        count += container.andCardinality(otherContainer.toWords(scratch), 0);
+      }
+    } else if (other instanceof BitDocSet) {
+      long[] words = ((BitDocSet) other).getBits().getBits();
+      for (int block = 0; block < containers.length; block++) {
+        if (containers[block] == null || block * BLOCK_WORDS >= words.length) continue;
+        count += containers[block].andCardinality(words, block * BLOCK_WORDS);
+      }
+    } else {
+      // e.g. OffHeapBitDocSet; drive the intersection with our docs, it has fast random access
+      for (DocIterator iter = iterator(); iter.hasNext(); ) {
+        if (other.exists(iter.nextDoc())) count++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    if (other instanceof SortedIntDocSet) {
+      return other.intersects(this);
+    }
+
+    if (other instanceof RoaringDocSet) {
+      Container[] otherContainers = ((RoaringDocSet) other).containers;
+      long[] scratch = new long[BLOCK_WORDS];
+      for (int block = 0; block < Math.min(containers.length, otherContainers.length); block++) {
+        Container container = containers[block];
+        Container otherContainer = otherContainers[block];
+        if (container == null || otherContainer == null) continue;
+        if (container.intersects(otherContainer.toWords(scratch), 0)) return true;
+      }
+    } else if (other instanceof BitDocSet) {
+      long[] words = ((BitDocSet) other).getBits().getBits();
+      for (int block = 0; block < containers.length; block++) {
+        if (containers[block] == null || block * BLOCK_WORDS >= words.length) continue;
+        if (containers[block].intersects(words, block * BLOCK_WORDS)) return true;
+      }
+    } else {
+      for (DocIterator iter = iterator(); iter.hasNext(); ) {
+        if (other.exists(iter.nextDoc())) return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    if (other instanceof BitDocSet || other instanceof OffHeapBitDocSet) {
+      // the result is at least as dense as the other set
+      FixedBitSet newbits = other.getFixedBitSetClone();
+      newbits = FixedBitSet.ensureCapacity(newbits, getLength());
+      addAllTo(newbits);
+      return new BitDocSet(newbits);
+    }
+
+    Container[] otherContainers = copyOf(other).containers;
+    Container[] result = new Container[Math.max(containers.length, otherContainers.length)];
+    for (int block = 0; block < result.length; block++) {
+      Container container = block < containers.length ? containers[block] : null;
+      Container otherContainer = block < otherContainers.length ? otherContainers[block] : null;
+      if (container == null || otherContainer == null) {
+        result[block] = container == null ? otherContainer : container;
+      } else {
+        long[] words = new long[BLOCK_WORDS];
+        container.orInto(words, 0);
+        otherContainer.orInto(words, 0);
+        result[block] = Container.fromWords(words, 0, BLOCK_WORDS);
+      }
+    }
+    return new RoaringDocSet(result);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    Container[] result = new Container[containers.length];
+    if (other instanceof RoaringDocSet) {
+      Container[] otherContainers = ((RoaringDocSet) other).containers;
+      long[] scratch = new long[BLOCK_WORDS];
+      for (int block = 0; block < result.length; block++) {
+        Container container = containers[block];
+        if (container == null) continue;
+        Container otherContainer = block < otherContainers.length ? otherContainers[block] : null;
+        result[block] =
+            otherContainer == null
+                ? container
+                : container.andNot(otherContainer.toWords(scratch), 0);
+      }
+    } else if (other instanceof BitDocSet) {
+      long[] words = ((BitDocSet) other).getBits().getBits();
+      for (int block = 0; block < result.length; block++) {
+        if (containers[block] == null) continue;
+        result[block] =
+            block * BLOCK_WORDS >= words.length
+                ? containers[block]
+                : containers[block].andNot(words, block * BLOCK_WORDS);
+      }
+    } else {
+      for (int block = 0; block < result.length; block++) {
+        if (containers[block] == null) continue;
+        result[block] = filter(block, other, false);
+      }
+    }
+    return new RoaringDocSet(result);
+  }
+
+  /** Returns the docs of the block that are (or aren't) in the other set. */
+  private Container filter(int block, DocSet other, boolean exists) {
+    Container container = containers[block];
+    int base = block << BLOCK_SHIFT;
+    long[] words = new long[BLOCK_WORDS];
+    Cursor cursor = container.cursor();
+    for (int value = cursor.advance(0); value >= 0; value = cursor.advance(value + 1)) {
+      if (other.exists(base | value) == exists) {
+        words[value >>> 6] |= 1L << value;
+      }
+      if (value == BLOCK_MASK) break;
+    }
+    return Container.fromWords(words, 0, BLOCK_WORDS);
+  }
+
+  /** Clears the docs of this set from the bits. */
+  void andNotFrom(FixedBitSet bits) {
+    long[] words = bits.getBits();
+    for (int block = 0; block < containers.length; block++) {
+      if (containers[block] != null) {
+        containers[block].andNotFrom(words, block * BLOCK_WORDS);
+      }
+    }
+  }
+
+  @Override
+  public DocSetQuery makeQuery() {
+    return new DocSetQuery(this);
+  }
+
+  @Override
+  public void addAllTo(FixedBitSet target) {
+    long[] words = target.getBits();
+    for (int block = 0; block < containers.length; block++) {
+      if (containers[block] != null) {
+        containers[block].orInto(words, block * BLOCK_WORDS);
+      }
+    }
+  }
+
+  /** Containers are immutable, so a clone can share them. */
+  @Override
+  public RoaringDocSet clone() {
+    return new RoaringDocSet(containers.clone());
+  }
+
+  @Override
+  public Bits getBits() {
+    final int length = getLength();
+    return new Bits() {
+      @Override
+      public boolean get(int index) {
+        return exists(index);
+      }
+
+      @Override
+      public int length() {
+        return length;
+      }
+    };
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSet() {
+    return getFixedBitSetClone();
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSetClone() {
+    FixedBitSet bitSet = new FixedBitSet(getLength());
+    addAllTo(bitSet);
+    return bitSet;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public String toString() {
+    return "RoaringDocSet{"
+        + "size="
+        + size()
+        + ",ramUsed="
+        + RamUsageEstimator.humanReadableUnits(ramBytesUsed())
+        + '}';
+  }
+
+  /** Iterates over the docs of the whole set. */
+  private class RoaringIterator extends DocIdSetIterator {
+    private int block = -1;
+    private Cursor cursor;
+    private int doc = -1;
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      return advance(doc + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+      if (target == NO_MORE_DOCS) return doc = NO_MORE_DOCS;
+      int low = target & BLOCK_MASK;
+      if (block != target >>> BLOCK_SHIFT) {
+        block = target >>> BLOCK_SHIFT;
+        cursor = null;
+      }
+      for (; block < containers.length; block++, low = 0, cursor = null) {
+        if (cursor == null) {
+          if (containers[block] == null) continue;
+          cursor = containers[block].cursor();
+        }
+        int value = cursor.advance(low);
+        if (value >= 0) {
+          return doc = (block << BLOCK_SHIFT) | value;
+        }
+      }
+      return doc = NO_MORE_DOCS;
+    }
+
+    @Override
+    public long cost() {
+      return size;
+    }
+  }
+
+  /** Forward-only iteration over the values of a container. */
+  private interface Cursor {
+    /** Returns the first value that is &gt;= target, or -1. Targets must not decrease. */
+    int advance(int target);
+  }
+
+  /** The docs of one block, as offsets from the start of the block. */
+  abstract static class Container {
+    /** Bigger arrays are replaced by bitmaps, which are never larger. */
+    static final int MAX_ARRAY_SIZE = BLOCK_SIZE / 16;
+
+    abstract int cardinality();
+
+    abstract boolean contains(int value);
+
+    /** Returns the largest value. */
+    abstract int last();
+
+    abstract Cursor cursor();
+
+    abstract long ramBytesUsed();
+
+    /** Sets the values in the block of the words that starts at offset. */
+    abstract void orInto(long[] words, int offset);
+
+    /** Clears the values from the block of the words that starts at offset. */
+    abstract void andNotFrom(long[] words, int offset);
+
+    /** Returns how many of the values are set in the block of the words that starts at offset. */
+    abstract int andCardinality(long[] words, int offset);
+
+    boolean intersects(long[] words, int offset) {
+      return andCardinality(words, offset) > 0;
+    }
+
+    /** Returns the values set in the block of the words that starts at offset, or null. */
+    Container and(long[] words, int offset) {
+      long[] result = new long[BLOCK_WORDS];
+      orInto(result, 0);
+      int end = Math.min(words.length - offset, BLOCK_WORDS);
+      for (int i = 0; i < end; i++) {
+        result[i] &= words[offset + i];
+      }
+      Arrays.fill(result, Math.max(end, 0), BLOCK_WORDS, 0L);
+      return unlessUnchanged(Container.fromWords(result, 0, BLOCK_WORDS));
+    }
+
+    /** Returns the values not set in the block of the words that starts at offset, or null. */
+    Container andNot(long[] words, int offset) {
+      long[] result = new long[BLOCK_WORDS];
+      orInto(result, 0);
+      int end = Math.min(words.length - offset, BLOCK_WORDS);
+      for (int i = 0; i < end; i++) {
+        result[i] &= ~words[offset + i];
+      }
+      return unlessUnchanged(Container.fromWords(result, 0, BLOCK_WORDS));
+    }
+
+    /**
+     * Returns the values as a bitmap, in scratch unless this is a bitmap container. The result must
+     * not be modified.
+     */
+    long[] toWords(long[] scratch) {
+      Arrays.fill(scratch, 0L);
+      orInto(scratch, 0);
+      return scratch;
+    }
+
+    // a subset with the same cardinality has the same values, so keep the existing container
+    private Container unlessUnchanged(Container subset) {
+      return subset != null && subset.cardinality() == cardinality() ? this : subset;
+    }
+
+    /** Returns the number of bytes of the smallest container for these values. */
+    static long ramBytesUsed(int cardinality, int runs) {
+      if (4L * runs < Math.min(2L * cardinality, 8L * BLOCK_WORDS)) {
+        return RunContainer.BASE_RAM_BYTES_USED
+            + RamUsageEstimator.alignObjectSize(
+                RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + 4L * runs);
+      } else if (cardinality <= MAX_ARRAY_SIZE) {
+        return ArrayContainer.BASE_RAM_BYTES_USED
+            + RamUsageEstimator.alignObjectSize(
+                RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + 2L * cardinality);
+      } else {
+        return BitmapContainer.BASE_RAM_BYTES_USED
+            + RamUsageEstimator.alignObjectSize(
+                RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + 8L * BLOCK_WORDS);
+      }
+    }
+
+    /**
+     * Returns the smallest container for the values in the (at most {@link #BLOCK_WORDS}) words
+     * from offset to limit, or null if there are none.
+     */
+    static Container fromWords(long[] words, int offset, int limit) {
+      int end = Math.min(offset + BLOCK_WORDS, limit);
+      int cardinality = 0;
+      int runs = 0;
+      long prev = 0;
+      for (int i = offset; i < end; i++) {
+        long word = words[i];
+        cardinality += Long.bitCount(word);
+        // a run starts at every set bit whose previous bit is clear
+        runs += Long.bitCount(word & ~((word << 1) | (prev >>> 63)));
+        prev = word;
+      }
+      if (cardinality == 0) {
+        return null;
+      }
+
+      if (4L * runs < Math.min(2L * cardinality, 8L * BLOCK_WORDS)) {
+        char[] pairs = new char[runs << 1];
+        int n = 0;
+        int start = nextSetBit(words, offset, end, 0);
+        while (start >= 0) {
+          int stop = nextClearBit(words, offset, end, start);
+          pairs[n++] = (char) start;
+          pairs[n++] = (char) (stop - start - 1);
+          start = stop < BLOCK_SIZE ? nextSetBit(words, offset, end, stop) : -1;
+        }
+        return new RunContainer(pairs);
+      } else if (cardinality <= MAX_ARRAY_SIZE) {
+        char[] values = new char[cardinality];
+        int n = 0;
+        for (int i = offset; i < end; i++) {
+          long word = words[i];
+          int wordBase = (i - offset) << 6;
+          while (word != 0) {
+            values[n++] = (char) (wordBase | Long.numberOfTrailingZeros(word));
+            word &= word - 1;
+          }
+        }
+        return new ArrayContainer(values);
+      } else {
+        long[] bits = new long[BLOCK_WORDS];
+        System.arraycopy(words, offset, bits, 0, end - offset);
+        return new BitmapContainer(bits, cardinality);
+      }
+    }
+
+    /** Returns the first set bit &gt;= from in the block of the words, or -1. */
+    static int nextSetBit(long[] words, int offset, int end, int from) {
+      int i = offset + (from >>> 6);
+      if (i >= end) return -1;
+      long word = words[i] >>> from;
+      if (word != 0) return from + Long.numberOfTrailingZeros(word);
+      while (++i < end) {
+        word = words[i];
+        if (word != 0) return ((i - offset) << 6) + Long.numberOfTrailingZeros(word);
+      }
+      return -1;
+    }
+
+    /** Returns the first clear bit &gt;= from in the block of the words, or the block size. */
+    static int nextClearBit(long[] words, int offset, int end, int from) {
+      int i = offset + (from >>> 6);
+      if (i >= end) return from;
+      long word = ~words[i] >>> from;
+      if (word != 0) return from + Long.numberOfTrailingZeros(word);
+      while (++i < end) {
+        word = ~words[i];
+        if (word != 0) return ((i - offset) << 6) + Long.numberOfTrailingZeros(word);
+      }
+      return (end - offset) << 6;
+    }
+  }
+
+  /** Sorted values, for sparse blocks. */
+  static final class ArrayContainer extends Container {
+    static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(ArrayContainer.class);
+
+    private final char[] values;
+
+    ArrayContainer(char[] values) {
+      this.values = values;
+    }
+
+    @Override
+    int cardinality() {
+      return values.length;
+    }
+
+    @Override
+    boolean contains(int value) {
+      return Arrays.binarySearch(values, (char) value) >= 0;
+    }
+
+    @Override
+    int last() {
+      return values[values.length - 1];
+    }
+
+    @Override
+    Cursor cursor() {
+      return new Cursor() {
+        int idx = 0; // values before idx are smaller than the last target
+
+        @Override
+        public int advance(int target) {
+          if (idx < values.length && values[idx] < target) {
+            if (++idx < values.length && values[idx] < target) {
+              int found = Arrays.binarySearch(values, idx, values.length, (char) target);
+              idx = found < 0 ? -found - 1 : found;
+            }
+          }
+          return idx < values.length ? values[idx] : -1;
+        }
+      };
+    }
+
+    @Override
+    long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(values);
+    }
+
+    @Override
+    void orInto(long[] words, int offset) {
+      for (char value : values) {
+        int i = offset + (value >>> 6);
+        if (i >= words.length) break;
+        words[i] |= 1L << value;
+      }
+    }
+
+    @Override
+    void andNotFrom(long[] words, int offset) {
+      for (char value : values) {
+        int i = offset + (value >>> 6);
+        if (i >= words.length) break;
+        words[i] &= ~(1L << value);
+      }
+    }
+
+    @Override
+    int andCardinality(long[] words, int offset) {
+      int count = 0;
+      for (char value : values) {
+        int i = offset + (value >>> 6);
+        if (i >= words.length) break;
+        if ((words[i] & (1L << value)) != 0) count++;
+      }
+      return count;
+    }
+
+    @Override
+    Container and(long[] words, int offset) {
+      return filter(words, offset, true);
+    }
+
+    @Override
+    Container andNot(long[] words, int offset) {
+      return filter(words, offset, false);
+    }
+
+    private Container filter(long[] words, int offset, boolean set) {
+      char[] result = new char[values.length];
+      int n = 0;
+      for (char value : values) {
+        int i = offset + (value >>> 6);
+        boolean isSet = i < words.length && (words[i] & (1L << value)) != 0;
+        if (isSet == set) result[n++] = value;
+      }
+      if (n == values.length) return this;
+      return n == 0 ? null : new ArrayContainer(Arrays.copyOf(result, n));
+    }
+  }
+
+  /** One bit per doc, for dense blocks. */
+  static final class BitmapContainer extends Container {
+    static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(BitmapContainer.class);
+
+    private final long[] bits;
+    private final int cardinality;
+
+    BitmapContainer(long[] bits, int cardinality) {
+      this.bits = bits;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int value) {
+      return (bits[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int last() {
+      int i = BLOCK_WORDS - 1;
+      while (bits[i] == 0) i--;
+      return (i << 6) + 63 - Long.numberOfLeadingZeros(bits[i]);
+    }
+
+    @Override
+    Cursor cursor() {
+      return target -> nextSetBit(bits, 0, BLOCK_WORDS, target);
+    }
+
+    @Override
+    long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bits);
+    }
+
+    @Override
+    long[] toWords(long[] scratch) {
+      return bits;
+    }
+
+    @Override
+    void orInto(long[] words, int offset) {
+      int end = Math.min(words.length - offset, BLOCK_WORDS);
+      for (int i = 0; i < end; i++) {
+        words[offset + i] |= bits[i];
+      }
+    }
+
+    @Override
+    void andNotFrom(long[] words, int offset) {
+      int end = Math.min(words.length - offset, BLOCK_WORDS);
+      for (int i = 0; i < end; i++) {
+        words[offset + i] &= ~bits[i];
+      }
+    }
+
+    @Override
+    int andCardinality(long[] words, int offset) {
+      int end = Math.min(words.length - offset, BLOCK_WORDS);
+      int count = 0;
+      for (int i = 0; i < end; i++) {
+        count += Long.bitCount(words[offset + i] & bits[i]);
+      }
+      return count;
+    }
+
+    @Override
+    boolean intersects(long[] words, int offset) {
+      int end = Math.min(words.length - offset, BLOCK_WORDS);
+      for (int i = 0; i < end; i++) {
+        if ((words[offset + i] & bits[i]) != 0) return true;
+      }
+      return false;
+    }
+  }
+
+  /** Pairs of (start, length - 1), for blocks of consecutive docs. */
+  static final class RunContainer extends Container {
+    static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(RunContainer.class);
+
+    private final char[] runs;
+    private final int cardinality;
+
+    RunContainer(char[] runs) {
+      this.runs = runs;
+      int cardinality = 0;
+      for (int i = 1; i < runs.length; i += 2) {
+        cardinality += runs[i] + 1;
+      }
+      this.cardinality = cardinality;
+    }
+
+    private int start(int run) {
+      return runs[run << 1];
+    }
+
+    /** the last value (inclusive) of the run */
+    private int end(int run) {
+      return runs[run << 1] + runs[(run << 1) + 1];
+    }
+
+    private int numRuns() {
+      return runs.length >>> 1;
+    }
+
+    /** Returns the first run at or after fromRun that ends at or after value. */
+    private int findRun(int value, int fromRun) {
+      int lo = fromRun;
+      int hi = numRuns() - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        if (end(mid) < value) {
+          lo = mid + 1;
+        } else {
+          hi = mid - 1;
+        }
+      }
+      return lo;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int value) {
+      int run = findRun(value, 0);
+      return run < numRuns() && start(run) <= value;
+    }
+
+    @Override
+    int last() {
+      return end(numRuns() - 1);
+    }
+
+    @Override
+    Cursor cursor() {
+      return new Cursor() {
+        int run = 0; // runs before this one end before the last target
+
+        @Override
+        public int advance(int target) {
+          if (run < numRuns() && end(run) < target) {
+            if (++run < numRuns() && end(run) < target) {
+              run = findRun(target, run);
+            }
+          }
+          return run < numRuns() ? Math.max(start(run), target) : -1;
+        }
+      };
+    }
+
+    @Override
+    long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(runs);
+    }
+
+    /** Applies the run to the masked words; returns false once past the end of the words. */
+    private interface RangeVisitor {
+      boolean visit(int wordIndex, long mask);
+    }
+
+    private void visitRuns(long[] words, int offset, RangeVisitor visitor) {
+      for (int run = 0; run < numRuns(); run++) {
+        int from = start(run);
+        int to = end(run); // inclusive
+        int fromWord = from >>> 6;
+        int toWord = to >>> 6;
+        for (int w = fromWord; w <= toWord; w++) {
+          if (offset + w >= words.length) return;
+          long mask = -1L;
+          if (w == fromWord) mask &= -1L << from;
+          if (w == toWord) mask &= -1L >>> (63 - (to & 63));
+          if (!visitor.visit(offset + w, mask)) return;
+        }
+      }
+    }
+
+    @Override
+    void orInto(long[] words, int offset) {
+      visitRuns(
+          words,
+          offset,
+          (i, mask) -> {
+            words[i] |= mask;
+            return true;
+          });
+    }
+
+    @Override
+    void andNotFrom(long[] words, int offset) {
+      visitRuns(
+          words,
+          offset,
+          (i, mask) -> {
+            words[i] &= ~mask;
+            return true;
+          });
+    }
+
+    @Override
+    int andCardinality(long[] words, int offset) {
+      int[] count = new int[1];
+      visitRuns(
+          words,
+          offset,
+          (i, mask) -> {
+            count[0] += Long.bitCount(words[i] & mask);
+            return true;
+          });
+      return count[0];
+    }
+
+    @Override
+    boolean intersects(long[] words, int offset) {
+      boolean[] found = new boolean[1];
+      visitRuns(words, offset, (i, mask) -> !(found[0] = (words[i] & mask) != 0));
+      return found[0];
+    }
+  }
+}
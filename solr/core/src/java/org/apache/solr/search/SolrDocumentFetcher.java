@@ -88,6 +88,8 @@ public class SolrDocumentFetcher {
 
   private final SolrCache<Integer, Document> documentCache;
 
+  private final PerSegmentStoredFieldsCache perSegmentDocumentCache;
+
   private final Set<String> allStored;
 
   private final Set<String> dvsCanSubstituteStored;
@@ -120,13 +122,18 @@ public class SolrDocumentFetcher {
   SolrDocumentFetcher(SolrIndexSearcher searcher, SolrConfig solrConfig, boolean cachingEnabled) {
     this.searcher = searcher;
     this.enableLazyFieldLoading = solrConfig.enableLazyFieldLoading;
-    if (cachingEnabled) {
+    if (cachingEnabled && solrConfig.perSegmentDocumentCache) {
+      documentCache = null;
+      perSegmentDocumentCache = searcher.getCore().getPerSegmentDocumentCache();
+    } else if (cachingEnabled) {
       documentCache =
           solrConfig.documentCacheConfig == null
               ? null
               : solrConfig.documentCacheConfig.newInstance();
+      perSegmentDocumentCache = null;
     } else {
       documentCache = null;
+      perSegmentDocumentCache = null;
     }
 
     final Set<String> nonStoredDVsUsedAsStored = new HashSet<>();
@@ -272,10 +279,21 @@ public class SolrDocumentFetcher {
     final DirectoryReader reader = searcher.getIndexReader();
     final SolrDocumentStoredFieldVisitor visitor =
         new SolrDocumentStoredFieldVisitor(fields, reader, i);
-    reader.document(i, visitor);
+    visitStoredFields(i, visitor);
     return visitor.getDocument();
   }
 
+  /** Visits the stored fields of a document, through the per-segment document cache if any. */
+  private void visitStoredFields(int docId, StoredFieldVisitor visitor) throws IOException {
+    if (perSegmentDocumentCache != null) {
+      List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+      LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+      perSegmentDocumentCache.document(leaf, docId - leaf.docBase, largeFields, visitor);
+    } else {
+      searcher.getIndexReader().document(docId, visitor);
+    }
+  }
+
   /**
    * This is an optimized version for populating a SolrDocument that:
    *
@@ -374,7 +392,7 @@ public class SolrDocumentFetcher {
       Document cached = doc(docId);
       visitFromCached(cached, visitor);
     } else {
-      searcher.getIndexReader().document(docId, visitor);
+      visitStoredFields(docId, visitor);
     }
   }
 
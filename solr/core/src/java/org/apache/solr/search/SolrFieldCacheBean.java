@@ -62,6 +62,7 @@ public class SolrFieldCacheBean implements SolrInfoBean {
                 String[] entries = fieldCacheStats.info;
                 map.put("entries_count", entries.length);
                 map.put("total_size", fieldCacheStats.totalSize);
+                map.put("offheap_size", fieldCacheStats.offHeapBytesUsed);
                 for (int i = 0; i < entries.length; i++) {
                   final String entry = entries[i];
                   map.put("entry#" + i, entry);
@@ -26,11 +26,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -128,6 +130,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
   public static final String STATS_SOURCE = "org.apache.solr.stats_source";
   public static final String STATISTICS_KEY = "searcher";
+
+  /** The key of the plans of the filters of a request in its context, for the debug output. */
+  public static final String FILTER_PLAN_CONTEXT_KEY = "FilterPlan";
+
   // These should *only* be used for debugging or monitoring purposes
   public static final AtomicLong numOpens = new AtomicLong();
   public static final AtomicLong numCloses = new AtomicLong();
@@ -146,20 +152,35 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   private final Date openTime = new Date();
   private final long openNanoTime = System.nanoTime();
   private Date registerTime;
-  private long warmupTime = 0;
+  private volatile long warmupTime = 0;
+  private volatile boolean warming = false;
+  private volatile boolean warmingStopped = false;
+  private volatile int warmedCaches = 0;
   private final DirectoryReader reader;
   private final boolean closeReader;
 
   private final int queryResultWindowSize;
   private final int queryResultMaxDocsCached;
   private final boolean useFilterForSortedQuery;
+  private final boolean queryResultIncrementalPaging;
+  private final boolean filterPlanner;
+  private final boolean queryResultCoalescing;
+  private final int queryResultCoalescingMaxWaitMs;
 
   private final boolean cachingEnabled;
   private final SolrCache<Query, DocSet> filterCache;
+  private final PerSegmentDocSetCache perSegmentFilterCache;
   private final SolrCache<QueryResultKey, DocList> queryResultCache;
   private final SolrCache<String, UnInvertedField> fieldValueCache;
   private final LongAdder fullSortCount = new LongAdder();
   private final LongAdder skipSortCount = new LongAdder();
+  private final LongAdder queryResultHits = new LongAdder();
+  private final LongAdder queryResultPartialHits = new LongAdder();
+  private final LongAdder queryResultMisses = new LongAdder();
+  private final Map<QueryResultKey, InFlightQuery> inFlightQueries = new ConcurrentHashMap<>();
+  private final LongAdder coalescingLeaders = new LongAdder();
+  private final LongAdder coalescingWaits = new LongAdder();
+  private final LongAdder coalescingTimeouts = new LongAdder();
   private final LongAdder liveDocsNaiveCacheHitCount = new LongAdder();
   private final LongAdder liveDocsInsertsCount = new LongAdder();
   private final LongAdder liveDocsHitCount = new LongAdder();
@@ -202,7 +223,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   private static DirectoryReader wrapReader(SolrCore core, DirectoryReader reader)
       throws IOException {
     assert reader != null;
-    reader = UninvertingReader.wrap(reader, core.getLatestSchema().getUninversionMapper());
+    reader =
+        UninvertingReader.wrap(
+            reader,
+            core.getLatestSchema().getUninversionMapper(),
+            core.getSolrConfig().offHeapUninvertedFields);
     if (useExitableDirectoryReader) { // SOLR-16693 legacy; may be removed.  Probably inefficient.
       reader = ExitableDirectoryReader.wrap(reader, SolrQueryTimeoutImpl.getInstance());
     }
@@ -374,6 +399,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     this.queryResultWindowSize = solrConfig.queryResultWindowSize;
     this.queryResultMaxDocsCached = solrConfig.queryResultMaxDocsCached;
     this.useFilterForSortedQuery = solrConfig.useFilterForSortedQuery;
+    this.queryResultIncrementalPaging = solrConfig.queryResultIncrementalPaging;
+    this.filterPlanner = solrConfig.filterPlanner;
+    this.queryResultCoalescing = solrConfig.queryResultCoalescing;
+    this.queryResultCoalescingMaxWaitMs = solrConfig.queryResultCoalescingMaxWaitMs;
 
     this.docFetcher = new SolrDocumentFetcher(this, solrConfig, enableCache);
 
@@ -418,6 +447,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       this.cacheList = NO_CACHES;
     }
 
+    this.perSegmentFilterCache = filterCache == null ? null : core.getPerSegmentFilterCache();
+
     // We already have our own filter cache
     setQueryCache(null);
 
@@ -910,11 +941,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     if (answer instanceof BitDocSet) {
       return (BitDocSet) answer;
     }
-    FixedBitSet bs = new FixedBitSet(maxDoc());
-    DocIterator iter = answer.iterator();
-    while (iter.hasNext()) {
-      bs.set(iter.nextDoc());
+    if (answer instanceof OffHeapBitDocSet) {
+      return ((OffHeapBitDocSet) answer).toBitDocSet();
     }
+    FixedBitSet bs = new FixedBitSet(maxDoc());
+    answer.addAllTo(bs);
 
     return new BitDocSet(bs, answer.size());
   }
@@ -922,7 +953,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   public BitDocSet getDocSetBits(Query q) throws IOException {
     DocSet answer = getDocSet(q);
     BitDocSet answerBits = makeBitDocSet(answer);
-    if (answerBits != answer && filterCache != null) {
+    // an off-heap answer is already the best representation the filterCache can hold
+    if (answerBits != answer && !(answer instanceof OffHeapBitDocSet) && filterCache != null) {
       filterCache.put(q, answerBits);
     }
     return answerBits;
@@ -982,17 +1014,32 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
       // Not found in the cache so compute and put in the cache
       if (answer == null) {
-        answer = getDocSetNC(query, null);
+        answer = getDocSetForFilterCache(query);
         filterCache.put(query, answer);
       }
     } else {
-      answer = filterCache.computeIfAbsent(query, q -> getDocSetNC(q, null));
+      answer = filterCache.computeIfAbsent(query, this::getDocSetForFilterCache);
     }
 
     assert !(answer instanceof MutableBitDocSet) : "should not be mutable";
     return answer;
   }
 
+  /**
+   * Computes the DocSet of a filterCache miss. If the filterCache is configured with <code>
+   * perSegment="true"</code>, the matches of segments that haven't changed since a previous
+   * searcher are reused, so only new segments need to be searched.
+   */
+  private DocSet getDocSetForFilterCache(Query query) throws IOException {
+    if (perSegmentFilterCache != null) {
+      DocSet answer = perSegmentFilterCache.getDocSet(this, query);
+      if (answer != null) {
+        return answer;
+      }
+    }
+    return getDocSetNC(query, null);
+  }
+
   private static final MatchAllDocsQuery MATCH_ALL_DOCS_QUERY = new MatchAllDocsQuery();
 
   /** Used as a synchronization point to handle the lazy-init of {@link #liveDocs}. */
@@ -1164,6 +1211,13 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       return pf;
     }
 
+    FilterPlanner plan = null;
+    if (filterPlanner && filterCache != null && queries.size() > 1) {
+      plan = FilterPlanner.plan(this, queries);
+      queries = plan.getQueries();
+      addFilterPlanDebugInfo(plan);
+    }
+
     // We combine all the filter queries that come from the filter cache into "answer".
     // This might become pf.answer but not if there are any non-cached filters
     DocSet answer = null;
@@ -1200,7 +1254,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       }
 
       Query posQuery = QueryUtils.getAbs(q);
-      DocSet docSet = getPositiveDocSet(posQuery);
+      DocSet docSet = plan == null ? null : plan.getCachedDocSet(posQuery);
+      if (docSet == null) {
+        docSet = getPositiveDocSet(posQuery);
+      }
       // Negative query if absolute value different from original
       if (Objects.equals(q, posQuery)) {
         // keep track of the smallest positive set; use "answer" for this.
@@ -1297,6 +1354,24 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return pf;
   }
 
+  /** Adds the plan of the filters to the debug output of the request, if it has any. */
+  private static void addFilterPlanDebugInfo(FilterPlanner plan) {
+    SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    if (requestInfo == null
+        || requestInfo.getResponseBuilder() == null
+        || !requestInfo.getResponseBuilder().isDebugQuery()) {
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    List<Object> plans =
+        (List<Object>)
+            requestInfo
+                .getReq()
+                .getContext()
+                .computeIfAbsent(FILTER_PLAN_CONTEXT_KEY, k -> new ArrayList<>());
+    plans.add(plan.toNamedList());
+  }
+
   /**
    * @lucene.internal
    */
@@ -1502,6 +1577,64 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   public static final int GET_DOCLIST = 0x02; // get the documents actually returned in a response
   public static final int GET_SCORES = 0x01;
 
+  /** Rounds the number of requested docs up to the next queryResultWindowSize. */
+  private int roundUpToWindow(int maxDocRequested) {
+    // handle 0 special case as well as avoid idiv in the common case.
+    if (maxDocRequested < queryResultWindowSize) {
+      return queryResultWindowSize;
+    }
+    int supersetMaxDoc =
+        ((maxDocRequested - 1) / queryResultWindowSize + 1) * queryResultWindowSize;
+    return supersetMaxDoc < 0 ? maxDocRequested : supersetMaxDoc;
+  }
+
+  /**
+   * Extends a cached DocList to <code>nDocs</code> docs by only collecting the docs that follow its
+   * last doc, or returns null if the list doesn't allow that.
+   */
+  private DocList extendDocList(DocList cached, int nDocs, QueryCommand cmd, int flags)
+      throws IOException {
+    if (!(cached instanceof DocSlice)) return null;
+    DocSlice prefix = (DocSlice) cached;
+    if (prefix.lastScoreDoc == null || prefix.offset != 0 || prefix.len != prefix.docs.length) {
+      return null;
+    }
+
+    QueryCommand next =
+        new QueryCommand()
+            .setQuery(cmd.getQuery())
+            .setFilterList(cmd.getFilterList())
+            .setSort(cmd.getSort())
+            .setTimeAllowed(cmd.getTimeAllowed())
+            .setMinExactCount(cmd.getMinExactCount())
+            .setMultiThreaded(cmd.isMultiThreaded())
+            .setFlags(prefix.hasScores() ? GET_SCORES : 0)
+            .setSearchAfter(prefix.lastScoreDoc);
+    next.setSupersetMaxDoc(Math.max(nDocs - prefix.len, 1));
+    QueryResult qr = new QueryResult();
+    getDocListNC(qr, next);
+    if (qr.isPartialResults()) return null;
+
+    DocSlice rest = (DocSlice) qr.getDocList();
+    int len = prefix.len + rest.len;
+    int[] docs = Arrays.copyOf(prefix.docs, len);
+    System.arraycopy(rest.docs, 0, docs, prefix.len, rest.len);
+    float[] scores = null;
+    if (prefix.scores != null) {
+      scores = Arrays.copyOf(prefix.scores, len);
+      System.arraycopy(rest.scores, 0, scores, prefix.len, rest.len);
+    }
+    return new DocSlice(
+        0,
+        len,
+        docs,
+        scores,
+        prefix.matches,
+        prefix.maxScore,
+        prefix.matchesRelation,
+        rest.len > 0 ? rest.lastScoreDoc : null);
+  }
+
   private static boolean sortIncludesOtherThanScore(final Sort sort) {
     if (sort == null) {
       return false;
@@ -1530,11 +1663,95 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
   }
 
+  /** An execution of a query whose result will be put in the queryResultCache. */
+  private static final class InFlightQuery {
+    final int supersetMaxDoc;
+    final CountDownLatch done = new CountDownLatch(1);
+
+    InFlightQuery(int supersetMaxDoc) {
+      this.supersetMaxDoc = supersetMaxDoc;
+    }
+  }
+
+  /**
+   * Returns the queryResultCache key of a command, or null if its result won't be looked up in and
+   * put in the queryResultCache.
+   */
+  private QueryResultKey getQueryResultKey(QueryCommand cmd) {
+    int flags = cmd.getFlags();
+    Query q = cmd.getQuery();
+    if (queryResultCache == null
+        || (flags & (NO_CHECK_QCACHE | NO_SET_QCACHE)) != 0
+        || (q instanceof ExtendedQuery && !((ExtendedQuery) q).getCache())) {
+      return null;
+    }
+    return newQueryResultKey(cmd, flags);
+  }
+
+  private QueryResultKey newQueryResultKey(QueryCommand cmd, int flags) {
+    List<Query> filters = cmd.getFilterList();
+    if (queryResultIncrementalPaging && filters != null && filters.size() > 1) {
+      // the order of the filters is already ignored by the key, but not duplicates
+      filters = new ArrayList<>(new LinkedHashSet<>(filters));
+    }
+    return new QueryResultKey(
+        cmd.getQuery(), filters, cmd.getSort(), flags, cmd.getMinExactCount());
+  }
+
+  /**
+   * Gets the results of a command, through the queryResultCache. If queryResultCoalescing is
+   * enabled, a command that is identical to one that is being executed waits for the other one to
+   * complete and put its results in the queryResultCache, rather than executing the query again.
+   */
+  private void getDocListC(QueryResult qr, QueryCommand cmd) throws IOException {
+    QueryResultKey key = queryResultCoalescing ? getQueryResultKey(cmd) : null;
+    if (key == null) {
+      doGetDocListC(qr, cmd);
+      return;
+    }
+    int maxDocRequested = cmd.getOffset() + cmd.getLen();
+    if (maxDocRequested < 0 || maxDocRequested > maxDoc()) maxDocRequested = maxDoc();
+
+    InFlightQuery pending = new InFlightQuery(roundUpToWindow(maxDocRequested));
+    InFlightQuery inFlight = inFlightQueries.putIfAbsent(key, pending);
+    if (inFlight == null) {
+      coalescingLeaders.increment();
+      try {
+        doGetDocListC(qr, cmd);
+      } finally {
+        inFlightQueries.remove(key, pending);
+        pending.done.countDown();
+      }
+      return;
+    }
+
+    // the other execution won't collect enough docs for a deeper page
+    if (maxDocRequested <= inFlight.supersetMaxDoc) {
+      long maxWaitMs = queryResultCoalescingMaxWaitMs;
+      if (cmd.getTimeAllowed() > 0) {
+        maxWaitMs = Math.min(maxWaitMs, cmd.getTimeAllowed());
+      }
+      try {
+        if (inFlight.done.await(maxWaitMs, TimeUnit.MILLISECONDS)) {
+          coalescingWaits.increment();
+        } else {
+          coalescingTimeouts.increment();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(ErrorCode.SERVER_ERROR, "Interrupted waiting for a query", e);
+      }
+    }
+    // the results are usually in the queryResultCache now; if not (e.g. partial results, too many
+    // docs to cache, or a timeout), the query is executed again
+    doGetDocListC(qr, cmd);
+  }
+
   /**
    * getDocList version that uses+populates query and filter caches. In the event of a timeout, the
    * cache is not populated.
    */
-  private void getDocListC(QueryResult qr, QueryCommand cmd) throws IOException {
+  private void doGetDocListC(QueryResult qr, QueryCommand cmd) throws IOException {
     DocListAndSet out = new DocListAndSet();
     qr.setDocListAndSet(out);
     QueryResultKey key = null;
@@ -1558,8 +1775,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         && (flags & (NO_CHECK_QCACHE | NO_SET_QCACHE)) != ((NO_CHECK_QCACHE | NO_SET_QCACHE))) {
       // all the current flags can be reused during warming,
       // so set all of them on the cache key.
-      key =
-          new QueryResultKey(q, cmd.getFilterList(), cmd.getSort(), flags, cmd.getMinExactCount());
+      key = newQueryResultKey(cmd, flags);
       if ((flags & NO_CHECK_QCACHE) == 0) {
         superset = queryResultCache.get(key);
 
@@ -1569,9 +1785,27 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
             // NOTE: subset() returns null if the DocList has fewer docs than
             // requested
             out.docList = superset.subset(cmd.getOffset(), cmd.getLen());
+            if (out.docList == null && queryResultIncrementalPaging) {
+              // only a prefix of the requested docs is cached; collect the docs after it
+              DocList extended =
+                  extendDocList(superset, roundUpToWindow(maxDocRequested), cmd, flags);
+              if (extended != null) {
+                superset = extended;
+                out.docList = superset.subset(cmd.getOffset(), cmd.getLen());
+                if ((flags & NO_SET_QCACHE) == 0
+                    && superset.size() <= queryResultMaxDocsCached) {
+                  queryResultCache.put(key, superset);
+                }
+                queryResultPartialHits.increment();
+              }
+            } else if (out.docList != null) {
+              queryResultHits.increment();
+            }
           }
         }
-        if (out.docList != null) {
+        if (out.docList == null) {
+          queryResultMisses.increment();
+        } else {
           // found the docList in the cache... now check if we need the docset too.
           // OPT: possible future optimization - if the doclist contains all the matches,
           // use it to make the docset instead of rerunning the query.
@@ -1593,14 +1827,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       // next resultWindowSize for better caching.
 
       if ((flags & NO_SET_QCACHE) == 0) {
-        // handle 0 special case as well as avoid idiv in the common case.
-        if (maxDocRequested < queryResultWindowSize) {
-          supersetMaxDoc = queryResultWindowSize;
-        } else {
-          supersetMaxDoc =
-              ((maxDocRequested - 1) / queryResultWindowSize + 1) * queryResultWindowSize;
-          if (supersetMaxDoc < 0) supersetMaxDoc = maxDocRequested;
-        }
+        supersetMaxDoc = roundUpToWindow(maxDocRequested);
       } else {
         key = null; // we won't be caching the result
       }
@@ -1766,6 +1993,17 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
   }
 
+  /**
+   * Returns the last doc of the top docs, to later collect the docs after it, or null if the top
+   * docs were not collected in a way that allows that.
+   */
+  private static ScoreDoc lastScoreDoc(QueryCommand cmd, TopDocs topDocs) {
+    if (cmd.getQuery() instanceof RankQuery || topDocs.scoreDocs.length == 0) {
+      return null;
+    }
+    return topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+  }
+
   /**
    * Helper method for inspecting QueryCommand and creating the appropriate {@link TopDocsCollector}
    *
@@ -1783,13 +2021,14 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
     if (null == cmd.getSort()) {
       assert null == cmd.getCursorMark() : "have cursor but no sort";
-      return TopScoreDocCollector.create(len, minNumFound);
+      return TopScoreDocCollector.create(len, cmd.getSearchAfter(), minNumFound);
     } else {
       // we have a sort
       final Sort weightedSort = weightSort(cmd.getSort());
       final CursorMark cursor = cmd.getCursorMark();
 
-      final FieldDoc searchAfter = (null != cursor ? cursor.getSearchAfterFieldDoc() : null);
+      final FieldDoc searchAfter =
+          (null != cursor ? cursor.getSearchAfterFieldDoc() : (FieldDoc) cmd.getSearchAfter());
       return TopFieldCollector.create(weightedSort, len, searchAfter, minNumFound);
     }
   }
@@ -1804,12 +2043,14 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     float maxScore;
     int[] ids;
     float[] scores;
+    ScoreDoc lastScoreDoc = null;
 
     boolean needScores = (cmd.getFlags() & GET_SCORES) != 0;
 
     ProcessedFilter pf = getProcessedFilter(cmd.getFilterList());
     final Query query =
         QueryUtils.combineQueryAndFilter(QueryUtils.makeQueryable(cmd.getQuery()), pf.filter);
+    final int numThreads = MultiThreadedSearcher.getNumThreads(this, cmd, pf);
     Relation hitsRelation;
 
     // handle zero case...
@@ -1866,6 +2107,28 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       // no docs on this page, so cursor doesn't change
       qr.setNextCursorMark(cmd.getCursorMark());
       hitsRelation = Relation.EQUAL_TO;
+    } else if (numThreads > 1) {
+      MultiThreadedSearcher.Result result =
+          new MultiThreadedSearcher(this)
+              .search(qr, query, cmd, len, false, needScores, numThreads);
+      TopDocs topDocs = result.topDocs;
+      totalHits = (int) topDocs.totalHits.value;
+      hitsRelation = topDocs.totalHits.relation;
+      if (cmd.getSort() != null && needScores) {
+        TopFieldCollector.populateScores(topDocs.scoreDocs, this, query);
+      }
+      populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
+      lastScoreDoc = lastScoreDoc(cmd, topDocs);
+
+      maxScore = totalHits > 0 ? result.maxScore : 0.0f;
+      nDocsReturned = topDocs.scoreDocs.length;
+      ids = new int[nDocsReturned];
+      scores = needScores ? new float[nDocsReturned] : null;
+      for (int i = 0; i < nDocsReturned; i++) {
+        ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+        ids[i] = scoreDoc.doc;
+        if (scores != null) scores[i] = scoreDoc.score;
+      }
     } else {
       final TopDocsCollector<?> topCollector = buildTopDocsCollector(len, cmd);
       MaxScoreCollector maxScoreCollector = null;
@@ -1890,6 +2153,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         TopFieldCollector.populateScores(topDocs.scoreDocs, this, query);
       }
       populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
+      lastScoreDoc = lastScoreDoc(cmd, topDocs);
 
       maxScore =
           totalHits > 0
@@ -1907,7 +2171,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
     int sliceLen = Math.min(lastDocRequested, nDocsReturned);
     if (sliceLen < 0) sliceLen = 0;
-    qr.setDocList(new DocSlice(0, sliceLen, ids, scores, totalHits, maxScore, hitsRelation));
+    qr.setDocList(
+        new DocSlice(
+            0, sliceLen, ids, scores, totalHits, maxScore, hitsRelation, lastScoreDoc));
   }
 
   // any DocSet returned is for the query only, without any filtering... that way it may
@@ -1922,6 +2188,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     float maxScore;
     int[] ids;
     float[] scores;
+    ScoreDoc lastScoreDoc = null;
     DocSet set;
 
     boolean needScores = (cmd.getFlags() & GET_SCORES) != 0;
@@ -1931,9 +2198,41 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     ProcessedFilter pf = getProcessedFilter(cmd.getFilterList());
     final Query query =
         QueryUtils.combineQueryAndFilter(QueryUtils.makeQueryable(cmd.getQuery()), pf.filter);
-
-    // handle zero case...
-    if (lastDocRequested <= 0) {
+    final int numThreads = MultiThreadedSearcher.getNumThreads(this, cmd, pf);
+
+    if (numThreads > 1) {
+      int topN = lastDocRequested <= 0 ? 0 : len;
+      MultiThreadedSearcher.Result result =
+          new MultiThreadedSearcher(this)
+              .search(qr, query, cmd, topN, true, needScores, numThreads);
+      set = result.docSet;
+      totalHits = set.size();
+      maxScore = totalHits > 0 ? result.maxScore : 0.0f;
+      if (topN == 0) {
+        // no docs on this page, so cursor doesn't change
+        qr.setNextCursorMark(cmd.getCursorMark());
+        nDocsReturned = 0;
+        ids = new int[nDocsReturned];
+        scores = new float[nDocsReturned];
+      } else {
+        TopDocs topDocs = result.topDocs;
+        assert (totalHits == topDocs.totalHits.value) || qr.isPartialResults();
+        if (cmd.getSort() != null && needScores) {
+          TopFieldCollector.populateScores(topDocs.scoreDocs, this, query);
+        }
+        populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
+        lastScoreDoc = lastScoreDoc(cmd, topDocs);
+        nDocsReturned = topDocs.scoreDocs.length;
+        ids = new int[nDocsReturned];
+        scores = needScores ? new float[nDocsReturned] : null;
+        for (int i = 0; i < nDocsReturned; i++) {
+          ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+          ids[i] = scoreDoc.doc;
+          if (scores != null) scores[i] = scoreDoc.score;
+        }
+      }
+    } else if (lastDocRequested <= 0) {
+      // handle zero case...
       final float[] topscore = new float[] {Float.NEGATIVE_INFINITY};
 
       Collector collector;
@@ -2005,6 +2304,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         TopFieldCollector.populateScores(topDocs.scoreDocs, this, query);
       }
       populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
+      lastScoreDoc = lastScoreDoc(cmd, topDocs);
       maxScore =
           totalHits > 0
               ? (maxScoreCollector == null ? Float.NaN : maxScoreCollector.getMaxScore())
@@ -2024,7 +2324,15 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     if (sliceLen < 0) sliceLen = 0;
 
     qr.setDocList(
-        new DocSlice(0, sliceLen, ids, scores, totalHits, maxScore, TotalHits.Relation.EQUAL_TO));
+        new DocSlice(
+            0,
+            sliceLen,
+            ids,
+            scores,
+            totalHits,
+            maxScore,
+            TotalHits.Relation.EQUAL_TO,
+            lastScoreDoc));
     // TODO: if we collect results before the filter, we just need to intersect with
     // that filter to generate the DocSet for qr.setDocSet()
     qr.setDocSet(set);
@@ -2251,7 +2559,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
 
     // bit of a hack to tell if a set is sorted - do it better in the future.
-    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet;
+    boolean inOrder =
+        set instanceof BitDocSet
+            || set instanceof SortedIntDocSet
+            || set instanceof OffHeapBitDocSet
+            || set instanceof RoaringDocSet;
 
     TopDocsCollector<? extends ScoreDoc> topCollector = buildTopDocsCollector(nDocs, cmd);
 
@@ -2286,7 +2598,14 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     assert topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO;
     qr.getDocListAndSet().docList =
         new DocSlice(
-            0, nDocsReturned, ids, null, topDocs.totalHits.value, 0.0f, topDocs.totalHits.relation);
+            0,
+            nDocsReturned,
+            ids,
+            null,
+            topDocs.totalHits.value,
+            0.0f,
+            topDocs.totalHits.relation,
+            lastScoreDoc(cmd, topDocs));
     populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
   }
 
@@ -2379,43 +2698,75 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   public void warm(SolrIndexSearcher old) {
     // Make sure this is first! filters can help queryResults execute!
     long warmingStartTime = System.nanoTime();
+    warming = true;
     // warm the caches in order...
     ModifiableSolrParams params = new ModifiableSolrParams();
     params.add("warming", "true");
-    for (int i = 0; i < cacheList.length; i++) {
-      if (log.isDebugEnabled()) {
-        log.debug("autowarming [{}] from [{}]\n\t{}", this, old, old.cacheList[i]);
-      }
+    try {
+      for (int i = 0; i < cacheList.length; i++) {
+        if (warmingStopped) {
+          log.info("Stopped autowarming of [{}] after {} caches", this, warmedCaches);
+          break;
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("autowarming [{}] from [{}]\n\t{}", this, old, old.cacheList[i]);
+        }
 
-      final SolrQueryRequest req =
-          new LocalSolrQueryRequest(core, params) {
-            @Override
-            public SolrIndexSearcher getSearcher() {
-              return SolrIndexSearcher.this;
-            }
+        final SolrQueryRequest req =
+            new LocalSolrQueryRequest(core, params) {
+              @Override
+              public SolrIndexSearcher getSearcher() {
+                return SolrIndexSearcher.this;
+              }
 
-            @Override
-            public void close() {}
-          };
+              @Override
+              public void close() {}
+            };
 
-      final SolrQueryResponse rsp = new SolrQueryResponse();
-      SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
-      try {
-        cacheList[i].warm(this, old.cacheList[i]);
-      } finally {
+        final SolrQueryResponse rsp = new SolrQueryResponse();
+        SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
         try {
-          req.close();
+          cacheList[i].warm(this, old.cacheList[i]);
         } finally {
-          SolrRequestInfo.clearRequestInfo();
+          try {
+            req.close();
+          } finally {
+            SolrRequestInfo.clearRequestInfo();
+          }
         }
-      }
 
-      if (log.isDebugEnabled()) {
-        log.debug("autowarming result for [{}]\n\t{}", this, cacheList[i]);
+        warmedCaches = i + 1;
+        if (log.isDebugEnabled()) {
+          log.debug("autowarming result for [{}]\n\t{}", this, cacheList[i]);
+        }
+      }
+      // so that the first facet requests on this searcher don't merge the terms of all segments
+      if (core.getOrdinalMapCache() != null && !warmingStopped) {
+        core.getOrdinalMapCache().warm(this);
+      }
+      // the rollups of new (flushed or merged) segments are built before they serve requests
+      if (core.getRangeRollupCache() != null && !warmingStopped) {
+        core.getRangeRollupCache().warm(this);
       }
+      warmupTime =
+          TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+    } finally {
+      warming = false;
     }
-    warmupTime =
-        TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Stops the autowarming of this searcher's caches after the entry currently being regenerated.
+   * This is used when the searcher is registered before its caches are warmed, and a newer searcher
+   * replaces it before warming is done.
+   */
+  public void stopWarming() {
+    warmingStopped = true;
+  }
+
+  /** Returns true if the autowarming of this searcher's caches should stop. */
+  public boolean isWarmingStopped() {
+    return warmingStopped;
   }
 
   /** return the named generic cache */
@@ -2509,12 +2860,44 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     parentContext.gauge(() -> cachingEnabled, true, "caching", Category.SEARCHER.toString(), scope);
     parentContext.gauge(() -> openTime, true, "openedAt", Category.SEARCHER.toString(), scope);
     parentContext.gauge(() -> warmupTime, true, "warmupTime", Category.SEARCHER.toString(), scope);
+    final MetricsMap warmingMetrics =
+        new MetricsMap(
+            (map) -> {
+              map.put("inProgress", warming);
+              map.put("stopped", warmingStopped);
+              map.put("warmedCaches", warmedCaches);
+              map.put("totalCaches", cacheList.length);
+            });
+    parentContext.gauge(warmingMetrics, true, "warming", Category.SEARCHER.toString(), scope);
     parentContext.gauge(
         () -> registerTime, true, "registeredAt", Category.SEARCHER.toString(), scope);
     parentContext.gauge(
         fullSortCount::sum, true, "fullSortCount", Category.SEARCHER.toString(), scope);
     parentContext.gauge(
         skipSortCount::sum, true, "skipSortCount", Category.SEARCHER.toString(), scope);
+    final MetricsMap queryResultCacheMetrics =
+        new MetricsMap(
+            (map) -> {
+              map.put("hits", queryResultHits.sum());
+              map.put("partialHits", queryResultPartialHits.sum());
+              map.put("misses", queryResultMisses.sum());
+            });
+    parentContext.gauge(
+        queryResultCacheMetrics,
+        true,
+        "queryResultCacheReuse",
+        Category.SEARCHER.toString(),
+        scope);
+    final MetricsMap coalescingMetrics =
+        new MetricsMap(
+            (map) -> {
+              map.put("inFlight", inFlightQueries.size());
+              map.put("leaders", coalescingLeaders.sum());
+              map.put("waits", coalescingWaits.sum());
+              map.put("timeouts", coalescingTimeouts.sum());
+            });
+    parentContext.gauge(
+        coalescingMetrics, true, "queryResultCoalescing", Category.SEARCHER.toString(), scope);
     final MetricsMap liveDocsCacheMetrics =
         new MetricsMap(
             (map) -> {
@@ -82,6 +82,18 @@ public class SolrQueryTimeoutImpl implements QueryTimeout {
     timeoutAt.set(time);
   }
 
+  /**
+   * Sets or clears the time (nanoseconds) at which the request should be considered timed out, e.g.
+   * to track the timeout of a request in another thread that works on behalf of it.
+   */
+  public static void setTimeoutAtNs(Long timeoutAtNs) {
+    if (timeoutAtNs == null) {
+      timeoutAt.remove();
+    } else {
+      timeoutAt.set(timeoutAtNs);
+    }
+  }
+
   /** Cleanup the ThreadLocal timeout value. */
   public static void reset() {
     timeoutAt.remove();
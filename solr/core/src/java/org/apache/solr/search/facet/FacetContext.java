@@ -38,6 +38,8 @@ public class FacetContext {
   SolrIndexSearcher searcher;
   Query filter; // TODO: keep track of as a DocSet or as a Query?
   DocSet base;
+  // identifies the base domain for the PerSegmentFacetCountCache; null if it can't be cached
+  Object baseKey;
   FacetContext parent;
   boolean cache = true;
   int flags;
@@ -101,6 +103,9 @@ public class FacetContext {
     ctx.parent = this;
     ctx.base = domain;
     ctx.filter = filter;
+    if (filter == null && domain == base) {
+      ctx.baseKey = baseKey;
+    }
 
     // carry over from parent
     ctx.cache = cache;
@@ -39,6 +39,12 @@ public class FacetField extends FacetRequestSorted {
   // only.
   Boolean perSeg;
 
+  // the number of threads to collect the segments with; negative means as many as available
+  int threads;
+
+  // collect the deferred stats of the returned buckets in a single pass over the domain
+  boolean sweepStats;
+
   {
     // defaults for FacetRequestSorted
     mincount = 1;
@@ -52,6 +58,8 @@ public class FacetField extends FacetRequestSorted {
     ENUM, // TermsEnum then intersect DocSet (stream-able)
     STREAM, // presently equivalent to ENUM
     SMART,
+    // counts of the top buckets in a single distributed phase, with their max error
+    APPROX,
     ;
 
     public static FacetMethod fromString(String method) {
@@ -69,6 +77,8 @@ public class FacetField extends FacetRequestSorted {
           return STREAM; // TODO replace with enum?
         case "smart":
           return SMART;
+        case "approx":
+          return APPROX;
         default:
           throw new SolrException(
               SolrException.ErrorCode.BAD_REQUEST, "Unknown FacetField method " + method);
@@ -87,7 +97,7 @@ public class FacetField extends FacetRequestSorted {
     if (fcontext.facetInfo != null) {
       // refinement... we will end up either skipping the entire facet, or doing calculating only
       // specific facet buckets
-      if (multiToken && !sf.hasDocValues() && method != FacetMethod.DV && sf.isUninvertible()) {
+      if (multiToken && useUnInvertedField(fcontext, sf)) {
         // Match the access method from the first phase.
         // It won't always matter, but does currently for an all-values bucket
         return new FacetFieldProcessorByArrayUIF(fcontext, this, sf);
@@ -158,8 +168,8 @@ public class FacetField extends FacetRequestSorted {
 
     // multi-valued after this point
 
-    if (sf.hasDocValues() || method == FacetMethod.DV || !sf.isUninvertible()) {
-      // single and multi-valued string docValues
+    if (!useUnInvertedField(fcontext, sf)) {
+      // single and multi-valued string docValues, or uninverted per segment
       return new FacetFieldProcessorByArrayDV(fcontext, this, sf);
     }
 
@@ -167,6 +177,19 @@ public class FacetField extends FacetRequestSorted {
     return new FacetFieldProcessorByArrayUIF(fcontext, this, sf);
   }
 
+  /**
+   * Whether the multi-valued field is faceted with the top-level {@link UnInvertedField}. When the
+   * fields are uninverted off-heap per segment (see <code>offHeapUninvertedFields</code> in
+   * solrconfig.xml) the per-segment ords are used instead, unless the uif method is requested.
+   */
+  private boolean useUnInvertedField(FacetContext fcontext, SchemaField sf) {
+    if (sf.hasDocValues() || method == FacetMethod.DV || !sf.isUninvertible()) {
+      return false;
+    }
+    return method == FacetMethod.UIF
+        || !fcontext.searcher.getCore().getSolrConfig().offHeapUninvertedFields;
+  }
+
   @Override
   public FacetMerger createFacetMerger(Object prototype) {
     return new FacetFieldMerger(this);
@@ -37,8 +37,34 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
   // the number of buckets in the bucket lists returned from all of the shards
   int numReturnedBuckets;
 
+  // for method:approx, the count of the last bucket returned by each shard that has more buckets,
+  // i.e. the max count of the buckets that the shard didn't return
+  long[] shardMaxMissingCounts;
+
+  // the number of merged buckets that are kept while the shards are merged, or -1 to keep them all
+  final long maxMergedBuckets;
+
   public FacetFieldMerger(FacetField freq) {
     super(freq);
+    maxMergedBuckets = getMaxMergedBuckets(freq);
+  }
+
+  /**
+   * Returns the number of buckets that are enough to build the result while the buckets of the
+   * shards are merged, or -1 if all buckets must be kept until the end. Buckets sorted by index are
+   * in the result only if they are among the first offset+limit values of all the shards, so a
+   * bucket can be dropped as soon as offset+limit other values before it were merged: later shards
+   * can only add values, and mincount can't exclude buckets that the shards returned.
+   */
+  private static long getMaxMergedBuckets(FacetField freq) {
+    if (freq.limit < 0
+        || freq.mincount > 1
+        || freq.prelim_sort != null
+        || freq.sort == null
+        || !"index".equals(freq.sort.sortVariable)) {
+      return -1;
+    }
+    return freq.offset + freq.limit;
   }
 
   @Override
@@ -76,6 +102,19 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
     numReturnedPerShard[mcontext.shardNum] = bucketList.size();
     numReturnedBuckets += bucketList.size();
     mergeBucketList(bucketList, mcontext);
+    // pruned when twice as many as needed, so that the buckets are sorted a few times at most
+    if (maxMergedBuckets >= 0 && buckets.size() > 2 * maxMergedBuckets + 16) {
+      pruneBuckets();
+    }
+    if (freq.method == FacetField.FacetMethod.APPROX
+        && Boolean.TRUE.equals(facetResult.get("more"))
+        && !bucketList.isEmpty()) {
+      if (shardMaxMissingCounts == null) {
+        shardMaxMissingCounts = new long[mcontext.numShards];
+      }
+      Number lastCount = (Number) bucketList.get(bucketList.size() - 1).get("count");
+      shardMaxMissingCounts[mcontext.shardNum] = lastCount.longValue();
+    }
 
     if (freq.numBuckets) {
       Object nb = facetResult.get("numBuckets");
@@ -88,6 +127,16 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
     }
   }
 
+  /** Drops the buckets after the first <code>maxMergedBuckets</code> buckets in index order. */
+  private void pruneBuckets() {
+    sortBuckets(freq.sort);
+    for (int i = (int) maxMergedBuckets; i < sortedBuckets.size(); i++) {
+      buckets.remove(sortedBuckets.get(i).bucketValue);
+    }
+    // the buckets are sorted again when needed
+    sortedBuckets = null;
+  }
+
   @Override
   public Object getMergedResult() {
     SimpleOrderedMap<Object> result = new SimpleOrderedMap<>();
@@ -132,7 +181,11 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
         break;
       }
 
-      resultBuckets.add(bucket.getMergedBucket());
+      SimpleOrderedMap<Object> mergedBucket = bucket.getMergedBucket();
+      if (freq.method == FacetField.FacetMethod.APPROX) {
+        mergedBucket.add("error", getMaxMissingCount(bucket));
+      }
+      resultBuckets.add(mergedBucket);
     }
 
     result.add("buckets", resultBuckets);
@@ -146,6 +199,24 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
     return result;
   }
 
+  /**
+   * Returns the max number of docs in the bucket that were not counted because some shards didn't
+   * return it, i.e. the count of the bucket is between its merged count and the merged count plus
+   * this error.
+   */
+  private long getMaxMissingCount(FacetBucket bucket) {
+    if (shardMaxMissingCounts == null) {
+      return 0;
+    }
+    long maxMissingCount = 0;
+    for (int shard = 0; shard < shardMaxMissingCounts.length; shard++) {
+      if (!mcontext.getShardFlag(bucket.bucketNumber, shard)) {
+        maxMissingCount += shardMaxMissingCounts[shard];
+      }
+    }
+    return maxMissingCount;
+  }
+
   @Override
   public void finish(Context mcontext) {
     // TODO: check refine of subs?
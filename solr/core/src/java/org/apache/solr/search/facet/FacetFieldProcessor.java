@@ -318,6 +318,10 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
     return limit;
   }
 
+  private static long applyApproxOverrequest(long limit) {
+    return limit * 2 + 10;
+  }
+
   /**
    * Processes the collected data to finds the top slots, and composes it in the response NamedList.
    */
@@ -351,7 +355,11 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
               break;
             case -1:
               // default
-              if (!"index".equals(this.sort.sortVariable)) {
+              if (freq.method == FacetField.FacetMethod.APPROX) {
+                // there is no refinement: the more buckets a shard returns, the more of the top
+                // buckets are counted by all shards, and the lower the error of the others is
+                effectiveLimit = applyApproxOverrequest(effectiveLimit);
+              } else if (!"index".equals(this.sort.sortVariable)) {
                 // NOTE: even for distrib requests, `overrequest` is not directly relevant for
                 // "index" sort, hence there is no default/implicit overrequest for "index sort"
                 // (even if `resort` is also specified -- overrequest that is exclusively for
@@ -508,6 +516,14 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
         sortedSlots = Arrays.copyOfRange(sortedSlots, off, endOffset);
       }
     }
+
+    if (otherAccs != null
+        && freq.sweepStats
+        && sortedSlots.length > 1
+        && this instanceof SweepCollector) {
+      sweepOtherAccs((SweepCollector) this, sortedSlots, resortAccForFill);
+    }
+
     List<SimpleOrderedMap<?>> bucketList = new ArrayList<>(sortedSlots.length);
 
     for (Slot slot : sortedSlots) {
@@ -515,6 +531,10 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
       bucket.add("val", slot.bucketVal);
 
       fillBucketFromSlot(bucket, slot, resortAccForFill);
+      if (freq.method == FacetField.FacetMethod.APPROX && !fcontext.isShard()) {
+        // all the docs of a single node are counted
+        bucket.add("error", 0L);
+      }
 
       bucketList.add(bucket);
     }
@@ -571,6 +591,62 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
 
     /** The Slot number used during resorting */
     int resortSlotNum;
+
+    /** The Slot number of the deferred stats if they were swept, otherwise -1 */
+    int sweepSlotNum = -1;
+  }
+
+  /**
+   * Collects the deferred stats of all the buckets that are returned in a single pass over the
+   * domain instead of collecting them separately from the domain of each bucket.
+   *
+   * @see SweepCollector#sweepCollect
+   */
+  private void sweepOtherAccs(SweepCollector collector, Slot[] slots, SlotAcc resortAcc)
+      throws IOException {
+    final List<SlotAcc> accs = new ArrayList<>(otherAccs.length);
+    for (SlotAcc acc : otherAccs) {
+      if (acc != resortAcc) {
+        accs.add(acc);
+      }
+    }
+    if (accs.isEmpty()) {
+      return;
+    }
+    final int[] collectSlots = new int[slots.length];
+    for (int i = 0; i < slots.length; i++) {
+      collectSlots[i] = slots[i].slot;
+    }
+    for (SlotAcc acc : accs) {
+      acc.reset();
+      acc.resize(new FlatteningResizer(slots.length));
+    }
+    collector.sweepCollect(
+        collectSlots,
+        accs.toArray(new SlotAcc[0]),
+        slotNum -> new SlotContext(slots[slotNum].bucketFilter));
+    for (int i = 0; i < slots.length; i++) {
+      slots[i].sweepSlotNum = i;
+    }
+  }
+
+  /**
+   * Implemented by the processors that can map the docs of the domain to their buckets, to collect
+   * the deferred stats of all the returned buckets in a single pass.
+   */
+  static interface SweepCollector {
+    /**
+     * Collects the docs of the domain into the specified accs, in the slots of the buckets they
+     * belong to, in a single pass: i.e. the domain of each bucket is "swept" at the same time,
+     * which works with any {@link SlotAcc}.
+     *
+     * @param collectSlots the slots of the buckets during the collection (e.g. of the countAcc)
+     * @param accs the accs to collect the docs of the bucket <code>collectSlots[i]</code> into
+     *     slot <code>i</code> of, after they've been reset and resized to the number of buckets
+     * @param slotContext the context of the slots of the accs
+     */
+    void sweepCollect(int[] collectSlots, SlotAcc[] accs, IntFunction<SlotContext> slotContext)
+        throws IOException;
   }
 
   /** Helper method used solely when looping over buckets to be returned in findTopSlots */
@@ -586,6 +662,14 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
 
     if (otherAccs == null && freq.subFacets.isEmpty()) return;
 
+    final boolean swept = otherAccs != null && slot.sweepSlotNum >= 0;
+    if (swept) {
+      for (SlotAcc acc : otherAccs) {
+        acc.setValues(target, acc == resortAcc ? slot.resortSlotNum : slot.sweepSlotNum);
+      }
+      if (freq.subFacets.isEmpty()) return;
+    }
+
     assert null != slot.bucketFilter;
     final Query filter = slot.bucketFilter;
     final DocSet subDomain = fcontext.searcher.getDocSet(filter, fcontext.base);
@@ -598,7 +682,7 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
     // have a method like "DocSet applyConstraint(facet context, DocSet parent)"
     // that's needed for domain changing things like joins anyway???
 
-    if (otherAccs != null) {
+    if (otherAccs != null && !swept) {
       // do acc at a time (traversing domain each time) or do all accs for each doc?
       for (SlotAcc acc : otherAccs) {
         if (acc == resortAcc) {
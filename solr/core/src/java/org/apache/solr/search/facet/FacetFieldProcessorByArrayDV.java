@@ -16,9 +16,13 @@
  */
 package org.apache.solr.search.facet;
 
+import com.carrotsearch.hppc.IntIntHashMap;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.IntFunction;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiDocValues;
@@ -30,8 +34,15 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongValues;
 import org.apache.lucene.util.UnicodeUtil;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.index.IncrementalOrdinalMap;
+import org.apache.solr.index.IncrementalOrdinalMap.LookupValues;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.MultiThreadedSearcher;
+import org.apache.solr.search.OrdinalMapCache;
 import org.apache.solr.search.facet.SlotAcc.CountSlotAcc;
+import org.apache.solr.search.facet.SlotAcc.CountSlotArrAcc;
+import org.apache.solr.search.facet.SlotAcc.SlotContext;
 import org.apache.solr.search.facet.SlotAcc.SweepCountAccStruct;
 import org.apache.solr.search.facet.SlotAcc.SweepingCountSlotAcc;
 import org.apache.solr.search.facet.SweepCountAware.SegCountGlobal;
@@ -39,12 +50,15 @@ import org.apache.solr.search.facet.SweepCountAware.SegCountPerSeg;
 import org.apache.solr.uninverting.FieldCacheImpl;
 
 /** Grabs values from {@link DocValues}. */
-class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
+class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray
+    implements FacetFieldProcessor.SweepCollector {
   static boolean unwrap_singleValued_multiDv = true; // only set to false for test coverage
+  private static final int[] EMPTY_SEG_COUNTS = new int[0];
 
   boolean multiValuedField;
-  SortedSetDocValues si; // only used for term lookups (for both single and multi-valued)
+  LookupValues si; // the terms of the global ords (for both single and multi-valued)
   OrdinalMap ordinalMap = null; // maps per-segment ords to global ords
+  IncrementalOrdinalMap globalOrdinals = null; // replaces the ordinalMap with an OrdinalMapCache
 
   FacetFieldProcessorByArrayDV(FacetContext fcontext, FacetField freq, SchemaField sf) {
     super(fcontext, freq, sf);
@@ -53,15 +67,22 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
 
   @Override
   protected void findStartAndEndOrds() throws IOException {
-    if (multiValuedField) {
-      si = FieldUtil.getSortedSetDocValues(fcontext.qcontext, sf, null);
-      if (si instanceof MultiDocValues.MultiSortedSetDocValues) {
-        ordinalMap = ((MultiDocValues.MultiSortedSetDocValues) si).mapping;
+    OrdinalMapCache ordinalMapCache = fcontext.searcher.getCore().getOrdinalMapCache();
+    if (ordinalMapCache != null) {
+      globalOrdinals = ordinalMapCache.get(fcontext.searcher, sf);
+    }
+    if (globalOrdinals != null) {
+      si = globalOrdinals.getLookupValues(fcontext.searcher.getIndexReader().leaves());
+    } else if (multiValuedField) {
+      SortedSetDocValues multi = FieldUtil.getSortedSetDocValues(fcontext.qcontext, sf, null);
+      si = LookupValues.of(multi);
+      if (multi instanceof MultiDocValues.MultiSortedSetDocValues) {
+        ordinalMap = ((MultiDocValues.MultiSortedSetDocValues) multi).mapping;
       }
     } else {
       // multi-valued view
       SortedDocValues single = FieldUtil.getSortedDocValues(fcontext.qcontext, sf, null);
-      si = DocValues.singleton(single);
+      si = LookupValues.of(DocValues.singleton(single));
       if (single instanceof MultiDocValues.MultiSortedDocValues) {
         ordinalMap = ((MultiDocValues.MultiSortedDocValues) single).mapping;
       }
@@ -130,8 +151,18 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     if (freq.perSeg != null)
       accumSeg = canDoPerSeg && freq.perSeg; // internal - override perSeg heuristic
 
-    final int maxSize = others.size() + 1; // others + base
     final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+    if (countOnly && others.isEmpty()) {
+      PerSegmentFacetCountCache countCache =
+          fcontext.baseKey == null ? null : fcontext.searcher.getCore().getFacetCountCache();
+      int numThreads = ParallelFacetCollector.getNumThreads(fcontext, freq.threads, leaves.size());
+      if (numThreads > 1 || countCache != null) {
+        collectCountsBySegment(base, leaves, accumSeg, numThreads, countCache);
+        return;
+      }
+    }
+
+    final int maxSize = others.size() + 1; // others + base
     final DocIdSetIterator[] subIterators = new DocIdSetIterator[maxSize];
     final CountSlotAcc[] activeCountAccs = new CountSlotAcc[maxSize];
 
@@ -145,7 +176,7 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
       if (disi == null) {
         continue;
       }
-      LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(subIdx);
+      LongValues toGlobal = getGlobalOrds(subIdx);
 
       SortedDocValues singleDv = null;
       SortedSetDocValues multiDv = null;
@@ -205,11 +236,240 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     Arrays.fill(reuse, null); // better GC
   }
 
+  /**
+   * Counts the values of slices of segments in parallel, each slice into its own count accumulator.
+   * The counts of all slices are added to the count accumulator of the base domain at the end. With
+   * a single thread, all segments are counted by the request thread.
+   *
+   * @param countCache the cache of the counts of each segment, or null to count all segments
+   */
+  private void collectCountsBySegment(
+      SweepCountAccStruct base,
+      List<LeafReaderContext> leaves,
+      boolean accumSeg,
+      int numThreads,
+      PerSegmentFacetCountCache countCache)
+      throws IOException {
+    List<Callable<CountSlotArrAcc>> tasks = new ArrayList<>(numThreads);
+    for (List<LeafReaderContext> slice : MultiThreadedSearcher.slices(leaves, numThreads)) {
+      tasks.add(
+          () -> {
+            CountSlotArrAcc sliceCounts = new CountSlotArrAcc(fcontext, nTerms);
+            for (LeafReaderContext subCtx : slice) {
+              collectCounts(subCtx, base.docSet, sliceCounts, accumSeg, countCache);
+            }
+            return sliceCounts;
+          });
+    }
+    for (CountSlotArrAcc sliceCounts : ParallelFacetCollector.run(fcontext, tasks)) {
+      long[] counts = sliceCounts.getCountArray();
+      for (int slot = 0; slot < counts.length; slot++) {
+        if (counts[slot] != 0) {
+          base.countAcc.incrementCount(slot, counts[slot]);
+        }
+      }
+    }
+  }
+
+  /** Counts the values of the docs of a single segment; thread-safe. */
+  private void collectCounts(
+      LeafReaderContext subCtx,
+      DocSet docSet,
+      CountSlotArrAcc counts,
+      boolean accumSeg,
+      PerSegmentFacetCountCache countCache)
+      throws IOException {
+    LongValues toGlobal = getGlobalOrds(subCtx.ord);
+    if (countCache != null) {
+      // the counts of all segment ords, whatever the prefix, so that any facet can reuse them
+      int[] segCounts =
+          countCache.getSegmentCounts(
+              subCtx,
+              fcontext.baseKey,
+              sf.getName(),
+              leaf -> countSegment(leaf, docSet, null, null));
+      addSegmentCounts(segCounts, toGlobal, counts);
+    } else if (accumSeg && toGlobal != null) {
+      // with many hits per value, count per segment and map to global ords once at the end
+      addSegmentCounts(countSegment(subCtx, docSet, null, null), toGlobal, counts);
+    } else {
+      countSegment(subCtx, docSet, toGlobal, counts);
+    }
+  }
+
+  /**
+   * Counts the values of the docs of a single segment into the accumulator, or by segment ord if
+   * the accumulator is null.
+   *
+   * @return the counts by segment ord if the accumulator is null, otherwise null
+   */
+  private int[] countSegment(
+      LeafReaderContext subCtx, DocSet docSet, LongValues toGlobal, CountSlotArrAcc counts)
+      throws IOException {
+    int[] segCounts = counts == null ? EMPTY_SEG_COUNTS : null;
+    DocIdSetIterator disi = docSet.iterator(subCtx);
+    if (disi == null) {
+      return segCounts;
+    }
+    SortedDocValues singleDv = null;
+    SortedSetDocValues multiDv = null;
+    int segMax;
+    if (multiValuedField) {
+      multiDv = subCtx.reader().getSortedSetDocValues(sf.getName());
+      if (multiDv == null) {
+        return segCounts;
+      }
+      if (unwrap_singleValued_multiDv) {
+        singleDv = DocValues.unwrapSingleton(multiDv);
+      }
+      segMax = (int) multiDv.getValueCount();
+    } else {
+      singleDv = subCtx.reader().getSortedDocValues(sf.getName());
+      if (singleDv == null) {
+        return segCounts;
+      }
+      segMax = singleDv.getValueCount();
+    }
+    if (segMax < 1) {
+      return segCounts;
+    }
+
+    if (counts == null) {
+      segCounts = new int[segMax];
+    }
+    int doc;
+    while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+      if (singleDv != null) {
+        if (singleDv.advanceExact(doc)) {
+          countSegOrd(singleDv.ordValue(), toGlobal, segCounts, counts);
+        }
+      } else if (multiDv.advanceExact(doc)) {
+        for (; ; ) {
+          int segOrd = (int) multiDv.nextOrd();
+          if (segOrd < 0) break;
+          countSegOrd(segOrd, toGlobal, segCounts, counts);
+        }
+      }
+    }
+    return segCounts;
+  }
+
+  /** Adds counts by segment ord to the accumulator; values outside of the prefix are skipped. */
+  private void addSegmentCounts(int[] segCounts, LongValues toGlobal, CountSlotArrAcc counts) {
+    for (int segOrd = 0; segOrd < segCounts.length; segOrd++) {
+      if (segCounts[segOrd] != 0) {
+        int arrIdx = (toGlobal != null ? (int) toGlobal.get(segOrd) : segOrd) - startTermIndex;
+        if (arrIdx >= 0 && arrIdx < nTerms) {
+          counts.incrementCount(arrIdx, segCounts[segOrd]);
+        }
+      }
+    }
+  }
+
+  private void countSegOrd(
+      int segOrd, LongValues toGlobal, int[] segCounts, CountSlotArrAcc counts) {
+    if (segOrd < 0) {
+      return;
+    }
+    if (segCounts != null) {
+      segCounts[segOrd]++;
+      return;
+    }
+    int arrIdx = (toGlobal != null ? (int) toGlobal.get(segOrd) : segOrd) - startTermIndex;
+    // values outside of the prefix are skipped
+    if (arrIdx >= 0 && arrIdx < nTerms) {
+      counts.incrementCount(arrIdx, 1);
+    }
+  }
+
+  /** Returns the global ords of the ords of the segment, or null if they are the same. */
+  private LongValues getGlobalOrds(int segmentIndex) {
+    if (globalOrdinals != null) {
+      return globalOrdinals.getGlobalOrds(segmentIndex);
+    }
+    return ordinalMap == null ? null : ordinalMap.getGlobalOrds(segmentIndex);
+  }
+
   @Override
   protected BytesRef lookupOrd(int ord) throws IOException {
     return si.lookupOrd(ord);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>This impl looks up the per-segment ords of the terms of the buckets, and collects the docs
+   * of the base domain that have any of them.
+   */
+  @Override
+  public void sweepCollect(int[] collectSlots, SlotAcc[] accs, IntFunction<SlotContext> slotContext)
+      throws IOException {
+    final BytesRef[] terms = new BytesRef[collectSlots.length];
+    for (int i = 0; i < collectSlots.length; i++) {
+      terms[i] = BytesRef.deepCopyOf(lookupOrd(collectSlots[i] + startTermIndex));
+    }
+    // per-segment ord -> slot of the accs
+    final IntIntHashMap sweepSlots = new IntIntHashMap(collectSlots.length);
+    for (LeafReaderContext subCtx : fcontext.searcher.getIndexReader().leaves()) {
+      final DocIdSetIterator disi = fcontext.base.iterator(subCtx);
+      if (disi == null) {
+        continue;
+      }
+      final SortedSetDocValues multiDv;
+      if (multiValuedField) {
+        multiDv = subCtx.reader().getSortedSetDocValues(sf.getName());
+      } else {
+        SortedDocValues singleDv = subCtx.reader().getSortedDocValues(sf.getName());
+        multiDv = singleDv == null ? null : DocValues.singleton(singleDv);
+      }
+      if (multiDv == null) {
+        continue;
+      }
+      sweepSlots.clear();
+      for (int i = 0; i < terms.length; i++) {
+        long segOrd = multiDv.lookupTerm(terms[i]);
+        if (segOrd >= 0) {
+          sweepSlots.put((int) segOrd, i);
+        }
+      }
+      if (sweepSlots.isEmpty()) {
+        continue;
+      }
+      for (SlotAcc acc : accs) {
+        acc.setNextReader(subCtx);
+      }
+      final SortedDocValues singleDv = DocValues.unwrapSingleton(multiDv);
+      int doc;
+      if (singleDv != null) {
+        while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          if (singleDv.advanceExact(doc)) {
+            collectSwept(accs, doc, sweepSlots.getOrDefault(singleDv.ordValue(), -1), slotContext);
+          }
+        }
+      } else {
+        while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          if (multiDv.advanceExact(doc)) {
+            for (; ; ) {
+              int segOrd = (int) multiDv.nextOrd();
+              if (segOrd < 0) break;
+              collectSwept(accs, doc, sweepSlots.getOrDefault(segOrd, -1), slotContext);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static void collectSwept(
+      SlotAcc[] accs, int doc, int slot, IntFunction<SlotContext> slotContext)
+      throws IOException {
+    if (slot >= 0) {
+      for (SlotAcc acc : accs) {
+        acc.collect(doc, slot, slotContext);
+      }
+    }
+  }
+
   private void collectPerSeg(SortedDocValues singleDv, SweepDISI disi, LongValues toGlobal)
       throws IOException {
     int segMax = singleDv.getValueCount();
@@ -20,9 +20,13 @@ import static org.apache.solr.common.util.Utils.fromJSONString;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.solr.client.solrj.SolrResponse;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
@@ -33,6 +37,8 @@ import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.CollectionUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.handler.component.FacetComponent;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.SearchComponent;
 import org.apache.solr.handler.component.ShardRequest;
@@ -55,6 +61,8 @@ public class FacetModule extends SearchComponent {
 
   // Internal information passed down from the top level to shards for distributed faceting.
   private static final String FACET_INFO = "_facet_";
+  // The terms facets of the pivots translated by the coordinator, see LegacyPivotFacet
+  private static final String FACET_PIVOT_INFO = "_facet_pivot_";
   private static final String FACET_REFINE = "refine";
 
   public FacetComponentState getFacetComponentState(ResponseBuilder rb) {
@@ -70,10 +78,10 @@ public class FacetModule extends SearchComponent {
     Map<String, Object> jsonFacet = null;
     if (json == null) {
       int version = rb.req.getParams().getInt("facet.version", 1);
-      if (version <= 1) return;
       boolean facetsEnabled = rb.req.getParams().getBool(FacetParams.FACET, false);
-      if (!facetsEnabled) return;
-      jsonFacet = new LegacyFacet(rb.req.getParams()).getLegacy();
+      if (version > 1 && facetsEnabled) {
+        jsonFacet = new LegacyFacet(rb.req.getParams()).getLegacy();
+      }
     } else {
       Object jsonObj = json.get("facet");
       if (jsonObj instanceof Map) {
@@ -87,11 +95,28 @@ public class FacetModule extends SearchComponent {
                 + jsonObj);
       }
     }
-    if (jsonFacet == null) return;
 
     SolrParams params = rb.req.getParams();
 
     boolean isShard = params.getBool(ShardParams.IS_SHARD, false);
+    LegacyPivotFacet pivots = null;
+    Map<String, Object> pivotFacets = null;
+    if (isShard) {
+      String jpivots = params.get(FACET_PIVOT_INFO);
+      if (jpivots != null) {
+        pivotFacets = (Map<String, Object>) fromJSONString(jpivots);
+      }
+    } else if (params.getBool(FacetParams.FACET, false) && LegacyPivotFacet.isEnabled(params)) {
+      pivots = new LegacyPivotFacet(params);
+      pivotFacets = pivots.getFacets();
+    }
+    boolean pivotsOnly = jsonFacet == null;
+    if (pivotFacets != null) {
+      jsonFacet = jsonFacet == null ? new LinkedHashMap<>() : new LinkedHashMap<>(jsonFacet);
+      jsonFacet.putAll(pivotFacets);
+    }
+    if (jsonFacet == null) return;
+
     Map<String, Object> facetInfo = null;
     if (isShard) {
       String jfacet = params.get(FACET_INFO);
@@ -114,6 +139,8 @@ public class FacetModule extends SearchComponent {
     fcState.facetInfo = facetInfo;
     fcState.facetCommands = jsonFacet;
     fcState.facetRequest = facetRequest;
+    fcState.pivots = pivots;
+    fcState.pivotsOnly = pivots != null && pivotsOnly;
 
     rb.req.getContext().put(FacetComponentState.class, fcState);
   }
@@ -134,6 +161,16 @@ public class FacetModule extends SearchComponent {
     fcontext.searcher = rb.req.getSearcher();
     fcontext.qcontext = QueryContext.newContext(fcontext.searcher);
     fcontext.cache = cache;
+    PerSegmentFacetCountCache countCache = rb.req.getCore().getFacetCountCache();
+    // counts of a timed out query must not be reused
+    NamedList<Object> header = rb.rsp.getResponseHeader();
+    boolean partialResults =
+        header != null && header.get(SolrQueryResponse.RESPONSE_HEADER_PARTIAL_RESULTS_KEY) != null;
+    // the grouping may replace the docset of the query, e.g. by the group heads with truncation
+    if (cache && countCache != null && !partialResults && rb.getGroupingSpec() == null) {
+      fcontext.baseKey =
+          countCache.getDomainKey(fcontext.searcher, rb.getQuery(), rb.getFilters());
+    }
     if (isShard) {
       fcontext.flags |= FacetContext.IS_SHARD;
       fcontext.facetInfo =
@@ -154,10 +191,29 @@ public class FacetModule extends SearchComponent {
     }
 
     Object results = facetState.facetRequest.process(fcontext);
+    if (facetState.pivots != null) {
+      addPivots(rb, facetState, (NamedList<Object>) results);
+      if (facetState.pivotsOnly) {
+        return;
+      }
+    }
     // ExitableDirectory timeout causes absent "facets"
     rb.rsp.add("facets", results);
   }
 
+  /** Adds the translated pivots to the facet_counts of the legacy facets. */
+  @SuppressWarnings({"unchecked"})
+  private static void addPivots(
+      ResponseBuilder rb, FacetComponentState facetState, NamedList<Object> results) {
+    NamedList<Object> facetCounts =
+        (NamedList<Object>) rb.rsp.getValues().get(FacetComponent.FACET_COUNTS_KEY);
+    if (facetCounts == null) {
+      facetCounts = new SimpleOrderedMap<>();
+      rb.rsp.add(FacetComponent.FACET_COUNTS_KEY, facetCounts);
+    }
+    facetCounts.add(FacetComponent.PIVOT_KEY, facetState.pivots.toLegacyResponse(results));
+  }
+
   private void clearFaceting(List<ShardRequest> outgoing) {
     // turn off faceting for requests not marked as being for faceting refinements
     for (ShardRequest sreq : outgoing) {
@@ -272,6 +328,12 @@ public class FacetModule extends SearchComponent {
     FacetComponentState facetState = getFacetComponentState(rb);
     if (facetState == null) return;
 
+    if (facetState.pivots != null) {
+      // the shards don't translate the pivots again, since their params are changed by the
+      // FacetComponent, and the refinements may be sent with the requests of other components
+      sreq.params.set(FACET_PIVOT_INFO, Utils.toJSONString(facetState.pivots.getFacets()));
+    }
+
     if ((sreq.purpose & ShardRequest.PURPOSE_GET_TOP_IDS) != 0) {
       sreq.purpose |= FacetModule.PURPOSE_GET_JSON_FACETS;
       // The presence of FACET_INFO (_facet_) turns on json faceting
@@ -286,12 +348,34 @@ public class FacetModule extends SearchComponent {
     }
   }
 
+  /**
+   * Merges the facets of a shard as soon as its response is received, and removes them from the
+   * response, so that only the merged facets and the facets of one shard are in memory at a time.
+   */
+  @Override
+  public void handleShardResponse(ResponseBuilder rb, ShardResponse shardRsp) {
+    FacetComponentState facetState = getFacetComponentState(rb);
+    if (facetState == null) return;
+
+    NamedList<Object> top = shardRsp.getSolrResponse().getResponse();
+    if (top == null) return;
+    Object facet = top.get("facets");
+    if (facet == null) return; // see handleResponses
+
+    mergeShardFacets(facetState, shardRsp, facet);
+    top.remove("facets");
+    facetState.mergedResponses.add(shardRsp);
+  }
+
   @Override
   public void handleResponses(ResponseBuilder rb, ShardRequest sreq) {
     FacetComponentState facetState = getFacetComponentState(rb);
     if (facetState == null) return;
 
     for (ShardResponse shardRsp : sreq.responses) {
+      if (facetState.mergedResponses.remove(shardRsp)) {
+        continue; // see handleShardResponse
+      }
       SolrResponse rsp = shardRsp.getSolrResponse();
       NamedList<Object> top = rsp.getResponse();
       if (top == null)
@@ -310,37 +394,54 @@ public class FacetModule extends SearchComponent {
         }
         continue;
       }
-      if (facetState.merger == null) {
-        facetState.merger = facetState.facetRequest.createFacetMerger(facet);
-        facetState.mcontext = new FacetMerger.Context(sreq.responses.size());
-      }
+      mergeShardFacets(facetState, shardRsp, facet);
+    }
+  }
 
-      if ((sreq.purpose & PURPOSE_REFINE_JSON_FACETS) != 0) {
-        // System.err.println("REFINE FACET RESULT FROM SHARD = " + facet);
-        // call merge again with a diff flag set on the context???
-        facetState.mcontext.root = facet;
-        facetState.mcontext.setShard(shardRsp.getShard()); // TODO: roll newShard into setShard?
-        facetState.merger.merge(facet, facetState.mcontext);
-        return;
-      }
+  private void mergeShardFacets(
+      FacetComponentState facetState, ShardResponse shardRsp, Object facet) {
+    ShardRequest sreq = shardRsp.getShardRequest();
+    if (facetState.merger == null) {
+      facetState.merger = facetState.facetRequest.createFacetMerger(facet);
+      facetState.mcontext = new FacetMerger.Context(sreq.actualShards.length);
+    }
 
-      // System.err.println("MERGING FACET RESULT FROM SHARD = " + facet);
+    if ((sreq.purpose & PURPOSE_REFINE_JSON_FACETS) != 0) {
+      // System.err.println("REFINE FACET RESULT FROM SHARD = " + facet);
+      // call merge again with a diff flag set on the context???
       facetState.mcontext.root = facet;
-      facetState.mcontext.newShard(shardRsp.getShard());
+      facetState.mcontext.setShard(shardRsp.getShard()); // TODO: roll newShard into setShard?
       facetState.merger.merge(facet, facetState.mcontext);
+      return;
     }
+
+    // System.err.println("MERGING FACET RESULT FROM SHARD = " + facet);
+    facetState.mcontext.root = facet;
+    facetState.mcontext.newShard(shardRsp.getShard());
+    facetState.merger.merge(facet, facetState.mcontext);
   }
 
   @Override
+  @SuppressWarnings({"unchecked"})
   public void finishStage(ResponseBuilder rb) {
     if (rb.stage != ResponseBuilder.STAGE_GET_FIELDS) return;
 
     FacetComponentState facetState = getFacetComponentState(rb);
     if (facetState == null) return;
 
+    Object results = null;
     if (facetState.merger != null) {
       // TODO: merge any refinements
-      rb.rsp.add("facets", facetState.merger.getMergedResult());
+      results = facetState.merger.getMergedResult();
+    }
+    if (facetState.pivots != null) {
+      addPivots(rb, facetState, (NamedList<Object>) results);
+      if (facetState.pivotsOnly) {
+        return;
+      }
+    }
+    if (results != null) {
+      rb.rsp.add("facets", results);
     }
   }
 
@@ -361,6 +462,9 @@ public class FacetModule extends SearchComponent {
     ResponseBuilder rb;
     Map<String, Object> facetCommands;
     FacetRequest facetRequest;
+    // the pivots computed as JSON facets, and whether there are no other JSON facets
+    LegacyPivotFacet pivots;
+    boolean pivotsOnly;
     boolean isShard;
     Map<String, Object>
         facetInfo; // _facet_ param: contains out-of-band facet info, mainly for refinement requests
@@ -370,6 +474,8 @@ public class FacetModule extends SearchComponent {
     //
     FacetMerger merger;
     FacetMerger.Context mcontext;
+    // the responses whose facets were merged as soon as they were received
+    Set<ShardResponse> mergedResponses = Collections.newSetFromMap(new IdentityHashMap<>());
   }
 
   // base class for facet functions that can be used in a sort
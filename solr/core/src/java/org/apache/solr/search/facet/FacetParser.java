@@ -567,6 +567,8 @@ abstract class FacetParser<T extends FacetRequest> {
         facet.refine = FacetRequest.RefineMethod.fromObj(m.get("refine"));
 
         facet.perSeg = getBooleanOrNull(m, "perSeg");
+        facet.threads = (int) getLong(m, "threads", facet.threads);
+        facet.sweepStats = getBoolean(m, "sweepStats", facet.sweepStats);
 
         // facet.sort may depend on a facet stat...
         // should we be parsing / validating this here, or in the execution environment?
@@ -588,6 +590,20 @@ abstract class FacetParser<T extends FacetRequest> {
         facet.sort = FacetRequest.FacetSort.COUNT_DESC;
       }
 
+      if (facet.method == FacetField.FacetMethod.APPROX) {
+        // the buckets that a shard didn't return are never refined, so only the error of the
+        // counts of the top buckets is known
+        if (!FacetRequest.FacetSort.COUNT_DESC.equals(facet.sort) || facet.prelim_sort != null) {
+          throw err("method:approx only supports sort:'count desc'");
+        }
+        if (facet.doRefine()) {
+          throw err("method:approx can't be refined");
+        }
+        if (!facet.getSubFacets().isEmpty() || !facet.getFacetStats().isEmpty()) {
+          throw err("method:approx doesn't support sub-facets or stats");
+        }
+      }
+
       return facet;
     }
 
@@ -150,6 +150,7 @@ public abstract class FacetProcessor<T extends FacetRequest> {
 
   private void handleDomainChanges() throws IOException {
     if (freq.domain == null) return;
+    fcontext.baseKey = null; // the base no longer matches the request
 
     if (null != freq.domain.explicitQueries) {
       try {
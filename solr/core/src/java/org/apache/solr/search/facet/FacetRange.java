@@ -32,6 +32,8 @@ public class FacetRange extends FacetRequestSorted {
   boolean hardend = false;
   EnumSet<FacetRangeInclude> include;
   EnumSet<FacetRangeOther> others;
+  // the number of threads to compute the ranges with; negative means as many as available
+  int threads;
 
   {
     // defaults
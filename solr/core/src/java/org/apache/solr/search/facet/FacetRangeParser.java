@@ -48,6 +48,7 @@ class FacetRangeParser extends FacetParser<FacetRange> {
     facet.gap = getVal(m, "gap", required);
     facet.hardend = getBoolean(m, "hardend", facet.hardend);
     facet.mincount = getLong(m, "mincount", 0);
+    facet.threads = (int) getLong(m, "threads", facet.threads);
 
     // TODO: refactor list-of-options code
 
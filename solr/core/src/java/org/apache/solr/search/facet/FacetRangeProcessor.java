@@ -23,8 +23,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.IntFunction;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.EnumFieldValue;
@@ -45,6 +48,7 @@ import org.apache.solr.search.DocSet;
 import org.apache.solr.search.ExtendedQuery;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.search.WrappedQuery;
+import org.apache.solr.search.function.FieldNameValueSource;
 import org.apache.solr.util.DateMathParser;
 
 class FacetRangeProcessor extends FacetProcessor<FacetRange> {
@@ -131,7 +135,10 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
     } else {
       // phase#1: build list of all buckets and return full facets...
       createRangeList();
-      response = getRangeCountsIndexed();
+      response = getRangeCountsFromRollups();
+      if (response == null) {
+        response = getRangeCountsIndexed();
+      }
     }
   }
 
@@ -526,12 +533,33 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
 
     createAccs(fcontext.base.size(), slotCount);
 
+    final Query[] rangeQueries = new Query[slotCount];
     for (int idx = 0; idx < rangeList.size(); idx++) {
-      rangeStats(rangeList.get(idx), idx, hasSubFacets);
+      rangeQueries[idx] = rangeQuery(rangeList.get(idx));
     }
-
     for (int idx = 0; idx < otherList.size(); idx++) {
-      rangeStats(otherList.get(idx), rangeList.size() + idx, hasSubFacets);
+      rangeQueries[rangeList.size() + idx] = rangeQuery(otherList.get(idx));
+    }
+    final DocSet[] rangeDocSets = new DocSet[slotCount];
+    int numThreads = ParallelFacetCollector.getNumThreads(fcontext, freq.threads, slotCount);
+    if (numThreads > 1) {
+      // the ranges are matched in parallel, but collected by this thread only
+      List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+      for (int t = 0; t < numThreads; t++) {
+        final int firstSlot = t;
+        tasks.add(
+            () -> {
+              for (int slot = firstSlot; slot < slotCount; slot += numThreads) {
+                rangeDocSets[slot] = fcontext.searcher.getDocSet(rangeQueries[slot], fcontext.base);
+              }
+              return null;
+            });
+      }
+      ParallelFacetCollector.run(fcontext, tasks);
+    }
+
+    for (int slot = 0; slot < slotCount; slot++) {
+      rangeStats(rangeQueries[slot], slot, hasSubFacets, rangeDocSets[slot]);
     }
 
     final SimpleOrderedMap res = new SimpleOrderedMap<>();
@@ -564,34 +592,153 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
     return res;
   }
 
+  /**
+   * Returns the buckets computed from the rollups of the field (see {@link RangeRollupCache}), or
+   * null if the field has no rollups, the ranges aren't aligned with the buckets of the rollups,
+   * the domain isn't all the documents of the index, or the facet has other buckets, stats or
+   * sub-facets that the rollups can't compute.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private SimpleOrderedMap getRangeCountsFromRollups() throws IOException {
+    RangeRollupCache rollupCache = fcontext.searcher.getCore().getRangeRollupCache();
+    if (rollupCache == null
+        || ranges != null
+        || !otherList.isEmpty()
+        || !freq.getSubFacets().isEmpty()) {
+      return null;
+    }
+    RangeRollup.Definition def = rollupCache.getDefinition(sf.getName());
+    if (def == null || fcontext.base.size() != fcontext.searcher.numDocs()) {
+      return null;
+    }
+
+    final int slotCount = rangeList.size();
+    final long[] fromBuckets = new long[slotCount];
+    final long[] toBuckets = new long[slotCount];
+    for (int slot = 0; slot < slotCount; slot++) {
+      Range range = rangeList.get(slot);
+      if (!range.includeLower || range.includeUpper) {
+        return null;
+      }
+      long low = rollupValue(range.low);
+      long high = rollupValue(range.high);
+      if (Math.floorMod(low, def.width) != 0 || Math.floorMod(high, def.width) != 0) {
+        return null;
+      }
+      fromBuckets[slot] = Math.floorDiv(low, def.width);
+      toBuckets[slot] = Math.floorDiv(high, def.width);
+    }
+
+    final RangeRollup.Totals totals = new RangeRollup.Totals(fcontext.searcher, def, slotCount);
+    final Map<String, IntFunction<Object>> stats = new LinkedHashMap<>();
+    for (Map.Entry<String, AggValueSource> entry : freq.getFacetStats().entrySet()) {
+      IntFunction<Object> stat = getRollupStat(entry.getValue(), def, totals);
+      if (stat == null) {
+        return null;
+      }
+      stats.put(entry.getKey(), stat);
+    }
+
+    List<RangeRollup> rollups = rollupCache.getRollups(fcontext.searcher, def);
+    if (rollups == null) {
+      return null;
+    }
+    for (RangeRollup rollup : rollups) {
+      for (int slot = 0; slot < slotCount; slot++) {
+        rollup.collect(fromBuckets[slot], toBuckets[slot], slot, totals);
+      }
+    }
+
+    // the same buckets as getRangeCountsIndexed
+    final SimpleOrderedMap res = new SimpleOrderedMap<>();
+    List<SimpleOrderedMap> buckets = new ArrayList<>();
+    res.add("buckets", buckets);
+    for (int slot = 0; slot < slotCount; slot++) {
+      long count = totals.counts[slot];
+      if (effectiveMincount > 0 && count < effectiveMincount) continue;
+      SimpleOrderedMap bucket = new SimpleOrderedMap();
+      buckets.add(bucket);
+      bucket.add("val", rangeList.get(slot).label);
+      bucket.add("count", count);
+      if (count > 0 || freq.processEmpty) {
+        for (Map.Entry<String, IntFunction<Object>> stat : stats.entrySet()) {
+          Object value = stat.getValue().apply(slot);
+          if (value != null) {
+            bucket.add(stat.getKey(), value);
+          }
+        }
+      }
+    }
+    if (null != actual_end) {
+      res.add(FacetRange.ACTUAL_END_JSON_KEY, calc.formatValue(actual_end));
+    }
+    return res;
+  }
+
+  @SuppressWarnings({"rawtypes"})
+  private static long rollupValue(Comparable value) {
+    return value instanceof Date ? ((Date) value).getTime() : ((Number) value).longValue();
+  }
+
+  /**
+   * Returns the value of the stat in a slot computed from the totals of the rollups, like the value
+   * of its slot acc, or null if the rollups can't compute the stat.
+   */
+  private IntFunction<Object> getRollupStat(
+      AggValueSource agg, RangeRollup.Definition def, RangeRollup.Totals totals) {
+    if (!(agg instanceof SimpleAggValueSource)
+        || !(((SimpleAggValueSource) agg).getArg() instanceof FieldNameValueSource)) {
+      return null;
+    }
+    String field = ((FieldNameValueSource) ((SimpleAggValueSource) agg).getArg()).getFieldName();
+    final int valueIdx = def.valueFields.indexOf(field);
+    if (valueIdx < 0) {
+      return null;
+    }
+    if (agg instanceof SumAgg) {
+      return slot -> totals.getSum(valueIdx, slot);
+    } else if (agg instanceof AvgAgg) {
+      final boolean isShard = fcontext.isShard();
+      return slot -> totals.getAvg(valueIdx, slot, isShard);
+    } else if (agg instanceof MinMaxAgg) {
+      final boolean min = ((MinMaxAgg) agg).minmax == 1;
+      return slot -> totals.getMinMax(valueIdx, slot, min);
+    }
+    return null;
+  }
+
   private Query[] filters;
   private DocSet[] intersections;
 
-  private void rangeStats(Range range, int slot, boolean hasSubFacets) throws IOException {
-    final Query rangeQ;
-    {
-      final Query rangeQuery =
-          sf.getType()
-              .getRangeQuery(
-                  null,
-                  sf,
-                  range.low == null ? null : calc.formatValue(range.low),
-                  range.high == null ? null : calc.formatValue(range.high),
-                  range.includeLower,
-                  range.includeUpper);
-      if (fcontext.cache) {
-        rangeQ = rangeQuery;
-      } else if (rangeQuery instanceof ExtendedQuery) {
-        ((ExtendedQuery) rangeQuery).setCache(false);
-        rangeQ = rangeQuery;
-      } else {
-        final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
-        wrappedQuery.setCache(false);
-        rangeQ = wrappedQuery;
-      }
+  private Query rangeQuery(Range range) {
+    final Query rangeQuery =
+        sf.getType()
+            .getRangeQuery(
+                null,
+                sf,
+                range.low == null ? null : calc.formatValue(range.low),
+                range.high == null ? null : calc.formatValue(range.high),
+                range.includeLower,
+                range.includeUpper);
+    if (fcontext.cache) {
+      return rangeQuery;
+    } else if (rangeQuery instanceof ExtendedQuery) {
+      ((ExtendedQuery) rangeQuery).setCache(false);
+      return rangeQuery;
+    } else {
+      final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
+      wrappedQuery.setCache(false);
+      return wrappedQuery;
+    }
+  }
+
+  // intersection is null unless it was computed in parallel already
+  private void rangeStats(Query rangeQ, int slot, boolean hasSubFacets, DocSet intersection)
+      throws IOException {
+    if (intersection == null) {
+      // TODO: specialize count only
+      intersection = fcontext.searcher.getDocSet(rangeQ, fcontext.base);
     }
-    // TODO: specialize count only
-    DocSet intersection = fcontext.searcher.getDocSet(rangeQ, fcontext.base);
     if (hasSubFacets) {
       filters[slot] = rangeQ;
       // save for later
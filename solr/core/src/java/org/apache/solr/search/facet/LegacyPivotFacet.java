@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.StatsParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.handler.component.PivotFacet;
+import org.apache.solr.handler.component.PivotFacetProcessor;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.SyntaxError;
+
+/**
+ * Translates the {@link FacetParams#FACET_PIVOT} params of a request into nested terms facets of
+ * the JSON Facet API, and their results back into the <code>facet_pivot</code> section of the
+ * <code>facet_counts</code>, when <code>facet.pivot.engine=json</code>.
+ *
+ * <p>Each level of a pivot is collected in a single pass over the documents of its parent bucket,
+ * and distributed pivots are refined by {@link FacetModule} like any terms facet, instead of the
+ * rounds of refinement requests of {@link PivotFacet}. Pivots with <code>stats</code>, <code>query
+ * </code> or <code>range</code> local params, or with terms filters (e.g. {@link
+ * FacetParams#FACET_CONTAINS}), are not translated: if any pivot of the request can't be translated
+ * all of them are computed by the {@link PivotFacetProcessor}.
+ *
+ * @since solr 10.0
+ */
+public class LegacyPivotFacet {
+  public static final String ENGINE_JSON = "json";
+
+  /** The prefix of the keys of the translated pivots in the JSON facets */
+  static final String KEY_PREFIX = "_pivot_";
+
+  /** The key of the terms facet of the next level of a pivot in each bucket */
+  static final String SUB_KEY = "pivot";
+
+  private static final String[] TERM_FILTER_PARAMS = {
+    FacetParams.FACET_CONTAINS, FacetParams.FACET_MATCHES, FacetParams.FACET_EXCLUDETERMS
+  };
+
+  private static final String[] UNSUPPORTED_LOCAL_PARAMS = {
+    StatsParams.STATS, PivotFacetProcessor.QUERY, PivotFacetProcessor.RANGE, PivotFacet.REFINE_PARAM
+  };
+
+  private static class Pivot {
+    String key; // the key of the pivot in facet_pivot
+    String facetKey; // the key of the terms facet of the first level
+    List<String> fields;
+    int[] mincounts;
+    boolean[] missing;
+  }
+
+  private final List<Pivot> pivots = new ArrayList<>();
+  private final Map<String, Object> facets = new LinkedHashMap<>();
+
+  /**
+   * Returns whether the pivots of the request are computed with the JSON Facet API, i.e. whether
+   * the json engine is requested and all the pivots can be translated.
+   */
+  public static boolean isEnabled(SolrParams params) {
+    if (!ENGINE_JSON.equals(params.get(FacetParams.FACET_PIVOT_ENGINE))) {
+      return false;
+    }
+    String[] pivots = params.getParams(FacetParams.FACET_PIVOT);
+    if (pivots == null || pivots.length == 0) {
+      return false;
+    }
+    for (String pivot : pivots) {
+      SolrParams localParams;
+      try {
+        localParams = QueryParsing.getLocalParams(pivot, params);
+      } catch (SyntaxError e) {
+        return false; // reported by the legacy pivots
+      }
+      SolrParams pivotParams = params;
+      String value = pivot;
+      if (localParams != null) {
+        for (String param : UNSUPPORTED_LOCAL_PARAMS) {
+          if (localParams.get(param) != null) {
+            return false;
+          }
+        }
+        pivotParams = SolrParams.wrapDefaults(localParams, params);
+        value = localParams.get(CommonParams.VALUE);
+      }
+      for (String field : StrUtils.splitSmart(value, ",", true)) {
+        for (String param : TERM_FILTER_PARAMS) {
+          if (pivotParams.getFieldParam(field, param) != null) {
+            return false;
+          }
+        }
+        if (pivotParams.getFieldBool(field, FacetParams.FACET_EXISTS, false)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Translates the pivots of the request, that must be {@link #isEnabled(SolrParams) enabled}.
+   */
+  public LegacyPivotFacet(SolrParams params) {
+    String[] pivotParams = params.getParams(FacetParams.FACET_PIVOT);
+    for (int i = 0; i < pivotParams.length; i++) {
+      addPivot(params, pivotParams[i], KEY_PREFIX + i);
+    }
+  }
+
+  /** Returns the terms facets of the pivots, to add to the JSON facets of the request. */
+  public Map<String, Object> getFacets() {
+    return facets;
+  }
+
+  private void addPivot(SolrParams params, String pivotParam, String facetKey) {
+    SolrParams localParams;
+    try {
+      localParams = QueryParsing.getLocalParams(pivotParam, params);
+    } catch (SyntaxError e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
+    }
+    Pivot pivot = new Pivot();
+    pivot.facetKey = facetKey;
+    String value = pivotParam;
+    if (localParams != null) {
+      params = SolrParams.wrapDefaults(localParams, params);
+      value = localParams.get(CommonParams.VALUE);
+    }
+    pivot.key = localParams == null ? value : localParams.get(CommonParams.OUTPUT_KEY, value);
+    pivot.fields = StrUtils.splitSmart(value, ",", true);
+    if (pivot.fields.isEmpty()) {
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST,
+          "Pivot Facet needs at least one field name: " + pivotParam);
+    }
+    pivot.mincounts = new int[pivot.fields.size()];
+    pivot.missing = new boolean[pivot.fields.size()];
+
+    Map<String, Object> facet = null;
+    for (int level = pivot.fields.size() - 1; level >= 0; level--) {
+      Map<String, Object> parent = addLevel(params, pivot, level);
+      if (facet != null) {
+        parent.put("facet", Collections.singletonMap(SUB_KEY, facet));
+      }
+      facet = parent;
+    }
+    String excludeTags = localParams == null ? null : localParams.get(CommonParams.EXCLUDE);
+    if (excludeTags != null) {
+      facet.put("domain", Collections.singletonMap("excludeTags", excludeTags));
+    }
+    pivots.add(pivot);
+    facets.put(facetKey, facet);
+  }
+
+  /** Returns the terms facet of a level of the pivot, with the params of its field. */
+  private Map<String, Object> addLevel(SolrParams params, Pivot pivot, int level) {
+    String field = pivot.fields.get(level);
+    int offset = params.getFieldInt(field, FacetParams.FACET_OFFSET, 0);
+    int limit = params.getFieldInt(field, FacetParams.FACET_LIMIT, 100);
+    int mincount = params.getFieldInt(field, FacetParams.FACET_PIVOT_MINCOUNT, 1);
+    boolean missing = params.getFieldBool(field, FacetParams.FACET_MISSING, false);
+    String sort =
+        params.getFieldParam(
+            field,
+            FacetParams.FACET_SORT,
+            limit > 0 ? FacetParams.FACET_SORT_COUNT : FacetParams.FACET_SORT_INDEX);
+    boolean sortByIndex =
+        FacetParams.FACET_SORT_INDEX.equals(sort)
+            || FacetParams.FACET_SORT_INDEX_LEGACY.equals(sort);
+    pivot.mincounts[level] = mincount;
+    pivot.missing[level] = missing;
+
+    Map<String, Object> facet = new LinkedHashMap<>();
+    facet.put("type", "terms");
+    facet.put("field", field);
+    facet.put("offset", offset);
+    facet.put("limit", limit);
+    facet.put("mincount", mincount);
+    facet.put("missing", missing);
+    facet.put("sort", sortByIndex ? "index asc" : "count desc");
+    String prefix = params.getFieldParam(field, FacetParams.FACET_PREFIX);
+    if (prefix != null) {
+      facet.put("prefix", prefix);
+    }
+    String ratio = params.getFieldParam(field, FacetParams.FACET_OVERREQUEST_RATIO);
+    String count = params.getFieldParam(field, FacetParams.FACET_OVERREQUEST_COUNT);
+    if (limit > 0 && (ratio != null || count != null)) {
+      // same shard limit as the legacy facets, the default is the one of the JSON facets
+      int shardLimit = offset + limit;
+      int overrequested =
+          (int) (shardLimit * (ratio == null ? 1.5 : Double.parseDouble(ratio)))
+              + (count == null ? 10 : Integer.parseInt(count));
+      facet.put("overrequest", Math.max(0, overrequested - shardLimit));
+    }
+    if (mincount <= 0 && level + 1 < pivot.fields.size()) {
+      // like the legacy pivots, the next level is listed for the values without any document
+      facet.put("processEmpty", true);
+    }
+    facet.put("refine", true);
+    return facet;
+  }
+
+  /**
+   * Removes the results of the pivots from the results of the JSON facets, and returns them in the
+   * format of the legacy <code>facet_pivot</code>.
+   */
+  public SimpleOrderedMap<List<NamedList<Object>>> toLegacyResponse(NamedList<Object> results) {
+    SimpleOrderedMap<List<NamedList<Object>>> response = new SimpleOrderedMap<>();
+    for (Pivot pivot : pivots) {
+      Object result = results == null ? null : results.remove(pivot.facetKey);
+      response.add(pivot.key, toLegacyValues(pivot, 0, (NamedList<?>) result));
+    }
+    return response;
+  }
+
+  private static List<NamedList<Object>> toLegacyValues(
+      Pivot pivot, int level, NamedList<?> result) {
+    if (result == null) {
+      return Collections.emptyList();
+    }
+    List<NamedList<Object>> values = new ArrayList<>();
+    List<?> buckets = (List<?>) result.get("buckets");
+    if (buckets != null) {
+      for (Object bucket : buckets) {
+        NamedList<?> b = (NamedList<?>) bucket;
+        values.add(toLegacyValue(pivot, level, b.get("val"), b));
+      }
+    }
+    NamedList<?> missing = (NamedList<?>) result.get("missing");
+    if (missing != null && count(missing) >= pivot.mincounts[level]) {
+      values.add(toLegacyValue(pivot, level, null, missing));
+    }
+    return values;
+  }
+
+  private static NamedList<Object> toLegacyValue(
+      Pivot pivot, int level, Object value, NamedList<?> bucket) {
+    SimpleOrderedMap<Object> pivotValue = new SimpleOrderedMap<>();
+    pivotValue.add("field", pivot.fields.get(level));
+    pivotValue.add("value", value);
+    long count = count(bucket);
+    pivotValue.add("count", count < Integer.MAX_VALUE ? (Number) (int) count : count);
+    if (level + 1 < pivot.fields.size()) {
+      List<NamedList<Object>> subValues =
+          toLegacyValues(pivot, level + 1, (NamedList<?>) bucket.get(SUB_KEY));
+      // like the legacy pivots, the missing values of the next level may be filtered out
+      if (!subValues.isEmpty() || pivot.missing[level + 1]) {
+        pivotValue.add("pivot", subValues);
+      }
+    }
+    return pivotValue;
+  }
+
+  private static long count(NamedList<?> bucket) {
+    return ((Number) bucket.get("count")).longValue();
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.search.ParallelTasks;
+
+/**
+ * Runs the collection tasks of a facet with the threads of the node's {@link
+ * CoreContainer#getFacetExecutor()}. Each task collects into its own accumulators, which the
+ * caller merges once all tasks are done; see {@link ParallelTasks}.
+ *
+ * @since solr 10.0
+ */
+final class ParallelFacetCollector {
+
+  private ParallelFacetCollector() {}
+
+  /**
+   * Returns the number of threads to collect a facet with, or 1 if it must be collected by the
+   * request thread only.
+   *
+   * @param requested the <code>threads</code> option of the facet; negative for as many as the
+   *     executor has
+   * @param maxTasks the number of independent units of work, e.g. segments
+   */
+  static int getNumThreads(FacetContext fcontext, int requested, int maxTasks) {
+    if (requested == 0 || requested == 1 || maxTasks <= 1) {
+      return 1;
+    }
+    CoreContainer cc = fcontext.searcher.getCore().getCoreContainer();
+    if (cc.getFacetExecutor() == null) {
+      return 1;
+    }
+    int maxThreads = cc.getConfig().getFacetExecutorThreads() + 1; // including the request thread
+    if (requested > 0) {
+      maxThreads = Math.min(maxThreads, requested);
+    }
+    return Math.max(1, Math.min(maxThreads, maxTasks));
+  }
+
+  /**
+   * Runs the tasks, and returns their results in the same order.
+   *
+   * @see ParallelTasks#run
+   */
+  static <T> List<T> run(FacetContext fcontext, List<Callable<T>> tasks) throws IOException {
+    return ParallelTasks.run(
+        fcontext.searcher.getCore().getCoreContainer().getFacetExecutor(), tasks);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.search.DocSetProducer;
+import org.apache.solr.search.PerSegmentCacheBase;
+import org.apache.solr.search.PostFilter;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.IOFunction;
+
+/**
+ * A core level cache of the value counts of terms facets per segment, enabled with <code>
+ * &lt;facetCountCache/&gt;</code> in the query section of solrconfig.xml. Entries are keyed by the
+ * segment reader, the queries and filters of the request that produced the base domain, and the
+ * field, and contain the counts of all the segment ords. A new searcher only needs to count the
+ * values of the segments that are new (or have new deletions) since the previous searcher, the
+ * counts of the other segments are merged from the cache.
+ *
+ * <p>Entries of a segment are removed as soon as the segment reader is closed; otherwise the cache
+ * is bounded by <code>maxRamMB</code>.
+ *
+ * @since solr 10.0
+ */
+public class PerSegmentFacetCountCache
+    extends PerSegmentCacheBase<PerSegmentFacetCountCache.SegmentCountsKey, int[]> {
+
+  private final LongAdder uncacheable = new LongAdder();
+
+  public PerSegmentFacetCountCache(int maxRamMB) {
+    super(
+        "facetCountCache",
+        "Per-segment counts of terms facets that are shared across searchers",
+        maxRamMB);
+  }
+
+  @Override
+  protected long ramBytesUsed(SegmentCountsKey key, int[] value) {
+    return key.ramBytesUsed() + RamUsageEstimator.sizeOf(value);
+  }
+
+  /**
+   * Returns the key of the base domain of a request, i.e. the DocSet matching the query and all the
+   * filters, or null if the counts of this domain can't be cached per segment because the matches
+   * of a segment may depend on the other segments.
+   */
+  public Object getDomainKey(SolrIndexSearcher searcher, Query query, List<Query> filters)
+      throws IOException {
+    List<Query> queries = new ArrayList<>(filters == null ? 1 : filters.size() + 1);
+    queries.add(query);
+    if (filters != null) {
+      queries.addAll(filters);
+    }
+    List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    for (Query q : queries) {
+      if (q == null || q instanceof DocSetProducer || q instanceof PostFilter) {
+        uncacheable.increment();
+        return null;
+      }
+      Weight weight = searcher.createWeight(searcher.rewrite(q), ScoreMode.COMPLETE_NO_SCORES, 1f);
+      for (LeafReaderContext leaf : leaves) {
+        if (leaf.reader().getReaderCacheHelper() == null || !weight.isCacheable(leaf)) {
+          uncacheable.increment();
+          return null;
+        }
+      }
+    }
+    return queries;
+  }
+
+  /**
+   * Returns the counts of the ords of the field in the segment for the domain, indexed by segment
+   * ord. Counts that aren't cached yet are computed and cached.
+   *
+   * @param domainKey a key returned by {@link #getDomainKey}
+   * @param counter computes the counts of the segment if they aren't cached
+   */
+  public int[] getSegmentCounts(
+      LeafReaderContext leaf,
+      Object domainKey,
+      String field,
+      IOFunction<LeafReaderContext, int[]> counter)
+      throws IOException {
+    IndexReader.CacheHelper cacheHelper = leaf.reader().getReaderCacheHelper();
+    SegmentCountsKey key = new SegmentCountsKey(cacheHelper.getKey(), domainKey, field);
+    int[] cached = get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    int[] counts = counter.apply(leaf);
+    put(cacheHelper, key, counts);
+    return counts;
+  }
+
+  @Override
+  protected void writeMetrics(MapWriter.EntryWriter map) throws IOException {
+    map.put("uncacheable", uncacheable.sum());
+    super.writeMetrics(map);
+  }
+
+  static final class SegmentCountsKey extends SegmentKey {
+    final Object domainKey;
+    final String field;
+    final int hash;
+
+    SegmentCountsKey(IndexReader.CacheKey readerKey, Object domainKey, String field) {
+      super(readerKey);
+      this.domainKey = domainKey;
+      this.field = field;
+      this.hash =
+          31 * (31 * System.identityHashCode(readerKey) + domainKey.hashCode()) + field.hashCode();
+    }
+
+    @SuppressWarnings("unchecked")
+    long ramBytesUsed() {
+      long ramBytesUsed = RamUsageEstimator.sizeOf(field);
+      for (Query q : (List<Query>) domainKey) {
+        ramBytesUsed +=
+            RamUsageEstimator.sizeOfObject(q, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED);
+      }
+      return ramBytesUsed;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SegmentCountsKey)) return false;
+      SegmentCountsKey other = (SegmentCountsKey) obj;
+      return segmentKey == other.segmentKey
+          && field.equals(other.field)
+          && domainKey.equals(other.domainKey);
+    }
+  }
+}
@@ -33,20 +33,73 @@ import org.apache.lucene.queries.function.ValueSource;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.FunctionQParser;
+import org.apache.solr.search.QParser;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.search.ValueSourceParser;
 import org.apache.solr.search.function.FieldNameValueSource;
+import org.apache.solr.util.QuantileSketch;
 
 public class PercentileAgg extends SimpleAggValueSource {
+  public static final String SKETCH = "sketch";
+  public static final String TDIGEST = "tdigest";
+  public static final String DDSKETCH = "ddsketch";
+  public static final String ACCURACY = "accuracy";
+
   List<Double> percentiles;
+  // the relative accuracy of the QuantileSketch of each slot, or 0 to use t-digests
+  double relativeAccuracy;
 
   public PercentileAgg(ValueSource vs, List<Double> percentiles) {
     super("percentile", vs);
     this.percentiles = percentiles;
   }
 
+  /**
+   * Sets the options given in the local params of the function, i.e. the <code>sketch</code> to
+   * summarize the values of each slot with, and its relative <code>accuracy</code>
+   */
+  public void setOpts(QParser parser) {
+    SolrParams opts = parser.getLocalParams();
+    String sketch = opts == null ? TDIGEST : opts.get(SKETCH, TDIGEST);
+    switch (sketch) {
+      case TDIGEST:
+        relativeAccuracy = 0;
+        break;
+      case DDSKETCH:
+        relativeAccuracy = opts.getDouble(ACCURACY, QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+          throw new SolrException(
+              SolrException.ErrorCode.BAD_REQUEST,
+              "The accuracy of a percentile sketch must be between 0 and 1 (exclusive), got "
+                  + relativeAccuracy);
+        }
+        break;
+      default:
+        throw new SolrException(
+            SolrException.ErrorCode.BAD_REQUEST, "Unknown sketch for " + name() + ": " + sketch);
+    }
+  }
+
+  /** Returns an empty digest to collect the values of a slot */
+  Digest newDigest() {
+    if (relativeAccuracy > 0) {
+      return new SketchDigest(
+          new QuantileSketch(relativeAccuracy, QuantileSketch.DEFAULT_MAX_BINS));
+    }
+    return new TDigest(new AVLTreeDigest(100)); // TODO: make compression configurable
+  }
+
+  /** Decodes the digest of a slot in a shard response */
+  Digest digestFromBytes(byte[] arr) {
+    if (relativeAccuracy > 0) {
+      return new SketchDigest(QuantileSketch.fromBytes(arr));
+    }
+    return new TDigest(AVLTreeDigest.fromBytes(ByteBuffer.wrap(arr)));
+  }
+
   @Override
   public SlotAcc createSlotAcc(FacetContext fcontext, long numDocs, int numSlots)
       throws IOException {
@@ -88,12 +141,15 @@ public class PercentileAgg extends SimpleAggValueSource {
   public boolean equals(Object o) {
     if (!(o instanceof PercentileAgg)) return false;
     PercentileAgg other = (PercentileAgg) o;
-    return this.arg.equals(other.arg) && this.percentiles.equals(other.percentiles);
+    return this.arg.equals(other.arg)
+        && this.percentiles.equals(other.percentiles)
+        && this.relativeAccuracy == other.relativeAccuracy;
   }
 
   @Override
   public int hashCode() {
-    return super.hashCode() * 31 + percentiles.hashCode();
+    return (super.hashCode() * 31 + percentiles.hashCode()) * 31
+        + Double.hashCode(relativeAccuracy);
   }
 
   public static class Parser extends ValueSourceParser {
@@ -114,11 +170,87 @@ public class PercentileAgg extends SimpleAggValueSource {
             "expected percentile(valsource,percent1[,percent2]*)  EXAMPLE:percentile(myfield,50)");
       }
 
-      return new PercentileAgg(vs, percentiles);
+      PercentileAgg agg = new PercentileAgg(vs, percentiles);
+      agg.setOpts(fp);
+      return agg;
     }
   }
 
-  protected Object getValueFromDigest(AVLTreeDigest digest) {
+  /** The values of a slot, summarized to estimate their percentiles */
+  abstract static class Digest {
+    abstract void add(double val);
+
+    /** Returns the estimated value of the quantile, between 0 and 1 */
+    abstract double quantile(double q);
+
+    /** Adds the values of another digest of the same kind */
+    abstract void merge(Digest other);
+
+    /** Returns the encoding of the digest in a shard response */
+    abstract byte[] toBytes();
+  }
+
+  static final class TDigest extends Digest {
+    private final AVLTreeDigest digest;
+
+    TDigest(AVLTreeDigest digest) {
+      this.digest = digest;
+    }
+
+    @Override
+    void add(double val) {
+      digest.add(val);
+    }
+
+    @Override
+    double quantile(double q) {
+      return digest.quantile(q);
+    }
+
+    @Override
+    void merge(Digest other) {
+      digest.add(((TDigest) other).digest);
+    }
+
+    @Override
+    byte[] toBytes() {
+      digest.compress();
+      ByteBuffer buf = ByteBuffer.allocate(digest.byteSize());
+      digest.asSmallBytes(buf);
+      return Arrays.copyOf(buf.array(), buf.position());
+    }
+  }
+
+  /** A fixed-size digest, whose encoding is a few bytes per bin of values */
+  static final class SketchDigest extends Digest {
+    private final QuantileSketch sketch;
+
+    SketchDigest(QuantileSketch sketch) {
+      this.sketch = sketch;
+    }
+
+    @Override
+    void add(double val) {
+      sketch.add(val);
+    }
+
+    @Override
+    double quantile(double q) {
+      return sketch.quantile(q);
+    }
+
+    @Override
+    void merge(Digest other) {
+      sketch.merge(((SketchDigest) other).sketch);
+    }
+
+    @Override
+    byte[] toBytes() {
+      return sketch.toBytes();
+    }
+  }
+
+  protected Object getValueFromDigest(Digest digest) {
     if (digest == null) {
       return null;
     }
@@ -136,13 +268,12 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   class Acc extends SlotAcc.FuncSlotAcc {
-    protected AVLTreeDigest[] digests;
-    protected ByteBuffer buf;
+    protected Digest[] digests;
     protected double[] sortvals;
 
     public Acc(ValueSource values, FacetContext fcontext, int numSlots) {
       super(values, fcontext, numSlots);
-      digests = new AVLTreeDigest[numSlots];
+      digests = new Digest[numSlots];
     }
 
     @Override
@@ -151,9 +282,9 @@ public class PercentileAgg extends SimpleAggValueSource {
       if (!values.exists(doc)) return;
       double val = values.doubleVal(doc);
 
-      AVLTreeDigest digest = digests[slotNum];
+      Digest digest = digests[slotNum];
       if (digest == null) {
-        digests[slotNum] = digest = new AVLTreeDigest(100); // TODO: make compression configurable
+        digests[slotNum] = digest = newDigest();
       }
 
       digest.add(val);
@@ -171,7 +302,7 @@ public class PercentileAgg extends SimpleAggValueSource {
       sortvals = new double[digests.length];
       double sortp = percentiles.get(0) * 0.01;
       for (int i = 0; i < digests.length; i++) {
-        AVLTreeDigest digest = digests[i];
+        Digest digest = digests[i];
         if (digest == null) {
           sortvals[i] = Double.NEGATIVE_INFINITY;
         } else {
@@ -193,24 +324,14 @@ public class PercentileAgg extends SimpleAggValueSource {
     }
 
     public Object getShardValue(int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      Digest digest = digests[slot];
       if (digest == null) return null; // no values for this slot
-
-      digest.compress();
-      int sz = digest.byteSize();
-      if (buf == null || buf.capacity() < sz) {
-        buf = ByteBuffer.allocate(sz + (sz >> 1)); // oversize by 50%
-      } else {
-        buf.clear();
-      }
-      digest.asSmallBytes(buf);
-      byte[] arr = Arrays.copyOf(buf.array(), buf.position());
-      return arr;
+      return digest.toBytes();
     }
 
     @Override
     public void reset() {
-      digests = new AVLTreeDigest[digests.length];
+      digests = new Digest[digests.length];
       sortvals = null;
     }
 
@@ -221,14 +342,13 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   abstract class BasePercentileDVAcc extends DocValuesAcc {
-    AVLTreeDigest[] digests;
-    protected ByteBuffer buf;
+    Digest[] digests;
     double[] sortvals;
 
     public BasePercentileDVAcc(FacetContext fcontext, SchemaField sf, int numSlots)
         throws IOException {
       super(fcontext, sf);
-      digests = new AVLTreeDigest[numSlots];
+      digests = new Digest[numSlots];
     }
 
     @Override
@@ -243,7 +363,7 @@ public class PercentileAgg extends SimpleAggValueSource {
       sortvals = new double[digests.length];
       double sortp = percentiles.get(0) * 0.01;
       for (int i = 0; i < digests.length; i++) {
-        AVLTreeDigest digest = digests[i];
+        Digest digest = digests[i];
         if (digest == null) {
           sortvals[i] = Double.NEGATIVE_INFINITY;
         } else {
@@ -265,24 +385,14 @@ public class PercentileAgg extends SimpleAggValueSource {
     }
 
     public Object getShardValue(int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      Digest digest = digests[slot];
       if (digest == null) return null; // no values for this slot
-
-      digest.compress();
-      int sz = digest.byteSize();
-      if (buf == null || buf.capacity() < sz) {
-        buf = ByteBuffer.allocate(sz + (sz >> 1)); // oversize by 50%
-      } else {
-        buf.clear();
-      }
-      digest.asSmallBytes(buf);
-      byte[] arr = Arrays.copyOf(buf.array(), buf.position());
-      return arr;
+      return digest.toBytes();
     }
 
     @Override
     public void reset() {
-      digests = new AVLTreeDigest[digests.length];
+      digests = new Digest[digests.length];
       sortvals = null;
     }
 
@@ -302,9 +412,9 @@ public class PercentileAgg extends SimpleAggValueSource {
 
     @Override
     protected void collectValues(int doc, int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      Digest digest = digests[slot];
       if (digest == null) {
-        digests[slot] = digest = new AVLTreeDigest(100);
+        digests[slot] = digest = newDigest();
       }
       for (int i = 0, count = values.docValueCount(); i < count; i++) {
         double val = getDouble(values.nextValue());
@@ -351,9 +461,9 @@ public class PercentileAgg extends SimpleAggValueSource {
 
     @Override
     protected void collectValues(int doc, int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      Digest digest = digests[slot];
       if (digest == null) {
-        digests[slot] = digest = new AVLTreeDigest(100);
+        digests[slot] = digest = newDigest();
       }
       long ord;
       while ((ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
@@ -377,15 +487,14 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   class PercentileUnInvertedFieldAcc extends UnInvertedFieldAcc {
-    protected AVLTreeDigest[] digests;
-    protected ByteBuffer buf;
+    protected Digest[] digests;
     protected double[] sortvals;
     private int currentSlot;
 
     public PercentileUnInvertedFieldAcc(FacetContext fcontext, SchemaField sf, int numSlots)
         throws IOException {
       super(fcontext, sf, numSlots);
-      digests = new AVLTreeDigest[numSlots];
+      digests = new Digest[numSlots];
     }
 
     @Override
@@ -408,7 +517,7 @@ public class PercentileAgg extends SimpleAggValueSource {
       sortvals = new double[digests.length];
       double sortp = percentiles.get(0) * 0.01;
       for (int i = 0; i < digests.length; i++) {
-        AVLTreeDigest digest = digests[i];
+        Digest digest = digests[i];
         if (digest == null) {
           sortvals[i] = Double.NEGATIVE_INFINITY;
         } else {
@@ -430,24 +539,14 @@ public class PercentileAgg extends SimpleAggValueSource {
     }
 
     public Object getShardValue(int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      Digest digest = digests[slot];
       if (digest == null) return null;
-
-      digest.compress();
-      int sz = digest.byteSize();
-      if (buf == null || buf.capacity() < sz) {
-        buf = ByteBuffer.allocate(sz + (sz >> 1)); // oversize by 50%
-      } else {
-        buf.clear();
-      }
-      digest.asSmallBytes(buf);
-      byte[] arr = Arrays.copyOf(buf.array(), buf.position());
-      return arr;
+      return digest.toBytes();
     }
 
     @Override
     public void reset() {
-      digests = new AVLTreeDigest[digests.length];
+      digests = new Digest[digests.length];
       sortvals = null;
     }
 
@@ -458,9 +557,9 @@ public class PercentileAgg extends SimpleAggValueSource {
 
     @Override
     public void call(int ord) {
-      AVLTreeDigest digest = digests[currentSlot];
+      Digest digest = digests[currentSlot];
       if (digest == null) {
-        digests[currentSlot] = digest = new AVLTreeDigest(100);
+        digests[currentSlot] = digest = newDigest();
       }
       try {
         BytesRef term = docToTerm.lookupOrd(ord);
@@ -474,18 +573,18 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   class Merger extends FacetModule.FacetSortableMerger {
-    protected AVLTreeDigest digest;
+    protected Digest digest;
     protected Double sortVal;
 
     @Override
     public void merge(Object facetResult, Context mcontext) {
       byte[] arr = (byte[]) facetResult;
       if (arr == null) return; // an explicit null can mean no values in the field
-      AVLTreeDigest subDigest = AVLTreeDigest.fromBytes(ByteBuffer.wrap(arr));
+      Digest subDigest = digestFromBytes(arr);
       if (digest == null) {
         digest = subDigest;
       } else {
-        digest.add(subDigest);
+        digest.merge(subDigest);
       }
     }
 
@@ -0,0 +1,384 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.queries.function.FunctionValues;
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.DateMathParser;
+
+/**
+ * The aggregates of the live documents of a segment per bucket of a time field, see {@link
+ * RangeRollupCache}. Bucket <code>b</code> holds the documents whose value of the time field is in
+ * <code>[b * width, (b + 1) * width)</code>, and for each value field of the rollup the number of
+ * documents with a value, and the sum, min and max of these values.
+ *
+ * @since solr 10.0
+ */
+final class RangeRollup implements Accountable {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(RangeRollup.class);
+  private static final long VALUES_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(Values.class);
+
+  /** The rollup of a segment without any value of the time field */
+  private static final RangeRollup EMPTY = new RangeRollup(0, new int[0], new Values[0]);
+
+  private final long firstBucket;
+  private final int[] counts;
+  private final Values[] values;
+
+  private RangeRollup(long firstBucket, int[] counts, Values[] values) {
+    this.firstBucket = firstBucket;
+    this.counts = counts;
+    this.values = values;
+  }
+
+  /** The aggregates of a value field, indexed like the counts of the buckets */
+  private static final class Values {
+    final int[] counts;
+    final double[] sums;
+    // the longs of integer fields, or the sortable longs of floating point fields
+    final long[] mins;
+    final long[] maxs;
+
+    Values(int numBuckets) {
+      counts = new int[numBuckets];
+      sums = new double[numBuckets];
+      mins = new long[numBuckets];
+      maxs = new long[numBuckets];
+    }
+
+    long ramBytesUsed() {
+      return VALUES_RAM_BYTES_USED
+          + RamUsageEstimator.sizeOf(counts)
+          + RamUsageEstimator.sizeOf(sums)
+          + RamUsageEstimator.sizeOf(mins)
+          + RamUsageEstimator.sizeOf(maxs);
+    }
+  }
+
+  /** Returns the number of buckets between the lowest and the highest non empty buckets. */
+  int getBucketCount() {
+    return counts.length;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long ramBytesUsed = BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(counts);
+    for (Values v : values) {
+      ramBytesUsed += v.ramBytesUsed();
+    }
+    return ramBytesUsed;
+  }
+
+  /**
+   * Adds the aggregates of the buckets in <code>[fromBucket, toBucket)</code> to the slot of the
+   * totals.
+   */
+  void collect(long fromBucket, long toBucket, int slot, Totals totals) {
+    int from = (int) Math.min(counts.length, Math.max(0, fromBucket - firstBucket));
+    int to = (int) Math.min(counts.length, Math.max(0, toBucket - firstBucket));
+    for (int b = from; b < to; b++) {
+      totals.counts[slot] += counts[b];
+      for (int i = 0; i < values.length; i++) {
+        Values v = values[i];
+        if (v.counts[b] == 0) {
+          continue;
+        }
+        if (totals.valueCounts[i][slot] == 0) {
+          totals.mins[i][slot] = v.mins[b];
+          totals.maxs[i][slot] = v.maxs[b];
+        } else {
+          totals.mins[i][slot] = Math.min(totals.mins[i][slot], v.mins[b]);
+          totals.maxs[i][slot] = Math.max(totals.maxs[i][slot], v.maxs[b]);
+        }
+        totals.valueCounts[i][slot] += v.counts[b];
+        totals.sums[i][slot] += v.sums[b];
+      }
+    }
+  }
+
+  /**
+   * Builds the rollup of the live documents of a segment, or returns null if the values of the time
+   * field span more than <code>maxBuckets</code> buckets.
+   */
+  static RangeRollup build(
+      SolrIndexSearcher searcher, LeafReaderContext leaf, Definition def, int maxBuckets)
+      throws IOException {
+    IndexSchema schema = searcher.getSchema();
+    SchemaField keyField = schema.getField(def.field);
+    ValueSource keySource = keyField.getType().getValueSource(keyField, null);
+    Bits liveDocs = leaf.reader().getLiveDocs();
+    int maxDoc = leaf.reader().maxDoc();
+    Map<Object, Object> context = ValueSource.newContext(searcher);
+
+    // the first pass finds the span of the buckets, so that they fit in arrays
+    FunctionValues keys = keySource.getValues(context, leaf);
+    long minBucket = Long.MAX_VALUE;
+    long maxBucket = Long.MIN_VALUE;
+    for (int doc = 0; doc < maxDoc; doc++) {
+      if ((liveDocs == null || liveDocs.get(doc)) && keys.exists(doc)) {
+        long bucket = Math.floorDiv(keys.longVal(doc), def.width);
+        minBucket = Math.min(minBucket, bucket);
+        maxBucket = Math.max(maxBucket, bucket);
+      }
+    }
+    if (minBucket > maxBucket) {
+      return EMPTY;
+    }
+    // (the difference overflows if the values span most of the longs)
+    if (maxBucket - minBucket >= maxBuckets || maxBucket - minBucket < 0) {
+      return null;
+    }
+
+    int numBuckets = (int) (maxBucket - minBucket + 1);
+    int[] counts = new int[numBuckets];
+    Values[] values = new Values[def.valueFields.size()];
+    FunctionValues[] valueSources = new FunctionValues[values.length];
+    boolean[] floating = new boolean[values.length];
+    for (int i = 0; i < values.length; i++) {
+      SchemaField sf = schema.getField(def.valueFields.get(i));
+      values[i] = new Values(numBuckets);
+      valueSources[i] = sf.getType().getValueSource(sf, null).getValues(context, leaf);
+      floating[i] = isFloatingPoint(sf);
+    }
+
+    keys = keySource.getValues(context, leaf);
+    for (int doc = 0; doc < maxDoc; doc++) {
+      if ((liveDocs != null && !liveDocs.get(doc)) || !keys.exists(doc)) {
+        continue;
+      }
+      int b = (int) (Math.floorDiv(keys.longVal(doc), def.width) - minBucket);
+      counts[b]++;
+      for (int i = 0; i < values.length; i++) {
+        // the same checks as the slot accs of these stats, so that the results are the same
+        double value = valueSources[i].doubleVal(doc);
+        if (value == 0 && !valueSources[i].exists(doc)) {
+          continue;
+        }
+        Values v = values[i];
+        long bits =
+            floating[i] ? NumericUtils.doubleToSortableLong(value) : valueSources[i].longVal(doc);
+        if (v.counts[b] == 0) {
+          v.mins[b] = bits;
+          v.maxs[b] = bits;
+        } else {
+          v.mins[b] = Math.min(v.mins[b], bits);
+          v.maxs[b] = Math.max(v.maxs[b], bits);
+        }
+        v.counts[b]++;
+        v.sums[b] += value;
+      }
+    }
+    return new RangeRollup(minBucket, counts, values);
+  }
+
+  static boolean isFloatingPoint(SchemaField sf) {
+    NumberType type = sf.getType().getNumberType();
+    return type == NumberType.FLOAT || type == NumberType.DOUBLE;
+  }
+
+  /** The sums of the aggregates of the rollups of all segments, per slot of a range facet */
+  static final class Totals {
+    final long[] counts;
+    final long[][] valueCounts;
+    final double[][] sums;
+    final long[][] mins;
+    final long[][] maxs;
+    private final boolean[] floating;
+
+    Totals(SolrIndexSearcher searcher, Definition def, int numSlots) {
+      int numValues = def.valueFields.size();
+      counts = new long[numSlots];
+      valueCounts = new long[numValues][numSlots];
+      sums = new double[numValues][numSlots];
+      mins = new long[numValues][numSlots];
+      maxs = new long[numValues][numSlots];
+      floating = new boolean[numValues];
+      for (int i = 0; i < numValues; i++) {
+        floating[i] = isFloatingPoint(searcher.getSchema().getField(def.valueFields.get(i)));
+      }
+    }
+
+    /** Returns the value of a stat like the slot acc of the stat, see {@link SumAgg}. */
+    Object getSum(int valueIdx, int slot) {
+      return sums[valueIdx][slot];
+    }
+
+    /** see {@link SlotAcc.AvgSlotAcc} */
+    Object getAvg(int valueIdx, int slot, boolean isShard) {
+      if (isShard) {
+        ArrayList<Object> lst = new ArrayList<>(2);
+        lst.add((int) valueCounts[valueIdx][slot]);
+        lst.add(sums[valueIdx][slot]);
+        return lst;
+      }
+      return AggUtil.avg(sums[valueIdx][slot], valueCounts[valueIdx][slot]);
+    }
+
+    /** see {@link MinMaxAgg}, the min (or max) is null if no document has a value */
+    Object getMinMax(int valueIdx, int slot, boolean min) {
+      if (valueCounts[valueIdx][slot] == 0) {
+        return null;
+      }
+      long bits = min ? mins[valueIdx][slot] : maxs[valueIdx][slot];
+      if (floating[valueIdx]) {
+        return NumericUtils.sortableLongToDouble(bits);
+      }
+      return bits;
+    }
+  }
+
+  /** A rollup configured with a <code>&lt;rollup/&gt;</code> element of solrconfig.xml */
+  static final class Definition {
+    // 1972-02-01, where months and years don't have the same length as at the epoch
+    private static final Date VARIABLE_GAP_CHECK = Date.from(Instant.parse("1972-02-01T00:00:00Z"));
+
+    final String field;
+    final String gap;
+    final long width;
+    final List<String> valueFields;
+
+    Definition(String field, String gap, List<String> valueFields) {
+      this.field = field;
+      this.gap = gap;
+      this.width = parseWidth(field, gap);
+      this.valueFields = valueFields;
+    }
+
+    /**
+     * Parses the attributes of a <code>&lt;rollup field="..." gap="..." values="..."/&gt;</code>
+     * element.
+     */
+    static Definition fromConfig(Map<String, String> attrs) {
+      String field = attrs.get("field");
+      String gap = attrs.get("gap");
+      if (field == null || gap == null) {
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR,
+            "A rollup of rangeRollups needs a field and a gap: " + attrs);
+      }
+      List<String> valueFields = new ArrayList<>();
+      for (String valueField : attrs.getOrDefault("values", "").split(",")) {
+        if (!valueField.trim().isEmpty()) {
+          valueFields.add(valueField.trim());
+        }
+      }
+      return new Definition(field.trim(), gap.trim(), List.copyOf(valueFields));
+    }
+
+    private static long parseWidth(String field, String gap) {
+      long width;
+      try {
+        if (gap.startsWith("+")) {
+          width = addDateGap(new Date(0), gap);
+          if (addDateGap(VARIABLE_GAP_CHECK, gap) != width) {
+            throw new SolrException(
+                SolrException.ErrorCode.SERVER_ERROR,
+                "The gap of the rollup of " + field + " must have a fixed length: " + gap);
+          }
+        } else {
+          width = Long.parseLong(gap);
+        }
+      } catch (ParseException | NumberFormatException e) {
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR,
+            "Invalid gap of the rollup of " + field + ": " + gap,
+            e);
+      }
+      if (width <= 0) {
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR,
+            "The gap of the rollup of " + field + " must be positive: " + gap);
+      }
+      return width;
+    }
+
+    private static long addDateGap(Date date, String gap) throws ParseException {
+      DateMathParser dmp = new DateMathParser();
+      dmp.setNow(date);
+      return dmp.parseMath(gap).getTime() - date.getTime();
+    }
+
+    /**
+     * Returns why the rollup can't be built with the fields of the schema, or null if it can: the
+     * time field must be a single valued date, long or int field, and the value fields single
+     * valued numeric fields.
+     */
+    String validate(IndexSchema schema) {
+      SchemaField sf = schema.getFieldOrNull(field);
+      if (sf == null || !isSingleValued(sf)) {
+        return "not a single valued field: " + field;
+      }
+      NumberType type = sf.getType().getNumberType();
+      if (type != NumberType.DATE && type != NumberType.LONG && type != NumberType.INTEGER) {
+        return "not a date, long or int field: " + field;
+      }
+      if (type != NumberType.DATE && gap.startsWith("+")) {
+        return "a date gap for a numeric field: " + field;
+      }
+      for (String valueField : valueFields) {
+        SchemaField vsf = schema.getFieldOrNull(valueField);
+        if (vsf == null || !isSingleValued(vsf)) {
+          return "not a single valued field: " + valueField;
+        }
+        if (vsf.getType().getNumberType() == null
+            || vsf.getType().getNumberType() == NumberType.DATE) {
+          return "not a numeric field: " + valueField;
+        }
+      }
+      return null;
+    }
+
+    private static boolean isSingleValued(SchemaField sf) {
+      return !sf.multiValued() && !sf.getType().multiValuedFieldCache();
+    }
+
+    @Override
+    public String toString() {
+      return "rollup(field=" + field + ",gap=" + gap + ",values=" + valueFields + ")";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "RangeRollup(firstBucket="
+        + firstBucket
+        + ",buckets="
+        + counts.length
+        + ",values="
+        + values.length
+        + ")";
+  }
+}
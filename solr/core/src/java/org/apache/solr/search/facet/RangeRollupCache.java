@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.search.CoreCacheBase;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A core level cache of the rollups of time fields per segment, enabled with <code>
+ * &lt;rangeRollups/&gt;</code> in the query section of solrconfig.xml. Each <code>
+ * &lt;rollup field="..." gap="..." values="..."/&gt;</code> element configures the rollup of a
+ * date, long or int field: the counts of the documents per bucket of <code>gap</code>, and the sum,
+ * min and max of the listed numeric fields in each bucket.
+ *
+ * <p>Segments are immutable, so the rollups of a segment are built once, while the first searcher
+ * that has this segment (i.e. after the commit or merge that wrote it) is warmed, and shared by all
+ * the searchers that have the same segment and deletions. Range facets on the field whose ranges
+ * are aligned with the buckets, over all the documents of the index, and with stats of the rollup
+ * only are computed from the rollups instead of matching the documents of each range; see {@link
+ * FacetRangeProcessor}.
+ *
+ * @since solr 10.0
+ */
+public class RangeRollupCache extends CoreCacheBase {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final Map<String, RangeRollup.Definition> definitions = new LinkedHashMap<>();
+  private final int maxBucketsPerSegment;
+  private final Map<IndexReader.CacheKey, Map<String, Optional<RangeRollup>>> segments =
+      new ConcurrentHashMap<>();
+  private final LongAdder builds = new LongAdder();
+  private final LongAdder buildTimeNs = new LongAdder();
+
+  /**
+   * @param rollups the attributes of the <code>&lt;rollup/&gt;</code> elements
+   * @param maxBucketsPerSegment the max number of buckets of the rollup of a segment, segments with
+   *     more buckets don't have a rollup so range facets scan them
+   */
+  public RangeRollupCache(List<Map<String, String>> rollups, int maxBucketsPerSegment) {
+    super("rangeRollupCache", "Per-segment rollups of time fields for range facets");
+    for (Map<String, String> attrs : rollups) {
+      RangeRollup.Definition def = RangeRollup.Definition.fromConfig(attrs);
+      if (definitions.put(def.field, def) != null) {
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR,
+            "Only one rollup of rangeRollups can be defined for " + def.field);
+      }
+    }
+    this.maxBucketsPerSegment = maxBucketsPerSegment;
+  }
+
+  /** Returns the rollup configured for the field, or null if there is none. */
+  RangeRollup.Definition getDefinition(String field) {
+    return definitions.get(field);
+  }
+
+  /**
+   * Returns the rollups of all the segments of the searcher, building the missing ones, or null if
+   * a segment can't have a rollup. Only lookups whose rollups were all built beforehand (e.g. while
+   * the searcher was warmed) are hits.
+   */
+  List<RangeRollup> getRollups(SolrIndexSearcher searcher, RangeRollup.Definition def)
+      throws IOException {
+    lookups.increment();
+    boolean[] built = new boolean[1];
+    List<RangeRollup> rollups = collectRollups(searcher, def, built, false);
+    if (rollups != null && !built[0]) {
+      hits.increment();
+    }
+    return rollups;
+  }
+
+  /**
+   * Returns the rollups of all the segments, or null if a segment can't have a rollup.
+   *
+   * @param built set to true if the rollup of a segment had to be built
+   * @param all whether to build the rollups of all the segments even if one can't have a rollup,
+   *     e.g. while warming, rather than returning at the first one
+   */
+  private List<RangeRollup> collectRollups(
+      SolrIndexSearcher searcher, RangeRollup.Definition def, boolean[] built, boolean all)
+      throws IOException {
+    List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    List<RangeRollup> rollups = new ArrayList<>(leaves.size());
+    for (LeafReaderContext leaf : leaves) {
+      Optional<RangeRollup> rollup = getRollup(searcher, leaf, def, built);
+      if (rollup.isEmpty()) {
+        if (!all) {
+          return null;
+        }
+        rollups = null;
+      } else if (rollups != null) {
+        rollups.add(rollup.get());
+      }
+    }
+    return rollups;
+  }
+
+  private Optional<RangeRollup> getRollup(
+      SolrIndexSearcher searcher,
+      LeafReaderContext leaf,
+      RangeRollup.Definition def,
+      boolean[] built)
+      throws IOException {
+    IndexReader.CacheHelper cacheHelper = leaf.reader().getReaderCacheHelper();
+    if (cacheHelper == null) {
+      return Optional.empty();
+    }
+    Map<String, Optional<RangeRollup>> rollups =
+        segments.computeIfAbsent(
+            cacheHelper.getKey(),
+            key -> {
+              cacheHelper.addClosedListener(segments::remove);
+              return new ConcurrentHashMap<>();
+            });
+    Optional<RangeRollup> rollup = rollups.get(def.field);
+    if (rollup != null) {
+      return rollup;
+    }
+    built[0] = true;
+    try {
+      return rollups.computeIfAbsent(def.field, field -> buildRollup(searcher, leaf, def));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private Optional<RangeRollup> buildRollup(
+      SolrIndexSearcher searcher, LeafReaderContext leaf, RangeRollup.Definition def) {
+    String error = def.validate(searcher.getSchema());
+    if (error != null) {
+      log.warn("Can't build the {}: {}", def, error);
+      return Optional.empty();
+    }
+    long start = System.nanoTime();
+    RangeRollup rollup;
+    try {
+      rollup = RangeRollup.build(searcher, leaf, def, maxBucketsPerSegment);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    buildTimeNs.add(System.nanoTime() - start);
+    builds.increment();
+    if (rollup == null) {
+      log.info(
+          "The {} of segment {} has more than {} buckets", def, leaf.ord, maxBucketsPerSegment);
+    }
+    return Optional.ofNullable(rollup);
+  }
+
+  /** Builds the rollups of the segments of a new searcher that don't have them yet. */
+  public void warm(SolrIndexSearcher searcher) {
+    for (RangeRollup.Definition def : definitions.values()) {
+      try {
+        collectRollups(searcher, def, new boolean[1], true);
+      } catch (Exception e) {
+        log.warn("Error warming the {}", def, e);
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    segments.clear();
+  }
+
+  @Override
+  protected void writeMetrics(MapWriter.EntryWriter map) throws IOException {
+    map.put("builds", builds.sum());
+    map.put("buildTimeMs", TimeUnit.NANOSECONDS.toMillis(buildTimeNs.sum()));
+    map.put("segments", segments.size());
+    long ramBytesUsed = 0;
+    for (Map<String, Optional<RangeRollup>> rollups : segments.values()) {
+      for (Optional<RangeRollup> rollup : rollups.values()) {
+        ramBytesUsed += rollup.map(RangeRollup::ramBytesUsed).orElse(0L);
+      }
+    }
+    map.put(SolrCache.RAM_BYTES_USED_PARAM, ramBytesUsed);
+  }
+}
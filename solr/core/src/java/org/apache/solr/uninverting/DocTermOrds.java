@@ -766,6 +766,24 @@ public class DocTermOrds implements Accountable {
     return termsEnum.term();
   }
 
+  /**
+   * Returns the code of the term ords of the document: either the ords themselves, inlined, or if
+   * the high bit is set, the position of the ords in the array of {@link #tnums} of the document.
+   */
+  protected int code(int docID) {
+    return index[docID];
+  }
+
+  /**
+   * Returns a byte of the ords in an array of {@link #tnums}.
+   *
+   * @param whichArray the index of the array, as encoded by the doc ids of its documents
+   * @param pos the position of the byte in the array
+   */
+  protected byte tnumByte(int whichArray, int pos) {
+    return tnums[whichArray][pos];
+  }
+
   /** Returns a SortedSetDocValues view of this instance */
   public SortedSetDocValues iterator(LeafReader reader) throws IOException {
     if (isEmpty()) {
@@ -787,7 +805,8 @@ public class DocTermOrds implements Accountable {
     private int doc = -1;
     private int tnum;
     private int upto;
-    private byte[] arr;
+    // the array of tnums that holds the ords of the doc, or -1 if they're inlined
+    private int whichArray = -1;
 
     Iterator(LeafReader reader) throws IOException {
       this.reader = reader;
@@ -810,17 +829,17 @@ public class DocTermOrds implements Accountable {
 
     @Override
     public int docValueCount() {
-      if (arr == null) {
+      if (whichArray < 0) {
         // This value was inlined, and then read into a single buffer
         return bufferLength;
       } else {
         // scan logic taken from read()
-        int start = index[doc] & 0x7fffffff;
+        int start = code(doc) & 0x7fffffff;
         int cursor = start;
         for (; ; ) {
           int delta = 0;
           for (; ; ) {
-            byte b = arr[cursor++];
+            byte b = tnumByte(whichArray, cursor++);
             delta = (delta << 7) | (b & 0x7f);
             if ((b & 0x80) == 0) break;
           }
@@ -837,7 +856,7 @@ public class DocTermOrds implements Accountable {
      */
     int read(int[] buffer) {
       int bufferUpto = 0;
-      if (arr == null) {
+      if (whichArray < 0) {
         // code is inlined into upto
         // System.out.println("inlined");
         int code = upto;
@@ -858,7 +877,7 @@ public class DocTermOrds implements Accountable {
         for (; ; ) {
           int delta = 0;
           for (; ; ) {
-            byte b = arr[upto++];
+            byte b = tnumByte(whichArray, upto++);
             delta = (delta << 7) | (b & 0x7f);
             // System.out.println("    cycle: upto=" + upto + " delta=" + delta + " b=" + b);
             if ((b & 0x80) == 0) break;
@@ -880,16 +899,15 @@ public class DocTermOrds implements Accountable {
     private void setDocument(int docID) {
       this.doc = docID;
       tnum = 0;
-      final int code = index[docID];
+      final int code = code(docID);
       if ((code & 0x80000000) != 0) {
         // a pointer
         upto = code & 0x7fffffff;
         // System.out.println("    pointer!  upto=" + upto);
-        int whichArray = (docID >>> 16) & 0xff;
-        arr = tnums[whichArray];
+        whichArray = (docID >>> 16) & 0xff;
       } else {
         // System.out.println("    inline!");
-        arr = null;
+        whichArray = -1;
         upto = code;
       }
       bufferUpto = 0;
@@ -362,6 +362,14 @@ public interface FieldCache {
   public SortedSetDocValues getDocTermOrds(LeafReader reader, String field, BytesRef prefix)
       throws IOException;
 
+  /**
+   * Expert: just like {@link #getDocTermOrds(LeafReader,String,BytesRef)}, but the uninverted ords
+   * of the documents can be stored off-heap, in a separate cache entry; see {@link
+   * OffHeapDocTermOrds}.
+   */
+  public SortedSetDocValues getDocTermOrds(
+      LeafReader reader, String field, BytesRef prefix, boolean offHeap) throws IOException;
+
   /**
    * EXPERT: A unique Identifier/Description for each item in the FieldCache. Can be useful for
    * logging/debugging.
@@ -73,11 +73,13 @@ public class FieldCacheImpl implements FieldCache {
             Map.entry(BinaryDocValues.class, new BinaryDocValuesCache(this)),
             Map.entry(SortedDocValues.class, new SortedDocValuesCache(this)),
             Map.entry(DocTermOrds.class, new DocTermOrdsCache(this)),
+            Map.entry(OffHeapDocTermOrds.class, new OffHeapDocTermOrdsCache(this)),
             Map.entry(DocsWithFieldCache.class, new DocsWithFieldCache(this)));
   }
 
   @Override
   public synchronized void purgeAllCaches() {
+    ((OffHeapDocTermOrdsCache) caches.get(OffHeapDocTermOrds.class)).releaseAll();
     init();
   }
 
@@ -1261,6 +1263,12 @@ public class FieldCacheImpl implements FieldCache {
   @Override
   public SortedSetDocValues getDocTermOrds(LeafReader reader, String field, BytesRef prefix)
       throws IOException {
+    return getDocTermOrds(reader, field, prefix, false);
+  }
+
+  @Override
+  public SortedSetDocValues getDocTermOrds(
+      LeafReader reader, String field, BytesRef prefix, boolean offHeap) throws IOException {
     // not a general purpose filtering mechanism...
     assert prefix == null || INT32_TERM_PREFIX.equals(prefix) || INT64_TERM_PREFIX.equals(prefix);
 
@@ -1300,8 +1308,8 @@ public class FieldCacheImpl implements FieldCache {
       }
     }
 
-    DocTermOrds dto =
-        (DocTermOrds) caches.get(DocTermOrds.class).get(reader, new CacheKey(field, prefix));
+    Class<?> cacheType = offHeap ? OffHeapDocTermOrds.class : DocTermOrds.class;
+    DocTermOrds dto = (DocTermOrds) caches.get(cacheType).get(reader, new CacheKey(field, prefix));
     return dto.iterator(reader);
   }
 
@@ -1316,4 +1324,48 @@ public class FieldCacheImpl implements FieldCache {
       return new DocTermOrds(reader, null, key.field, prefix);
     }
   }
+
+  /** Releases the off-heap bytes of the entries that are removed, since their segment is closed. */
+  static final class OffHeapDocTermOrdsCache extends Cache {
+    OffHeapDocTermOrdsCache(FieldCacheImpl wrapper) {
+      super(wrapper);
+    }
+
+    @Override
+    public void purgeByCacheKey(IndexReader.CacheKey coreCacheKey) {
+      Map<CacheKey, Accountable> innerCache;
+      synchronized (readerCache) {
+        innerCache = readerCache.remove(coreCacheKey);
+      }
+      if (innerCache != null) {
+        release(innerCache.values());
+      }
+    }
+
+    void releaseAll() {
+      List<Accountable> values = new ArrayList<>();
+      synchronized (readerCache) {
+        readerCache.values().forEach(innerCache -> values.addAll(innerCache.values()));
+        readerCache.clear();
+      }
+      release(values);
+    }
+
+    private static void release(Collection<Accountable> values) {
+      for (Accountable value : values) {
+        if (value instanceof CreationPlaceholder) {
+          value = ((CreationPlaceholder) value).value;
+        }
+        if (value instanceof OffHeapDocTermOrds) {
+          ((OffHeapDocTermOrds) value).release();
+        }
+      }
+    }
+
+    @Override
+    protected Accountable createValue(LeafReader reader, CacheKey key) throws IOException {
+      BytesRef prefix = (BytesRef) key.custom;
+      return new OffHeapDocTermOrds(reader, key.field, prefix);
+    }
+  }
 }
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.uninverting;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DocTermOrds} of a single segment whose term ords per document are stored off-heap, in
+ * direct buffers, once the field is uninverted. Only the (by default every 128th) indexed terms
+ * remain on the heap, so a multi-valued field without docValues that is uninverted per segment
+ * costs little heap in the steady state, and the segments that don't change are reused by all the
+ * searchers through the {@link FieldCache}.
+ *
+ * <p>The uninversion itself still builds the structure on the heap, then copies it off-heap. The
+ * off-heap bytes of all the instances are limited by the <code>solr.offHeapUninvertedFields.maxMB
+ * </code> system property, a quarter of the max heap size by default: once the limit is reached,
+ * the ords of the new instances stay on the heap. The bytes of an instance are {@link #release()
+ * released} when its segment is closed, and the direct buffers are then freed by the garbage
+ * collector, which the JVM runs when it's short of direct memory.
+ *
+ * @see FieldCache#getDocTermOrds(LeafReader, String, BytesRef, boolean)
+ * @since solr 10.0
+ */
+public class OffHeapDocTermOrds extends DocTermOrds {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** The max number of bytes of all the instances that are stored off-heap. */
+  static final long MAX_OFF_HEAP_BYTES =
+      Long.getLong("solr.offHeapUninvertedFields.maxMB", Runtime.getRuntime().maxMemory() >> 22)
+          << 20;
+
+  private static final AtomicLong reservedBytes = new AtomicLong();
+
+  // the index of the docs is split in pages since a direct buffer holds at most 2GB
+  private static final int INDEX_PAGE_BITS = 24;
+  private static final int INDEX_PAGE_MASK = (1 << INDEX_PAGE_BITS) - 1;
+
+  /** Holds the per-document ords or a pointer to the ords, null if the ords are on the heap. */
+  private IntBuffer[] offHeapIndex;
+
+  /** Holds term ords for documents. */
+  private ByteBuffer[] offHeapTnums;
+
+  private long offHeapBytesUsed;
+
+  /** Inverts the terms starting w/ prefix, or all the terms if the prefix is null. */
+  public OffHeapDocTermOrds(LeafReader reader, String field, BytesRef termPrefix)
+      throws IOException {
+    super(reader, null, field, termPrefix);
+    moveOffHeap();
+  }
+
+  /** Returns the number of bytes of all the instances that are stored off-heap. */
+  public static long reservedOffHeapBytes() {
+    return reservedBytes.get();
+  }
+
+  private static boolean reserve(long bytes) {
+    long reserved;
+    do {
+      reserved = reservedBytes.get();
+      if (reserved + bytes > MAX_OFF_HEAP_BYTES) {
+        return false;
+      }
+    } while (!reservedBytes.compareAndSet(reserved, reserved + bytes));
+    return true;
+  }
+
+  private void moveOffHeap() {
+    if (index == null) {
+      return;
+    }
+    final int maxDoc = index.length;
+    long bytes = (long) maxDoc * Integer.BYTES;
+    for (byte[] arr : tnums) {
+      bytes += arr == null ? 0 : arr.length;
+    }
+    if (!reserve(bytes)) {
+      log.info(
+          "The {} off-heap bytes of {} would exceed the max of {} bytes, keeping them on the heap",
+          bytes,
+          field,
+          MAX_OFF_HEAP_BYTES);
+      return;
+    }
+    offHeapBytesUsed = bytes;
+
+    offHeapIndex = new IntBuffer[(int) (((long) maxDoc + INDEX_PAGE_MASK) >>> INDEX_PAGE_BITS)];
+    for (int page = 0; page < offHeapIndex.length; page++) {
+      int from = page << INDEX_PAGE_BITS;
+      int length = Math.min(maxDoc - from, 1 << INDEX_PAGE_BITS);
+      offHeapIndex[page] =
+          ByteBuffer.allocateDirect(length * Integer.BYTES)
+              .order(ByteOrder.nativeOrder())
+              .asIntBuffer()
+              .put(index, from, length);
+    }
+    index = null;
+
+    offHeapTnums = new ByteBuffer[tnums.length];
+    for (int i = 0; i < tnums.length; i++) {
+      if (tnums[i] != null) {
+        offHeapTnums[i] = ByteBuffer.allocateDirect(tnums[i].length).put(tnums[i]);
+      }
+    }
+    tnums = null;
+  }
+
+  /**
+   * Releases the off-heap bytes of this instance, once its segment is closed and it can't be used
+   * anymore. The direct buffers are freed when they're garbage collected.
+   */
+  public synchronized void release() {
+    if (offHeapIndex != null) {
+      reservedBytes.addAndGet(-offHeapBytesUsed);
+      offHeapIndex = null;
+      offHeapTnums = null;
+      offHeapBytesUsed = 0;
+    }
+  }
+
+  /** Returns the number of bytes used off-heap. */
+  public long offHeapBytesUsed() {
+    return offHeapBytesUsed;
+  }
+
+  /** Returns the bytes used on the heap, i.e. excluding the {@link #offHeapBytesUsed()}. */
+  @Override
+  public long ramBytesUsed() {
+    long sz = super.ramBytesUsed() + 8 * 3;
+    if (offHeapIndex != null) {
+      sz += 64L * (offHeapIndex.length + offHeapTnums.length); // buffer objects
+    }
+    return sz;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return offHeapIndex == null && super.isEmpty();
+  }
+
+  @Override
+  protected int code(int docID) {
+    if (offHeapIndex == null) {
+      return super.code(docID);
+    }
+    return offHeapIndex[docID >>> INDEX_PAGE_BITS].get(docID & INDEX_PAGE_MASK);
+  }
+
+  @Override
+  protected byte tnumByte(int whichArray, int pos) {
+    if (offHeapTnums == null) {
+      return super.tnumByte(whichArray, pos);
+    }
+    return offHeapTnums[whichArray].get(pos);
+  }
+}
@@ -178,28 +178,48 @@ public class UninvertingReader extends FilterLeafReader {
    */
   public static DirectoryReader wrap(DirectoryReader in, Function<String, Type> mapper)
       throws IOException {
-    return new UninvertingDirectoryReader(in, mapper);
+    return wrap(in, mapper, false);
+  }
+
+  /**
+   * Just like {@link #wrap(DirectoryReader, Function)}, but the multi-valued fields that are
+   * uninverted can be stored off-heap; see {@link OffHeapDocTermOrds}.
+   *
+   * @param offHeapDocTermOrds whether to store the ords of the SORTED_SET types off-heap
+   */
+  public static DirectoryReader wrap(
+      DirectoryReader in, Function<String, Type> mapper, boolean offHeapDocTermOrds)
+      throws IOException {
+    return new UninvertingDirectoryReader(in, mapper, offHeapDocTermOrds);
   }
 
   static class UninvertingDirectoryReader extends FilterDirectoryReader {
     final Function<String, Type> mapper;
+    final boolean offHeapDocTermOrds;
 
     public UninvertingDirectoryReader(DirectoryReader in, final Function<String, Type> mapper)
         throws IOException {
+      this(in, mapper, false);
+    }
+
+    public UninvertingDirectoryReader(
+        DirectoryReader in, final Function<String, Type> mapper, boolean offHeapDocTermOrds)
+        throws IOException {
       super(
           in,
           new FilterDirectoryReader.SubReaderWrapper() {
             @Override
             public LeafReader wrap(LeafReader reader) {
-              return UninvertingReader.wrap(reader, mapper);
+              return UninvertingReader.wrap(reader, mapper, offHeapDocTermOrds);
             }
           });
       this.mapper = mapper;
+      this.offHeapDocTermOrds = offHeapDocTermOrds;
     }
 
     @Override
     protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) throws IOException {
-      return new UninvertingDirectoryReader(in, mapper);
+      return new UninvertingDirectoryReader(in, mapper, offHeapDocTermOrds);
     }
 
     // NOTE: delegating the cache helpers is wrong since this wrapper alters the
@@ -222,6 +242,17 @@ public class UninvertingReader extends FilterLeafReader {
    * @lucene.internal
    */
   public static LeafReader wrap(LeafReader in, Function<String, Type> mapping) {
+    return wrap(in, mapping, false);
+  }
+
+  /**
+   * Just like {@link #wrap(LeafReader, Function)}, but the ords of the SORTED_SET types can be
+   * stored off-heap.
+   *
+   * @lucene.internal
+   */
+  public static LeafReader wrap(
+      LeafReader in, Function<String, Type> mapping, boolean offHeapDocTermOrds) {
     boolean wrap = false;
 
     // Calculate a new FieldInfos that has DocValuesType where we didn't before
@@ -308,17 +339,23 @@ public class UninvertingReader extends FilterLeafReader {
     } else {
       FieldInfos fieldInfos =
           new FieldInfos(newFieldInfos.toArray(new FieldInfo[newFieldInfos.size()]));
-      return new UninvertingReader(in, mapping, fieldInfos);
+      return new UninvertingReader(in, mapping, fieldInfos, offHeapDocTermOrds);
     }
   }
 
   final Function<String, Type> mapping;
   final FieldInfos fieldInfos;
+  final boolean offHeapDocTermOrds;
 
-  private UninvertingReader(LeafReader in, Function<String, Type> mapping, FieldInfos fieldInfos) {
+  private UninvertingReader(
+      LeafReader in,
+      Function<String, Type> mapping,
+      FieldInfos fieldInfos,
+      boolean offHeapDocTermOrds) {
     super(in);
     this.mapping = mapping;
     this.fieldInfos = fieldInfos;
+    this.offHeapDocTermOrds = offHeapDocTermOrds;
   }
 
   @Override
@@ -403,12 +440,14 @@ public class UninvertingReader extends FilterLeafReader {
       switch (v) {
         case SORTED_SET_INTEGER:
         case SORTED_SET_FLOAT:
-          return FieldCache.DEFAULT.getDocTermOrds(in, field, FieldCache.INT32_TERM_PREFIX);
+          return FieldCache.DEFAULT.getDocTermOrds(
+              in, field, FieldCache.INT32_TERM_PREFIX, offHeapDocTermOrds);
         case SORTED_SET_LONG:
         case SORTED_SET_DOUBLE:
-          return FieldCache.DEFAULT.getDocTermOrds(in, field, FieldCache.INT64_TERM_PREFIX);
+          return FieldCache.DEFAULT.getDocTermOrds(
+              in, field, FieldCache.INT64_TERM_PREFIX, offHeapDocTermOrds);
         case SORTED_SET_BINARY:
-          return FieldCache.DEFAULT.getDocTermOrds(in, field, null);
+          return FieldCache.DEFAULT.getDocTermOrds(in, field, null, offHeapDocTermOrds);
         case BINARY:
         case LEGACY_DOUBLE:
         case LEGACY_FLOAT:
@@ -460,13 +499,17 @@ public class UninvertingReader extends FilterLeafReader {
   public static FieldCacheStats getUninvertedStats() {
     CacheEntry[] entries = FieldCache.DEFAULT.getCacheEntries();
     long totalBytesUsed = 0;
+    long offHeapBytesUsed = 0;
     String[] info = new String[entries.length];
     for (int i = 0; i < entries.length; i++) {
       info[i] = entries[i].toString();
       totalBytesUsed += entries[i].getValue().ramBytesUsed();
+      if (entries[i].getValue() instanceof OffHeapDocTermOrds) {
+        offHeapBytesUsed += ((OffHeapDocTermOrds) entries[i].getValue()).offHeapBytesUsed();
+      }
     }
     String totalSize = RamUsageEstimator.humanReadableUnits(totalBytesUsed);
-    return new FieldCacheStats(totalSize, info);
+    return new FieldCacheStats(totalSize, offHeapBytesUsed, info);
   }
 
   public static int getUninvertedStatsSize() {
@@ -480,10 +523,16 @@ public class UninvertingReader extends FilterLeafReader {
    */
   public static class FieldCacheStats {
     public String totalSize;
+    public long offHeapBytesUsed;
     public String[] info;
 
     public FieldCacheStats(String totalSize, String[] info) {
+      this(totalSize, 0, info);
+    }
+
+    public FieldCacheStats(String totalSize, long offHeapBytesUsed, String[] info) {
       this.totalSize = totalSize;
+      this.offHeapBytesUsed = offHeapBytesUsed;
       this.info = info;
     }
   }
@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A mergeable sketch of the quantiles of double values with a relative error, in the spirit of
+ * DDSketch (Masson, Rim, Lee: "DDSketch: A Fast and Fully-Mergeable Quantile Sketch with
+ * Relative-Error Guarantees").
+ *
+ * <p>Values are counted in logarithmic bins: a value <code>v &gt; 0</code> is counted in the bin
+ * <code>ceil(log(v) / log(gamma))</code> with <code>gamma = (1 + a) / (1 - a)</code>, so that any
+ * quantile is returned with a relative error of at most <code>a</code>. Negative values are counted
+ * in the bins of their absolute value. Two sketches with the same accuracy are merged by adding the
+ * counts of their bins, which is exact.
+ *
+ * <p>The memory of a sketch is bounded by <code>maxBins</code> bins per sign: when the values of a
+ * sign span more bins than that, the bins of the values closest to zero are collapsed, so only the
+ * quantiles of these values lose their accuracy.
+ *
+ * @since solr 10.0
+ */
+public final class QuantileSketch implements Accountable {
+  public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+  public static final int DEFAULT_MAX_BINS = 2048;
+
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(QuantileSketch.class)
+          + 2 * RamUsageEstimator.shallowSizeOfInstance(Bins.class);
+  private static final byte VERSION = 1;
+  // smaller absolute values are counted as zeros
+  private static final double MIN_INDEXABLE_VALUE = Double.MIN_NORMAL;
+  private static final int INITIAL_BINS = 32;
+
+  private final double relativeAccuracy;
+  private final int maxBins;
+  private final double gamma;
+  private final double logGamma;
+  private final Bins positive = new Bins();
+  private final Bins negative = new Bins();
+  private long zeroCount;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  public QuantileSketch() {
+    this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BINS);
+  }
+
+  /**
+   * @param relativeAccuracy the max relative error of a quantile, between 0 and 1 (exclusive)
+   * @param maxBins the max number of bins of the positive values, and of the negative values
+   */
+  public QuantileSketch(double relativeAccuracy, int maxBins) {
+    if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+      throw new IllegalArgumentException(
+          "relativeAccuracy must be between 0 and 1 (exclusive), got " + relativeAccuracy);
+    }
+    if (maxBins < 1) {
+      throw new IllegalArgumentException("maxBins must be positive, got " + maxBins);
+    }
+    this.relativeAccuracy = relativeAccuracy;
+    this.maxBins = maxBins;
+    this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    this.logGamma = Math.log(gamma);
+  }
+
+  public double getRelativeAccuracy() {
+    return relativeAccuracy;
+  }
+
+  public int getMaxBins() {
+    return maxBins;
+  }
+
+  /** Returns the number of values of the sketch. */
+  public long getCount() {
+    return zeroCount + positive.total + negative.total;
+  }
+
+  public void add(double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    if (value >= MIN_INDEXABLE_VALUE) {
+      positive.add(index(value), 1, maxBins);
+    } else if (value <= -MIN_INDEXABLE_VALUE) {
+      negative.add(index(-value), 1, maxBins);
+    } else {
+      zeroCount++;
+    }
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /** Adds the values of another sketch with the same accuracy to this sketch. */
+  public void merge(QuantileSketch other) {
+    if (other.relativeAccuracy != relativeAccuracy) {
+      throw new IllegalArgumentException(
+          "Can't merge a sketch with a relative accuracy of "
+              + other.relativeAccuracy
+              + " into a sketch with a relative accuracy of "
+              + relativeAccuracy);
+    }
+    positive.merge(other.positive, maxBins);
+    negative.merge(other.negative, maxBins);
+    zeroCount += other.zeroCount;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Returns the value of the quantile, between 0 and 1, or NaN if the sketch has no values.
+   *
+   * @param q the quantile, e.g. 0.99 for the 99th percentile
+   */
+  public double quantile(double q) {
+    long count = getCount();
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (q <= 0) {
+      return min;
+    }
+    if (q >= 1) {
+      return max;
+    }
+    // the rank of the value among the sorted values
+    double rank = q * (count - 1);
+    double value = 0;
+    long n = 0;
+    boolean found = false;
+    // from the smallest negative value, i.e. the highest bin of the negative values
+    for (int index = negative.maxIndex; !found && index >= negative.minIndex; index--) {
+      n += negative.get(index);
+      if (n > rank) {
+        value = -value(index);
+        found = true;
+      }
+    }
+    if (!found) {
+      n += zeroCount;
+      found = n > rank;
+    }
+    for (int index = positive.minIndex; !found && index <= positive.maxIndex; index++) {
+      n += positive.get(index);
+      if (n > rank) {
+        value = value(index);
+        found = true;
+      }
+    }
+    if (!found) {
+      value = max;
+    }
+    return Math.max(min, Math.min(max, value));
+  }
+
+  private int index(double value) {
+    return (int) Math.ceil(Math.log(value) / logGamma);
+  }
+
+  /** Returns the value of a bin with the least relative error to all the values of the bin. */
+  private double value(int index) {
+    return 2 * Math.exp(index * logGamma) / (1 + gamma);
+  }
+
+  /** Returns a compact binary encoding of the sketch, see {@link #fromBytes}. */
+  public byte[] toBytes() {
+    // an upper bound of the encoded size
+    int size = 1 + 8 * 3 + 5 + 9 + 2 * (9 + 5 + 5) + 9 * (positive.size() + negative.size());
+    byte[] bytes = new byte[size];
+    ByteArrayDataOutput out = new ByteArrayDataOutput(bytes);
+    try {
+      out.writeByte(VERSION);
+      out.writeLong(Double.doubleToLongBits(relativeAccuracy));
+      out.writeVInt(maxBins);
+      out.writeLong(Double.doubleToLongBits(min));
+      out.writeLong(Double.doubleToLongBits(max));
+      out.writeVLong(zeroCount);
+      positive.write(out);
+      negative.write(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // can't happen
+    }
+    return Arrays.copyOf(bytes, out.getPosition());
+  }
+
+  /** Decodes a sketch that was encoded with {@link #toBytes}. */
+  public static QuantileSketch fromBytes(byte[] bytes) {
+    ByteArrayDataInput in = new ByteArrayDataInput(bytes);
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unknown version of a QuantileSketch: " + version);
+    }
+    try {
+      QuantileSketch sketch =
+          new QuantileSketch(Double.longBitsToDouble(in.readLong()), in.readVInt());
+      sketch.min = Double.longBitsToDouble(in.readLong());
+      sketch.max = Double.longBitsToDouble(in.readLong());
+      sketch.zeroCount = in.readVLong();
+      sketch.positive.read(in);
+      sketch.negative.read(in);
+      return sketch;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // can't happen
+    }
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED
+        + RamUsageEstimator.sizeOf(positive.counts)
+        + RamUsageEstimator.sizeOf(negative.counts);
+  }
+
+  @Override
+  public String toString() {
+    return "QuantileSketch(relativeAccuracy="
+        + relativeAccuracy
+        + ",count="
+        + getCount()
+        + ",bins="
+        + (positive.size() + negative.size())
+        + ")";
+  }
+
+  /** The counts of the contiguous bins between the lowest and the highest non empty bins. */
+  private static final class Bins {
+    long[] counts; // counts[i] is the count of the bin offset + i
+    int offset;
+    int minIndex = 0;
+    int maxIndex = -1;
+    long total;
+
+    int size() {
+      return total == 0 ? 0 : maxIndex - minIndex + 1;
+    }
+
+    long get(int index) {
+      return counts[index - offset];
+    }
+
+    void add(int index, long n, int maxBins) {
+      long collapsed = 0;
+      if (total == 0) {
+        minIndex = maxIndex = index;
+      } else if (index > maxIndex) {
+        maxIndex = index;
+        int lowest = maxIndex - maxBins + 1;
+        if (minIndex < lowest) {
+          // collapse the lowest bins into the lowest bin that fits
+          int end = Math.min(lowest, offset + counts.length);
+          for (int i = minIndex; i < end; i++) {
+            collapsed += counts[i - offset];
+            counts[i - offset] = 0;
+          }
+          minIndex = lowest;
+        }
+      } else if (index < minIndex) {
+        minIndex = Math.max(index, maxIndex - maxBins + 1);
+        index = minIndex;
+      }
+      ensureCapacity(maxBins);
+      counts[minIndex - offset] += collapsed;
+      counts[index - offset] += n;
+      total += n;
+    }
+
+    private void ensureCapacity(int maxBins) {
+      if (counts != null && minIndex >= offset && maxIndex < offset + counts.length) {
+        return;
+      }
+      int needed = maxIndex - minIndex + 1;
+      int length = Math.min(maxBins, Math.max(INITIAL_BINS, needed + (needed >> 1)));
+      // keep some room on both sides for the next values
+      int newOffset = minIndex - (length - needed) / 2;
+      long[] newCounts = new long[length];
+      if (counts != null) {
+        int from = Math.max(offset, newOffset);
+        int to = Math.min(offset + counts.length, newOffset + length);
+        if (from < to) {
+          System.arraycopy(counts, from - offset, newCounts, from - newOffset, to - from);
+        }
+      }
+      counts = newCounts;
+      offset = newOffset;
+    }
+
+    void merge(Bins other, int maxBins) {
+      if (other.total == 0) {
+        return;
+      }
+      // from the highest bin, so that the bins to collapse are known first
+      for (int index = other.maxIndex; index >= other.minIndex; index--) {
+        long n = other.get(index);
+        if (n != 0) {
+          add(index, n, maxBins);
+        }
+      }
+    }
+
+    void write(ByteArrayDataOutput out) throws IOException {
+      out.writeVLong(total);
+      if (total == 0) {
+        return;
+      }
+      out.writeZInt(minIndex);
+      out.writeVInt(maxIndex - minIndex);
+      for (int index = minIndex; index <= maxIndex; index++) {
+        out.writeVLong(get(index));
+      }
+    }
+
+    void read(ByteArrayDataInput in) throws IOException {
+      total = in.readVLong();
+      if (total == 0) {
+        return;
+      }
+      minIndex = in.readZInt();
+      maxIndex = minIndex + in.readVInt();
+      offset = minIndex;
+      counts = new long[maxIndex - minIndex + 1];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = in.readVLong();
+      }
+    }
+  }
+}
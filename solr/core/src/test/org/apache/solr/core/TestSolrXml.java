@@ -75,6 +75,10 @@ public class TestSolrXml extends SolrTestCaseJ4 {
         "config set handler class", "testConfigSetsHandler", cfg.getConfigSetsHandlerClass());
     assertEquals("core load threads", 11, cfg.getCoreLoadThreadCount(false));
     assertEquals("replay update threads", 100, cfg.getReplayUpdatesThreads());
+    assertEquals("index searcher threads", 8, cfg.getIndexSearcherExecutorThreads());
+    assertEquals("threads per request", 3, cfg.getIndexSearcherMaxThreadsPerRequest());
+    assertEquals("facet threads", 6, cfg.getFacetExecutorThreads());
+    assertEquals("export threads", 5, cfg.getExportExecutorThreads());
     MatcherAssert.assertThat(
         "core root dir",
         cfg.getCoreRootDirectory().toString(),
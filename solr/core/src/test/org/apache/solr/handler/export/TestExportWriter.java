@@ -31,12 +31,14 @@ import java.util.Set;
 import org.apache.lucene.tests.util.TestUtil;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.params.StreamParams;
 import org.apache.solr.common.util.SuppressForbidden;
 import org.apache.solr.common.util.Utils;
 import org.apache.solr.index.LogDocMergePolicyFactory;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.SchemaField;
+import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -50,9 +52,16 @@ public class TestExportWriter extends SolrTestCaseJ4 {
     // force LogDocMergePolicy so that we get a predictable doc order
     // when testing index order results
     systemSetPropertySolrTestsMergePolicyFactory(LogDocMergePolicyFactory.class.getName());
+    // the node executor of segmentThreads, smaller than some of the requested threads
+    System.setProperty("solr.tests.exportExecutorThreads", "3");
     initCore("solrconfig-sortingresponse.xml", "schema-sortingresponse.xml");
   }
 
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.tests.exportExecutorThreads");
+  }
+
   @Before
   @Override
   public void setUp() throws Exception {
@@ -1173,6 +1182,45 @@ public class TestExportWriter extends SolrTestCaseJ4 {
     validateSort(numDocs);
   }
 
+  @Test
+  public void testSegmentThreads() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+
+    int numDocs = atLeast(2000);
+    for (int i = 0; i < numDocs; i++) {
+      int number = random().nextInt(50);
+      assertU(
+          adoc(
+              "id", String.valueOf(i),
+              "intdv", String.valueOf(number),
+              "stringdv", "s" + random().nextInt(100),
+              "longdv", String.valueOf(random().nextInt(3))));
+      if (random().nextInt(200) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    String[] sorts = {"intdv asc", "stringdv desc,id asc", "longdv asc,intdv desc,stringdv asc"};
+    for (String sort : sorts) {
+      // small queues so that each segment is filled several times
+      String queueSize = String.valueOf(TestUtil.nextInt(random(), 20, 500));
+      SolrParams params =
+          params("q", "*:*", "qt", "/export", "fl", "id,intdv,stringdv", "sort", sort);
+      String expected = h.query(req(params, "queueSize", queueSize));
+      String actual =
+          h.query(
+              req(
+                  params,
+                  "queueSize",
+                  queueSize,
+                  "segmentThreads",
+                  String.valueOf(TestUtil.nextInt(random(), 1, 4))));
+      assertJsonEquals(actual, expected);
+    }
+  }
+
   private void createLargeIndex() throws Exception {
     int BATCH_SIZE = 5000;
     int NUM_BATCHES = 20;
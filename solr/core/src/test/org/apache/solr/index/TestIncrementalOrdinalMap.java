@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.util.TestUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.solr.SolrTestCase;
+
+public class TestIncrementalOrdinalMap extends SolrTestCase {
+
+  private static SortedSetDocValues getValues(LeafReader reader, String field, boolean multi)
+      throws IOException {
+    if (multi) {
+      SortedSetDocValues values = reader.getSortedSetDocValues(field);
+      return values == null ? DocValues.emptySortedSet() : values;
+    }
+    SortedDocValues values = reader.getSortedDocValues(field);
+    return DocValues.singleton(values == null ? DocValues.emptySorted() : values);
+  }
+
+  /** Checks that the map has the same global ords as an OrdinalMap of the same segments. */
+  private static void assertSameAsOrdinalMap(
+      List<LeafReaderContext> leaves, String field, boolean multi, IncrementalOrdinalMap map)
+      throws IOException {
+    SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = getValues(leaves.get(i).reader(), field, multi);
+    }
+    OrdinalMap expected = OrdinalMap.build(null, values, PackedInts.DEFAULT);
+    assertEquals(expected.getValueCount(), map.getValueCount());
+    for (int i = 0; i < values.length; i++) {
+      LongValues expectedOrds = expected.getGlobalOrds(i);
+      LongValues actualOrds = map.getGlobalOrds(i);
+      for (long segOrd = 0; segOrd < values[i].getValueCount(); segOrd++) {
+        assertEquals(expectedOrds.get(segOrd), actualOrds.get(segOrd));
+      }
+    }
+    IncrementalOrdinalMap.LookupValues lookup = map.getLookupValues(leaves);
+    assertEquals(expected.getValueCount(), lookup.getValueCount());
+    for (long ord = 0; ord < expected.getValueCount(); ord++) {
+      BytesRef term =
+          BytesRef.deepCopyOf(
+              values[expected.getFirstSegmentNumber(ord)].lookupOrd(
+                  expected.getFirstSegmentOrd(ord)));
+      assertEquals(term, lookup.lookupOrd(ord));
+      assertEquals(ord, lookup.lookupTerm(term));
+      // the term right after it is missing, and would be inserted after its ord
+      BytesRef next = new BytesRef(Arrays.copyOf(term.bytes, term.length + 1), 0, term.length + 1);
+      assertEquals(-(ord + 2), lookup.lookupTerm(next));
+    }
+  }
+
+  public void testSameGlobalOrdsAsOrdinalMap() throws IOException {
+    Directory dir = newDirectory();
+    IndexWriter w =
+        new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+    DirectoryReader reader = null;
+    IncrementalOrdinalMap single = null;
+    IncrementalOrdinalMap multi = null;
+    int segments = 0;
+    int rounds = atLeast(10);
+    for (int round = 0; round < rounds; round++) {
+      int newSegments = TestUtil.nextInt(random(), 1, 3);
+      for (int s = 0; s < newSegments; s++, segments++) {
+        int numDocs = TestUtil.nextInt(random(), 1, 50);
+        for (int i = 0; i < numDocs; i++) {
+          Document doc = new Document();
+          doc.add(new StringField("seg", Integer.toString(segments), Field.Store.NO));
+          doc.add(new StringField("id", segments + "_" + i, Field.Store.NO));
+          if (random().nextInt(10) != 0) {
+            doc.add(
+                new SortedDocValuesField(
+                    "single", new BytesRef(TestUtil.randomSimpleString(random(), 1, 3))));
+          }
+          int numValues = random().nextInt(4);
+          for (int v = 0; v < numValues; v++) {
+            doc.add(
+                new SortedSetDocValuesField(
+                    "multi", new BytesRef(TestUtil.randomSimpleString(random(), 1, 3))));
+          }
+          w.addDocument(doc);
+        }
+        w.commit();
+      }
+      if (round > 0 && random().nextBoolean()) {
+        // removes a whole segment, some of its terms may not be in any other segment
+        w.deleteDocuments(new Term("seg", Integer.toString(random().nextInt(segments))));
+      }
+      if (random().nextBoolean()) {
+        // deletes don't change the values of a segment
+        int seg = random().nextInt(segments);
+        w.deleteDocuments(new Term("id", seg + "_0"));
+      }
+      w.commit();
+
+      Set<IndexReader.CacheKey> previousSegments = new HashSet<>();
+      if (reader == null) {
+        reader = DirectoryReader.open(w);
+      } else {
+        for (LeafReaderContext leaf : reader.leaves()) {
+          previousSegments.add(leaf.reader().getCoreCacheHelper().getKey());
+        }
+        DirectoryReader newReader = DirectoryReader.openIfChanged(reader, w);
+        assertNotNull(newReader);
+        reader.close();
+        reader = newReader;
+      }
+      int retainedSegments = 0;
+      for (LeafReaderContext leaf : reader.leaves()) {
+        if (previousSegments.contains(leaf.reader().getCoreCacheHelper().getKey())) {
+          retainedSegments++;
+        }
+      }
+
+      IncrementalOrdinalMap previousSingle = random().nextInt(5) == 0 ? null : single;
+      single = IncrementalOrdinalMap.build("single", false, reader.leaves(), previousSingle);
+      assertSameAsOrdinalMap(reader.leaves(), "single", false, single);
+      IncrementalOrdinalMap previousMulti = random().nextInt(5) == 0 ? null : multi;
+      multi = IncrementalOrdinalMap.build("multi", true, reader.leaves(), previousMulti);
+      assertSameAsOrdinalMap(reader.leaves(), "multi", true, multi);
+      if (previousMulti != null) {
+        assertEquals(retainedSegments, multi.getReusedSegmentCount());
+      }
+    }
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testOtherFieldIsRejected() throws IOException {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+    Document doc = new Document();
+    doc.add(new SortedDocValuesField("single", new BytesRef("a")));
+    w.addDocument(doc);
+    w.commit();
+    try (DirectoryReader reader = DirectoryReader.open(w)) {
+      IncrementalOrdinalMap map =
+          IncrementalOrdinalMap.build("single", false, reader.leaves(), null);
+      expectThrows(
+          IllegalArgumentException.class,
+          () -> IncrementalOrdinalMap.build("other", false, reader.leaves(), map));
+      expectThrows(
+          IllegalArgumentException.class,
+          () -> IncrementalOrdinalMap.build("single", true, reader.leaves(), map));
+    }
+    w.close();
+    dir.close();
+  }
+}
@@ -23,12 +23,17 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.stream.ColumnarBatchWriter;
+import org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser;
 import org.apache.solr.client.solrj.io.stream.JavabinTupleStreamParser;
 import org.apache.solr.client.solrj.io.stream.StreamContext;
 import org.apache.solr.client.solrj.io.stream.TupleStream;
@@ -193,6 +198,66 @@ public class TestJavabinTupleStreamParser extends SolrTestCaseJ4 {
     }
   }
 
+  public void testColumnar() throws IOException {
+    Map<String, Object> row1 = new HashMap<>();
+    row1.put("id", "1");
+    row1.put("i", 1);
+    row1.put("l", 10L);
+    row1.put("f", 1.5f);
+    row1.put("d", 2.5);
+    row1.put("b", true);
+    row1.put("dt", new Date(0));
+    row1.put("s", "a");
+    row1.put("m", Arrays.asList(1, 2));
+    // the values of m don't have the same type, and some values are missing
+    Map<String, Object> row2 = Map.of("id", "2", "i", 2, "s", "b", "m", "x");
+    Map<String, Object> row3 = Map.of("id", "3", "l", 30L, "s", "a", "b", false);
+    ColumnarBatchWriter batch1 = new ColumnarBatchWriter();
+    for (Map<String, Object> row : List.of(row1, row2, row3)) {
+      batch1.addRow(new Tuple(row));
+    }
+    ColumnarBatchWriter batch2 = new ColumnarBatchWriter();
+    batch2.addRow(new Tuple(Map.of("id", "4", "i", "four")));
+
+    SimpleOrderedMap<Object> response = new SimpleOrderedMap<>();
+    response.add("numFound", 4);
+    response.add(
+        "docs",
+        List.of(batch1, new Tuple(Map.of("x", "between")), batch2, new Tuple(Map.of("EOF", true)))
+            .iterator());
+    byte[] bytes = serialize(response);
+
+    List<Map<String, Object>> tuples = new ArrayList<>();
+    try (ColumnarTupleStreamParser parser =
+        new ColumnarTupleStreamParser(
+            new JavabinTupleStreamParser(new ByteArrayInputStream(bytes), true))) {
+      Map<String, Object> tuple;
+      while ((tuple = parser.next()) != null) {
+        tuples.add(tuple);
+      }
+    }
+
+    Map<String, Object> expected1 = new HashMap<>();
+    expected1.put("id", "1");
+    expected1.put("i", 1L);
+    expected1.put("l", 10L);
+    expected1.put("f", 1.5);
+    expected1.put("d", 2.5);
+    expected1.put("b", true);
+    expected1.put("dt", "1970-01-01T00:00:00Z");
+    expected1.put("s", "a");
+    expected1.put("m", List.of(1L, 2L));
+    assertEquals(
+        List.of(
+            expected1,
+            Map.of("id", "2", "i", 2L, "s", "b", "m", "x"),
+            Map.of("id", "3", "l", 30L, "s", "a", "b", false),
+            Map.of("x", "between"),
+            Map.of("id", "4", "i", "four"),
+            Map.of("EOF", true)),
+        tuples);
+  }
+
   @SuppressWarnings({"unchecked"})
   public static byte[] serialize(Object o) throws IOException {
     SolrQueryResponse response = new SolrQueryResponse();
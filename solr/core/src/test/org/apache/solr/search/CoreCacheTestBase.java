@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.index.NoMergePolicyFactory;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.junit.AfterClass;
+
+/**
+ * Base class of the tests of the {@link CoreCacheBase core level caches}, whose entries are reused
+ * by the searchers that have the same segments.
+ */
+public abstract class CoreCacheTestBase extends SolrTestCaseJ4 {
+
+  private static final List<String> cacheProperties = new ArrayList<>();
+
+  /**
+   * Inits the core with the system properties that enable the cache, without merges.
+   *
+   * @param properties the names and values of the system properties
+   */
+  protected static void initCoreWithCache(String schema, String... properties) throws Exception {
+    // segments must not be merged away between searchers for the reuse assertions to hold
+    systemSetPropertySolrTestsMergePolicyFactory(NoMergePolicyFactory.class.getName());
+    for (int i = 0; i < properties.length; i += 2) {
+      System.setProperty(properties[i], properties[i + 1]);
+      cacheProperties.add(properties[i]);
+    }
+    initCore("solrconfig.xml", schema);
+  }
+
+  @AfterClass
+  public static void clearCacheProperties() {
+    systemClearPropertySolrTestsMergePolicyFactory();
+    cacheProperties.forEach(System::clearProperty);
+    cacheProperties.clear();
+  }
+
+  /** Returns the metrics of the cache registered with the name in the core. */
+  protected static Map<String, Object> getCacheMetrics(String name) {
+    return ((MetricsMap)
+            ((SolrMetricManager.GaugeWrapper<?>)
+                    h.getCore()
+                        .getCoreMetricManager()
+                        .getRegistry()
+                        .getMetrics()
+                        .get("CACHE.core." + name))
+                .getGauge())
+        .getValue();
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import com.codahale.metrics.Timer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.TimeSource;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.util.RefCounted;
+import org.apache.solr.util.TimeOut;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that searchers are registered before their caches are autowarmed in the background */
+public class TestBackgroundWarming extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.backgroundWarming", "true");
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.backgroundWarming");
+  }
+
+  private static Map<String, Object> lookupWarmingMetrics() {
+    return ((MetricsMap)
+            ((SolrMetricManager.GaugeWrapper<?>)
+                    h.getCore()
+                        .getCoreMetricManager()
+                        .getRegistry()
+                        .getMetrics()
+                        .get("SEARCHER.searcher.warming"))
+                .getGauge())
+        .getValue();
+  }
+
+  @Test
+  public void testBackgroundWarming() throws Exception {
+    SolrCore core = h.getCore();
+    assertTrue(core.getSolrConfig().backgroundWarming);
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", String.valueOf(i), "field2_s", String.valueOf(i % 3)));
+    }
+    assertU(commit());
+    for (int i = 0; i < 3; i++) {
+      assertQ(req("q", "*:*", "fq", "field2_s:" + i), "//*[@numFound>='6']");
+    }
+
+    Timer backgroundWarmup =
+        (Timer)
+            core.getCoreMetricManager()
+                .getRegistry()
+                .getMetrics()
+                .get("SEARCHER.new.backgroundWarmup");
+    long warmups = backgroundWarmup.getCount();
+    RefCounted<SolrIndexSearcher> oldSearcher = core.getSearcher();
+    try {
+      assertU(adoc("id", "20", "field2_s", "0"));
+      assertU(commit());
+      assertTrue("replaced searcher should stop warming", oldSearcher.get().isWarmingStopped());
+    } finally {
+      oldSearcher.decref();
+    }
+
+    new TimeOut(30, TimeUnit.SECONDS, TimeSource.NANO_TIME)
+        .waitFor("background warming did not finish", () -> backgroundWarmup.getCount() > warmups);
+    Map<String, Object> warming = lookupWarmingMetrics();
+    assertEquals(Boolean.FALSE, warming.get("inProgress"));
+    assertEquals(warming.get("totalCaches"), warming.get("warmedCaches"));
+    core.withSearcher(
+        searcher -> {
+          assertFalse(searcher.isWarmingStopped());
+          assertTrue(searcher.getFilterCache().size() > 0);
+          return null;
+        });
+  }
+}
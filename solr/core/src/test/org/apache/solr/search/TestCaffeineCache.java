@@ -93,6 +93,36 @@ public class TestCaffeineCache extends SolrTestCase {
     assertEquals(102L, nl.get("cumulative_inserts"));
   }
 
+  @Test
+  public void testWarmLiveCache() {
+    SolrMetricsContext solrMetricsContext = new SolrMetricsContext(metricManager, registry, "foo");
+    CaffeineCache<Integer, String> oldCache = new CaffeineCache<>();
+    oldCache.initializeMetrics(solrMetricsContext, scope + "-old");
+    CaffeineCache<Integer, String> newCache = new CaffeineCache<>();
+    newCache.initializeMetrics(solrMetricsContext, scope + "-new");
+
+    Map<String, String> params = Map.of("size", "100", "autowarmCount", "10");
+    NoOpRegenerator regenerator = new NoOpRegenerator();
+    Object initObj = oldCache.init(params, null, regenerator);
+    oldCache.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 20; i++) {
+      oldCache.put(i, Integer.toString(i));
+    }
+
+    // the new cache serves requests before it's warmed in the background
+    newCache.init(params, initObj, regenerator);
+    newCache.setState(SolrCache.State.LIVE);
+    assertNull(newCache.get(1));
+    newCache.put(1, "1");
+    newCache.warm(null, oldCache);
+
+    // the stats of the requests are kept
+    Map<String, Object> nl = newCache.getMetricsMap().getValue();
+    assertEquals(1L, nl.get("lookups"));
+    assertEquals(0L, nl.get("hits"));
+    assertTrue((long) nl.get("inserts") >= 1L);
+  }
+
   @Test
   public void testTimeDecay() {
     Cache<Integer, String> cacheDecay =
@@ -127,8 +127,16 @@ public class TestDocSet extends SolrTestCase {
     return new DocSlice(offset, len, arr, null, len * 2, 100.0f, TotalHits.Relation.EQUAL_TO);
   }
 
+  public DocSet getOffHeapDocSet(FixedBitSet bs) {
+    return OffHeapBitDocSet.copyOf(new BitDocSet(bs));
+  }
+
+  public DocSet getRoaringDocSet(FixedBitSet bs) {
+    return RoaringDocSet.fromBits(bs);
+  }
+
   public DocSet getDocSet(FixedBitSet bs) {
-    switch (rand.nextInt(9)) {
+    switch (rand.nextInt(11)) {
       case 0:
       case 1:
       case 2:
@@ -145,6 +153,10 @@ public class TestDocSet extends SolrTestCase {
         return getIntDocSet(bs);
       case 8:
         return getIntDocSet(bs);
+      case 9:
+        return getOffHeapDocSet(bs);
+      case 10:
+        return getRoaringDocSet(bs);
     }
     return null;
   }
@@ -577,16 +589,19 @@ public class TestDocSet extends SolrTestCase {
   }
 
   /**
-   * Tests equivalence among {@link DocIdSetIterator} instances retrieved from {@link BitDocSet} and
-   * {@link SortedIntDocSet} implementations, via {@link DocSet#makeQuery()} and directly via {@link
-   * DocSet#iterator(LeafReaderContext)}. Also tests corresponding random-access {@link Bits}
-   * instances retrieved via {@link DocSet#makeQuery()}/ {@link DocIdSet#bits()}.
+   * Tests equivalence among {@link DocIdSetIterator} instances retrieved from {@link BitDocSet},
+   * {@link SortedIntDocSet}, {@link OffHeapBitDocSet} and {@link RoaringDocSet} implementations,
+   * via {@link DocSet#makeQuery()} and directly via {@link DocSet#iterator(LeafReaderContext)}.
+   * Also tests corresponding random-access {@link Bits} instances retrieved via {@link
+   * DocSet#makeQuery()}/ {@link DocIdSet#bits()}.
    */
   public void doFilterTest(IndexReader reader) throws IOException {
     IndexReaderContext topLevelContext = reader.getContext();
     FixedBitSet bs = getRandomSet(reader.maxDoc(), rand.nextInt(reader.maxDoc() + 1));
     DocSet a = new BitDocSet(bs);
     DocSet b = getIntDocSet(bs);
+    DocSet c = getOffHeapDocSet(bs);
+    DocSet d = getRoaringDocSet(bs);
 
     //    Query fa = a.makeQuery();
     //    Query fb = b.makeQuery();
@@ -606,7 +621,9 @@ public class TestDocSet extends SolrTestCase {
       doTestIteratorEqual(
           getExpectedBits(a, readerContext),
           () -> a.iterator(readerContext),
-          () -> b.iterator(readerContext));
+          () -> b.iterator(readerContext),
+          () -> c.iterator(readerContext),
+          () -> d.iterator(readerContext));
     }
 
     int nReaders = leaves.size();
@@ -616,7 +633,9 @@ public class TestDocSet extends SolrTestCase {
       doTestIteratorEqual(
           getExpectedBits(a, readerContext),
           () -> a.iterator(readerContext),
-          () -> b.iterator(readerContext));
+          () -> b.iterator(readerContext),
+          () -> c.iterator(readerContext),
+          () -> d.iterator(readerContext));
     }
   }
 
@@ -632,6 +651,14 @@ public class TestDocSet extends SolrTestCase {
     }
   }
 
+  public void testFilterLargeSets() throws IOException {
+    // segments spanning several of the 64k doc blocks of RoaringDocSet
+    for (int i = 0; i < 10; i++) {
+      IndexReader r = dummyMultiReader(4, 100000);
+      doFilterTest(r);
+    }
+  }
+
   private static final int MAX_SRC_SIZE = 130; // push _just_ into 3 `long` "words"
 
   public void testCopyBitsToRange() {
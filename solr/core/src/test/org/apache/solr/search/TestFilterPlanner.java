@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that planning the execution of filters doesn't change which docs match */
+public class TestFilterPlanner extends SolrTestCaseJ4 {
+
+  private static final int NUM_DOCS = 1000;
+
+  private static final String[] FILTERS = {
+    "a_s:x",
+    "b_s:7",
+    "b_s:13",
+    "c_s:rare",
+    "n_i:[100 TO 299]",
+    "-b_s:13",
+    "{!cache=false}n_i:[0 TO 500]"
+  };
+
+  private static final IntPredicate[] MATCHES = {
+    i -> true,
+    i -> i % 100 == 7,
+    i -> i % 100 == 13,
+    i -> i % 500 == 7,
+    i -> i >= 100 && i <= 299,
+    i -> i % 100 != 13,
+    i -> i <= 500
+  };
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.filterPlanner", "true");
+    initCore("solrconfig.xml", "schema.xml");
+    for (int i = 0; i < NUM_DOCS; i++) {
+      List<String> fields = new ArrayList<>();
+      fields.addAll(List.of("id", String.valueOf(i), "a_s", "x", "d_s", "y"));
+      fields.addAll(List.of("b_s", String.valueOf(i % 100), "n_i", String.valueOf(i)));
+      if (i % 500 == 7) {
+        fields.addAll(List.of("c_s", "rare", "e_s", "rare"));
+      }
+      assertU(adoc(fields.toArray(new String[0])));
+    }
+    assertU(commit());
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.filterPlanner");
+  }
+
+  @Test
+  public void testSameMatches() {
+    for (int iter = 0; iter < 50; iter++) {
+      List<String> params = new ArrayList<>();
+      params.add("q");
+      params.add(random().nextBoolean() ? "*:*" : "id:[* TO *]");
+      int numFound = 0;
+      int numFilters = random().nextInt(4) + 1;
+      List<IntPredicate> matches = new ArrayList<>();
+      for (int i = 0; i < numFilters; i++) {
+        int filter = random().nextInt(FILTERS.length);
+        params.add("fq");
+        params.add(FILTERS[filter]);
+        matches.add(MATCHES[filter]);
+      }
+      for (int i = 0; i < NUM_DOCS; i++) {
+        final int doc = i;
+        if (matches.stream().allMatch(match -> match.test(doc))) {
+          numFound++;
+        }
+      }
+      assertQ(req(params.toArray(new String[0])), "//result[@numFound='" + numFound + "']");
+    }
+  }
+
+  @Test
+  public void testPlanDebugInfo() throws Exception {
+    // d_s and e_s are only used by this test, so their filters aren't cached yet
+    assertJQ(
+        req("q", "*:*", "fq", "d_s:y", "fq", "b_s:7", "fq", "e_s:rare", "debugQuery", "true"),
+        "/response/numFound==2",
+        "/debug/filter_plan/[0]/[0]/query=='e_s:rare'",
+        "/debug/filter_plan/[0]/[0]/estimate==2",
+        "/debug/filter_plan/[0]/[0]/source=='docFreq'",
+        "/debug/filter_plan/[0]/[0]/execution=='skip_cache'",
+        "/debug/filter_plan/[0]/[1]/query=='b_s:7'",
+        "/debug/filter_plan/[0]/[1]/estimate==10",
+        "/debug/filter_plan/[0]/[2]/query=='d_s:y'",
+        "/debug/filter_plan/[0]/[2]/execution=='leap_frog'");
+
+    // once cached, a broad filter is intersected rather than advanced
+    assertJQ(req("q", "*:*", "fq", "d_s:y"), "/response/numFound==" + NUM_DOCS);
+    assertJQ(
+        req("q", "id:[* TO *]", "fq", "d_s:y", "fq", "b_s:7", "debugQuery", "true"),
+        "/response/numFound==10",
+        "/debug/filter_plan/[0]/[1]/query=='d_s:y'",
+        "/debug/filter_plan/[0]/[1]/estimate==" + NUM_DOCS,
+        "/debug/filter_plan/[0]/[1]/source=='filterCache'",
+        "/debug/filter_plan/[0]/[1]/execution=='cached'");
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.index.NoMergePolicyFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that searching the segments in parallel gives the same results as a sequential search */
+public class TestMultiThreadedSearcher extends SolrTestCaseJ4 {
+
+  private static final int NUM_DOCS = 500;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // several segments, for several slices
+    systemSetPropertySolrTestsMergePolicyFactory(NoMergePolicyFactory.class.getName());
+    initCore("solrconfig.xml", "schema.xml");
+    for (int i = 0; i < NUM_DOCS; i++) {
+      StringBuilder text = new StringBuilder();
+      for (int j = 0; j < i % 7 + 1; j++) {
+        text.append(j % 2 == 0 ? "a " : "b ");
+      }
+      assertU(
+          adoc(
+              "id", String.valueOf(i),
+              "field2_s", String.valueOf(i % 3),
+              "field3_i_dvo", String.valueOf(i % 50),
+              "field4_t", text.toString()));
+      if (i % 100 == 99) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    systemClearPropertySolrTestsMergePolicyFactory();
+  }
+
+  private static QueryCommand createCommand(
+      Query query, Sort sort, int len, int flags, boolean multiThreaded) {
+    return new QueryCommand()
+        .setQuery(query)
+        .setFilterList(
+            Collections.singletonList(new TermQuery(new Term("field2_s", String.valueOf(len % 3)))))
+        .setSort(sort)
+        .setLen(len)
+        .setFlags(
+            flags
+                | SolrIndexSearcher.NO_CHECK_QCACHE
+                | SolrIndexSearcher.NO_SET_QCACHE
+                | SolrIndexSearcher.NO_CHECK_FILTERCACHE)
+        .setMultiThreaded(multiThreaded);
+  }
+
+  private static void assertSameResults(QueryResult expected, QueryResult actual) {
+    DocList expectedDocs = expected.getDocList();
+    DocList actualDocs = actual.getDocList();
+    assertEquals(expectedDocs.matches(), actualDocs.matches());
+    assertEquals(expectedDocs.hitCountRelation(), actualDocs.hitCountRelation());
+    assertEquals(expectedDocs.size(), actualDocs.size());
+    assertEquals(expectedDocs.maxScore(), actualDocs.maxScore(), 0f);
+    DocIterator expectedIter = expectedDocs.iterator();
+    DocIterator actualIter = actualDocs.iterator();
+    while (expectedIter.hasNext()) {
+      assertEquals(expectedIter.nextDoc(), actualIter.nextDoc());
+      if (expectedDocs.hasScores()) {
+        assertEquals(expectedIter.score(), actualIter.score(), 0f);
+      }
+    }
+    if (expected.getDocSet() != null) {
+      assertEquals(expected.getDocSet().size(), actual.getDocSet().size());
+      assertEquals(
+          expected.getDocSet().size(), expected.getDocSet().intersectionSize(actual.getDocSet()));
+    }
+  }
+
+  @Test
+  public void testSameResults() throws Exception {
+    h.getCore()
+        .withSearcher(
+            searcher -> {
+              assertTrue(searcher.getTopReaderContext().leaves().size() > 1);
+              Query query =
+                  new BooleanQuery.Builder()
+                      .add(new TermQuery(new Term("field4_t", "a")), BooleanClause.Occur.SHOULD)
+                      .add(new TermQuery(new Term("field4_t", "b")), BooleanClause.Occur.SHOULD)
+                      .build();
+              boolean reverse = random().nextBoolean();
+              Sort[] sorts = {
+                null, new Sort(new SortField("field3_i_dvo", SortField.Type.INT, reverse))
+              };
+              int[] flags = {
+                0,
+                SolrIndexSearcher.GET_SCORES,
+                SolrIndexSearcher.GET_DOCSET,
+                SolrIndexSearcher.GET_DOCSET | SolrIndexSearcher.GET_SCORES
+              };
+              for (Sort sort : sorts) {
+                for (int flag : flags) {
+                  for (int len : new int[] {0, 1, 10, NUM_DOCS}) {
+                    if (len == 0 && (flag & SolrIndexSearcher.GET_DOCSET) == 0) continue;
+                    QueryResult expected = new QueryResult();
+                    searcher.search(expected, createCommand(query, sort, len, flag, false));
+                    QueryResult actual = new QueryResult();
+                    searcher.search(actual, createCommand(query, sort, len, flag, true));
+                    assertSameResults(expected, actual);
+                  }
+                }
+              }
+              return null;
+            });
+  }
+
+  @Test
+  public void testSlices() throws IOException {
+    h.getCore()
+        .withSearcher(
+            searcher -> {
+              List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+              for (int numSlices = 1; numSlices <= leaves.size() + 1; numSlices++) {
+                List<List<LeafReaderContext>> slices =
+                    MultiThreadedSearcher.slices(leaves, numSlices);
+                assertEquals(Math.min(numSlices, leaves.size()), slices.size());
+                int numLeaves = 0;
+                for (List<LeafReaderContext> slice : slices) {
+                  assertFalse(slice.isEmpty());
+                  for (int i = 1; i < slice.size(); i++) {
+                    assertTrue(slice.get(i - 1).ord < slice.get(i).ord);
+                  }
+                  numLeaves += slice.size();
+                }
+                assertEquals(leaves.size(), numLeaves);
+              }
+              return null;
+            });
+  }
+}
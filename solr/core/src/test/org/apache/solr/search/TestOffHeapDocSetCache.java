@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.SolrTestCase;
+import org.junit.Test;
+
+/** Test for {@link OffHeapDocSetCache} and {@link OffHeapBitDocSet}. */
+public class TestOffHeapDocSetCache extends SolrTestCase {
+
+  private static BitDocSet randomBitDocSet(int maxDoc) {
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (int i = 0; i < maxDoc / 3; i++) {
+      bits.set(random().nextInt(maxDoc));
+    }
+    return new BitDocSet(bits);
+  }
+
+  private static Query query(int i) {
+    return new TermQuery(new Term("f", Integer.toString(i)));
+  }
+
+  private OffHeapDocSetCache newCache(Map<String, String> params) {
+    OffHeapDocSetCache cache = new OffHeapDocSetCache();
+    cache.init(params, null, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+    return cache;
+  }
+
+  @Test
+  public void testLargeSetsMovedOffHeap() throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "10");
+    params.put(OffHeapDocSetCache.MIN_OFF_HEAP_BYTES_PARAM, "128");
+    OffHeapDocSetCache cache = newCache(params);
+
+    long reserved = OffHeapDocSetCache.reservedOffHeapBytes();
+    BitDocSet big = randomBitDocSet(10000);
+    BitDocSet small = randomBitDocSet(64);
+    SortedIntDocSet ints = new SortedIntDocSet(new int[] {1, 5, 9});
+
+    cache.put(query(1), big);
+    cache.put(query(2), small);
+    cache.computeIfAbsent(query(3), q -> ints);
+
+    DocSet cached = cache.get(query(1));
+    assertTrue(cached instanceof OffHeapBitDocSet);
+    assertTrue(DocSetUtil.equals(big, cached));
+    assertEquals(big.size(), cached.size());
+    assertEquals(big.intersectionSize(small), cached.intersectionSize(small));
+    assertSame(small, cache.get(query(2)));
+    assertSame(ints, cache.get(query(3)));
+
+    long expectedOffHeap = ((OffHeapBitDocSet) cached).offHeapBytesUsed();
+    assertEquals(expectedOffHeap, cache.offHeapBytesUsed());
+    assertTrue(cache.ramBytesUsed() >= expectedOffHeap);
+
+    assertEquals(reserved + expectedOffHeap, OffHeapDocSetCache.reservedOffHeapBytes());
+
+    cache.remove(query(1));
+    assertEquals(0L, cache.offHeapBytesUsed());
+    // the requests of the searcher may still read it until the cache is closed
+    assertEquals(reserved + expectedOffHeap, OffHeapDocSetCache.reservedOffHeapBytes());
+    assertTrue(DocSetUtil.equals(big, cached));
+
+    cache.computeIfAbsent(query(4), q -> big);
+    assertTrue(cache.get(query(4)) instanceof OffHeapBitDocSet);
+    // an off-heap set put again is copied, each entry frees its own words
+    cache.put(query(5), cache.get(query(4)));
+    assertNotSame(cache.get(query(4)), cache.get(query(5)));
+    assertEquals(2 * expectedOffHeap, cache.offHeapBytesUsed());
+    cache.clear();
+    assertEquals(0L, cache.offHeapBytesUsed());
+    cache.close();
+    assertEquals(reserved, OffHeapDocSetCache.reservedOffHeapBytes());
+  }
+
+  @Test
+  public void testOffHeapLimit() throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "10");
+    params.put(OffHeapDocSetCache.MIN_OFF_HEAP_BYTES_PARAM, "0");
+    OffHeapDocSetCache cache = newCache(params);
+
+    long available =
+        OffHeapDocSetCache.MAX_OFF_HEAP_BYTES - OffHeapDocSetCache.reservedOffHeapBytes();
+    assertTrue(OffHeapDocSetCache.reserve(available));
+    try {
+      // beyond the limit the sets stay on the heap
+      BitDocSet big = randomBitDocSet(10000);
+      cache.put(query(1), big);
+      assertSame(big, cache.get(query(1)));
+      assertEquals(0L, cache.offHeapBytesUsed());
+    } finally {
+      OffHeapDocSetCache.unreserve(available);
+    }
+    BitDocSet big = randomBitDocSet(10000);
+    cache.put(query(2), big);
+    assertTrue(cache.get(query(2)) instanceof OffHeapBitDocSet);
+    cache.close();
+  }
+
+  @Test
+  public void testMemoryMapped() throws Exception {
+    Path dir = createTempDir();
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "10");
+    params.put(OffHeapDocSetCache.MIN_OFF_HEAP_BYTES_PARAM, "0");
+    params.put(OffHeapDocSetCache.MMAP_DIR_PARAM, dir.toString());
+    OffHeapDocSetCache cache = newCache(params);
+
+    BitDocSet big = randomBitDocSet(5000);
+    cache.put(query(1), big);
+    DocSet cached = cache.get(query(1));
+    assertTrue(cached instanceof OffHeapBitDocSet);
+    assertTrue(DocSetUtil.equals(big, cached));
+    assertTrue(DocSetUtil.equals(big, cached.clone()));
+    assertTrue(DocSetUtil.equals(big.union(big), cached.union(big)));
+    assertEquals(0, cached.andNotSize(big));
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(1, files.count());
+    }
+    cache.close();
+    // the file is deleted once it's unmapped
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(0, files.count());
+    }
+  }
+}
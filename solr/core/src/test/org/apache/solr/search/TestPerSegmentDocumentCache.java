@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+import org.apache.solr.core.SolrCore;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that stored fields cached per segment are returned correctly and reused by searchers */
+public class TestPerSegmentDocumentCache extends CoreCacheTestBase {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCoreWithCache("schema.xml", "solr.documentCache.perSegment", "true");
+  }
+
+  private static void addDoc(int i) {
+    assertU(
+        adoc(
+            "id", Integer.toString(i),
+            "name_s", "name" + i,
+            "count_i", Integer.toString(i),
+            "total_l", Long.toString(i * 1000000000L),
+            "ratio_f", Float.toString(i / 2f),
+            "score_d", Double.toString(i / 4d),
+            "text_t", "some text " + i,
+            "tags_is", Integer.toString(i),
+            "tags_is", Integer.toString(i + 1)));
+  }
+
+  private static void assertDoc(int i) throws Exception {
+    assertJQ(
+        req("q", "id:" + i, "fl", "*"),
+        "/response/numFound==1",
+        "/response/docs/[0]/name_s=='name" + i + "'",
+        "/response/docs/[0]/count_i==" + i,
+        "/response/docs/[0]/total_l==" + (i * 1000000000L),
+        "/response/docs/[0]/ratio_f==" + (i / 2f),
+        "/response/docs/[0]/score_d==" + (i / 4d),
+        "/response/docs/[0]/text_t=='some text " + i + "'",
+        "/response/docs/[0]/tags_is==[" + i + "," + (i + 1) + "]");
+  }
+
+  @Test
+  public void testReuseAcrossSearchers() throws Exception {
+    SolrCore core = h.getCore();
+    assertNotNull(core.getPerSegmentDocumentCache());
+    core.withSearcher(
+        searcher -> {
+          assertNull(searcher.getDocFetcher().getDocumentCache());
+          return null;
+        });
+
+    for (int i = 0; i < 10; i++) {
+      addDoc(i);
+    }
+    assertU(commit());
+
+    assertDoc(3);
+    Map<String, Object> metrics = getCacheMetrics("perSegmentDocumentCache");
+    long hits = (long) metrics.get("hits");
+    assertTrue("expected per-segment lookups", (long) metrics.get("lookups") > 0);
+    assertDoc(3);
+    metrics = getCacheMetrics("perSegmentDocumentCache");
+    assertTrue("expected a hit for the same doc", (long) metrics.get("hits") > hits);
+
+    // a second segment; the docs of the first one stay cached for the new searcher
+    for (int i = 10; i < 14; i++) {
+      addDoc(i);
+    }
+    assertU(commit());
+    hits = (long) getCacheMetrics("perSegmentDocumentCache").get("hits");
+    assertDoc(3);
+    assertDoc(12);
+    assertTrue(
+        "expected reuse of the unchanged segment",
+        (long) getCacheMetrics("perSegmentDocumentCache").get("hits") > hits);
+
+    // deletes in an unchanged segment don't change the docids of the others
+    assertU(delI("2"));
+    assertU(commit());
+    assertJQ(req("q", "id:2"), "/response/numFound==0");
+    assertDoc(3);
+    assertDoc(12);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that filterCache entries computed per segment are reused by later searchers */
+public class TestPerSegmentFilterCache extends CoreCacheTestBase {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCoreWithCache("schema_latest.xml", "solr.filterCache.perSegment", "true");
+  }
+
+  @Test
+  public void testReuseAcrossSearchers() throws Exception {
+    assertNotNull(h.getCore().getPerSegmentFilterCache());
+
+    for (int i = 0; i < 10; i++) {
+      assertU(adoc("id", Integer.toString(i), "field_s", i % 2 == 0 ? "even" : "odd"));
+    }
+    assertU(commit());
+
+    assertJQ(req("q", "*:*", "fq", "field_s:even"), "/response/numFound==5");
+    Map<String, Object> metrics = getCacheMetrics("perSegmentFilterCache");
+    long lookups = (long) metrics.get("lookups");
+    long hits = (long) metrics.get("hits");
+    assertTrue("expected per-segment lookups", lookups > 0);
+
+    // a second segment; the first one must not be recomputed by the new searcher
+    for (int i = 10; i < 14; i++) {
+      assertU(adoc("id", Integer.toString(i), "field_s", i % 2 == 0 ? "even" : "odd"));
+    }
+    assertU(commit());
+
+    assertJQ(req("q", "*:*", "fq", "field_s:even"), "/response/numFound==7");
+    metrics = getCacheMetrics("perSegmentFilterCache");
+    assertTrue("expected reuse of the unchanged segment", (long) metrics.get("hits") > hits);
+
+    // deletes in an unchanged segment are applied when the DocSet is assembled
+    assertU(delI("0"));
+    assertU(commit());
+    assertJQ(req("q", "*:*", "fq", "field_s:even"), "/response/numFound==6");
+    assertJQ(req("q", "*:*", "fq", "-field_s:even"), "/response/numFound==7");
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.TimeSource;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.util.RefCounted;
+import org.apache.solr.util.TimeOut;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that identical queries executed concurrently are only executed once */
+public class TestQueryResultCoalescing extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.queryResultCoalescing", "true");
+    initCore("solrconfig.xml", "schema.xml");
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", String.valueOf(i)));
+    }
+    assertU(commit());
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.queryResultCoalescing");
+  }
+
+  /** Matches all docs; the first execution blocks until it is released. */
+  private static class BlockingQuery extends Query {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicBoolean first = new AtomicBoolean(true);
+    final AtomicInteger executions = new AtomicInteger();
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost)
+        throws IOException {
+      executions.incrementAndGet();
+      if (first.compareAndSet(true, false)) {
+        entered.countDown();
+        try {
+          assertTrue(release.await(30, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return new MatchAllDocsQuery().createWeight(searcher, scoreMode, boost);
+    }
+
+    @Override
+    public String toString(String field) {
+      return "BlockingQuery";
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {}
+
+    @Override
+    public boolean equals(Object other) {
+      return this == other;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(this);
+    }
+  }
+
+  private static Map<String, Object> lookupCoalescingMetrics() {
+    return ((MetricsMap)
+            ((SolrMetricManager.GaugeWrapper<?>)
+                    h.getCore()
+                        .getCoreMetricManager()
+                        .getRegistry()
+                        .getMetrics()
+                        .get("SEARCHER.searcher.queryResultCoalescing"))
+                .getGauge())
+        .getValue();
+  }
+
+  private static Thread search(
+      SolrIndexSearcher searcher, Query q, long timeAllowed, AtomicReference<DocList> result) {
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                QueryCommand cmd = new QueryCommand().setQuery(q).setLen(10);
+                cmd.setTimeAllowed(timeAllowed);
+                result.set(searcher.search(new QueryResult(), cmd).getDocList());
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    thread.start();
+    return thread;
+  }
+
+  @Test
+  public void testIdenticalQueriesAreCoalesced() throws Exception {
+    assertTrue(h.getCore().getSolrConfig().queryResultCoalescing);
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      SolrIndexSearcher searcher = holder.get();
+      Map<String, Object> before = lookupCoalescingMetrics();
+      BlockingQuery q = new BlockingQuery();
+      AtomicReference<DocList> leaderResult = new AtomicReference<>();
+      AtomicReference<DocList> waiterResult = new AtomicReference<>();
+      Thread leader = search(searcher, q, 0, leaderResult);
+      assertTrue(q.entered.await(30, TimeUnit.SECONDS));
+      Thread waiter = search(searcher, q, 0, waiterResult);
+      new TimeOut(30, TimeUnit.SECONDS, TimeSource.NANO_TIME)
+          .waitFor(
+              "the second query should wait for the first one",
+              () -> waiter.getState() == Thread.State.TIMED_WAITING);
+      assertEquals(1, lookupCoalescingMetrics().get("inFlight"));
+      q.release.countDown();
+      leader.join();
+      waiter.join();
+
+      assertEquals(1, q.executions.get());
+      assertEquals(20, leaderResult.get().matches());
+      assertEquals(leaderResult.get().size(), waiterResult.get().size());
+      Map<String, Object> after = lookupCoalescingMetrics();
+      assertEquals(0, after.get("inFlight"));
+      assertEquals((long) before.get("leaders") + 1, after.get("leaders"));
+      assertEquals((long) before.get("waits") + 1, after.get("waits"));
+    } finally {
+      holder.decref();
+    }
+  }
+
+  @Test
+  public void testWaitTimesOut() throws Exception {
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      SolrIndexSearcher searcher = holder.get();
+      long timeouts = (long) lookupCoalescingMetrics().get("timeouts");
+      BlockingQuery q = new BlockingQuery();
+      AtomicReference<DocList> leaderResult = new AtomicReference<>();
+      AtomicReference<DocList> waiterResult = new AtomicReference<>();
+      Thread leader = search(searcher, q, 0, leaderResult);
+      assertTrue(q.entered.await(30, TimeUnit.SECONDS));
+      try {
+        // gives up waiting after its timeAllowed, and executes the query itself
+        Thread waiter = search(searcher, q, 50, waiterResult);
+        waiter.join();
+        assertEquals(2, q.executions.get());
+        assertEquals(20, waiterResult.get().matches());
+        assertEquals(timeouts + 1, lookupCoalescingMetrics().get("timeouts"));
+      } finally {
+        q.release.countDown();
+        leader.join();
+      }
+      assertEquals(20, leaderResult.get().matches());
+    } finally {
+      holder.decref();
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that deeper pages extend the cached prefix of a query's results correctly */
+public class TestQueryResultIncrementalPaging extends SolrTestCaseJ4 {
+
+  private static final int NUM_DOCS = 200;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.queryResultIncrementalPaging", "true");
+    initCore("solrconfig.xml", "schema.xml");
+    for (int i = 0; i < NUM_DOCS; i++) {
+      StringBuilder text = new StringBuilder();
+      for (int j = 0; j < i % 7 + 1; j++) {
+        text.append(j % 2 == 0 ? "a " : "b ");
+      }
+      assertU(
+          adoc(
+              "id", String.valueOf(i),
+              "field2_s", String.valueOf(i % 3),
+              "field3_i_dvo", String.valueOf(i % 50),
+              "field4_t", text.toString()));
+    }
+    assertU(commit());
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.queryResultIncrementalPaging");
+  }
+
+  private static Map<String, Object> lookupReuseMetrics() {
+    return ((MetricsMap)
+            ((SolrMetricManager.GaugeWrapper<?>)
+                    h.getCore()
+                        .getCoreMetricManager()
+                        .getRegistry()
+                        .getMetrics()
+                        .get("SEARCHER.searcher.queryResultCacheReuse"))
+                .getGauge())
+        .getValue();
+  }
+
+  private static QueryCommand createCommand(
+      Query query, List<Query> filters, Sort sort, int offset, int len, int flags) {
+    return new QueryCommand()
+        .setQuery(query)
+        .setFilterList(filters)
+        .setSort(sort)
+        .setOffset(offset)
+        .setLen(len)
+        .setFlags(flags);
+  }
+
+  private static void assertSameDocs(DocList expected, DocList actual) {
+    assertEquals(expected.matches(), actual.matches());
+    assertEquals(expected.size(), actual.size());
+    DocIterator expectedIter = expected.iterator();
+    DocIterator actualIter = actual.iterator();
+    while (expectedIter.hasNext()) {
+      assertEquals(expectedIter.nextDoc(), actualIter.nextDoc());
+      if (expected.hasScores()) {
+        assertEquals(expectedIter.score(), actualIter.score(), 0f);
+      }
+    }
+  }
+
+  @Test
+  public void testPaging() throws Exception {
+    Query query =
+        new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("field4_t", "a")), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("field4_t", "b")), BooleanClause.Occur.SHOULD)
+            .build();
+    Query fq1 = new TermQuery(new Term("field2_s", "1"));
+    Query fq2 = new TermQuery(new Term("field4_t", "a"));
+    boolean reverse = random().nextBoolean();
+    Sort[] sorts = {null, new Sort(new SortField("field3_i_dvo", SortField.Type.INT, reverse))};
+
+    long partialHits = (long) lookupReuseMetrics().get("partialHits");
+    for (Sort sort : sorts) {
+      for (int flags : new int[] {0, SolrIndexSearcher.GET_SCORES}) {
+        h.getCore()
+            .withSearcher(
+                searcher -> {
+                  int offset = 0;
+                  while (offset < NUM_DOCS / 3 + 10) {
+                    int len = random().nextInt(25) + 1;
+                    // filters in a random order, sometimes duplicated
+                    List<Query> filters =
+                        random().nextBoolean()
+                            ? Arrays.asList(fq1, fq2)
+                            : Arrays.asList(fq2, fq1, fq2);
+                    DocList actual =
+                        searcher.getDocList(
+                            createCommand(query, filters, sort, offset, len, flags));
+                    DocList expected =
+                        searcher.getDocList(
+                            createCommand(
+                                query,
+                                filters,
+                                sort,
+                                offset,
+                                len,
+                                flags
+                                    | SolrIndexSearcher.NO_CHECK_QCACHE
+                                    | SolrIndexSearcher.NO_SET_QCACHE));
+                    assertSameDocs(expected, actual);
+                    offset += len;
+                  }
+                  return null;
+                });
+      }
+    }
+    assertTrue(
+        "expected deeper pages to extend cached results",
+        (long) lookupReuseMetrics().get("partialHits") > partialHits);
+  }
+}
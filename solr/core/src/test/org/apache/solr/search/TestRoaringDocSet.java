@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.SolrTestCase;
+import org.junit.Test;
+
+/**
+ * Test for {@link RoaringDocSet}, with sets spanning several blocks of every container type. See
+ * also {@link TestDocSet} for the per-segment iterators.
+ */
+public class TestRoaringDocSet extends SolrTestCase {
+
+  /** Random bits mixing sparse, dense and consecutive blocks. */
+  private static FixedBitSet randomBits(int maxDoc) {
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (int start = 0; start < maxDoc; start += RoaringDocSet.BLOCK_SIZE) {
+      int end = Math.min(start + RoaringDocSet.BLOCK_SIZE, maxDoc);
+      switch (random().nextInt(5)) {
+        case 0: // empty
+          break;
+        case 1: // sparse
+          int numDocs = random().nextInt(2000);
+          for (int i = 0; i < numDocs; i++) {
+            bits.set(start + random().nextInt(end - start));
+          }
+          break;
+        case 2: // dense
+          for (int doc = start; doc < end; doc++) {
+            if (random().nextInt(3) > 0) bits.set(doc);
+          }
+          break;
+        case 3: // runs
+          int numRuns = random().nextInt(50);
+          for (int i = 0; i < numRuns; i++) {
+            int from = start + random().nextInt(end - start);
+            bits.set(from, Math.min(end, from + random().nextInt(5000) + 1));
+          }
+          break;
+        default: // full
+          bits.set(start, end);
+      }
+    }
+    return bits;
+  }
+
+  private static DocSet randomDocSet(FixedBitSet bits) {
+    switch (random().nextInt(4)) {
+      case 0:
+        return new BitDocSet(bits);
+      case 1:
+        int[] docs = new int[bits.cardinality()];
+        BitSetIterator iter = new BitSetIterator(bits, 0);
+        for (int i = 0; i < docs.length; i++) {
+          docs[i] = iter.nextDoc();
+        }
+        return new SortedIntDocSet(docs);
+      case 2:
+        return OffHeapBitDocSet.copyOf(new BitDocSet(bits));
+      default:
+        return RoaringDocSet.fromBits(bits);
+    }
+  }
+
+  private static void assertSameDocs(FixedBitSet expected, DocSet actual) {
+    assertEquals(expected.cardinality(), actual.size());
+    DocIterator iter = actual.iterator();
+    BitSetIterator expectedIter = new BitSetIterator(expected, 0);
+    for (int doc = expectedIter.nextDoc();
+        doc != DocIdSetIterator.NO_MORE_DOCS;
+        doc = expectedIter.nextDoc()) {
+      assertTrue(iter.hasNext());
+      assertEquals(doc, iter.nextDoc());
+    }
+    assertFalse(iter.hasNext());
+  }
+
+  @Test
+  public void testRandomOperations() {
+    for (int iter = 0; iter < 20; iter++) {
+      int maxDoc = random().nextInt(RoaringDocSet.BLOCK_SIZE * 4) + 1;
+      FixedBitSet bits1 = randomBits(maxDoc);
+      FixedBitSet bits2 = randomBits(maxDoc);
+      RoaringDocSet a = RoaringDocSet.fromBits(bits1);
+      DocSet b = randomDocSet(bits2);
+
+      assertSameDocs(bits1, a);
+      for (int i = 0; i < 1000; i++) {
+        int doc = random().nextInt(maxDoc);
+        assertEquals(bits1.get(doc), a.exists(doc));
+      }
+
+      FixedBitSet and = bits1.clone();
+      and.and(bits2);
+      FixedBitSet or = bits1.clone();
+      or.or(bits2);
+      FixedBitSet andNot = bits1.clone();
+      andNot.andNot(bits2);
+      FixedBitSet reverseAndNot = bits2.clone();
+      reverseAndNot.andNot(bits1);
+
+      assertSameDocs(and, a.intersection(b));
+      assertSameDocs(and, b.intersection(a));
+      assertSameDocs(or, a.union(b));
+      assertSameDocs(or, b.union(a));
+      assertSameDocs(andNot, a.andNot(b));
+      assertSameDocs(reverseAndNot, b.andNot(a));
+
+      assertEquals(and.cardinality(), a.intersectionSize(b));
+      assertEquals(and.cardinality(), b.intersectionSize(a));
+      assertEquals(and.cardinality() > 0, a.intersects(b));
+      assertEquals(and.cardinality() > 0, b.intersects(a));
+      assertEquals(or.cardinality(), a.unionSize(b));
+      assertEquals(andNot.cardinality(), a.andNotSize(b));
+
+      FixedBitSet target = new FixedBitSet(maxDoc);
+      a.addAllTo(target);
+      assertEquals(bits1, target);
+      assertSameDocs(bits1, RoaringDocSet.copyOf(new BitDocSet(bits1)));
+      assertSameDocs(bits1, RoaringDocSet.copyOf(randomDocSet(bits1)));
+    }
+  }
+
+  @Test
+  public void testCompression() {
+    int maxDoc = RoaringDocSet.BLOCK_SIZE * 8;
+    FixedBitSet consecutive = new FixedBitSet(maxDoc);
+    consecutive.set(1000, maxDoc - 1000);
+    FixedBitSet sparse = new FixedBitSet(maxDoc);
+    for (int doc = 0; doc < maxDoc; doc += 50) {
+      sparse.set(doc);
+    }
+
+    for (FixedBitSet bits : new FixedBitSet[] {consecutive, sparse}) {
+      RoaringDocSet docs = RoaringDocSet.fromBits(bits);
+      assertSameDocs(bits, docs);
+      assertEquals(RoaringDocSet.estimateRamBytesUsed(bits), docs.ramBytesUsed());
+      assertTrue(docs.ramBytesUsed() * 2 < new BitDocSet(bits).ramBytesUsed());
+    }
+    assertTrue(RoaringDocSet.fromBits(consecutive).ramBytesUsed() < 1024);
+    assertEquals(0, RoaringDocSet.fromBits(new FixedBitSet(maxDoc)).size());
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.Map;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.search.CoreCacheTestBase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that facet counts cached per segment are correct and reused by searchers */
+public class TestFacetCountCache extends CoreCacheTestBase {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCoreWithCache("schema_latest.xml", "solr.facetCountCache.enabled", "true");
+  }
+
+  private static void addDocs(int from, int to) {
+    for (int i = from; i < to; i++) {
+      assertU(
+          adoc(
+              "id", String.valueOf(i),
+              "cat_sd", "c" + (i % 7),
+              "tags_sds", "t" + (i % 3),
+              "tags_sds", "t" + (i % 5 + 10),
+              "num_i", String.valueOf(i)));
+    }
+    assertU(commit());
+  }
+
+  private static void assertSameFacets(String q, String fq, String facet) throws Exception {
+    String expected =
+        JQ(
+            req(
+                "q",
+                q,
+                "fq",
+                fq,
+                "rows",
+                "0",
+                "omitHeader",
+                "true",
+                "cache",
+                "false",
+                "json.facet",
+                facet));
+    String actual =
+        JQ(req("q", q, "fq", fq, "rows", "0", "omitHeader", "true", "json.facet", facet));
+    assertEquals(expected, actual);
+  }
+
+  private static void assertAllFacets() throws Exception {
+    for (String q : new String[] {"*:*", "num_i:[0 TO 99]"}) {
+      for (String fq : new String[] {"*:*", "tags_sds:t1"}) {
+        assertSameFacets(q, fq, "{x:{type:terms, field:cat_sd, limit:-1}}");
+        assertSameFacets(q, fq, "{x:{type:terms, field:tags_sds, sort:'index asc'}}");
+        assertSameFacets(q, fq, "{x:{type:terms, field:tags_sds, prefix:t1}}");
+        assertSameFacets(q, fq, "{x:{type:terms, field:cat_sd, limit:2, facet:{s:'sum(num_i)'}}}");
+      }
+    }
+  }
+
+  @Test
+  public void testReuseAcrossSearchers() throws Exception {
+    assertNotNull(h.getCore().getFacetCountCache());
+    addDocs(0, 100);
+    addDocs(100, 150);
+
+    long lookups = (long) getCacheMetrics("facetCountCache").get("lookups");
+    assertAllFacets();
+    Map<String, Object> metrics = getCacheMetrics("facetCountCache");
+    assertTrue("expected per-segment lookups", (long) metrics.get("lookups") > lookups);
+    long hits = (long) metrics.get("hits");
+    // the same segment counts, mapped to another prefix
+    assertAllFacets();
+    assertTrue("expected hits", (long) getCacheMetrics("facetCountCache").get("hits") > hits);
+
+    // a new segment: the counts of the others are reused
+    addDocs(150, 180);
+    int segments = h.getCore().withSearcher(searcher -> searcher.getIndexReader().leaves().size());
+    metrics = getCacheMetrics("facetCountCache");
+    lookups = (long) metrics.get("lookups");
+    hits = (long) metrics.get("hits");
+    assertSameFacets("*:*", "*:*", "{x:{type:terms, field:cat_sd, limit:-1}}");
+    metrics = getCacheMetrics("facetCountCache");
+    assertEquals(lookups + segments, metrics.get("lookups"));
+    assertEquals(hits + segments - 1, metrics.get("hits"));
+
+    // deletes in an unchanged segment invalidate its counts
+    assertU(delI("3"));
+    assertU(delI("120"));
+    assertU(commit());
+    assertAllFacets();
+  }
+
+  private static Object getFacets(String q, String... params) throws Exception {
+    SolrParams facetParams =
+        params(
+            "q", q, "rows", "0", "json.facet", "{x:{type:terms, field:tags_sds, limit:-1}}");
+    String json = JQ(req(SolrParams.wrapDefaults(params(params), facetParams)));
+    return ((Map<?, ?>) Utils.fromJSONString(json)).get("facets");
+  }
+
+  @Test
+  public void testGroupTruncate() throws Exception {
+    addDocs(2000, 2050);
+    String[] truncate = {"group", "true", "group.field", "cat_sd", "group.truncate", "true"};
+    // the counts of the group heads aren't taken from the counts cached for all the docs
+    String q = "num_i:[2000 TO 2049]";
+    Object all = getFacets(q);
+    Object truncated = getFacets(q, truncate);
+    assertFalse(truncated.toString(), all.equals(truncated));
+    assertEquals(
+        truncated,
+        getFacets(
+            q, "cache", "false", "group", "true", "group.field", "cat_sd", "group.truncate", "true"));
+    // nor cached for all the docs
+    q = "num_i:[2000 TO 2039]";
+    truncated = getFacets(q, truncate);
+    all = getFacets(q);
+    assertFalse(truncated.toString(), all.equals(truncated));
+    assertEquals(all, getFacets(q, "cache", "false"));
+  }
+
+  @Test
+  public void testUncachedDomains() throws Exception {
+    addDocs(1000, 1020);
+    long lookups = (long) getCacheMetrics("facetCountCache").get("lookups");
+    // domain changes
+    assertSameFacets(
+        "*:*", "{!tag=t}cat_sd:c1", "{x:{type:terms, field:cat_sd, domain:{excludeTags:t}}}");
+    assertSameFacets(
+        "*:*", "*:*", "{x:{type:terms, field:cat_sd, domain:{filter:'num_i:[0 TO 9]'}}}");
+    // nested in the buckets of another facet
+    assertSameFacets(
+        "*:*",
+        "*:*",
+        "{x:{type:range, field:num_i, start:0, end:100, gap:50,"
+            + " facet:{y:{type:terms, field:cat_sd}}}}");
+    // segment-dependent matches
+    assertSameFacets("*:*", "{!join from=id to=id}cat_sd:c2", "{x:{type:terms, field:cat_sd}}");
+    assertEquals(lookups, getCacheMetrics("facetCountCache").get("lookups"));
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.List;
+import org.apache.solr.JSONTestUtil;
+import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.client.solrj.SolrClient;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests the top buckets and error bounds of terms facets with <code>method:approx</code> */
+public class TestJsonFacetApprox extends SolrTestCaseHS {
+
+  private static SolrInstances servers; // for distributed testing
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    systemSetPropertySolrDisableUrlAllowList("true");
+    JSONTestUtil.failRepeatedKeys = true;
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  public static void initServers() throws Exception {
+    if (servers == null) {
+      servers = new SolrInstances(3, "solrconfig-tlog.xml", "schema_latest.xml");
+    }
+  }
+
+  @AfterClass
+  public static void afterTests() throws Exception {
+    JSONTestUtil.failRepeatedKeys = false;
+    if (servers != null) {
+      servers.stop();
+      servers = null;
+    }
+    systemClearPropertySolrDisableUrlAllowList();
+  }
+
+  @Test
+  public void testSingleNode() throws Exception {
+    Client client = Client.localClient();
+    client.deleteByQuery("*:*", null);
+    String[] cats = {"A", "B", "B", "C", "C", "C"};
+    for (int i = 0; i < cats.length; i++) {
+      client.add(sdoc("id", i, "cat_s", cats[i]), null);
+    }
+    client.commit();
+
+    // all the docs are counted
+    client.testJQ(
+        params(
+            "q",
+            "*:*",
+            "rows",
+            "0",
+            "json.facet",
+            "{cat:{type:terms, field:cat_s, method:approx, limit:2, numBuckets:true}}"),
+        "facets=={ count:6, cat:{ numBuckets:3,"
+            + " buckets:[ {val:C, count:3, error:0}, {val:B, count:2, error:0} ] } }");
+  }
+
+  @Test
+  public void testDistrib() throws Exception {
+    initServers();
+    final Client client = servers.getClient(random().nextInt());
+    client.queryDefaults().set("shards", servers.getShards());
+
+    List<SolrClient> clients = client.getClientProvider().all();
+    assertTrue(clients.size() >= 3); // we only use 2, but assert 3 to also test empty shard
+    final SolrClient c0 = clients.get(0);
+    final SolrClient c1 = clients.get(1);
+
+    client.deleteByQuery("*:*", null);
+    int id = 0;
+    // shard1: A=1,B=1,C=2,X=3,Y=3
+    for (String cat : new String[] {"A", "B", "C", "C", "X", "X", "X", "Y", "Y", "Y"}) {
+      c0.add(sdoc("id", id++, "cat_s", cat));
+    }
+    // shard2: X=1,Y=2,Z=2,C=4
+    for (String cat : new String[] {"X", "Y", "Y", "Z", "Z", "C", "C", "C", "C"}) {
+      c1.add(sdoc("id", id++, "cat_s", cat));
+    }
+    // Whole Collection: A=1,B=1,Z=2,X=4,Y=5,C=6
+    client.commit();
+
+    // shard1 returns X=3,Y=3 and shard2 returns C=4,Y=2, so C may have up to 3 more docs in
+    // shard1, and X up to 2 more docs in shard2 (but X isn't in the top 2)
+    client.testJQ(
+        params(
+            "q",
+            "*:*",
+            "rows",
+            "0",
+            "json.facet",
+            "{cat:{type:terms, field:cat_s, method:approx, limit:2, overrequest:0}}"),
+        "facets=={ count:19, cat:{"
+            + " buckets:[ {val:Y, count:5, error:0}, {val:C, count:4, error:3} ] } }");
+
+    // by default, shards return enough buckets for these counts to be exact
+    client.testJQ(
+        params(
+            "q",
+            "*:*",
+            "rows",
+            "0",
+            "json.facet",
+            "{cat:{type:terms, field:cat_s, method:approx, limit:2}}"),
+        "facets=={ count:19, cat:{"
+            + " buckets:[ {val:C, count:6, error:0}, {val:Y, count:5, error:0} ] } }");
+  }
+}
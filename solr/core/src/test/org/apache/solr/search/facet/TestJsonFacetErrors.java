@@ -627,4 +627,40 @@ public class TestJsonFacetErrors extends SolrTestCaseHS {
 
     resetExceptionIgnores();
   }
+
+  @Test
+  public void testApproxErrors() throws Exception {
+    ignoreException("method:approx");
+
+    assertQEx(
+        "Should fail as approx buckets are sorted by count",
+        "method:approx only supports sort:'count desc'",
+        req("q", "*:*", "json.facet", "{x:{type:terms, field:cat_s, method:approx, sort:index}}"),
+        SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx(
+        "Should fail as approx buckets are sorted by count",
+        "method:approx only supports sort:'count desc'",
+        req(
+            "q",
+            "*:*",
+            "json.facet",
+            "{x:{type:terms, field:cat_s, method:approx, prelim_sort:'count asc'}}"),
+        SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx(
+        "Should fail as approx buckets aren't refined",
+        "method:approx can't be refined",
+        req("q", "*:*", "json.facet", "{x:{type:terms, field:cat_s, method:approx, refine:true}}"),
+        SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx(
+        "Should fail as approx buckets only have counts",
+        "method:approx doesn't support sub-facets or stats",
+        req(
+            "q",
+            "*:*",
+            "json.facet",
+            "{x:{type:terms, field:cat_s, method:approx, facet:{s:'sum(num_d)'}}}"),
+        SolrException.ErrorCode.BAD_REQUEST);
+
+    resetExceptionIgnores();
+  }
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.Utils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Verify that the facets of the shards that are merged as soon as they're received, with the
+ * buckets sorted by index pruned while merging, are the same as the facets of a single node.
+ */
+public class TestJsonFacetMerge extends SolrTestCaseHS {
+
+  private static SolrInstances servers; // for distributed testing
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    systemSetPropertySolrDisableUrlAllowList("true");
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  public static void initServers() throws Exception {
+    if (servers == null) {
+      servers = new SolrInstances(3, "solrconfig-tlog.xml", "schema_latest.xml");
+    }
+  }
+
+  @AfterClass
+  public static void afterTests() throws Exception {
+    if (servers != null) {
+      servers.stop();
+      servers = null;
+    }
+    systemClearPropertySolrDisableUrlAllowList();
+  }
+
+  private static Object getFacets(String response) {
+    return ((Map<?, ?>) Utils.fromJSONString(response)).get("facets");
+  }
+
+  @Test
+  public void testMergedFacets() throws Exception {
+    initServers();
+    final Client client = servers.getClient(random().nextInt());
+    final Client local = Client.localClient();
+    client.deleteByQuery("*:*", null);
+    local.deleteByQuery("*:*", null);
+    List<SolrClient> clients = client.getClientProvider().all();
+
+    int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      SolrInputDocument doc =
+          sdoc(
+              "id", i,
+              "cat_s", "c" + random().nextInt(300),
+              "tag_s", "t" + random().nextInt(20),
+              "num_i", random().nextInt(100));
+      clients.get(random().nextInt(clients.size())).add(doc);
+      local.add(doc, null);
+    }
+    client.commit();
+    local.commit();
+
+    for (int iter = 0; iter < atLeast(10); iter++) {
+      String facet =
+          "{x:{type:terms, field:cat_s, sort:'index "
+              + (random().nextBoolean() ? "asc" : "desc")
+              + "', limit:"
+              + (random().nextInt(20) + 1)
+              + ", offset:"
+              + random().nextInt(5)
+              + ", refine:"
+              + random().nextBoolean()
+              + ", facet:{n:'sum(num_i)',"
+              + " y:{type:terms, field:tag_s, sort:'index desc', limit:3}}}}";
+      SolrParams params = params("q", "*:*", "rows", "0", "json.facet", facet);
+      Object expected = getFacets(getQueryResponse("json", params));
+      Object actual =
+          getFacets(
+              getJSON(
+                  clients.get(random().nextInt(clients.size())),
+                  params(params, "shards", servers.getShards())));
+      assertEquals(facet, expected, actual);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.util.NamedList;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests percentile() with the <code>ddsketch</code> sketch on several shards */
+public class TestJsonFacetPercentileSketch extends SolrTestCaseHS {
+
+  private static final double[] PERCENTILES = {0, 1, 25, 50, 90, 99, 100};
+
+  private static SolrInstances servers; // for distributed testing
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    systemSetPropertySolrDisableUrlAllowList("true");
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  public static void initServers() throws Exception {
+    if (servers == null) {
+      servers = new SolrInstances(3, "solrconfig-tlog.xml", "schema_latest.xml");
+    }
+  }
+
+  @AfterClass
+  public static void afterTests() throws Exception {
+    if (servers != null) {
+      servers.stop();
+      servers = null;
+    }
+    systemClearPropertySolrDisableUrlAllowList();
+  }
+
+  private static void assertPercentiles(List<Double> values, Object actual, double accuracy) {
+    double[] sorted = values.stream().mapToDouble(Double::doubleValue).toArray();
+    Arrays.sort(sorted);
+    List<?> percentiles = (List<?>) actual;
+    assertEquals(PERCENTILES.length, percentiles.size());
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      double expected = sorted[(int) Math.floor(PERCENTILES[i] * 0.01 * (sorted.length - 1))];
+      assertEquals(
+          "percentile " + PERCENTILES[i],
+          expected,
+          ((Number) percentiles.get(i)).doubleValue(),
+          accuracy * Math.abs(expected) + 1e-9);
+    }
+  }
+
+  @Test
+  public void testDistrib() throws Exception {
+    initServers();
+    final Client client = servers.getClient(random().nextInt());
+    client.deleteByQuery("*:*", null);
+    List<SolrClient> clients = client.getClientProvider().all();
+
+    List<Double> all = new ArrayList<>();
+    List<Double> catA = new ArrayList<>();
+    int numDocs = atLeast(300);
+    for (int i = 0; i < numDocs; i++) {
+      double value = Math.exp(random().nextDouble() * 10);
+      if (random().nextInt(5) == 0) {
+        value = -value;
+      }
+      String cat = random().nextBoolean() ? "A" : "B";
+      all.add(value);
+      if ("A".equals(cat)) {
+        catA.add(value);
+      }
+      clients
+          .get(random().nextInt(clients.size()))
+          .add(sdoc("id", i, "cat_s", cat, "num_d", value));
+    }
+    client.commit();
+
+    for (double accuracy : new double[] {0.01, 0.05}) {
+      String percentile =
+          "{type:func, func:'percentile(num_d,"
+              + Arrays.toString(PERCENTILES).replaceAll("[\\[\\] ]", "")
+              + ")', sketch:ddsketch, accuracy:"
+              + accuracy
+              + "}";
+      QueryResponse rsp =
+          clients
+              .get(0)
+              .query(
+                  params(
+                      "q",
+                      "*:*",
+                      "rows",
+                      "0",
+                      "shards",
+                      servers.getShards(),
+                      "json.facet",
+                      "{p:"
+                          + percentile
+                          + ", cats:{type:terms, field:cat_s, sort:'index asc',"
+                          + " facet:{p:"
+                          + percentile
+                          + "}}}"));
+      NamedList<?> facets = (NamedList<?>) rsp.getResponse().get("facets");
+      assertPercentiles(all, facets.get("p"), accuracy);
+      NamedList<?> cats = (NamedList<?>) facets.get("cats");
+      List<?> buckets = (List<?>) cats.get("buckets");
+      NamedList<?> bucketA = (NamedList<?>) buckets.get(0);
+      assertEquals("A", bucketA.get("val"));
+      assertPercentiles(catA, bucketA.get("p"), accuracy);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Verify that the deferred stats of the buckets of terms facets that are swept in a single pass
+ * over the domain are the same as the stats collected from the domain of each bucket.
+ */
+public class TestJsonFacetSweepStats extends SolrTestCaseJ4 {
+
+  private static final String STATS =
+      "sum:'sum(num_i)', avg:'avg(num_i)', min:'min(num_i)', max:'max(num_i)',"
+          + " unique:'unique(tag_sds)', hll:'hll(num_i)', p:'percentile(num_i,25,50,75)',"
+          + " dev:'stddev(num_i)', vals:'countvals(tag_sds)', missing:'missing(num_i)'";
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  private static void addDocs(int from, int to) {
+    for (int i = from; i < to; i++) {
+      List<String> fields = new ArrayList<>(List.of("id", String.valueOf(i)));
+      fields.addAll(List.of("cat_sd", "c" + random().nextInt(30)));
+      for (int j = random().nextInt(4); j > 0; j--) {
+        fields.addAll(List.of("tag_sds", "t" + random().nextInt(20)));
+      }
+      if (random().nextInt(10) != 0) {
+        fields.addAll(List.of("num_i", String.valueOf(random().nextInt(1000))));
+      }
+      assertU(adoc(fields.toArray(new String[0])));
+    }
+    assertU(commit());
+  }
+
+  private static String facets(String q, String facet, boolean sweep) throws Exception {
+    String json = facet.replace("$S", String.valueOf(sweep));
+    return JQ(req("q", q, "rows", "0", "omitHeader", "true", "json.facet", json));
+  }
+
+  private static void assertSameFacets(String q, String facet) throws Exception {
+    assertEquals(facet, facets(q, facet, false), facets(q, facet, true));
+  }
+
+  @Test
+  public void testSweptStats() throws Exception {
+    addDocs(0, 300);
+    addDocs(300, 500);
+    assertU(delQ("id:1*"));
+    assertU(commit());
+    addDocs(500, 600);
+
+    for (int iter = 0; iter < atLeast(10); iter++) {
+      String field = random().nextBoolean() ? "cat_sd" : "tag_sds";
+      String sort = random().nextBoolean() ? "count desc" : "index asc";
+      String facet =
+          "{x:{type:terms, method:dv, sweepStats:$S, field:"
+              + field
+              + ", sort:'"
+              + sort
+              + "', limit:"
+              + (random().nextInt(20) + 2)
+              + ", offset:"
+              + random().nextInt(3)
+              + (random().nextBoolean() ? ", prefix:" + field.charAt(0) + "1" : "")
+              + (random().nextBoolean() ? ", mincount:0" : "")
+              + ", facet:{"
+              + STATS
+              + ", y:{type:terms, method:dv, sweepStats:$S, field:tag_sds, limit:3,"
+              + " facet:{"
+              + STATS
+              + "}}}}}";
+      assertSameFacets(random().nextBoolean() ? "*:*" : "num_i:[0 TO 500]", facet);
+    }
+
+    // sorted by a stat after the top buckets are found by count
+    assertSameFacets(
+        "*:*",
+        "{x:{type:terms, method:dv, sweepStats:$S, field:cat_sd, limit:5,"
+            + " prelim_sort:'count desc', sort:'sum desc', facet:{"
+            + STATS
+            + "}}}");
+  }
+
+  @Test
+  public void testSingleCollection() throws Exception {
+    addDocs(1000, 1100);
+    DebugAgg.Acc.collectDocSets.set(0);
+    String facet =
+        "{x:{type:terms, method:dv, sweepStats:$S, field:cat_sd, limit:5,"
+            + " facet:{s:'debug(wrap,sum(num_i))'}}}";
+    // the top 5 buckets are collected in a single pass, instead of one per bucket
+    facets("*:*", facet, true);
+    assertEquals(0, DebugAgg.Acc.collectDocSets.get());
+    facets("*:*", facet, false);
+    assertEquals(5, DebugAgg.Acc.collectDocSets.get());
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.index.NoMergePolicyFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that facets collected with several threads are the same as with the request thread */
+public class TestJsonFacetThreads extends SolrTestCaseJ4 {
+
+  private static final int NUM_DOCS = 400;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // several segments, for several slices
+    systemSetPropertySolrTestsMergePolicyFactory(NoMergePolicyFactory.class.getName());
+    System.setProperty("solr.tests.facetExecutorThreads", "4");
+    initCore("solrconfig.xml", "schema_latest.xml");
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertU(
+          adoc(
+              "id", String.valueOf(i),
+              "cat_sd", "c" + (i % 7),
+              "tags_sds", "t" + (i % 3),
+              "tags_sds", "t" + (i % 5 + 10),
+              "num_i", String.valueOf(i)));
+      if (i % 50 == 49) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    systemClearPropertySolrTestsMergePolicyFactory();
+    System.clearProperty("solr.tests.facetExecutorThreads");
+  }
+
+  private static void assertSameFacets(String q, String facet) throws Exception {
+    String expected =
+        JQ(req("q", q, "rows", "0", "omitHeader", "true", "json.facet", facet.replace("$T", "0")));
+    for (String threads : new String[] {"2", "4", "-1"}) {
+      String actual =
+          JQ(
+              req(
+                  "q",
+                  q,
+                  "rows",
+                  "0",
+                  "omitHeader",
+                  "true",
+                  "json.facet",
+                  facet.replace("$T", threads)));
+      assertEquals("threads=" + threads, expected, actual);
+    }
+  }
+
+  @Test
+  public void testTermsFacets() throws Exception {
+    for (String q : new String[] {"*:*", "num_i:[0 TO 99]", "num_i:[10 TO 350]"}) {
+      assertSameFacets(q, "{x:{type:terms, field:cat_sd, limit:-1, threads:$T}}");
+      assertSameFacets(q, "{x:{type:terms, field:cat_sd, limit:3, sort:'count asc', threads:$T}}");
+      assertSameFacets(q, "{x:{type:terms, field:tags_sds, sort:'index asc', threads:$T}}");
+      assertSameFacets(q, "{x:{type:terms, field:tags_sds, prefix:t1, threads:$T}}");
+      // stats of the top buckets are computed after counting
+      assertSameFacets(
+          q, "{x:{type:terms, field:cat_sd, limit:2, threads:$T, facet:{s:'sum(num_i)'}}}");
+      // per-segment counts mapped to global ords at the end
+      assertSameFacets(q, "{x:{type:terms, field:tags_sds, perSeg:true, threads:$T}}");
+      // not counted in parallel
+      assertSameFacets(
+          q, "{x:{type:terms, field:cat_sd, sort:'s desc', threads:$T, facet:{s:'sum(num_i)'}}}");
+    }
+  }
+
+  @Test
+  public void testRangeFacets() throws Exception {
+    for (String q : new String[] {"*:*", "cat_sd:c3"}) {
+      assertSameFacets(
+          q, "{x:{type:range, field:num_i, start:0, end:400, gap:50, other:all, threads:$T}}");
+      assertSameFacets(
+          q,
+          "{x:{type:range, field:num_i, start:0, end:400, gap:100, threads:$T,"
+              + " facet:{y:{type:terms, field:cat_sd, threads:$T}}}}");
+    }
+  }
+}
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.Map;
 import org.apache.lucene.queries.function.valuesource.IntFieldSource;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.Utils;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.function.FieldNameValueSource;
@@ -142,4 +143,44 @@ public class TestJsonFacetsStatsParsing extends SolrTestCaseJ4 {
       assertNull(x.localParams.get("yaz"));
     }
   }
+
+  @SuppressWarnings({"unchecked"})
+  public void testPercentileSketchOptions() throws IOException {
+    try (SolrQueryRequest req = req()) {
+      final FacetRequest fr =
+          FacetRequest.parse(
+              req,
+              (Map<String, Object>)
+                  ObjectBuilder.fromJSON(
+                      "{ t1:'percentile(foo_i,50)', "
+                          + "  t2:{type:func, func:'percentile(foo_i,50)', sketch:tdigest}, "
+                          + "  d1:{type:func, func:'percentile(foo_i,50)', sketch:ddsketch}, "
+                          + "  d2:{type:func, func:'percentile(foo_i,50)', sketch:ddsketch,"
+                          + "      accuracy:0.01}, "
+                          + "  d3:{type:func, func:'percentile(foo_i,50)', sketch:ddsketch,"
+                          + "      accuracy:0.05} }"));
+
+      final Map<String, AggValueSource> stats = fr.getFacetStats();
+      assertEquals(5, stats.size());
+      assertEquals(0, ((PercentileAgg) stats.get("t1")).relativeAccuracy, 0);
+      assertEquals(stats.get("t1"), stats.get("t2"));
+      assertEquals(0.01, ((PercentileAgg) stats.get("d1")).relativeAccuracy, 0);
+      assertEquals(stats.get("d1"), stats.get("d2"));
+      assertNotEquals(stats.get("t1"), stats.get("d1"));
+      assertNotEquals(stats.get("d1"), stats.get("d3"));
+    }
+
+    try (SolrQueryRequest req = req()) {
+      SolrException e =
+          expectThrows(
+              SolrException.class,
+              () ->
+                  FacetRequest.parse(
+                      req,
+                      (Map<String, Object>)
+                          ObjectBuilder.fromJSON(
+                              "{ x:{type:func, func:'percentile(foo_i,50)', sketch:bleh} }")));
+      assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    }
+  }
 }
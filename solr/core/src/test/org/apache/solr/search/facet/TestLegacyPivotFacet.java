@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.Utils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Verify that the pivots computed as nested terms facets of the JSON Facet API are the same as the
+ * legacy pivots, on a single node and distributed.
+ */
+public class TestLegacyPivotFacet extends SolrTestCaseHS {
+
+  private static SolrInstances servers; // for distributed testing
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    systemSetPropertySolrDisableUrlAllowList("true");
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  public static void initServers() throws Exception {
+    if (servers == null) {
+      servers = new SolrInstances(3, "solrconfig-tlog.xml", "schema_latest.xml");
+    }
+  }
+
+  @AfterClass
+  public static void afterTests() throws Exception {
+    if (servers != null) {
+      servers.stop();
+      servers = null;
+    }
+    systemClearPropertySolrDisableUrlAllowList();
+  }
+
+  private static Object getFacetCounts(String response) {
+    return ((Map<?, ?>) Utils.fromJSONString(response)).get("facet_counts");
+  }
+
+  private static Object getJsonFacets(String response) {
+    return ((Map<?, ?>) Utils.fromJSONString(response)).get("facets");
+  }
+
+  private static SolrParams json(SolrParams params) {
+    return params(params, FacetParams.FACET_PIVOT_ENGINE, LegacyPivotFacet.ENGINE_JSON);
+  }
+
+  private static void addDocs(Client client) throws Exception {
+    List<SolrClient> clients = client.getClientProvider().all();
+    Client local = Client.localClient();
+    client.deleteByQuery("*:*", null);
+    local.deleteByQuery("*:*", null);
+    int numDocs = atLeast(300);
+    for (int i = 0; i < numDocs; i++) {
+      SolrInputDocument doc = sdoc("id", i, "num_i", random().nextInt(5));
+      if (random().nextInt(10) != 0) {
+        doc.addField("cat_s", "c" + random().nextInt(8));
+      }
+      for (int j = random().nextInt(3); j > 0; j--) {
+        doc.addField("tag_ss", "t" + random().nextInt(6));
+      }
+      doc.addField("flag_b", random().nextBoolean());
+      clients.get(random().nextInt(clients.size())).add(doc);
+      local.add(doc, null);
+    }
+    client.commit();
+    local.commit();
+  }
+
+  private static ModifiableSolrParams randomPivot() {
+    String[] fields = {"cat_s", "tag_ss", "flag_b"};
+    String pivot =
+        fields[random().nextInt(3)]
+            + ","
+            + fields[random().nextInt(3)]
+            + (random().nextBoolean() ? "," + fields[random().nextInt(3)] : "");
+    ModifiableSolrParams params =
+        params(
+            "q",
+            random().nextBoolean() ? "*:*" : "id:[0 TO 200]",
+            "rows",
+            "0",
+            "facet",
+            "true",
+            "facet.pivot",
+            (random().nextBoolean() ? "{!key=p}" : "") + pivot,
+            "facet.limit",
+            String.valueOf(random().nextInt(8) + 1),
+            // all the values of the shards are returned, so that the distributed pivots are exact
+            "facet.overrequest.count",
+            "100");
+    if (random().nextBoolean()) {
+      params.set("facet.sort", "index");
+    }
+    if (random().nextBoolean()) {
+      params.set("f.tag_ss.facet.missing", "true");
+      params.set("f.cat_s.facet.missing", "true");
+    }
+    if (random().nextBoolean()) {
+      params.set("facet.pivot.mincount", String.valueOf(random().nextInt(20)));
+    }
+    if (random().nextBoolean()) {
+      params.set("f.cat_s.facet.offset", "2");
+    }
+    return params;
+  }
+
+  @Test
+  public void testPivots() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    addDocs(client);
+    List<SolrClient> clients = client.getClientProvider().all();
+
+    for (int iter = 0; iter < atLeast(20); iter++) {
+      SolrParams params = randomPivot();
+      Object expected = getFacetCounts(getQueryResponse("json", params));
+      Object actual = getFacetCounts(getQueryResponse("json", json(params)));
+      assertEquals(params.toString(), expected, actual);
+      Object distributed =
+          getFacetCounts(
+              getJSON(
+                  clients.get(random().nextInt(clients.size())),
+                  params(json(params), "shards", servers.getShards())));
+      assertEquals(params.toString(), expected, distributed);
+    }
+
+    // other facets, json facets and filter exclusions in the same request
+    SolrParams params =
+        params(
+            "q",
+            "*:*",
+            "fq",
+            "{!tag=t}flag_b:true",
+            "rows",
+            "0",
+            "facet",
+            "true",
+            "facet.field",
+            "cat_s",
+            "facet.pivot",
+            "{!ex=t}flag_b,num_i",
+            "facet.pivot",
+            "{!key=k}cat_s,tag_ss",
+            "json.facet",
+            "{x:{type:terms, field:tag_ss}}");
+    String legacy = getQueryResponse("json", params);
+    String json = getQueryResponse("json", json(params));
+    assertEquals(getFacetCounts(legacy), getFacetCounts(json));
+    assertEquals(getJsonFacets(legacy), getJsonFacets(json));
+  }
+
+  @Test
+  public void testNotTranslated() {
+    SolrParams params = params("facet.pivot.engine", "json", "facet.pivot", "{!key=k ex=t}a,b");
+    assertTrue(LegacyPivotFacet.isEnabled(params));
+    assertFalse(LegacyPivotFacet.isEnabled(params("facet.pivot", "a,b")));
+    assertFalse(
+        LegacyPivotFacet.isEnabled(params("facet.pivot.engine", "legacy", "facet.pivot", "a,b")));
+    // stats, queries and ranges of pivots, and terms filters are computed by the legacy pivots
+    assertFalse(LegacyPivotFacet.isEnabled(params(params, "facet.pivot", "{!stats=s}a,b")));
+    assertFalse(LegacyPivotFacet.isEnabled(params(params, "facet.pivot", "{!range=r}a")));
+    assertFalse(LegacyPivotFacet.isEnabled(params(params, "f.b.facet.contains", "x")));
+  }
+}
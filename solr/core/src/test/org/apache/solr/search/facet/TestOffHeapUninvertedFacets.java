@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Verify that the facets of multi-valued fields without docValues that are uninverted off-heap per
+ * segment are the same as the facets of the same values with docValues.
+ */
+public class TestOffHeapUninvertedFacets extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.offHeapUninvertedFields.enabled", "true");
+    initCore("solrconfig.xml", "schema_latest.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.offHeapUninvertedFields.enabled");
+  }
+
+  private static Map<String, Object> lookupFieldCacheMetrics() {
+    return ((MetricsMap)
+            ((SolrMetricManager.GaugeWrapper<?>)
+                    h.getCore()
+                        .getCoreMetricManager()
+                        .getRegistry()
+                        .getMetrics()
+                        .get("CACHE.core.fieldCache"))
+                .getGauge())
+        .getValue();
+  }
+
+  private static void addDocs(int from, int to) {
+    for (int i = from; i < to; i++) {
+      // the values are also indexed in a field with docValues, for the expected facets
+      List<String> fields = new ArrayList<>(List.of("id", String.valueOf(i)));
+      for (int j = random().nextInt(12); j > 0; j--) {
+        String tag = "t" + random().nextInt(200);
+        fields.addAll(List.of("tag_ss", tag, "tag_sds", tag));
+      }
+      fields.addAll(List.of("num_i", String.valueOf(random().nextInt(100))));
+      assertU(adoc(fields.toArray(new String[0])));
+    }
+    assertU(commit());
+  }
+
+  private static void assertSameFacets(String q, String facet) throws Exception {
+    String expected =
+        JQ(
+            req(
+                "q",
+                q,
+                "rows",
+                "0",
+                "omitHeader",
+                "true",
+                "json.facet",
+                facet.replace("$F", "tag_sds")));
+    String actual =
+        JQ(
+            req(
+                "q",
+                q,
+                "rows",
+                "0",
+                "omitHeader",
+                "true",
+                "json.facet",
+                facet.replace("$F", "tag_ss")));
+    assertEquals(facet, expected, actual);
+  }
+
+  @Test
+  public void testFacets() throws Exception {
+    addDocs(0, 300);
+    addDocs(300, 500);
+    assertU(delQ("id:1*"));
+    assertU(commit());
+    addDocs(500, 600);
+
+    for (int iter = 0; iter < atLeast(10); iter++) {
+      String facet =
+          "{x:{type:terms, field:$F, sort:'"
+              + (random().nextBoolean() ? "count desc" : "index asc")
+              + "', limit:"
+              + (random().nextInt(20) + 1)
+              + (random().nextBoolean() ? ", prefix:t1" : "")
+              + (random().nextBoolean() ? ", mincount:0" : "")
+              + (random().nextBoolean() ? ", missing:true, numBuckets:true" : "")
+              + ", facet:{sum:'sum(num_i)'}}}";
+      assertSameFacets(random().nextBoolean() ? "*:*" : "num_i:[0 TO 50]", facet);
+    }
+
+    Map<String, Object> metrics = lookupFieldCacheMetrics();
+    assertTrue("expected off-heap entries", (long) metrics.get("offheap_size") > 0);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.Map;
+import org.apache.solr.search.CoreCacheTestBase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that terms facets are correct with global ords that are built incrementally */
+public class TestOrdinalMapCache extends CoreCacheTestBase {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCoreWithCache(
+        "schema_latest.xml",
+        "solr.ordinalMapCache.enabled",
+        "true",
+        "solr.ordinalMapCache.warmFields",
+        "cat_sd, unknown_field");
+  }
+
+  private static void addDocs(int from, int to) {
+    for (int i = from; i < to; i++) {
+      assertU(
+          adoc(
+              "id", String.valueOf(i),
+              "cat_sd", "c" + (i % 7) + "_" + (i / 50),
+              "tags_sds", "t" + (i % 3),
+              "tags_sds", "t" + (i % 5 + 10) + "_" + (i / 40)));
+    }
+    assertU(commit());
+  }
+
+  /** Compares the facet with the same facet computed by enumerating the terms of the field */
+  private static void assertSameFacets(String fq, String facet) throws Exception {
+    String expected =
+        JQ(
+            req(
+                "q",
+                "*:*",
+                "fq",
+                fq,
+                "rows",
+                "0",
+                "omitHeader",
+                "true",
+                "json.facet",
+                "{x:{type:terms, method:stream, sort:'index asc', limit:-1, " + facet + "}}"));
+    String actual =
+        JQ(
+            req(
+                "q",
+                "*:*",
+                "fq",
+                fq,
+                "rows",
+                "0",
+                "omitHeader",
+                "true",
+                "json.facet",
+                "{x:{type:terms, method:dv, sort:'index asc', limit:-1, " + facet + "}}"));
+    assertEquals(expected, actual);
+  }
+
+  private static void assertAllFacets() throws Exception {
+    for (String fq : new String[] {"*:*", "tags_sds:t1"}) {
+      assertSameFacets(fq, "field:cat_sd");
+      assertSameFacets(fq, "field:tags_sds");
+      assertSameFacets(fq, "field:tags_sds, prefix:t1");
+    }
+  }
+
+  @Test
+  public void testIncrementalBuilds() throws Exception {
+    assertNotNull(h.getCore().getOrdinalMapCache());
+    addDocs(0, 100);
+    addDocs(100, 150);
+    // the warmed field is built with the new searcher
+    Map<String, Object> metrics = getCacheMetrics("ordinalMapCache");
+    assertEquals(2, metrics.get("cat_sd.segments"));
+    long lookups = (long) metrics.get("lookups");
+    assertAllFacets();
+    metrics = getCacheMetrics("ordinalMapCache");
+    assertTrue("expected lookups", (long) metrics.get("lookups") > lookups);
+    assertTrue("expected hits", (long) metrics.get("hits") > 0);
+
+    // a new segment: the global ords of the others are reused
+    long incrementalBuilds = (long) metrics.get("incrementalBuilds");
+    addDocs(150, 230);
+    int segments = h.getCore().withSearcher(searcher -> searcher.getIndexReader().leaves().size());
+    metrics = getCacheMetrics("ordinalMapCache");
+    assertEquals(incrementalBuilds + 1, metrics.get("incrementalBuilds"));
+    assertEquals(segments, metrics.get("cat_sd.segments"));
+    assertEquals(segments - 1, metrics.get("cat_sd.reusedSegments"));
+    assertAllFacets();
+
+    // deletes keep the segments, removing all the docs of a segment drops it and its terms
+    assertU(delI("3"));
+    assertU(delQ("cat_sd:*_2"));
+    assertU(commit());
+    metrics = getCacheMetrics("ordinalMapCache");
+    assertEquals(segments - 1, metrics.get("cat_sd.segments"));
+    assertEquals(segments - 1, metrics.get("cat_sd.reusedSegments"));
+    assertAllFacets();
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.search.CoreCacheTestBase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Verify that range facets computed from the rollups of a time field are correct */
+public class TestRangeRollups extends CoreCacheTestBase {
+
+  private static final long START = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+  private static final long HOUR = 3600_000L;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCoreWithCache("schema_latest.xml", "solr.rangeRollups.enabled", "true");
+  }
+
+  private static void addDocs(int from, int to) {
+    for (int i = from; i < to; i++) {
+      // the time is also indexed in a field without rollups, for the expected facets
+      String time = Instant.ofEpochMilli(START + random().nextInt(72) * HOUR).toString();
+      List<Object> fields = new ArrayList<>(List.of("id", String.valueOf(i)));
+      fields.addAll(List.of("rollup_time_dt", time, "scan_time_dt", time));
+      if (random().nextInt(10) != 0) {
+        // integer values, so that the sums don't depend on the order of the additions
+        fields.addAll(List.of("rollup_price_d", random().nextInt(2000) - 1000));
+      }
+      if (random().nextInt(10) != 0) {
+        fields.addAll(List.of("rollup_qty_i", random().nextInt(100)));
+      }
+      assertU(adoc(fields.stream().map(String::valueOf).toArray(String[]::new)));
+    }
+    assertU(commit());
+  }
+
+  private static long hits() {
+    return (long) getCacheMetrics("rangeRollupCache").get("hits");
+  }
+
+  /**
+   * Compares the facet on the field with rollups with the same facet on the field without rollups,
+   * and returns whether the rollups were used.
+   */
+  private static boolean assertSameFacets(String fq, String facet) throws Exception {
+    String stats =
+        "facet:{sum:'sum(rollup_price_d)', avg:'avg(rollup_price_d)', min:'min(rollup_price_d)',"
+            + " max:'max(rollup_price_d)', qmin:'min(rollup_qty_i)', qmax:'max(rollup_qty_i)',"
+            + " qavg:'avg(rollup_qty_i)'}";
+    String expected =
+        JQ(
+            req(
+                "q",
+                "*:*",
+                "fq",
+                fq,
+                "rows",
+                "0",
+                "omitHeader",
+                "true",
+                "json.facet",
+                "{x:{type:range, field:scan_time_dt, " + facet + ", " + stats + "}}"));
+    long hits = hits();
+    String actual =
+        JQ(
+            req(
+                "q",
+                "*:*",
+                "fq",
+                fq,
+                "rows",
+                "0",
+                "omitHeader",
+                "true",
+                "json.facet",
+                "{x:{type:range, field:rollup_time_dt, " + facet + ", " + stats + "}}"));
+    assertEquals(expected, actual);
+    return hits() > hits;
+  }
+
+  @Test
+  public void testRangeFacets() throws Exception {
+    assertNotNull(h.getCore().getRangeRollupCache());
+    addDocs(0, 300);
+    addDocs(300, 500);
+    assertU(delQ("id:1*"));
+    assertU(commit());
+    addDocs(500, 600);
+
+    // aligned ranges over all the docs
+    String day = "start:'2024-01-01T00:00:00Z', end:'2024-01-04T00:00:00Z'";
+    assertTrue(assertSameFacets("*:*", day + ", gap:'+1DAY'"));
+    assertTrue(assertSameFacets("*:*", day + ", gap:'+6HOURS', mincount:40"));
+    assertTrue(assertSameFacets("*:*", day + ", gap:'+1HOUR', hardend:true"));
+    assertTrue(
+        assertSameFacets(
+            "*:*", "start:'2023-12-31T00:00:00Z', end:'2024-01-02T05:00:00Z', gap:'+7HOURS'"));
+
+    // unaligned ranges, other buckets, inclusive upper bounds or filters scan the docs
+    assertFalse(
+        assertSameFacets(
+            "*:*", "start:'2024-01-01T00:30:00Z', end:'2024-01-04T00:30:00Z', gap:'+1DAY'"));
+    assertFalse(assertSameFacets("*:*", day + ", gap:'+1DAY', other:all"));
+    assertFalse(assertSameFacets("*:*", day + ", gap:'+1DAY', include:upper"));
+    assertFalse(assertSameFacets("rollup_qty_i:[0 TO 50]", day + ", gap:'+1DAY'"));
+
+    // a segment that spans too many buckets doesn't have a rollup
+    assertU(adoc("id", "far", "rollup_time_dt", "2030-01-01T00:00:00Z"));
+    assertU(commit());
+    assertFalse(assertSameFacets("*:*", day + ", gap:'+1DAY'"));
+
+    // the warming builds the rollups of all the other segments
+    h.getCore().getRangeRollupCache().clear();
+    addDocs(600, 650);
+    int leaves = h.getCore().withSearcher(s -> s.getTopReaderContext().leaves().size());
+    assertEquals(
+        leaves, ((Number) getCacheMetrics("rangeRollupCache").get("segments")).intValue());
+
+    assertU(delI("far"));
+    assertU(commit());
+    assertTrue(assertSameFacets("*:*", day + ", gap:'+1DAY'"));
+
+    // rollups built by a query instead of the warming of the searcher aren't hits
+    h.getCore().getRangeRollupCache().clear();
+    assertFalse(assertSameFacets("*:*", day + ", gap:'+1DAY'"));
+    assertTrue(assertSameFacets("*:*", day + ", gap:'+1DAY'"));
+
+    Map<String, Object> metrics = getCacheMetrics("rangeRollupCache");
+    assertTrue("expected builds", (long) metrics.get("builds") > 0);
+    assertTrue("expected ram", (long) metrics.get("ramBytesUsed") > 0);
+  }
+}
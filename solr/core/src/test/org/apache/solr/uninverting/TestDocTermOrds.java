@@ -41,6 +41,7 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.index.TermsEnum.SeekStatus;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.tests.analysis.MockAnalyzer;
 import org.apache.lucene.tests.index.RandomIndexWriter;
@@ -228,6 +229,62 @@ public class TestDocTermOrds extends SolrTestCase {
     dir.close();
   }
 
+  public void testOffHeap() throws Exception {
+    Directory dir = newDirectory();
+    final RandomIndexWriter w =
+        new RandomIndexWriter(random(), dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    final int numDocs = atLeast(300);
+    for (int id = 0; id < numDocs; id++) {
+      Document doc = new Document();
+      // few terms are inlined in the index, more are stored in tnums
+      final int termCount = random().nextInt(10) == 0 ? 0 : TestUtil.nextInt(random(), 1, 30);
+      for (int i = 0; i < termCount; i++) {
+        doc.add(newStringField("field", "t" + random().nextInt(500), Field.Store.NO));
+      }
+      w.addDocument(doc);
+    }
+    final DirectoryReader r = w.getReader();
+    w.close();
+
+    for (LeafReaderContext ctx : r.leaves()) {
+      LeafReader ar = ctx.reader();
+      DocTermOrds dto = new DocTermOrds(ar, null, "field");
+      long reserved = OffHeapDocTermOrds.reservedOffHeapBytes();
+      OffHeapDocTermOrds offHeap = new OffHeapDocTermOrds(ar, "field", null);
+      assertEquals(
+          reserved + offHeap.offHeapBytesUsed(), OffHeapDocTermOrds.reservedOffHeapBytes());
+      assertEquals(dto.numTerms(), offHeap.numTerms());
+      assertEquals(dto.isEmpty(), offHeap.isEmpty());
+      if (!offHeap.isEmpty()) {
+        assertTrue(offHeap.offHeapBytesUsed() > 0);
+        assertTrue(offHeap.ramBytesUsed() < dto.ramBytesUsed());
+      }
+
+      SortedSetDocValues expected = dto.iterator(ar);
+      SortedSetDocValues actual = offHeap.iterator(ar);
+      assertEquals(expected.getValueCount(), actual.getValueCount());
+      int doc;
+      while ((doc = expected.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        assertEquals(doc, actual.nextDoc());
+        assertEquals(expected.docValueCount(), actual.docValueCount());
+        long ord;
+        while ((ord = expected.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+          assertEquals(ord, actual.nextOrd());
+          assertEquals(expected.lookupOrd(ord), actual.lookupOrd(ord));
+        }
+        assertEquals(SortedSetDocValues.NO_MORE_ORDS, actual.nextOrd());
+      }
+      assertEquals(DocIdSetIterator.NO_MORE_DOCS, actual.nextDoc());
+
+      offHeap.release();
+      assertEquals(reserved, OffHeapDocTermOrds.reservedOffHeapBytes());
+      assertEquals(0, offHeap.offHeapBytesUsed());
+    }
+
+    r.close();
+    dir.close();
+  }
+
   public void testRandomWithPrefix() throws Exception {
     Directory dir = newDirectory();
 
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.util.Arrays;
+import org.apache.solr.SolrTestCase;
+
+public class TestQuantileSketch extends SolrTestCase {
+
+  private static double randomValue() {
+    switch (random().nextInt(10)) {
+      case 0:
+        return 0;
+      case 1:
+        return random().nextInt(100) - 50;
+      default:
+        double magnitude = Math.exp(random().nextDouble() * 20 - 10);
+        return random().nextInt(4) == 0 ? -magnitude : magnitude;
+    }
+  }
+
+  private static void assertQuantiles(double[] sorted, QuantileSketch sketch, double accuracy) {
+    assertEquals(sorted.length, sketch.getCount());
+    for (double q : new double[] {0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1}) {
+      double expected = sorted[(int) Math.floor(q * (sorted.length - 1))];
+      double actual = sketch.quantile(q);
+      assertEquals(
+          "quantile " + q + " of " + sketch, expected, actual, accuracy * Math.abs(expected));
+    }
+  }
+
+  public void testRelativeAccuracy() {
+    double accuracy = random().nextBoolean() ? QuantileSketch.DEFAULT_RELATIVE_ACCURACY : 0.05;
+    QuantileSketch sketch = new QuantileSketch(accuracy, QuantileSketch.DEFAULT_MAX_BINS);
+    assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    double[] values = new double[atLeast(1000)];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = randomValue();
+      sketch.add(values[i]);
+    }
+    Arrays.sort(values);
+    assertQuantiles(values, sketch, accuracy);
+    assertEquals(values[0], sketch.quantile(0), 0);
+    assertEquals(values[values.length - 1], sketch.quantile(1), 0);
+  }
+
+  public void testMergeAndEncoding() {
+    double[] values = new double[atLeast(1000)];
+    QuantileSketch[] sketches = new QuantileSketch[random().nextInt(5) + 1];
+    for (int i = 0; i < sketches.length; i++) {
+      sketches[i] = new QuantileSketch();
+    }
+    for (int i = 0; i < values.length; i++) {
+      values[i] = randomValue();
+      sketches[random().nextInt(sketches.length)].add(values[i]);
+    }
+    QuantileSketch merged = null;
+    for (QuantileSketch sketch : sketches) {
+      QuantileSketch decoded = QuantileSketch.fromBytes(sketch.toBytes());
+      assertEquals(sketch.getCount(), decoded.getCount());
+      if (merged == null) {
+        merged = decoded;
+      } else {
+        merged.merge(decoded);
+      }
+    }
+    Arrays.sort(values);
+    assertQuantiles(values, merged, QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+
+    expectThrows(
+        IllegalArgumentException.class,
+        () -> sketches[0].merge(new QuantileSketch(0.05, QuantileSketch.DEFAULT_MAX_BINS)));
+  }
+
+  public void testBoundedSize() {
+    int maxBins = 64;
+    QuantileSketch sketch = new QuantileSketch(0.01, maxBins);
+    double[] values = new double[atLeast(1000)];
+    for (int i = 0; i < values.length; i++) {
+      // values over 10 orders of magnitude need ~1000 bins of 1%
+      values[i] = Math.exp(random().nextDouble() * 23);
+      sketch.add(values[i]);
+    }
+    Arrays.sort(values);
+    // the bins of the highest values are kept
+    assertEquals(values[values.length - 1], sketch.quantile(1), 0.01 * values[values.length - 1]);
+    int rank = (int) (0.99 * (values.length - 1));
+    if (Math.log(values[values.length - 1] / values[rank]) < Math.log(1.02) * (maxBins - 1)) {
+      assertEquals(values[rank], sketch.quantile(0.99), 0.01 * values[rank]);
+    }
+    assertEquals(values.length, sketch.getCount());
+    assertTrue(sketch.toBytes().length < 1 + 8 * 3 + 5 + 9 + 2 * (9 + 5 + 5) + 9 * maxBins);
+    assertTrue(sketch.ramBytesUsed() < 2048);
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.solr.common.IteratorWriter;
+import org.apache.solr.common.MapWriter;
+
+/**
+ * Writes rows, e.g. tuples or the fields of exported documents, as a batch of columns: the values
+ * of each field are written together in a typed vector of bytes, and the strings are
+ * dictionary-encoded, so the names of the fields are written once per batch and the numbers are
+ * neither boxed nor tagged one by one. The batches are read by {@link ColumnarTupleStreamParser}.
+ *
+ * <p>A column holds the values of a single type: a field whose values don't have the same type in
+ * all the rows of a batch, like a multi-valued field, is written as a list of objects.
+ *
+ * @see org.apache.solr.common.params.StreamParams#COLUMNAR
+ * @since solr 10.0
+ */
+public class ColumnarBatchWriter implements MapWriter, MapWriter.EntryWriter {
+
+  /** The key of the number of rows of a batch, that also tells a batch from a tuple */
+  public static final String BATCH = "_BATCH_";
+
+  static final String COLUMNS = "columns";
+  static final String NAME = "name";
+  static final String TYPE = "type";
+  static final String PRESENT = "present";
+  static final String VALUES = "values";
+  static final String DICT = "dict";
+
+  enum Type {
+    INT,
+    LONG,
+    FLOAT,
+    DOUBLE,
+    BOOLEAN,
+    DATE,
+    STRING,
+    OBJECT;
+
+    String getName() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  private final Map<String, Column> columns = new LinkedHashMap<>();
+  private int numRows;
+
+  /** Adds the entries written by the given row to the batch. */
+  public void addRow(MapWriter row) throws IOException {
+    row.writeMap(this);
+    numRows++;
+  }
+
+  /** Returns the number of rows of the batch. */
+  public int size() {
+    return numRows;
+  }
+
+  /** Removes all the rows, to write a new batch. */
+  public void reset() {
+    columns.clear();
+    numRows = 0;
+  }
+
+  private Column column(CharSequence k) {
+    String name = k.toString();
+    Column column = columns.get(name);
+    if (column == null) {
+      columns.put(name, column = new Column(name));
+    }
+    return column;
+  }
+
+  @Override
+  public EntryWriter put(CharSequence k, Object v) throws IOException {
+    if (v == null) {
+      return this;
+    } else if (v instanceof Integer) {
+      return put(k, ((Integer) v).intValue());
+    } else if (v instanceof Long) {
+      return put(k, ((Long) v).longValue());
+    } else if (v instanceof Float) {
+      return put(k, ((Float) v).floatValue());
+    } else if (v instanceof Double) {
+      return put(k, ((Double) v).doubleValue());
+    } else if (v instanceof Boolean) {
+      return put(k, ((Boolean) v).booleanValue());
+    } else if (v instanceof Date) {
+      column(k).setLong(numRows, Type.DATE, ((Date) v).getTime());
+    } else if (v instanceof CharSequence) {
+      column(k).setString(numRows, v.toString());
+    } else if (v instanceof IteratorWriter) {
+      List<Object> values = new ArrayList<>();
+      ((IteratorWriter) v).toList(values);
+      column(k).setObject(numRows, values);
+    } else {
+      column(k).setObject(numRows, v);
+    }
+    return this;
+  }
+
+  @Override
+  public EntryWriter put(CharSequence k, int v) throws IOException {
+    column(k).setLong(numRows, Type.INT, v);
+    return this;
+  }
+
+  @Override
+  public EntryWriter put(CharSequence k, long v) throws IOException {
+    column(k).setLong(numRows, Type.LONG, v);
+    return this;
+  }
+
+  @Override
+  public EntryWriter put(CharSequence k, float v) throws IOException {
+    column(k).setDouble(numRows, Type.FLOAT, v);
+    return this;
+  }
+
+  @Override
+  public EntryWriter put(CharSequence k, double v) throws IOException {
+    column(k).setDouble(numRows, Type.DOUBLE, v);
+    return this;
+  }
+
+  @Override
+  public EntryWriter put(CharSequence k, boolean v) throws IOException {
+    column(k).setLong(numRows, Type.BOOLEAN, v ? 1 : 0);
+    return this;
+  }
+
+  @Override
+  public void writeMap(EntryWriter ew) throws IOException {
+    ew.put(BATCH, numRows);
+    List<MapWriter> batchColumns = new ArrayList<>(columns.size());
+    for (Column column : columns.values()) {
+      batchColumns.add(column::writeMap);
+    }
+    ew.put(COLUMNS, batchColumns);
+  }
+
+  /** The values of a field in the rows of the batch. */
+  private class Column {
+    final String name;
+    final BitSet present = new BitSet();
+    Type type; // of the first value
+
+    // the ints, longs, dates, booleans, and the codes of the strings in the dictionary
+    long[] longs;
+    // the floats and doubles
+    double[] doubles;
+    Object[] objects;
+
+    Map<String, Integer> codes;
+    List<String> dict;
+
+    Column(String name) {
+      this.name = name;
+    }
+
+    /** Returns whether the values of the given type can be set, allocating the column if empty. */
+    private boolean accept(Type valueType, int row) {
+      if (type == null) {
+        type = valueType;
+        int size = Math.max(16, row + 1);
+        switch (type) {
+          case FLOAT:
+          case DOUBLE:
+            doubles = new double[size];
+            break;
+          case OBJECT:
+            objects = new Object[size];
+            break;
+          default:
+            longs = new long[size];
+        }
+        if (type == Type.STRING) {
+          codes = new HashMap<>();
+          dict = new ArrayList<>();
+        }
+      } else if (type != valueType) {
+        if (type != Type.OBJECT) {
+          toObjects();
+        }
+        return false;
+      }
+      grow(row);
+      present.set(row);
+      return true;
+    }
+
+    void setLong(int row, Type valueType, long value) {
+      if (accept(valueType, row)) {
+        longs[row] = value;
+      } else {
+        setObject(row, box(valueType, value));
+      }
+    }
+
+    void setDouble(int row, Type valueType, double value) {
+      if (accept(valueType, row)) {
+        doubles[row] = value;
+      } else {
+        setObject(row, valueType == Type.FLOAT ? (Object) (float) value : (Object) value);
+      }
+    }
+
+    void setString(int row, String value) {
+      if (accept(Type.STRING, row)) {
+        Integer code = codes.get(value);
+        if (code == null) {
+          codes.put(value, code = dict.size());
+          dict.add(value);
+        }
+        longs[row] = code;
+      } else {
+        setObject(row, value);
+      }
+    }
+
+    void setObject(int row, Object value) {
+      accept(Type.OBJECT, row);
+      objects[row] = value;
+    }
+
+    private Object box(Type valueType, long value) {
+      switch (valueType) {
+        case INT:
+          return (int) value;
+        case BOOLEAN:
+          return value != 0;
+        case DATE:
+          return new Date(value);
+        default:
+          return value;
+      }
+    }
+
+    /** Converts the column to a column of objects, when a value of another type is set. */
+    private void toObjects() {
+      Object[] values = new Object[longs != null ? longs.length : doubles.length];
+      for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+        switch (type) {
+          case FLOAT:
+            values[row] = (float) doubles[row];
+            break;
+          case DOUBLE:
+            values[row] = doubles[row];
+            break;
+          case STRING:
+            values[row] = dict.get((int) longs[row]);
+            break;
+          default:
+            values[row] = box(type, longs[row]);
+        }
+      }
+      type = Type.OBJECT;
+      objects = values;
+      longs = null;
+      doubles = null;
+      codes = null;
+      dict = null;
+    }
+
+    private void grow(int row) {
+      if (longs != null && row >= longs.length) {
+        longs = Arrays.copyOf(longs, Math.max(row + 1, longs.length * 2));
+      } else if (doubles != null && row >= doubles.length) {
+        doubles = Arrays.copyOf(doubles, Math.max(row + 1, doubles.length * 2));
+      } else if (objects != null && row >= objects.length) {
+        objects = Arrays.copyOf(objects, Math.max(row + 1, objects.length * 2));
+      }
+    }
+
+    void writeMap(EntryWriter ew) throws IOException {
+      grow(numRows - 1);
+      ew.put(NAME, name);
+      ew.put(TYPE, type.getName());
+      if (present.cardinality() < numRows) {
+        ew.put(PRESENT, present.toByteArray());
+      }
+      switch (type) {
+        case INT:
+        case STRING:
+          {
+            ByteBuffer values = ByteBuffer.allocate(numRows * Integer.BYTES);
+            for (int row = 0; row < numRows; row++) {
+              values.putInt((int) longs[row]);
+            }
+            ew.put(VALUES, values.array());
+            break;
+          }
+        case LONG:
+        case DATE:
+          {
+            ByteBuffer values = ByteBuffer.allocate(numRows * Long.BYTES);
+            values.asLongBuffer().put(longs, 0, numRows);
+            ew.put(VALUES, values.array());
+            break;
+          }
+        case BOOLEAN:
+          {
+            byte[] values = new byte[numRows];
+            for (int row = 0; row < numRows; row++) {
+              values[row] = (byte) longs[row];
+            }
+            ew.put(VALUES, values);
+            break;
+          }
+        case FLOAT:
+          {
+            ByteBuffer values = ByteBuffer.allocate(numRows * Float.BYTES);
+            for (int row = 0; row < numRows; row++) {
+              values.putFloat((float) doubles[row]);
+            }
+            ew.put(VALUES, values.array());
+            break;
+          }
+        case DOUBLE:
+          {
+            ByteBuffer values = ByteBuffer.allocate(numRows * Double.BYTES);
+            values.asDoubleBuffer().put(doubles, 0, numRows);
+            ew.put(VALUES, values.array());
+            break;
+          }
+        default:
+          ew.put(VALUES, Arrays.asList(objects).subList(0, numRows));
+      }
+      if (type == Type.STRING) {
+        ew.put(DICT, dict);
+      }
+    }
+  }
+}
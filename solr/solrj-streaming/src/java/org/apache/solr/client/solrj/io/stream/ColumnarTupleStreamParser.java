@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Reads the rows of the batches of columns written by {@link ColumnarBatchWriter}, and the tuples
+ * written between the batches, from another parser. The values are returned as {@link
+ * JavabinTupleStreamParser} returns them with only JSON types: the integers are longs, the floats
+ * are doubles and the dates are strings.
+ *
+ * @since solr 10.0
+ */
+public class ColumnarTupleStreamParser implements TupleStreamParser {
+  private final TupleStreamParser parser;
+
+  private String[] names;
+  private BitSet[] present;
+  private IntFunction<?>[] values;
+  private int numRows;
+  private int row;
+
+  public ColumnarTupleStreamParser(TupleStreamParser parser) {
+    this.parser = parser;
+  }
+
+  @Override
+  public Map<String, Object> next() throws IOException {
+    while (row >= numRows) {
+      Map<String, Object> map = parser.next();
+      if (map == null || !map.containsKey(ColumnarBatchWriter.BATCH)) {
+        return map;
+      }
+      readBatch(map);
+    }
+    Map<String, Object> tuple = new HashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      if (present[i] == null || present[i].get(row)) {
+        tuple.put(names[i], values[i].apply(row));
+      }
+    }
+    row++;
+    return tuple;
+  }
+
+  private void readBatch(Map<String, Object> batch) {
+    List<?> columns = (List<?>) batch.get(ColumnarBatchWriter.COLUMNS);
+    names = new String[columns.size()];
+    present = new BitSet[columns.size()];
+    values = new IntFunction<?>[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      Map<?, ?> column = (Map<?, ?>) columns.get(i);
+      names[i] = (String) column.get(ColumnarBatchWriter.NAME);
+      byte[] bits = (byte[]) column.get(ColumnarBatchWriter.PRESENT);
+      present[i] = bits == null ? null : BitSet.valueOf(bits);
+      values[i] = readValues(column);
+    }
+    numRows = ((Number) batch.get(ColumnarBatchWriter.BATCH)).intValue();
+    row = 0;
+  }
+
+  private static IntFunction<?> readValues(Map<?, ?> column) {
+    String type = (String) column.get(ColumnarBatchWriter.TYPE);
+    Object values = column.get(ColumnarBatchWriter.VALUES);
+    switch (ColumnarBatchWriter.Type.valueOf(type.toUpperCase(Locale.ROOT))) {
+      case INT:
+        {
+          IntBuffer ints = ByteBuffer.wrap((byte[]) values).asIntBuffer();
+          return row -> (long) ints.get(row);
+        }
+      case LONG:
+        {
+          LongBuffer longs = ByteBuffer.wrap((byte[]) values).asLongBuffer();
+          return longs::get;
+        }
+      case DATE:
+        {
+          LongBuffer longs = ByteBuffer.wrap((byte[]) values).asLongBuffer();
+          return row -> Instant.ofEpochMilli(longs.get(row)).toString();
+        }
+      case FLOAT:
+        {
+          FloatBuffer floats = ByteBuffer.wrap((byte[]) values).asFloatBuffer();
+          return row -> (double) floats.get(row);
+        }
+      case DOUBLE:
+        {
+          DoubleBuffer doubles = ByteBuffer.wrap((byte[]) values).asDoubleBuffer();
+          return doubles::get;
+        }
+      case BOOLEAN:
+        {
+          byte[] booleans = (byte[]) values;
+          return row -> booleans[row] != 0;
+        }
+      case STRING:
+        {
+          IntBuffer codes = ByteBuffer.wrap((byte[]) values).asIntBuffer();
+          List<?> dict = (List<?>) column.get(ColumnarBatchWriter.DICT);
+          return row -> dict.get(codes.get(row));
+        }
+      default:
+        return ((List<?>) values)::get;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    parser.close();
+  }
+}
@@ -225,6 +225,10 @@ public class DrillStream extends CloudSolrStream implements Expressible {
       expression.addParameter("<stream>");
     }
 
+    // q and fl, sent to the shards
+    expression.addParameter(new StreamExpressionNamedParameter(Q, q));
+    expression.addParameter(new StreamExpressionNamedParameter(FL, fl));
+
     // sort
     expression.addParameter(new StreamExpressionNamedParameter(SORT, comp.toExpression(factory)));
 
@@ -18,9 +18,12 @@ package org.apache.solr.client.solrj.io.stream;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
@@ -41,6 +44,12 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
  * being computed on then that tuple will not be considered a match to anything. Ie, all fields
  * which are part of the hash must have a non-null value.
  *
+ * <p>If the hashed tuples exceed the {@link StreamContext#getMemoryBudget() memory budget}, both
+ * streams are partitioned by hash into {@link SpillFile}s and joined one partition at a time (a
+ * grace hash join). A partition whose hashed tuples still exceed the budget is partitioned again,
+ * with the next bits of the hashes. The joined tuples are then merged back in the order of the
+ * fullStream.
+ *
  * @since 6.0.0
  */
 public class HashJoinStream extends TupleStream implements Expressible {
@@ -52,6 +61,24 @@ public class HashJoinStream extends TupleStream implements Expressible {
   protected List<String> leftHashOn;
   protected List<String> rightHashOn;
   protected HashMap<String, List<Tuple>> hashedTuples;
+  // the tuples of the fullStream are read in batches
+  private transient TupleBatch fullTuples;
+  private int batchSize = TupleBatch.DEFAULT_SIZE;
+
+  private static final int SPILL_PARTITION_BITS = 5;
+  private static final int SPILL_PARTITIONS = 1 << SPILL_PARTITION_BITS;
+  // the partitions of a partition are computed with the next bits of the hashes
+  private static final int MAX_SPILL_LEVEL = Integer.SIZE / SPILL_PARTITION_BITS - 1;
+  private transient StreamContext context;
+  private transient List<SpillFile> spillFiles;
+  // the partitions of the hashed tuples, once they exceed the memory budget
+  private transient SpillFile[] hashPartitions;
+  // the partition of the fullStream being joined, and the position of its last tuple read
+  private transient SpillFile.Reader fullPartition;
+  private long fullPosition;
+  // the joined tuples of all the partitions, and the EOF tuple of the fullStream
+  private transient SpillFile.Merger joinedTuples;
+  private transient Tuple fullEOF;
 
   protected Tuple workingFullTuple = null;
   protected String workingFullHash = null;
@@ -209,6 +236,8 @@ public class HashJoinStream extends TupleStream implements Expressible {
 
   @Override
   public void setStreamContext(StreamContext context) {
+    this.context = context;
+    this.batchSize = context.getBatchSize();
     this.hashStream.setStreamContext(context);
     this.fullStream.setStreamContext(context);
   }
@@ -223,25 +252,194 @@ public class HashJoinStream extends TupleStream implements Expressible {
 
   @Override
   public void open() throws IOException {
+    spillFiles = new ArrayList<>();
     hashStream.open();
     fullStream.open();
 
-    Tuple tuple = hashStream.read();
+    TupleBatch hashTuples = new TupleBatch(batchSize);
+    long bytes = 0;
+    Tuple tuple = hashTuples.next(hashStream);
     while (!tuple.EOF) {
       String hash = computeHash(tuple, rightHashOn);
       if (null != hash) {
-        if (hashedTuples.containsKey(hash)) {
-          hashedTuples.get(hash).add(tuple);
+        if (hashPartitions != null) {
+          hashPartitions[partition(hash, 0)].write(tuple);
         } else {
-          ArrayList<Tuple> set = new ArrayList<>();
-          set.add(tuple);
-          hashedTuples.put(hash, set);
+          if (hashedTuples.containsKey(hash)) {
+            hashedTuples.get(hash).add(tuple);
+          } else {
+            ArrayList<Tuple> set = new ArrayList<>();
+            set.add(tuple);
+            hashedTuples.put(hash, set);
+          }
+          bytes += SpillFile.ramBytesUsed(tuple);
+          if (SpillFile.isOverBudget(context, bytes)) {
+            spillHashedTuples();
+          }
         }
       }
-      tuple = hashStream.read();
+      tuple = hashTuples.next(hashStream);
+    }
+    fullTuples = new TupleBatch(batchSize);
+    if (hashPartitions != null) {
+      joinPartitions();
+    }
+  }
+
+  private static int partition(String hash, int level) {
+    int h = hash.hashCode() * 0x9E3779B9;
+    return (h >>> (Integer.SIZE - (level + 1) * SPILL_PARTITION_BITS)) & (SPILL_PARTITIONS - 1);
+  }
+
+  private SpillFile[] createPartitions() throws IOException {
+    SpillFile[] partitions = new SpillFile[SPILL_PARTITIONS];
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new SpillFile(context);
+      spillFiles.add(partitions[i]);
+    }
+    return partitions;
+  }
+
+  /** Moves the hashed tuples to partitions on disk. */
+  private void spillHashedTuples() throws IOException {
+    hashPartitions = createPartitions();
+    for (Map.Entry<String, List<Tuple>> entry : hashedTuples.entrySet()) {
+      SpillFile partition = hashPartitions[partition(entry.getKey(), 0)];
+      for (Tuple tuple : entry.getValue()) {
+        partition.write(tuple);
+      }
+    }
+    hashedTuples = new HashMap<>();
+  }
+
+  /**
+   * Partitions the tuples of the fullStream like the hashed tuples, keeping their position in the
+   * fullStream, and joins each partition with the hashed tuples of the partition. The joined tuples
+   * are merged back by position when they are read.
+   */
+  private void joinPartitions() throws IOException {
+    SpillFile[] fullPartitions = createPartitions();
+    long position = 0;
+    Tuple tuple = fullTuples.next(fullStream);
+    while (!tuple.EOF) {
+      String hash = computeHash(tuple, leftHashOn);
+      // the tuples without a hash are joined with nothing, but are returned by the outer joins
+      fullPartitions[hash == null ? 0 : partition(hash, 0)].write(position++, tuple);
+      tuple = fullTuples.next(fullStream);
+    }
+    fullEOF = tuple;
+
+    List<SpillFile> joined = new ArrayList<>();
+    for (int i = 0; i < SPILL_PARTITIONS; i++) {
+      joinPartition(hashPartitions[i], fullPartitions[i], 0, joined);
+    }
+    hashedTuples = new HashMap<>();
+    joinedTuples = new SpillFile.Merger(joined, Comparator.comparingLong(SpillFile.Reader::key));
+  }
+
+  /**
+   * Joins a partition of the hashed tuples with the same partition of the fullStream, into a new
+   * file added to <code>joined</code>. If the hashed tuples of the partition exceed the memory
+   * budget, both partitions are partitioned again instead, up to {@link #MAX_SPILL_LEVEL}.
+   *
+   * @param hashPartition the hashed tuples of the partition, null if there are none
+   * @param fullPartitionFile the tuples of the fullStream of the partition, null if there are none
+   */
+  private void joinPartition(
+      SpillFile hashPartition, SpillFile fullPartitionFile, int level, List<SpillFile> joined)
+      throws IOException {
+    if (fullPartitionFile == null || fullPartitionFile.size() == 0) {
+      // nothing to join
+      SpillFile.closeAll(Arrays.asList(hashPartition, fullPartitionFile));
+      return;
+    }
+    hashedTuples = new HashMap<>();
+    if (hashPartition != null) {
+      long bytes = 0;
+      SpillFile.Reader hashed = hashPartition.reader();
+      for (Tuple t = hashed.next(); t != null; t = hashed.next()) {
+        hashedTuples.computeIfAbsent(computeHash(t, rightHashOn), k -> new ArrayList<>()).add(t);
+        bytes += SpillFile.ramBytesUsed(t);
+        if (level < MAX_SPILL_LEVEL && SpillFile.isOverBudget(context, bytes)) {
+          repartition(hashed, hashPartition, fullPartitionFile, level + 1, joined);
+          return;
+        }
+      }
+      hashPartition.close();
+    }
+
+    SpillFile output = new SpillFile(context);
+    spillFiles.add(output);
+    joined.add(output);
+    fullPartition = fullPartitionFile.reader();
+    for (Tuple t = join(); !t.EOF; t = join()) {
+      output.write(fullPosition, t);
+    }
+    output.finish();
+    fullPartition = null;
+    fullPartitionFile.close();
+  }
+
+  /**
+   * Partitions the hashed tuples read so far, the rest of the hashed partition and the partition of
+   * the fullStream with the bits of the hashes of the level, and joins the new partitions.
+   */
+  private void repartition(
+      SpillFile.Reader hashed,
+      SpillFile hashPartition,
+      SpillFile fullPartitionFile,
+      int level,
+      List<SpillFile> joined)
+      throws IOException {
+    // the partitions are created when a tuple is written to them, since the tuples of a partition
+    // usually have few hashes
+    SpillFile[] hashParts = new SpillFile[SPILL_PARTITIONS];
+    for (Map.Entry<String, List<Tuple>> entry : hashedTuples.entrySet()) {
+      for (Tuple tuple : entry.getValue()) {
+        writePartition(hashParts, partition(entry.getKey(), level), 0, tuple);
+      }
+    }
+    hashedTuples = new HashMap<>();
+    for (Tuple t = hashed.next(); t != null; t = hashed.next()) {
+      writePartition(hashParts, partition(computeHash(t, rightHashOn), level), 0, t);
+    }
+    hashPartition.close();
+
+    SpillFile[] fullParts = new SpillFile[SPILL_PARTITIONS];
+    SpillFile.Reader full = fullPartitionFile.reader();
+    for (Tuple t = full.next(); t != null; t = full.next()) {
+      String hash = computeHash(t, leftHashOn);
+      writePartition(fullParts, hash == null ? 0 : partition(hash, level), full.key(), t);
+    }
+    fullPartitionFile.close();
+
+    for (int i = 0; i < SPILL_PARTITIONS; i++) {
+      joinPartition(hashParts[i], fullParts[i], level, joined);
     }
   }
 
+  private void writePartition(SpillFile[] partitions, int partition, long key, Tuple tuple)
+      throws IOException {
+    if (partitions[partition] == null) {
+      partitions[partition] = new SpillFile(context);
+      spillFiles.add(partitions[partition]);
+    }
+    partitions[partition].write(key, tuple);
+  }
+
+  /** Returns the next tuple of the fullStream, or of the partition of the fullStream joined. */
+  protected Tuple readFullTuple() throws IOException {
+    if (fullPartition != null) {
+      Tuple tuple = fullPartition.next();
+      if (tuple == null) {
+        return Tuple.EOF();
+      }
+      fullPosition = fullPartition.key();
+      return tuple;
+    }
+    return fullTuples.next(fullStream);
+  }
+
   protected String computeHash(Tuple tuple, List<String> hashOn) {
     StringBuilder sb = new StringBuilder();
     for (String part : hashOn) {
@@ -258,16 +456,40 @@ public class HashJoinStream extends TupleStream implements Expressible {
 
   @Override
   public void close() throws IOException {
-    hashStream.close();
-    fullStream.close();
+    SpillFile.Merger merger = joinedTuples;
+    try {
+      if (spillFiles != null) {
+        SpillFile.closeAll(spillFiles);
+      }
+      if (merger != null) {
+        // deletes the intermediate files of the merge
+        merger.close();
+      }
+    } finally {
+      spillFiles = null;
+      hashPartitions = null;
+      fullPartition = null;
+      joinedTuples = null;
+      hashStream.close();
+      fullStream.close();
+    }
   }
 
   @Override
   public Tuple read() throws IOException {
+    if (joinedTuples != null) {
+      Tuple tuple = joinedTuples.next();
+      return tuple == null ? fullEOF : tuple;
+    }
+    return join();
+  }
+
+  /** Returns the next joined tuple, reading the tuples of the fullStream with readFullTuple(). */
+  protected Tuple join() throws IOException {
 
     findNextWorkingFullTuple:
     while (null == workingFullTuple) {
-      Tuple fullTuple = fullStream.read();
+      Tuple fullTuple = readFullTuple();
 
       // We're at the end of the line
       if (fullTuple.EOF) {
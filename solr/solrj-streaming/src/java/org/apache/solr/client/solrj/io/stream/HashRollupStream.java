@@ -17,7 +17,10 @@
 package org.apache.solr.client.solrj.io.stream;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -40,15 +43,41 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
 import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
 import org.apache.solr.client.solrj.io.stream.metrics.Metric;
 
+/**
+ * Rolls up the tuples of a stream that isn't sorted by its buckets, holding the metrics of all the
+ * buckets in a map.
+ *
+ * <p>Once the metrics exceed the {@link StreamContext#getMemoryBudget() memory budget}, the tuples
+ * of the buckets that aren't in the map yet are partitioned by bucket into {@link SpillFile}s, and
+ * each partition is rolled up after the buckets of the map.
+ */
 public class HashRollupStream extends TupleStream implements Expressible {
 
   private static final long serialVersionUID = 1;
 
+  private static final int SPILL_PARTITION_BITS = 4;
+  private static final int SPILL_PARTITIONS = 1 << SPILL_PARTITION_BITS;
+  // the partitions of a partition are computed with the next bits of the hash of the buckets
+  private static final int MAX_SPILL_LEVEL = Integer.SIZE / SPILL_PARTITION_BITS - 1;
+  // the approximate bytes of the metrics of a bucket on the heap
+  private static final long METRIC_BYTES = 64;
+
   private PushBackStream tupleStream;
   private Bucket[] buckets;
   private Metric[] metrics;
 
   private Iterator<Tuple> tupleIterator;
+  private transient StreamContext context;
+  private transient Tuple eofTuple;
+  private transient List<SpillFile> spillFiles;
+  // the partitions spilled and their level, rolled up after the tuples of the iterator
+  private transient Deque<SpillFile> partitions;
+  private transient Deque<Integer> partitionLevels;
+
+  private interface TupleSource {
+    /** Returns the next tuple, or null at the end. */
+    Tuple next() throws IOException;
+  }
 
   public HashRollupStream(TupleStream tupleStream, Bucket[] buckets, Metric[] metrics) {
     init(tupleStream, buckets, metrics);
@@ -188,6 +217,7 @@ public class HashRollupStream extends TupleStream implements Expressible {
 
   @Override
   public void setStreamContext(StreamContext context) {
+    this.context = context;
     this.tupleStream.setStreamContext(context);
   }
 
@@ -205,62 +235,131 @@ public class HashRollupStream extends TupleStream implements Expressible {
 
   @Override
   public void close() throws IOException {
-    tupleStream.close();
-    tupleIterator = null;
+    try {
+      if (spillFiles != null) {
+        SpillFile.closeAll(spillFiles);
+      }
+    } finally {
+      spillFiles = null;
+      partitions = null;
+      partitionLevels = null;
+      tupleStream.close();
+      tupleIterator = null;
+    }
   }
 
   @Override
   public Tuple read() throws IOException {
     // On the first call to read build the tupleIterator.
     if (tupleIterator == null) {
-      Map<HashKey, Metric[]> metricMap = new HashMap<>();
-      while (true) {
-        Tuple tuple = tupleStream.read();
-        if (tuple.EOF) {
-          List<Tuple> tuples = new ArrayList<>();
-          for (Map.Entry<HashKey, Metric[]> entry : metricMap.entrySet()) {
-            Tuple t = new Tuple();
-            Metric[] finishedMetrics = entry.getValue();
-            for (Metric metric : finishedMetrics) {
-              t.put(metric.getIdentifier(), metric.getValue());
-            }
-
-            HashKey hashKey = entry.getKey();
-            for (int i = 0; i < buckets.length; i++) {
-              t.put(buckets[i].toString(), hashKey.getParts()[i]);
-            }
-            tuples.add(t);
-          }
-          tuples.add(tuple);
-          this.tupleIterator = tuples.iterator();
-          break;
-        }
+      spillFiles = new ArrayList<>();
+      partitions = new ArrayDeque<>();
+      partitionLevels = new ArrayDeque<>();
+      tupleIterator =
+          rollup(
+              () -> {
+                Tuple tuple = tupleStream.read();
+                if (tuple.EOF) {
+                  eofTuple = tuple;
+                  return null;
+                }
+                return tuple;
+              },
+              0);
+    }
 
-        Object[] bucketValues = new Object[buckets.length];
-        for (int i = 0; i < buckets.length; i++) {
-          bucketValues[i] = buckets[i].getBucketValue(tuple);
-        }
+    while (!tupleIterator.hasNext()) {
+      SpillFile partition = partitions.poll();
+      if (partition == null) {
+        return eofTuple;
+      }
+      tupleIterator = rollup(partition.reader()::next, partitionLevels.poll() + 1);
+      partition.close();
+    }
+    return tupleIterator.next();
+  }
+
+  private static int partition(HashKey hashKey, int level) {
+    int hash = hashKey.hashCode() * 0x9E3779B9;
+    return (hash >>> (Integer.SIZE - (level + 1) * SPILL_PARTITION_BITS)) & (SPILL_PARTITIONS - 1);
+  }
 
-        HashKey hashKey = new HashKey(bucketValues);
-        Metric[] currentMetrics = metricMap.get(hashKey);
+  /**
+   * Returns the rolled up tuples of the source. If the metrics exceed the memory budget, the
+   * tuples of the buckets that don't have metrics yet are spilled to new partitions.
+   */
+  private Iterator<Tuple> rollup(TupleSource source, int level) throws IOException {
+    Map<HashKey, Metric[]> metricMap = new HashMap<>();
+    SpillFile[] spilled = null;
+    long bytes = 0;
+    for (Tuple tuple = source.next(); tuple != null; tuple = source.next()) {
+      Object[] bucketValues = new Object[buckets.length];
+      for (int i = 0; i < buckets.length; i++) {
+        bucketValues[i] = buckets[i].getBucketValue(tuple);
+      }
 
-        if (currentMetrics != null) {
-          for (Metric bucketMetric : currentMetrics) {
-            bucketMetric.update(tuple);
+      HashKey hashKey = new HashKey(bucketValues);
+      Metric[] currentMetrics = metricMap.get(hashKey);
+
+      if (currentMetrics != null) {
+        for (Metric bucketMetric : currentMetrics) {
+          bucketMetric.update(tuple);
+        }
+      } else if (spilled != null) {
+        spilled[partition(hashKey, level)].write(tuple);
+      } else {
+        currentMetrics = new Metric[metrics.length];
+        for (int i = 0; i < metrics.length; i++) {
+          Metric bucketMetric = metrics[i].newInstance();
+          bucketMetric.update(tuple);
+          currentMetrics[i] = bucketMetric;
+        }
+        metricMap.put(hashKey, currentMetrics);
+
+        bytes += METRIC_BYTES * (metrics.length + 1);
+        for (Object bucketValue : bucketValues) {
+          bytes += SpillFile.ramBytesUsed(bucketValue);
+        }
+        if (level < MAX_SPILL_LEVEL && SpillFile.isOverBudget(context, bytes)) {
+          spilled = new SpillFile[SPILL_PARTITIONS];
+          for (int i = 0; i < spilled.length; i++) {
+            spilled[i] = new SpillFile(context);
+            spillFiles.add(spilled[i]);
           }
+        }
+      }
+    }
+
+    if (spilled != null) {
+      for (SpillFile partition : spilled) {
+        if (partition.size() > 0) {
+          partition.finish();
+          partitions.add(partition);
+          partitionLevels.add(level);
         } else {
-          currentMetrics = new Metric[metrics.length];
-          for (int i = 0; i < metrics.length; i++) {
-            Metric bucketMetric = metrics[i].newInstance();
-            bucketMetric.update(tuple);
-            currentMetrics[i] = bucketMetric;
-          }
-          metricMap.put(hashKey, currentMetrics);
+          partition.close();
         }
       }
     }
 
-    return tupleIterator.next();
+    if (metricMap.isEmpty()) {
+      return Collections.emptyIterator();
+    }
+    List<Tuple> tuples = new ArrayList<>();
+    for (Map.Entry<HashKey, Metric[]> entry : metricMap.entrySet()) {
+      Tuple t = new Tuple();
+      Metric[] finishedMetrics = entry.getValue();
+      for (Metric metric : finishedMetrics) {
+        t.put(metric.getIdentifier(), metric.getValue());
+      }
+
+      HashKey hashKey = entry.getKey();
+      for (int i = 0; i < buckets.length; i++) {
+        t.put(buckets[i].toString(), hashKey.getParts()[i]);
+      }
+      tuples.add(t);
+    }
+    return tuples.iterator();
   }
 
   @Override
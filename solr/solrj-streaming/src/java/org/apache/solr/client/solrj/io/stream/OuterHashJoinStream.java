@@ -93,10 +93,10 @@ public class OuterHashJoinStream extends HashJoinStream implements Expressible {
   }
 
   @Override
-  public Tuple read() throws IOException {
+  protected Tuple join() throws IOException {
 
     if (null == workingFullTuple) {
-      Tuple fullTuple = fullStream.read();
+      Tuple fullTuple = readFullTuple();
 
       // We're at the end of the line
       if (fullTuple.EOF) {
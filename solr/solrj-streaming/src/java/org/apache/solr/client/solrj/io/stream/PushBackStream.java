@@ -39,6 +39,8 @@ public class PushBackStream extends TupleStream implements Expressible {
 
   private TupleStream stream;
   private Tuple tuple;
+  // reads the stream in batches if not null
+  private transient TupleBatch batch;
 
   public PushBackStream(TupleStream stream) {
     this.stream = stream;
@@ -73,6 +75,9 @@ public class PushBackStream extends TupleStream implements Expressible {
 
   @Override
   public void open() throws IOException {
+    if (batch != null) {
+      batch.clear();
+    }
     stream.open();
   }
 
@@ -81,6 +86,11 @@ public class PushBackStream extends TupleStream implements Expressible {
     stream.close();
   }
 
+  /** Reads the tuples of the stream in batches of the given size, or one by one if 1. */
+  public void setBatchSize(int batchSize) {
+    this.batch = batchSize > 1 ? new TupleBatch(batchSize) : null;
+  }
+
   public void pushBack(Tuple tuple) {
     this.tuple = tuple;
   }
@@ -91,6 +101,8 @@ public class PushBackStream extends TupleStream implements Expressible {
       Tuple t = tuple;
       tuple = null;
       return t;
+    } else if (batch != null) {
+      return batch.next(stream);
     } else {
       return stream.read();
     }
@@ -142,6 +142,7 @@ public class ReducerStream extends TupleStream implements Expressible {
 
   private void init(TupleStream stream, StreamEqualitor eq, ReduceOperation op) throws IOException {
     this.stream = new PushBackStream(stream);
+    this.stream.setBatchSize(TupleBatch.DEFAULT_SIZE);
     this.eq = eq;
     this.op = op;
 
@@ -200,6 +201,7 @@ public class ReducerStream extends TupleStream implements Expressible {
 
   @Override
   public void setStreamContext(StreamContext context) {
+    this.stream.setBatchSize(context.getBatchSize());
     this.stream.setStreamContext(context);
   }
 
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.apache.solr.client.solrj.io.Lang.LocalInputStream;
+import org.apache.solr.client.solrj.io.stream.expr.Expressible;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionNamedParameter;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionParameter;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MaxMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MinMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.apache.solr.common.params.CommonParams;
+
+/**
+ * Rewrites the {@link RollupStream rollups} and {@link HashRollupStream hash rollups} of the
+ * <code>/export</code> searches of an expression so that the documents are rolled up on the shards,
+ * by a {@link DrillStream drill}, and only the rollups of the shards are merged by the worker. For
+ * example
+ *
+ * <pre>
+ * rollup(search(c, q="*:*", fl="a,x", sort="a asc", qt="/export"), over="a", sum(x), count(*))
+ * </pre>
+ *
+ * is rewritten to
+ *
+ * <pre>
+ * select(rollup(drill(c, q="*:*", fl="a,x", sort="a asc",
+ *                     rollup(input(), over="a", markNulls="false", sum(x), count(*))),
+ *               over="a", sum(sum(x)), sum(count(*))),
+ *        a, "sum(sum(x)) as sum(x)", "sum(count(*)) as count(*)")
+ * </pre>
+ *
+ * <p>The decorators above the rollup, such as <code>having</code> or <code>top</code>, receive the
+ * same tuples. Only the rollups whose metrics are <code>sum</code>, <code>min</code>, <code>max
+ * </code> and <code>count(*)</code> are pushed down, since the rollups of the shards merge into the
+ * same values, and only the searches without any other params than <code>q</code>, <code>fl
+ * </code>, <code>sort</code> and <code>zkHost</code>, the ones that a drill sends to the shards.
+ * The sort of a rollup must start with its <code>over</code> fields. The rollups of the shards
+ * leave the <code>over</code> fields without a value out of their null bucket, which the drill
+ * merges in the order of the missing values of the search, and which the worker rolls up in the
+ * <code>NULL</code> bucket of the original rollup. Like the search, the <code>/export</code>
+ * handler sorts the documents without a numeric value as if their value were 0.
+ *
+ * @see StreamFactory#pushDownAggregations(StreamExpression)
+ * @since solr 10.0
+ */
+public class RollupPushDown {
+
+  private static final String OVER = "over";
+
+  private static final Set<String> SEARCH_PARAMS =
+      Set.of(CommonParams.Q, CommonParams.FL, CommonParams.SORT, CommonParams.QT, "zkHost");
+
+  private final StreamFactory factory;
+
+  public RollupPushDown(StreamFactory factory) {
+    this.factory = factory;
+  }
+
+  /** Returns the expression with all the compatible rollups pushed down to the shards. */
+  public StreamExpression rewrite(StreamExpression expression) {
+    StreamExpression rewritten = new StreamExpression(expression.getFunctionName());
+    for (StreamExpressionParameter parameter : expression.getParameters()) {
+      if (parameter instanceof StreamExpression) {
+        rewritten.addParameter(rewrite((StreamExpression) parameter));
+      } else if (parameter instanceof StreamExpressionNamedParameter
+          && ((StreamExpressionNamedParameter) parameter).getParameter()
+              instanceof StreamExpression) {
+        StreamExpressionNamedParameter namedParameter = (StreamExpressionNamedParameter) parameter;
+        rewritten.addParameter(
+            new StreamExpressionNamedParameter(
+                namedParameter.getName(),
+                rewrite((StreamExpression) namedParameter.getParameter())));
+      } else {
+        rewritten.addParameter(parameter);
+      }
+    }
+    StreamExpression pushedDown = pushDown(rewritten);
+    return pushedDown == null ? rewritten : pushedDown;
+  }
+
+  /** Returns the pushed down rollup, or null if the expression can't be pushed down. */
+  private StreamExpression pushDown(StreamExpression rollup) {
+    Class<? extends Expressible> rollupClass = getFunctionClass(rollup);
+    if (rollupClass != RollupStream.class && rollupClass != HashRollupStream.class) {
+      return null;
+    }
+
+    StreamExpression search = null;
+    String over = null;
+    List<StreamExpression> metrics = new ArrayList<>();
+    for (StreamExpressionParameter parameter : rollup.getParameters()) {
+      if (parameter instanceof StreamExpression) {
+        StreamExpression operand = (StreamExpression) parameter;
+        Class<? extends Expressible> operandClass = getFunctionClass(operand);
+        boolean isSearch =
+            operandClass == SearchFacadeStream.class || operandClass == CloudSolrStream.class;
+        if (search == null && isSearch) {
+          search = operand;
+        } else if (isMergeable(operand, operandClass)) {
+          metrics.add(operand);
+        } else {
+          return null;
+        }
+      } else if (parameter instanceof StreamExpressionNamedParameter
+          && OVER.equals(((StreamExpressionNamedParameter) parameter).getName())
+          && ((StreamExpressionNamedParameter) parameter).getParameter()
+              instanceof StreamExpressionValue) {
+        over = getValue((StreamExpressionNamedParameter) parameter);
+      } else {
+        return null;
+      }
+    }
+    if (search == null || over == null || !isExport(search)) {
+      return null;
+    }
+
+    List<String> overFields =
+        Arrays.stream(over.split(",")).map(String::trim).collect(Collectors.toList());
+    String sort = getDrillSort(search, overFields, rollupClass == RollupStream.class);
+    if (sort == null) {
+      return null;
+    }
+
+    String drillName = getFunctionName(DrillStream.class);
+    String inputName = getFunctionName(LocalInputStream.class);
+    String shardRollupName = getFunctionName(RollupStream.class);
+    String selectName = getFunctionName(SelectStream.class);
+    String sumName = getFunctionName(SumMetric.class);
+    if (drillName == null
+        || inputName == null
+        || shardRollupName == null
+        || selectName == null
+        || sumName == null) {
+      return null;
+    }
+
+    // the rollup of the documents of each shard, sorted by the over fields
+    StreamExpression shardRollup =
+        new StreamExpression(shardRollupName)
+            .withParameter(new StreamExpression(inputName))
+            .withParameter(new StreamExpressionNamedParameter(OVER, over))
+            .withParameter(new StreamExpressionNamedParameter("markNulls", "false"));
+    metrics.forEach(shardRollup::addParameter);
+
+    StreamExpression drill = new StreamExpression(drillName);
+    for (StreamExpressionParameter parameter : search.getParameters()) {
+      if (parameter instanceof StreamExpressionNamedParameter) {
+        String name = ((StreamExpressionNamedParameter) parameter).getName();
+        if (CommonParams.SORT.equals(name)) {
+          drill.addParameter(new StreamExpressionNamedParameter(name, sort));
+        } else if (!CommonParams.QT.equals(name)) {
+          drill.addParameter(parameter);
+        }
+      } else {
+        drill.addParameter(parameter);
+      }
+    }
+    drill.addParameter(shardRollup);
+
+    // the rollup of the rollups of the shards, with the metrics renamed as the original ones
+    StreamExpression merge =
+        new StreamExpression(rollup.getFunctionName())
+            .withParameter(drill)
+            .withParameter(new StreamExpressionNamedParameter(OVER, over));
+    StreamExpression select = new StreamExpression(selectName).withParameter(merge);
+    overFields.forEach(select::addParameter);
+    for (StreamExpression metric : metrics) {
+      String mergeName =
+          getFunctionClass(metric) == CountMetric.class ? sumName : metric.getFunctionName();
+      StreamExpression mergeMetric =
+          new StreamExpression(mergeName).withParameter(metric.toString());
+      merge.addParameter(mergeMetric);
+      select.addParameter(String.format(Locale.ROOT, "\"%s as %s\"", mergeMetric, metric));
+    }
+    return select;
+  }
+
+  /** Returns whether the metric gives the same value when it is computed over its partials. */
+  private static boolean isMergeable(
+      StreamExpression metric, Class<? extends Expressible> metricClass) {
+    if (metric.getParameters().size() != 1
+        || !(metric.getParameters().get(0) instanceof StreamExpressionValue)) {
+      return false;
+    }
+    if (metricClass == CountMetric.class) {
+      // the count of a column doesn't merge into a count of the same type
+      return "*".equals(((StreamExpressionValue) metric.getParameters().get(0)).getValue());
+    }
+    return metricClass == SumMetric.class
+        || metricClass == MinMetric.class
+        || metricClass == MaxMetric.class;
+  }
+
+  /** Returns whether the search is an /export search whose params are all sent by a drill. */
+  private static boolean isExport(StreamExpression search) {
+    List<StreamExpressionParameter> parameters = search.getParameters();
+    if (parameters.isEmpty() || !(parameters.get(0) instanceof StreamExpressionValue)) {
+      return false;
+    }
+    Set<String> names = new HashSet<>();
+    for (StreamExpressionParameter parameter : parameters.subList(1, parameters.size())) {
+      if (!(parameter instanceof StreamExpressionNamedParameter)
+          || !(((StreamExpressionNamedParameter) parameter).getParameter()
+              instanceof StreamExpressionValue)) {
+        return false;
+      }
+      String name = ((StreamExpressionNamedParameter) parameter).getName();
+      if (!SEARCH_PARAMS.contains(name) || !names.add(name)) {
+        return false;
+      }
+      if (CommonParams.QT.equals(name)
+          && !"/export".equals(getValue((StreamExpressionNamedParameter) parameter))) {
+        return false;
+      }
+    }
+    return names.containsAll(
+        List.of(CommonParams.Q, CommonParams.FL, CommonParams.SORT, CommonParams.QT));
+  }
+
+  /**
+   * Returns the sort of the documents of the shards, by the over fields, or null if the documents
+   * of the rollup aren't sorted by its over fields.
+   */
+  private static String getDrillSort(
+      StreamExpression search, List<String> overFields, boolean sorted) {
+    if (!sorted) {
+      return overFields.stream().map(f -> f + " asc").collect(Collectors.joining(","));
+    }
+    String sort = null;
+    for (StreamExpressionParameter parameter : search.getParameters()) {
+      if (parameter instanceof StreamExpressionNamedParameter
+          && CommonParams.SORT.equals(((StreamExpressionNamedParameter) parameter).getName())) {
+        sort = getValue((StreamExpressionNamedParameter) parameter);
+      }
+    }
+    String[] clauses = sort.split(",");
+    if (clauses.length < overFields.size()) {
+      return null;
+    }
+    Set<String> sortFields = new HashSet<>();
+    List<String> drillClauses = new ArrayList<>();
+    for (int i = 0; i < overFields.size(); i++) {
+      String clause = clauses[i].trim();
+      sortFields.add(clause.split("\\s+")[0]);
+      drillClauses.add(clause);
+    }
+    if (!sortFields.equals(new HashSet<>(overFields)) || sortFields.size() != overFields.size()) {
+      return null;
+    }
+    return String.join(",", drillClauses);
+  }
+
+  private Class<? extends Expressible> getFunctionClass(StreamExpression expression) {
+    Supplier<Class<? extends Expressible>> supplier =
+        factory.getFunctionNames().get(expression.getFunctionName());
+    return supplier == null ? null : supplier.get();
+  }
+
+  /** Returns the name of the function of the class, or null if it isn't available. */
+  private String getFunctionName(Class<? extends Expressible> clazz) {
+    for (String functionName : factory.getFunctionNames().keySet()) {
+      if (factory.getFunctionNames().get(functionName).get() == clazz) {
+        return functionName;
+      }
+    }
+    return null;
+  }
+
+  private static String getValue(StreamExpressionNamedParameter parameter) {
+    return ((StreamExpressionValue) parameter.getParameter()).getValue();
+  }
+}
@@ -47,6 +47,7 @@ public class RollupStream extends TupleStream implements Expressible {
   private PushBackStream tupleStream;
   private Bucket[] buckets;
   private Metric[] metrics;
+  private boolean markNulls = true;
 
   private HashKey currentKey = new HashKey("-");
   private Metric[] currentMetrics;
@@ -64,10 +65,15 @@ public class RollupStream extends TupleStream implements Expressible {
     List<StreamExpression> metricExpressions =
         factory.getExpressionOperandsRepresentingTypes(expression, Expressible.class, Metric.class);
     StreamExpressionNamedParameter overExpression = factory.getNamedOperand(expression, "over");
+    StreamExpressionNamedParameter markNullsExpression =
+        factory.getNamedOperand(expression, "markNulls");
 
     // validate expression contains only what we want.
     if (expression.getParameters().size()
-        != streamExpressions.size() + metricExpressions.size() + 1) {
+        != streamExpressions.size()
+            + metricExpressions.size()
+            + 1
+            + (markNullsExpression == null ? 0 : 1)) {
       throw new IOException(
           String.format(Locale.ROOT, "Invalid expression %s - unknown operands found", expression));
     }
@@ -112,6 +118,29 @@ public class RollupStream extends TupleStream implements Expressible {
     }
 
     init(factory.constructStream(streamExpressions.get(0)), buckets, metrics);
+
+    if (markNullsExpression != null) {
+      if (!(markNullsExpression.getParameter() instanceof StreamExpressionValue)) {
+        throw new IOException(
+            String.format(
+                Locale.ROOT,
+                "Invalid expression %s - expecting a boolean 'markNulls' parameter",
+                expression));
+      }
+      setMarkNulls(
+          Boolean.parseBoolean(
+              ((StreamExpressionValue) markNullsExpression.getParameter()).getValue()));
+    }
+  }
+
+  /**
+   * Sets whether the over fields of the bucket of the tuples without a value are set to <code>NULL
+   * </code>, the default, or left out of the rollup. Left out, the null bucket is in the order of a
+   * sort of the tuples by the over fields, like the buckets of a {@link DrillStream drill} whose
+   * rollups are merged by the worker.
+   */
+  public void setMarkNulls(boolean markNulls) {
+    this.markNulls = markNulls;
   }
 
   private List<FieldEqualitor> flattenEqualitor(StreamEqualitor equalitor) {
@@ -131,6 +160,7 @@ public class RollupStream extends TupleStream implements Expressible {
 
   private void init(TupleStream tupleStream, Bucket[] buckets, Metric[] metrics) {
     this.tupleStream = new PushBackStream(tupleStream);
+    this.tupleStream.setBatchSize(TupleBatch.DEFAULT_SIZE);
     this.buckets = buckets;
     this.metrics = metrics;
   }
@@ -161,6 +191,9 @@ public class RollupStream extends TupleStream implements Expressible {
       overBuilder.append(bucket.toString());
     }
     expression.addParameter(new StreamExpressionNamedParameter("over", overBuilder.toString()));
+    if (!markNulls) {
+      expression.addParameter(new StreamExpressionNamedParameter("markNulls", "false"));
+    }
 
     // metrics
     for (Metric metric : metrics) {
@@ -190,6 +223,7 @@ public class RollupStream extends TupleStream implements Expressible {
 
   @Override
   public void setStreamContext(StreamContext context) {
+    this.tupleStream.setBatchSize(context.getBatchSize());
     this.tupleStream.setStreamContext(context);
   }
 
@@ -230,9 +264,7 @@ public class RollupStream extends TupleStream implements Expressible {
             t.put(metric.getIdentifier(), metric.getValue());
           }
 
-          for (int i = 0; i < buckets.length; i++) {
-            t.put(buckets[i].toString(), currentKey.getParts()[i]);
-          }
+          putBucketValues(t);
           tupleStream.pushBack(tuple);
           finished = true;
           return t;
@@ -260,9 +292,7 @@ public class RollupStream extends TupleStream implements Expressible {
             t.put(metric.getIdentifier(), metric.getValue());
           }
 
-          for (int i = 0; i < buckets.length; i++) {
-            t.put(buckets[i].toString(), currentKey.getParts()[i]);
-          }
+          putBucketValues(t);
         }
 
         currentKey = hashKey;
@@ -282,6 +312,15 @@ public class RollupStream extends TupleStream implements Expressible {
     }
   }
 
+  private void putBucketValues(Tuple tuple) {
+    for (int i = 0; i < buckets.length; i++) {
+      Object value = currentKey.getParts()[i];
+      if (markNulls || !Bucket.isNullValue(value)) {
+        tuple.put(buckets[i].toString(), value);
+      }
+    }
+  }
+
   @Override
   public int getCost() {
     return 0;
@@ -212,8 +212,10 @@ public class SelectStream extends TupleStream implements Expressible {
       if (selectField.getKey().equals(selectField.getValue())) {
         expression.addParameter(selectField.getKey());
       } else {
-        expression.addParameter(
-            String.format(Locale.ROOT, "%s as %s", selectField.getKey(), selectField.getValue()));
+        String field =
+            String.format(Locale.ROOT, "%s as %s", selectField.getKey(), selectField.getValue());
+        // quoted so that an alias like count(*) isn't parsed as an expression
+        expression.addParameter(field.endsWith(")") ? "\"" + field + "\"" : field);
       }
     }
 
@@ -292,6 +294,19 @@ public class SelectStream extends TupleStream implements Expressible {
       return original;
     }
 
+    return select(original);
+  }
+
+  /** Reads a batch of the stream and replaces its tuples by the selected ones. */
+  @Override
+  public void readBatch(TupleBatch batch) throws IOException {
+    stream.readBatch(batch);
+    for (int i = 0; i < batch.size(); i++) {
+      batch.set(i, select(batch.get(i)));
+    }
+  }
+
+  private Tuple select(Tuple original) throws IOException {
     // create a copy with the limited set of fields
     Tuple workingToReturn = new Tuple();
     Tuple workingForEvaluators = new Tuple();
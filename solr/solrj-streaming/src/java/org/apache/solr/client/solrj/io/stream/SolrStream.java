@@ -325,7 +325,11 @@ public class SolrStream extends TupleStream {
 
     this.closeableHttpResponse = httpResponse;
     if (CommonParams.JAVABIN.equals(wt)) {
-      return new JavabinTupleStreamParser(stream, true);
+      TupleStreamParser parser = new JavabinTupleStreamParser(stream, true);
+      if (requestParams.getBool(StreamParams.COLUMNAR, false)) {
+        parser = new ColumnarTupleStreamParser(parser);
+      }
+      return parser;
     } else {
       InputStreamReader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
       return new JSONTupleStream(reader);
@@ -36,6 +36,10 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
 /**
  * The SortStream emits a stream of Tuples sorted by a Comparator.
  *
+ * <p>When the tuples exceed the {@link StreamContext#getMemoryBudget() memory budget} they are
+ * sorted externally: each part of the stream that fits in the budget is sorted and spilled to a
+ * {@link SpillFile}, and the sorted files are merged.
+ *
  * @since 6.1.0
  */
 public class SortStream extends TupleStream implements Expressible {
@@ -45,6 +49,8 @@ public class SortStream extends TupleStream implements Expressible {
   private TupleStream stream;
   private StreamComparator comparator;
   private Worker worker;
+  private int batchSize = TupleBatch.DEFAULT_SIZE;
+  private transient StreamContext context;
 
   public SortStream(TupleStream stream, StreamComparator comp) throws IOException {
     init(stream, comp);
@@ -100,28 +106,100 @@ public class SortStream extends TupleStream implements Expressible {
 
           private Tuple eofTuple;
 
+          // the sorted runs spilled to disk, and their merge once all the tuples are read
+          private final List<SpillFile> runs = new ArrayList<>();
+          private SpillFile.Merger merger;
+
           @Override
           public void readStream(TupleStream stream) throws IOException {
-            Tuple tuple = stream.read();
+            TupleBatch batch = new TupleBatch(batchSize);
+            long bytes = 0;
+            Tuple tuple = batch.next(stream);
             while (!tuple.EOF) {
               tuples.add(tuple);
-              tuple = stream.read();
+              bytes += SpillFile.ramBytesUsed(tuple);
+              if (SpillFile.isOverBudget(context, bytes)) {
+                spill();
+                bytes = 0;
+              }
+              tuple = batch.next(stream);
             }
             eofTuple = tuple;
           }
 
-          @Override
-          public void sort() {
+          private void spill() throws IOException {
             tuples.sort(comparator);
+            SpillFile run = new SpillFile(context);
+            runs.add(run);
+            for (Tuple tuple : tuples) {
+              run.write(tuple);
+            }
+            run.finish();
+            tuples.clear();
           }
 
           @Override
-          public Tuple read() {
+          public void sort() throws IOException {
+            if (runs.isEmpty()) {
+              tuples.sort(comparator);
+            } else {
+              if (!tuples.isEmpty()) {
+                spill();
+              }
+              merger =
+                  new SpillFile.Merger(runs, (a, b) -> comparator.compare(a.tuple(), b.tuple()));
+            }
+          }
+
+          @Override
+          public Tuple read() throws IOException {
+            if (merger != null) {
+              Tuple tuple = merger.next();
+              return tuple == null ? eofTuple : tuple;
+            }
             if (tuples.isEmpty()) {
               return eofTuple;
             }
             return tuples.removeFirst();
           }
+
+          @Override
+          public void readBatch(TupleBatch batch) throws IOException {
+            batch.clear();
+            if (merger != null) {
+              while (!batch.isFull()) {
+                Tuple tuple = merger.next();
+                if (tuple == null) {
+                  batch.setEOF(eofTuple);
+                  break;
+                }
+                batch.add(tuple);
+              }
+              return;
+            }
+            while (!batch.isFull() && !tuples.isEmpty()) {
+              batch.add(tuples.removeFirst());
+            }
+            if (tuples.isEmpty()) {
+              batch.setEOF(eofTuple);
+            }
+          }
+
+          @Override
+          public void close() throws IOException {
+            tuples.clear();
+            SpillFile.Merger runsMerger = merger;
+            merger = null;
+            try {
+              SpillFile.closeAll(runs);
+            } finally {
+              runs.clear();
+              if (runsMerger != null) {
+                // deletes the intermediate runs of the merge
+                runsMerger.close();
+              }
+            }
+          }
         };
   }
 
@@ -173,6 +251,8 @@ public class SortStream extends TupleStream implements Expressible {
 
   @Override
   public void setStreamContext(StreamContext context) {
+    this.context = context;
+    this.batchSize = context.getBatchSize();
     this.stream.setStreamContext(context);
   }
 
@@ -193,7 +273,11 @@ public class SortStream extends TupleStream implements Expressible {
 
   @Override
   public void close() throws IOException {
-    stream.close();
+    try {
+      worker.close();
+    } finally {
+      stream.close();
+    }
   }
 
   @Override
@@ -202,6 +286,11 @@ public class SortStream extends TupleStream implements Expressible {
     return worker.read();
   }
 
+  @Override
+  public void readBatch(TupleBatch batch) throws IOException {
+    worker.readBatch(batch);
+  }
+
   /** Return the stream sort - ie, the order in which records are returned */
   @Override
   public StreamComparator getStreamSort() {
@@ -216,8 +305,12 @@ public class SortStream extends TupleStream implements Expressible {
   private interface Worker {
     public void readStream(TupleStream stream) throws IOException;
 
-    public void sort();
+    public void sort() throws IOException;
+
+    public Tuple read() throws IOException;
+
+    public void readBatch(TupleBatch batch) throws IOException;
 
-    public Tuple read();
+    public void close() throws IOException;
   }
 }
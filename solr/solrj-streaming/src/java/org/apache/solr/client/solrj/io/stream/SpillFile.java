@@ -0,0 +1,401 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.common.util.FastInputStream;
+import org.apache.solr.common.util.IOUtils;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A temp file holding the tuples that a stream spilled because they don't fit in its {@link
+ * StreamContext#getMemoryBudget() memory budget}. The tuples are written in the javabin format,
+ * each with a long key (e.g. its position in the stream), and read back in the same order once
+ * all of them were written. The file is deleted when closed.
+ *
+ * <p>Only the values that javabin serializes are read back as they were written, such as strings,
+ * numbers, dates, lists and maps; other values, e.g. the objects of evaluators, are read back as
+ * their <code>toString()</code>.
+ *
+ * @since solr 10.0
+ */
+public class SpillFile implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final StreamContext context;
+  private final Path path;
+  private OutputStream out;
+  private JavaBinCodec codec;
+  private long count;
+  private long bytes;
+  private Reader reader;
+
+  public SpillFile(StreamContext context) throws IOException {
+    this.context = context;
+    Path dir = Paths.get(context.getSpillDirectory());
+    Files.createDirectories(dir);
+    this.path = Files.createTempFile(dir, "stream", ".spill");
+    try {
+      this.out = new LimitedOutputStream(Files.newOutputStream(path));
+      this.codec = new JavaBinCodec(out, null);
+    } catch (IOException | RuntimeException e) {
+      IOUtils.closeQuietly(out);
+      Files.deleteIfExists(path);
+      throw e;
+    }
+  }
+
+  /** Returns whether the streams of the context must spill the tuples they hold. */
+  public static boolean isOverBudget(StreamContext context, long bytes) {
+    return context != null && bytes > context.getMemoryBudget();
+  }
+
+  /**
+   * Returns the approximate number of bytes used by a tuple on the heap, to compare with the
+   * {@link StreamContext#getMemoryBudget() memory budget}.
+   */
+  public static long ramBytesUsed(Tuple tuple) {
+    // the tuple, its map and the entries of the map
+    long bytes = 64 + 32L * tuple.getFields().size();
+    for (Object value : tuple.getFields().values()) {
+      bytes += ramBytesUsed(value);
+    }
+    return bytes;
+  }
+
+  /** Returns the approximate number of bytes used by a value of a tuple on the heap. */
+  public static long ramBytesUsed(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof String) {
+      return 40 + 2L * ((String) value).length();
+    } else if (value instanceof Collection) {
+      long bytes = 40;
+      for (Object v : (Collection<?>) value) {
+        bytes += 8 + ramBytesUsed(v);
+      }
+      return bytes;
+    } else if (value instanceof Map) {
+      long bytes = 48;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        bytes += 32 + ramBytesUsed(entry.getKey()) + ramBytesUsed(entry.getValue());
+      }
+      return bytes;
+    } else {
+      return 24; // numbers, booleans, dates
+    }
+  }
+
+  public void write(Tuple tuple) throws IOException {
+    write(0, tuple);
+  }
+
+  public void write(long key, Tuple tuple) throws IOException {
+    codec.writeVal(key);
+    codec.writeVal(tuple.getFields());
+    codec.writeVal(tuple.getFieldNames());
+    codec.writeVal(tuple.getFieldLabels());
+    count++;
+  }
+
+  /** Returns the number of tuples of the file. */
+  public long size() {
+    return count;
+  }
+
+  /**
+   * Ends writing the tuples, and adds the size of the file to the {@link
+   * StreamContext#getSpilledBytes() spilled bytes}. Returns the size of the file.
+   */
+  public long finish() throws IOException {
+    if (codec != null) {
+      codec.close();
+      codec = null;
+      out.close();
+      bytes = Files.size(path);
+      context.getSpilledBytes().add(bytes);
+      if (log.isDebugEnabled()) {
+        log.debug("Spilled {} tuples, {} bytes to {}", count, bytes, path);
+      }
+    }
+    return bytes;
+  }
+
+  /** Returns a reader of the tuples of the file, that must be read only once. */
+  public Reader reader() throws IOException {
+    finish();
+    if (reader != null) {
+      throw new IllegalStateException("The tuples of " + path + " were already read");
+    }
+    return reader = new Reader();
+  }
+
+  /** Deletes the file. */
+  @Override
+  public void close() throws IOException {
+    try {
+      IOUtils.closeQuietly(reader);
+      if (codec != null) {
+        codec = null;
+        IOUtils.closeQuietly(out);
+      }
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /** Reads the tuples of a {@link SpillFile} in the order they were written. */
+  public class Reader implements Closeable {
+    private final InputStream in;
+    private final FastInputStream dis;
+    private final ReadCodec readCodec = new ReadCodec();
+    private long remaining = count;
+    private long key;
+    private Tuple tuple;
+
+    private Reader() throws IOException {
+      this.in = Files.newInputStream(path);
+      this.dis = readCodec.init(in);
+    }
+
+    /** Returns the next tuple, or null if all the tuples were read. */
+    @SuppressWarnings("unchecked")
+    public Tuple next() throws IOException {
+      if (remaining == 0) {
+        return tuple = null;
+      }
+      remaining--;
+      key = (Long) readCodec.readVal(dis);
+      tuple = new Tuple((Map<String, ?>) readCodec.readVal(dis));
+      List<String> fieldNames = (List<String>) readCodec.readVal(dis);
+      Map<String, String> fieldLabels = (Map<String, String>) readCodec.readVal(dis);
+      if (fieldNames != null) {
+        tuple.setFieldNames(fieldNames);
+      }
+      if (fieldLabels != null) {
+        tuple.setFieldLabels(fieldLabels);
+      }
+      return tuple;
+    }
+
+    /** Returns the last tuple returned by {@link #next()}. */
+    public Tuple tuple() {
+      return tuple;
+    }
+
+    /** Returns the key of the last tuple returned by {@link #next()}. */
+    public long key() {
+      return key;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /** Counts the bytes written against the {@link StreamContext#getMaxSpillBytes() spill limit}. */
+  private class LimitedOutputStream extends FilterOutputStream {
+    LimitedOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      count(1);
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      count(len);
+      out.write(b, off, len);
+    }
+
+    private void count(int bytes) throws IOException {
+      if (context.addSpillBytesWritten(bytes) > context.getMaxSpillBytes()) {
+        throw new IOException(
+            "The streams spilled more than the max of "
+                + context.getMaxSpillBytes()
+                + " bytes to disk, see the memoryBudget parameter");
+      }
+    }
+  }
+
+  private static class ReadCodec extends JavaBinCodec {
+    FastInputStream init(InputStream in) throws IOException {
+      return initRead(in);
+    }
+  }
+
+  /**
+   * Merges the tuples of files that are each sorted, the tuples that are equal are returned in the
+   * order of the files. At most {@link #MAX_MERGED_FILES} files are read at once: more files are
+   * first merged in groups into intermediate files, as many times as needed.
+   */
+  public static class Merger implements Closeable {
+    /** The max number of files that are read at once. */
+    public static final int MAX_MERGED_FILES = 64;
+
+    private final PriorityQueue<Source> queue;
+    // the files to merge and the intermediate files, all closed with the merger
+    private final List<SpillFile> files;
+    private long key;
+
+    private static class Source {
+      final int index;
+      final Reader reader;
+
+      Source(int index, Reader reader) {
+        this.index = index;
+        this.reader = reader;
+      }
+    }
+
+    /**
+     * @param files the files to merge, closed when the merger is closed
+     * @param comparator the order of the tuples of the files, given the reader of each tuple with
+     *     {@link Reader#tuple()} and {@link Reader#key()}
+     */
+    public Merger(List<SpillFile> files, Comparator<Reader> comparator) throws IOException {
+      this(files, comparator, MAX_MERGED_FILES);
+    }
+
+    Merger(List<SpillFile> files, Comparator<Reader> comparator, int maxMergedFiles)
+        throws IOException {
+      this.files = new ArrayList<>(files);
+      this.queue =
+          new PriorityQueue<>(
+              Math.max(1, Math.min(files.size(), maxMergedFiles)),
+              (a, b) -> {
+                int c = comparator.compare(a.reader, b.reader);
+                return c != 0 ? c : Integer.compare(a.index, b.index);
+              });
+      try {
+        List<SpillFile> merged = files;
+        while (merged.size() > maxMergedFiles) {
+          merged = mergeGroups(merged, comparator, maxMergedFiles);
+        }
+        for (int i = 0; i < merged.size(); i++) {
+          Source source = new Source(i, merged.get(i).reader());
+          if (source.reader.next() != null) {
+            queue.add(source);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        try {
+          close();
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+        throw e;
+      }
+    }
+
+    /**
+     * Merges each group of consecutive files into an intermediate file, so that the equal tuples
+     * stay in the order of the files, and deletes the merged files.
+     */
+    private List<SpillFile> mergeGroups(
+        List<SpillFile> groups, Comparator<Reader> comparator, int maxMergedFiles)
+        throws IOException {
+      List<SpillFile> merged = new ArrayList<>();
+      for (int from = 0; from < groups.size(); from += maxMergedFiles) {
+        int to = Math.min(from + maxMergedFiles, groups.size());
+        List<SpillFile> group = groups.subList(from, to);
+        if (group.size() == 1) {
+          merged.add(group.get(0));
+          continue;
+        }
+        SpillFile file = new SpillFile(group.get(0).context);
+        files.add(file);
+        merged.add(file);
+        try (Merger merger = new Merger(group, comparator, maxMergedFiles)) {
+          for (Tuple tuple = merger.next(); tuple != null; tuple = merger.next()) {
+            file.write(merger.key(), tuple);
+          }
+        }
+        file.finish();
+      }
+      return merged;
+    }
+
+    /** Returns the next tuple, or null if all the tuples were read. */
+    public Tuple next() throws IOException {
+      Source top = queue.poll();
+      if (top == null) {
+        return null;
+      }
+      Tuple tuple = top.reader.tuple();
+      key = top.reader.key();
+      if (top.reader.next() != null) {
+        queue.add(top);
+      }
+      return tuple;
+    }
+
+    /** Returns the key of the last tuple returned by {@link #next()}. */
+    public long key() {
+      return key;
+    }
+
+    @Override
+    public void close() throws IOException {
+      closeAll(files);
+    }
+  }
+
+  /** Closes all the files, even if closing one fails. */
+  public static void closeAll(Collection<SpillFile> files) throws IOException {
+    IOException exception = null;
+    for (SpillFile file : files) {
+      if (file == null) {
+        continue;
+      }
+      try {
+        file.close();
+      } catch (IOException e) {
+        if (exception == null) {
+          exception = e;
+        } else {
+          exception.addSuppressed(e);
+        }
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+}
@@ -20,6 +20,8 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.solr.client.solrj.io.ModelCache;
 import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
@@ -47,6 +49,12 @@ public class StreamContext implements Serializable {
   private boolean local;
   private SolrParams requestParams;
   private RequestReplicaListTransformerGenerator requestReplicaListTransformerGenerator;
+  private int batchSize = TupleBatch.DEFAULT_SIZE;
+  private long memoryBudget = Long.MAX_VALUE;
+  private String spillDirectory = System.getProperty("java.io.tmpdir");
+  private LongAdder spilledBytes = new LongAdder();
+  private long maxSpillBytes = Long.MAX_VALUE;
+  private final AtomicLong spillBytesWritten = new AtomicLong();
 
   public ConcurrentMap<String, ConcurrentMap<String, Object>> getObjectCache() {
     return this.objectCache;
@@ -129,4 +137,65 @@ public class StreamContext implements Serializable {
   public RequestReplicaListTransformerGenerator getRequestReplicaListTransformerGenerator() {
     return requestReplicaListTransformerGenerator;
   }
+
+  /**
+   * Returns the number of tuples that the streams read at once from their children with {@link
+   * TupleBatch}, 1 to read them one by one.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Returns the approximate number of bytes of tuples that the streams keeping tuples in memory,
+   * like {@link SortStream} or {@link HashJoinStream}, may each hold before spilling them to
+   * {@link SpillFile}s. There is no limit by default.
+   */
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  public void setMemoryBudget(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  /** Returns the directory of the {@link SpillFile}s, the temp directory by default. */
+  public String getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  public void setSpillDirectory(String spillDirectory) {
+    this.spillDirectory = spillDirectory;
+  }
+
+  /** Returns the number of bytes written to {@link SpillFile}s by the streams. */
+  public LongAdder getSpilledBytes() {
+    return spilledBytes;
+  }
+
+  /** Sets the counter of the bytes spilled, e.g. to count them for all the streams of a handler. */
+  public void setSpilledBytes(LongAdder spilledBytes) {
+    this.spilledBytes = spilledBytes;
+  }
+
+  /**
+   * Returns the max number of bytes that the streams of this context may write to {@link
+   * SpillFile}s in total, beyond which they fail. There is no limit by default.
+   */
+  public long getMaxSpillBytes() {
+    return maxSpillBytes;
+  }
+
+  public void setMaxSpillBytes(long maxSpillBytes) {
+    this.maxSpillBytes = maxSpillBytes;
+  }
+
+  /** Adds bytes written to a {@link SpillFile} by a stream of this context, returns the total. */
+  long addSpillBytesWritten(long bytes) {
+    return spillBytesWritten.addAndGet(bytes);
+  }
 }
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import org.apache.solr.client.solrj.io.Tuple;
+
+/**
+ * The tuples read at once from a {@link TupleStream} by {@link TupleStream#readBatch(TupleBatch)},
+ * followed by the EOF tuple if the stream ended. The streams that process many tuples of their
+ * children read them in batches with {@link #next(TupleStream)}, so that a chain of streams
+ * implementing {@link TupleStream#readBatch(TupleBatch)} is called once per batch rather than once
+ * per tuple.
+ *
+ * @see StreamContext#getBatchSize()
+ * @since solr 10.0
+ */
+public class TupleBatch {
+
+  public static final int DEFAULT_SIZE = 256;
+
+  private final Tuple[] tuples;
+  private int size;
+  private int cursor;
+  private Tuple eof;
+
+  public TupleBatch(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The capacity of a batch must be positive: " + capacity);
+    }
+    this.tuples = new Tuple[capacity];
+  }
+
+  public int capacity() {
+    return tuples.length;
+  }
+
+  /** Returns the number of tuples of the batch, not counting the EOF tuple. */
+  public int size() {
+    return size;
+  }
+
+  public boolean isFull() {
+    return size == tuples.length;
+  }
+
+  public Tuple get(int index) {
+    Objects.checkIndex(index, size);
+    return tuples[index];
+  }
+
+  /** Replaces a tuple of the batch, e.g. by a tuple computed from it. */
+  public void set(int index, Tuple tuple) {
+    Objects.checkIndex(index, size);
+    tuples[index] = tuple;
+  }
+
+  /** Adds a tuple to the batch, that must not be full. */
+  public void add(Tuple tuple) {
+    tuples[size++] = tuple;
+  }
+
+  /** Returns the EOF tuple read after the tuples of the batch, null if the stream has more. */
+  public Tuple getEOF() {
+    return eof;
+  }
+
+  public void setEOF(Tuple eof) {
+    this.eof = eof;
+  }
+
+  /** Removes all the tuples and the EOF tuple. */
+  public void clear() {
+    Arrays.fill(tuples, 0, size, null);
+    size = 0;
+    cursor = 0;
+    eof = null;
+  }
+
+  /**
+   * Returns the next tuple of the stream like {@link TupleStream#read()}, reading the next batch of
+   * the stream into this batch once all its tuples were returned. The EOF tuple is returned again
+   * by the next calls.
+   */
+  public Tuple next(TupleStream stream) throws IOException {
+    while (cursor == size) {
+      if (eof != null) {
+        return eof;
+      }
+      stream.readBatch(this);
+    }
+    return tuples[cursor++];
+  }
+}
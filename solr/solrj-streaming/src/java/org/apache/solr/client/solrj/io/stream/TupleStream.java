@@ -65,6 +65,24 @@ public abstract class TupleStream implements Closeable, Serializable, MapWriter
 
   public abstract Tuple read() throws IOException;
 
+  /**
+   * Reads the next tuples of the stream into the batch, that is cleared first. The batch is filled
+   * unless the stream ends, in which case the EOF tuple is set in the batch after the last tuples.
+   * The streams that can process their tuples as a whole override this method to read the tuples of
+   * their children in batches too, by default the tuples are read one by one with {@link #read()}.
+   */
+  public void readBatch(TupleBatch batch) throws IOException {
+    batch.clear();
+    while (!batch.isFull()) {
+      Tuple tuple = read();
+      if (tuple == null || tuple.EOF) {
+        batch.setEOF(tuple == null ? Tuple.EOF() : tuple);
+        return;
+      }
+      batch.add(tuple);
+    }
+  }
+
   public abstract StreamComparator getStreamSort();
 
   public abstract Explanation toExplanation(StreamFactory factory) throws IOException;
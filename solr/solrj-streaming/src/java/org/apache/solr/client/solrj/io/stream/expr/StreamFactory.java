@@ -36,6 +36,7 @@ import org.apache.solr.client.solrj.io.eq.MultipleFieldEqualitor;
 import org.apache.solr.client.solrj.io.eq.StreamEqualitor;
 import org.apache.solr.client.solrj.io.eval.StreamEvaluator;
 import org.apache.solr.client.solrj.io.ops.StreamOperation;
+import org.apache.solr.client.solrj.io.stream.RollupPushDown;
 import org.apache.solr.client.solrj.io.stream.TupleStream;
 import org.apache.solr.client.solrj.io.stream.metrics.Metric;
 
@@ -326,6 +327,16 @@ public class StreamFactory implements Serializable {
             expression.getFunctionName()));
   }
 
+  /**
+   * Returns the expression with the rollups of its <code>/export</code> searches pushed down to the
+   * shards, where they give the same tuples.
+   *
+   * @see RollupPushDown
+   */
+  public StreamExpression pushDownAggregations(StreamExpression expression) {
+    return new RollupPushDown(this).rewrite(expression);
+  }
+
   public Metric constructMetric(String expressionClause) throws IOException {
     return constructMetric(StreamExpressionParser.parse(expressionClause));
   }
@@ -37,6 +37,14 @@ public class Bucket {
     }
   }
 
+  /**
+   * Returns whether the value was returned by {@link #getBucketValue(Tuple)} for a tuple without a
+   * value, rather than read from a tuple whose value is the string <code>NULL</code>.
+   */
+  public static boolean isNullValue(Object bucketValue) {
+    return bucketValue == NULL_VALUE;
+  }
+
   @Override
   public String toString() {
     return bucketKey;
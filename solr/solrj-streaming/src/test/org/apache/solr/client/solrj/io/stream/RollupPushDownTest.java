@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.Lang.LocalInputStream;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.comp.ComparatorOrder;
+import org.apache.solr.client.solrj.io.comp.FieldComparator;
+import org.apache.solr.client.solrj.io.comp.MultipleFieldComparator;
+import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.stream.TupleBatchTest.ListTupleStream;
+import org.apache.solr.client.solrj.io.stream.expr.Expressible;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionParser;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MaxMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MeanMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.MinMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.junit.Test;
+
+/** Verify which rollups of an expression are pushed down to the shards, and how. */
+public class RollupPushDownTest extends SolrTestCase {
+
+  private final StreamFactory factory =
+      new StreamFactory()
+          .withCollectionZkHost("collection1", "testhost:1234")
+          .withFunctionName("search", SearchFacadeStream.class)
+          .withFunctionName("rollup", RollupStream.class)
+          .withFunctionName("hashRollup", HashRollupStream.class)
+          .withFunctionName("select", SelectStream.class)
+          .withFunctionName("top", RankStream.class)
+          .withFunctionName("drill", DrillStream.class)
+          .withFunctionName("input", LocalInputStream.class)
+          .withFunctionName("count", CountMetric.class)
+          .withFunctionName("sum", SumMetric.class)
+          .withFunctionName("min", MinMetric.class)
+          .withFunctionName("max", MaxMetric.class)
+          .withFunctionName("avg", MeanMetric.class);
+
+  private static final String SEARCH =
+      "search(collection1, q=\"*:*\", fl=\"a_s,b_i,x_f\", sort=\"a_s asc, b_i desc, id asc\","
+          + " qt=\"/export\")";
+
+  private String pushDown(String expression) {
+    return factory.pushDownAggregations(StreamExpressionParser.parse(expression)).toString();
+  }
+
+  private static String parse(String expression) {
+    return StreamExpressionParser.parse(expression).toString();
+  }
+
+  @Test
+  public void testRollup() throws Exception {
+    String expression =
+        "top(n=3, rollup("
+            + SEARCH
+            + ", over=\"b_i,a_s\", sum(x_f), min(b_i), max(x_f), count(*)),"
+            + " sort=\"count(*) desc\")";
+    String expected =
+        "top(n=3, select(rollup(drill(collection1, q=\"*:*\", fl=\"a_s,b_i,x_f\","
+            + " sort=\"a_s asc,b_i desc\","
+            + " rollup(input(), over=\"b_i,a_s\", markNulls=false, sum(x_f), min(b_i), max(x_f),"
+            + " count(*))),"
+            + " over=\"b_i,a_s\", sum(sum(x_f)), min(min(b_i)), max(max(x_f)), sum(count(*))),"
+            + " b_i, a_s, \"sum(sum(x_f)) as sum(x_f)\", \"min(min(b_i)) as min(b_i)\","
+            + " \"max(max(x_f)) as max(x_f)\", \"sum(count(*)) as count(*)\"),"
+            + " sort=\"count(*) desc\")";
+    String pushedDown = pushDown(expression);
+    assertEquals(parse(expected), pushedDown);
+
+    // the pushed down expression is constructed, and parsed back from its expression
+    try (TupleStream stream = factory.constructStream(pushedDown)) {
+      String streamExpression = ((Expressible) stream).toExpression(factory).toString();
+      try (TupleStream parsed = factory.constructStream(streamExpression)) {
+        assertEquals(streamExpression, ((Expressible) parsed).toExpression(factory).toString());
+      }
+    }
+
+    // already pushed down
+    assertEquals(pushedDown, pushDown(pushedDown));
+  }
+
+  @Test
+  public void testHashRollup() {
+    String expression = "hashRollup(" + SEARCH + ", over=\"x_f\", max(b_i), count(*))";
+    String expected =
+        "select(hashRollup(drill(collection1, q=\"*:*\", fl=\"a_s,b_i,x_f\", sort=\"x_f asc\","
+            + " rollup(input(), over=\"x_f\", markNulls=false, max(b_i), count(*))),"
+            + " over=\"x_f\", max(max(b_i)), sum(count(*))),"
+            + " x_f, \"max(max(b_i)) as max(b_i)\", \"sum(count(*)) as count(*)\")";
+    assertEquals(parse(expected), pushDown(expression));
+  }
+
+  /**
+   * Rolls up the documents of shards, some without the over fields, in the order of the /export
+   * handler, and checks that merging the rollups of the shards like a drill gives the same buckets.
+   */
+  @Test
+  public void testMissingValues() throws IOException {
+    // sorted like /export sorts "a_s asc, b_i desc": missing strings first, missing numbers as 0
+    Comparator<Tuple> exportSort =
+        Comparator.<Tuple, String>comparing(
+                t -> (String) t.get("a_s"), Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(
+                t -> t.get("b_i") == null ? 0L : (Long) t.get("b_i"), Comparator.reverseOrder());
+    StreamComparator drillSort =
+        new MultipleFieldComparator(
+            new FieldComparator("a_s", ComparatorOrder.ASCENDING),
+            new FieldComparator("b_i", ComparatorOrder.DESCENDING));
+    Bucket[] over = {new Bucket("b_i"), new Bucket("a_s")};
+
+    for (int iter = 0; iter < atLeast(5); iter++) {
+      List<List<Tuple>> shards = new ArrayList<>();
+      for (int shard = 0; shard < 3; shard++) {
+        List<Tuple> docs = new ArrayList<>();
+        for (int i = 0; i < atLeast(100); i++) {
+          Tuple doc = new Tuple("x_i", (long) random().nextInt(100));
+          if (random().nextInt(4) > 0) {
+            doc.put("a_s", "a" + random().nextInt(5));
+          }
+          if (random().nextInt(4) > 0) {
+            doc.put("b_i", 1L + random().nextInt(3));
+          }
+          docs.add(doc);
+        }
+        docs.sort(exportSort);
+        shards.add(docs);
+      }
+
+      // the rollup of the merged documents of the shards
+      TupleStream[] searches = new TupleStream[shards.size()];
+      // the rollup of the merged rollups of the shards
+      TupleStream[] shardRollups = new TupleStream[shards.size()];
+      for (int shard = 0; shard < shards.size(); shard++) {
+        searches[shard] = new ListTupleStream(shards.get(shard));
+        RollupStream shardRollup =
+            new RollupStream(
+                new ListTupleStream(shards.get(shard)),
+                over,
+                new Metric[] {new SumMetric("x_i"), new CountMetric()});
+        shardRollup.setMarkNulls(false);
+        shardRollups[shard] = shardRollup;
+      }
+      List<Tuple> expected =
+          read(
+              new RollupStream(
+                  new MergeStream(drillSort, searches),
+                  over,
+                  new Metric[] {new SumMetric("x_i"), new CountMetric()}));
+      List<Tuple> actual =
+          read(
+              new RollupStream(
+                  new MergeStream(drillSort, shardRollups),
+                  over,
+                  new Metric[] {new SumMetric("sum(x_i)"), new SumMetric("count(*)")}));
+
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        Tuple bucket = expected.get(i);
+        assertEquals(
+            Map.of(
+                "b_i", bucket.get("b_i"),
+                "a_s", bucket.get("a_s"),
+                "sum(x_i)", bucket.get("sum(x_i)"),
+                "count(*)", bucket.get("count(*)")),
+            Map.of(
+                "b_i", actual.get(i).get("b_i"),
+                "a_s", actual.get(i).get("a_s"),
+                "sum(x_i)", actual.get(i).get("sum(sum(x_i))"),
+                "count(*)", actual.get(i).get("sum(count(*))")));
+      }
+    }
+  }
+
+  private static List<Tuple> read(TupleStream stream) throws IOException {
+    List<Tuple> tuples = new ArrayList<>();
+    stream.setStreamContext(new StreamContext());
+    try {
+      stream.open();
+      for (Tuple tuple = stream.read(); !tuple.EOF; tuple = stream.read()) {
+        tuples.add(tuple);
+      }
+    } finally {
+      stream.close();
+    }
+    return tuples;
+  }
+
+  @Test
+  public void testNotPushedDown() {
+    String[] expressions = {
+      // metrics that don't merge into the same values
+      "rollup(" + SEARCH + ", over=\"a_s\", avg(x_f))",
+      "rollup(" + SEARCH + ", over=\"a_s\", sum(x_f), count(b_i))",
+      // not sorted by the over fields
+      "rollup(" + SEARCH + ", over=\"b_i\", sum(x_f))",
+      "rollup(" + SEARCH + ", over=\"a_s,id\", sum(x_f))",
+      // params that aren't sent by a drill
+      "rollup(search(collection1, q=\"*:*\", fq=\"b_i:1\", fl=\"a_s,x_f\", sort=\"a_s asc\","
+          + " qt=\"/export\"), over=\"a_s\", sum(x_f))",
+      "rollup(search(collection1, q=\"*:*\", fl=\"a_s,x_f\", sort=\"a_s asc\", qt=\"/export\","
+          + " partitionKeys=\"a_s\"), over=\"a_s\", sum(x_f))",
+      // not an /export search
+      "rollup(search(collection1, q=\"*:*\", fl=\"a_s,x_f\", sort=\"a_s asc\"), over=\"a_s\","
+          + " sum(x_f))",
+      "rollup(select(" + SEARCH + ", a_s, x_f), over=\"a_s\", sum(x_f))"
+    };
+    for (String expression : expressions) {
+      assertEquals(expression, parse(expression), pushDown(expression));
+    }
+  }
+}
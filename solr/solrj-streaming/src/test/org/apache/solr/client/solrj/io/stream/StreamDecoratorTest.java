@@ -22,6 +22,7 @@ import static org.apache.solr.client.solrj.io.stream.StreamAssert.assertMaps;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -61,10 +62,12 @@ import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.cloud.AbstractDistribZkTestBase;
 import org.apache.solr.cloud.SolrCloudTestCase;
 import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.cloud.ClusterState;
 import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.StreamParams;
 import org.apache.solr.embedded.JettySolrRunner;
 import org.junit.Assume;
 import org.junit.Before;
@@ -1478,6 +1481,75 @@ public class StreamDecoratorTest extends SolrCloudTestCase {
     }
   }
 
+  @Test
+  public void testRollupPushDown() throws Exception {
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 100; i++) {
+      SolrInputDocument doc =
+          new SolrInputDocument(id, Integer.toString(i), "x_i", Integer.toString(i % 7));
+      // some documents lack the over fields, and are rolled up in the NULL buckets
+      if (i % 5 != 0) {
+        doc.addField("a_s", "hello" + i % 4);
+      }
+      if (i % 3 != 0) {
+        doc.addField("a_i", Integer.toString(1 + i % 6));
+      }
+      update.add(doc);
+    }
+    update.commit(cluster.getSolrClient(), COLLECTIONORALIAS);
+
+    String search =
+        "search("
+            + COLLECTIONORALIAS
+            + ", q=\"*:*\", fl=\"a_s,a_i,x_i\", sort=\"a_s asc, a_i desc, id asc\","
+            + " qt=\"/export\")";
+    String rollup = "rollup(" + search + ", over=\"a_s,a_i\", sum(x_i), max(x_i), count(*))";
+    String[] sortedExpressions = {
+      rollup,
+      "rollup(" + search + ", over=\"a_s\", min(x_i), sum(x_i), count(*))",
+      "top(n=5, " + rollup + ", sort=\"count(*) desc, sum(x_i) desc\")"
+    };
+    for (String expression : sortedExpressions) {
+      assertEquals(
+          expression,
+          getTupleFields(getPushedDownTuples(expression, false)),
+          getTupleFields(getPushedDownTuples(expression, true)));
+    }
+    List<Tuple> tuples = getPushedDownTuples(rollup, true);
+    assertTrue(tuples.stream().anyMatch(t -> "NULL".equals(t.get("a_s"))));
+    assertTrue(tuples.stream().anyMatch(t -> "NULL".equals(t.get("a_i"))));
+
+    String hashRollup = "hashRollup(" + search + ", over=\"a_i\", sum(x_i), min(x_i), count(*))";
+    List<Tuple> pushedDown = getPushedDownTuples(hashRollup, true);
+    // a_i is 2, 3, 5, 6 or missing
+    assertEquals(5, pushedDown.size());
+    // the buckets are in no particular order
+    assertEquals(
+        new HashSet<>(getTupleFields(getPushedDownTuples(hashRollup, false))),
+        new HashSet<>(getTupleFields(pushedDown)));
+  }
+
+  private List<Tuple> getPushedDownTuples(String expression, boolean pushDown) throws IOException {
+    ModifiableSolrParams paramsLoc = new ModifiableSolrParams();
+    paramsLoc.set("expr", expression);
+    paramsLoc.set("qt", "/stream");
+    paramsLoc.set(StreamParams.PUSH_DOWN, pushDown);
+
+    String url =
+        cluster.getJettySolrRunners().get(0).getBaseUrl().toString() + "/" + COLLECTIONORALIAS;
+    TupleStream solrStream = new SolrStream(url, paramsLoc);
+    solrStream.setStreamContext(new StreamContext());
+    return getTuples(solrStream);
+  }
+
+  private static List<Map<String, Object>> getTupleFields(List<Tuple> tuples) {
+    List<Map<String, Object>> fields = new ArrayList<>();
+    for (Tuple tuple : tuples) {
+      fields.add(tuple.getFields());
+    }
+    return fields;
+  }
+
   @Test
   public void testHashRollupStream() throws Exception {
 
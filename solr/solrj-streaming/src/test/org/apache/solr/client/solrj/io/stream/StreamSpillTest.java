@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.comp.ComparatorOrder;
+import org.apache.solr.client.solrj.io.comp.FieldComparator;
+import org.apache.solr.client.solrj.io.comp.MultipleFieldComparator;
+import org.apache.solr.client.solrj.io.stream.TupleBatchTest.ListTupleStream;
+import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MaxMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.junit.Test;
+
+/**
+ * Verify that the streams spilling their tuples to disk once they exceed their memory budget
+ * return the same tuples as the streams holding all of them in memory.
+ */
+public class StreamSpillTest extends SolrTestCase {
+
+  private interface StreamSupplier {
+    TupleStream get() throws IOException;
+  }
+
+  private static List<Map<String, Object>> read(TupleStream stream, StreamContext context)
+      throws IOException {
+    stream.setStreamContext(context);
+    List<Map<String, Object>> tuples = new ArrayList<>();
+    try {
+      stream.open();
+      for (Tuple tuple = stream.read(); !tuple.EOF; tuple = stream.read()) {
+        tuples.add(tuple.getFields());
+      }
+    } finally {
+      stream.close();
+    }
+    return tuples;
+  }
+
+  /** Checks that the stream spills with a small budget, returns the tuples with and without. */
+  private static List<List<Map<String, Object>>> readSpilled(StreamSupplier streams)
+      throws IOException {
+    return readSpilled(streams, 10_000 + random().nextInt(20_000));
+  }
+
+  private static List<List<Map<String, Object>>> readSpilled(
+      StreamSupplier streams, long memoryBudget) throws IOException {
+    Path spillDirectory = createTempDir();
+    StreamContext context = new StreamContext();
+    context.setBatchSize(random().nextInt(10) + 1);
+    context.setMemoryBudget(memoryBudget);
+    context.setSpillDirectory(spillDirectory.toString());
+
+    List<Map<String, Object>> expected = read(streams.get(), new StreamContext());
+    List<Map<String, Object>> actual = read(streams.get(), context);
+    assertTrue(context.getSpilledBytes().sum() > 0);
+    try (Stream<Path> files = Files.list(spillDirectory)) {
+      assertEquals("the spill files must be deleted", 0, files.count());
+    }
+    return List.of(expected, actual);
+  }
+
+  private static void assertSameTuples(StreamSupplier streams) throws IOException {
+    List<List<Map<String, Object>>> tuples = readSpilled(streams);
+    assertEquals(tuples.get(0), tuples.get(1));
+  }
+
+  @Test
+  public void testRepartitionedHashJoin() throws IOException {
+    List<Tuple> tuples = TupleBatchTest.sortedTuples(atLeast(1000));
+    List<Tuple> hashed = TupleBatchTest.sortedTuples(atLeast(3000));
+    // the partitions of the hashed tuples exceed this budget, and are partitioned again
+    long memoryBudget = 5_000 + random().nextInt(10_000);
+    List<List<Map<String, Object>>> joined =
+        readSpilled(
+            () ->
+                new HashJoinStream(
+                    new ListTupleStream(tuples), new ListTupleStream(hashed), List.of("a", "b")),
+            memoryBudget);
+    assertEquals(joined.get(0), joined.get(1));
+    joined =
+        readSpilled(
+            () ->
+                new OuterHashJoinStream(
+                    new ListTupleStream(tuples), new ListTupleStream(hashed), List.of("b")),
+            memoryBudget);
+    assertEquals(joined.get(0), joined.get(1));
+  }
+
+  @Test
+  public void testMergedRuns() throws IOException {
+    List<Tuple> tuples = TupleBatchTest.sortedTuples(atLeast(5000));
+    // the tiny budget spills many more runs than are merged at once, the equal tuples must stay in
+    // the order of the runs
+    List<List<Map<String, Object>>> sorted =
+        readSpilled(
+            () ->
+                new SortStream(
+                    new ListTupleStream(tuples),
+                    new FieldComparator("b", ComparatorOrder.DESCENDING)),
+            1000);
+    assertEquals(sorted.get(0), sorted.get(1));
+  }
+
+  @Test
+  public void testMaxSpillBytes() throws IOException {
+    Path spillDirectory = createTempDir();
+    StreamContext context = new StreamContext();
+    context.setMemoryBudget(1000);
+    context.setMaxSpillBytes(10_000);
+    context.setSpillDirectory(spillDirectory.toString());
+    TupleStream stream =
+        new SortStream(
+            new ListTupleStream(TupleBatchTest.sortedTuples(atLeast(5000))),
+            new FieldComparator("b", ComparatorOrder.DESCENDING));
+    IOException e = expectThrows(IOException.class, () -> read(stream, context));
+    assertTrue(e.getMessage(), e.getMessage().contains("spilled more than the max of 10000 bytes"));
+    try (Stream<Path> files = Files.list(spillDirectory)) {
+      assertEquals("the spill files must be deleted", 0, files.count());
+    }
+  }
+
+  @Test
+  public void testSpilledTuples() throws IOException {
+    for (int iter = 0; iter < atLeast(5); iter++) {
+      List<Tuple> tuples = TupleBatchTest.sortedTuples(atLeast(1000));
+      List<Tuple> hashed = TupleBatchTest.sortedTuples(atLeast(1000));
+
+      assertSameTuples(
+          () ->
+              new SortStream(
+                  new ListTupleStream(tuples),
+                  new MultipleFieldComparator(
+                      new FieldComparator("b", ComparatorOrder.DESCENDING),
+                      new FieldComparator("c", ComparatorOrder.ASCENDING))));
+      assertSameTuples(
+          () ->
+              new HashJoinStream(
+                  new ListTupleStream(tuples), new ListTupleStream(hashed), List.of("a", "b")));
+      assertSameTuples(
+          () ->
+              new OuterHashJoinStream(
+                  new ListTupleStream(tuples), new ListTupleStream(hashed), List.of("b")));
+    }
+  }
+
+  @Test
+  public void testSpilledRollup() throws IOException {
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < atLeast(5000); i++) {
+      Tuple tuple = new Tuple("a", "a" + random().nextInt(2000), "b", (long) random().nextInt(3));
+      tuple.put("c", random().nextDouble());
+      tuples.add(tuple);
+    }
+    Metric[] metrics = {new SumMetric("c"), new MaxMetric("c"), new CountMetric()};
+    List<List<Map<String, Object>>> rollups =
+        readSpilled(
+            () ->
+                new HashRollupStream(
+                    new ListTupleStream(tuples),
+                    new Bucket[] {new Bucket("a"), new Bucket("b")},
+                    metrics));
+    // the buckets are in no particular order
+    assertEquals(rollups.get(0).size(), rollups.get(1).size());
+    assertEquals(new HashSet<>(rollups.get(0)), new HashSet<>(rollups.get(1)));
+  }
+}
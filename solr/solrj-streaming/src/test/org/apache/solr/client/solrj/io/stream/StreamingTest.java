@@ -58,6 +58,7 @@ import org.apache.solr.common.cloud.ZkStateReader;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.ShardParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.StreamParams;
 import org.apache.solr.embedded.JettySolrRunner;
 import org.junit.Assume;
 import org.junit.Before;
@@ -2700,15 +2701,16 @@ public class StreamingTest extends SolrCloudTestCase {
 
     tryWithQt("/export");
     tryWithQt("/select");
+    tryWithQt("/export", "wt", "javabin", StreamParams.COLUMNAR, "true");
   }
 
   // We should be getting the exact same thing back with both the export and select handlers, so
   // test
-  private void tryWithQt(String which) throws IOException {
+  private void tryWithQt(String which, String... moreParams) throws IOException {
     StreamContext streamContext = new StreamContext();
     SolrClientCache solrClientCache = new SolrClientCache();
     streamContext.setSolrClientCache(solrClientCache);
-    SolrParams sParams =
+    ModifiableSolrParams sParams =
         params(
             "q",
             "*:*",
@@ -2718,6 +2720,7 @@ public class StreamingTest extends SolrCloudTestCase {
             "id,i_sing,i_multi,l_sing,l_multi,f_sing,f_multi,d_sing,d_multi,dt_sing,dt_multi,s_sing,s_multi,b_sing,b_multi",
             "sort",
             "i_sing asc");
+    sParams.add(params(moreParams));
     try (CloudSolrStream stream = new CloudSolrStream(zkHost, COLLECTIONORALIAS, sParams)) {
 
       stream.setStreamContext(streamContext);
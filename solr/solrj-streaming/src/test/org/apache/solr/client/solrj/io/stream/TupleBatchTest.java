@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.comp.ComparatorOrder;
+import org.apache.solr.client.solrj.io.comp.FieldComparator;
+import org.apache.solr.client.solrj.io.comp.MultipleFieldComparator;
+import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.eq.FieldEqualitor;
+import org.apache.solr.client.solrj.io.ops.GroupOperation;
+import org.apache.solr.client.solrj.io.stream.expr.Explanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExplanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MaxMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.junit.Test;
+
+/**
+ * Verify that the streams read in batches with {@link TupleStream#readBatch(TupleBatch)} return the
+ * same tuples as the streams read one by one.
+ */
+public class TupleBatchTest extends SolrTestCase {
+
+  /** The tuples of a list, read one by one. */
+  static class ListTupleStream extends TupleStream {
+    private final List<Tuple> tuples;
+    private int index;
+
+    ListTupleStream(List<Tuple> tuples) {
+      this.tuples = tuples;
+    }
+
+    @Override
+    public void setStreamContext(StreamContext context) {}
+
+    @Override
+    public List<TupleStream> children() {
+      return new ArrayList<>();
+    }
+
+    @Override
+    public void open() {
+      index = 0;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public Tuple read() {
+      return index < tuples.size() ? tuples.get(index++) : Tuple.EOF();
+    }
+
+    @Override
+    public StreamComparator getStreamSort() {
+      return null;
+    }
+
+    @Override
+    public Explanation toExplanation(StreamFactory factory) {
+      return new StreamExplanation(getStreamNodeId().toString());
+    }
+  }
+
+  /** Returns tuples sorted by a, b with random values of a, b and c. */
+  static List<Tuple> sortedTuples(int numTuples) {
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < numTuples; i++) {
+      Tuple tuple = new Tuple("id", String.valueOf(i), "a", "a" + random().nextInt(10));
+      tuple.put("b", (long) random().nextInt(20));
+      if (random().nextInt(10) != 0) {
+        tuple.put("c", random().nextDouble());
+      }
+      tuples.add(tuple);
+    }
+    tuples.sort(
+        new MultipleFieldComparator(
+            new FieldComparator("a", ComparatorOrder.ASCENDING),
+            new FieldComparator("b", ComparatorOrder.ASCENDING)));
+    return tuples;
+  }
+
+  private static List<Map<String, Object>> read(TupleStream stream, int batchSize)
+      throws IOException {
+    StreamContext context = new StreamContext();
+    context.setBatchSize(batchSize);
+    stream.setStreamContext(context);
+    List<Map<String, Object>> tuples = new ArrayList<>();
+    try {
+      stream.open();
+      if (random().nextBoolean()) {
+        for (Tuple tuple = stream.read(); !tuple.EOF; tuple = stream.read()) {
+          tuples.add(tuple.getFields());
+        }
+      } else {
+        TupleBatch batch = new TupleBatch(random().nextInt(50) + 1);
+        do {
+          stream.readBatch(batch);
+          assertTrue(batch.isFull() || batch.getEOF() != null);
+          for (int i = 0; i < batch.size(); i++) {
+            tuples.add(batch.get(i).getFields());
+          }
+        } while (batch.getEOF() == null);
+      }
+    } finally {
+      stream.close();
+    }
+    return tuples;
+  }
+
+  private interface StreamSupplier {
+    TupleStream get() throws IOException;
+  }
+
+  private static void assertSameTuples(StreamSupplier streams) throws IOException {
+    List<Map<String, Object>> expected = read(streams.get(), 1);
+    List<Map<String, Object>> actual = read(streams.get(), random().nextInt(300) + 1);
+    assertEquals(expected, actual);
+    assertEquals(expected, read(streams.get(), TupleBatch.DEFAULT_SIZE));
+  }
+
+  @Test
+  public void testNext() throws IOException {
+    List<Tuple> tuples = sortedTuples(atLeast(100));
+    TupleBatch batch = new TupleBatch(random().nextInt(10) + 1);
+    TupleStream stream = new ListTupleStream(tuples);
+    stream.open();
+    for (Tuple tuple : tuples) {
+      assertSame(tuple, batch.next(stream));
+    }
+    assertTrue(batch.next(stream).EOF);
+    assertTrue(batch.next(stream).EOF);
+    expectThrows(IllegalArgumentException.class, () -> new TupleBatch(0));
+  }
+
+  @Test
+  public void testDecorators() throws IOException {
+    for (int iter = 0; iter < atLeast(10); iter++) {
+      List<Tuple> tuples = sortedTuples(random().nextInt(1000));
+      List<Tuple> hashed = sortedTuples(random().nextInt(100));
+      Metric[] metrics = {new SumMetric("c"), new MaxMetric("b"), new CountMetric()};
+      StreamComparator sort =
+          new MultipleFieldComparator(
+              new FieldComparator("b", ComparatorOrder.DESCENDING),
+              new FieldComparator("id", ComparatorOrder.ASCENDING));
+
+      assertSameTuples(
+          () -> new SelectStream(new ListTupleStream(tuples), Map.of("a", "x", "c", "y")));
+      assertSameTuples(() -> new SortStream(new ListTupleStream(tuples), sort));
+      assertSameTuples(
+          () ->
+              new RollupStream(
+                  new ListTupleStream(tuples), new Bucket[] {new Bucket("a")}, metrics));
+      assertSameTuples(
+          () ->
+              new ReducerStream(
+                  new ListTupleStream(tuples),
+                  new FieldEqualitor("a"),
+                  new GroupOperation(new FieldComparator("b", ComparatorOrder.DESCENDING), 3)));
+      assertSameTuples(
+          () ->
+              new HashJoinStream(
+                  new ListTupleStream(tuples), new ListTupleStream(hashed), List.of("a", "b")));
+      assertSameTuples(
+          () ->
+              new OuterHashJoinStream(
+                  new ListTupleStream(tuples), new ListTupleStream(hashed), List.of("a")));
+    }
+  }
+}
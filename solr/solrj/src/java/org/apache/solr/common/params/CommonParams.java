@@ -156,6 +156,12 @@ public interface CommonParams {
   /** Timeout value in milliseconds. If not set, or the value is &gt; 0, there is no timeout. */
   String TIME_ALLOWED = "timeAllowed";
 
+  /**
+   * Whether the segments of the index may be searched by several threads in parallel, if the node
+   * is configured with an executor for that.
+   */
+  String MULTI_THREADED = "multiThreaded";
+
   /** Is the query cancellable? */
   String IS_QUERY_CANCELLABLE = "canCancel";
 
@@ -123,6 +123,12 @@ public interface FacetParams {
    */
   public static final String FACET_PIVOT_MINCOUNT = FACET_PIVOT + ".mincount";
 
+  /**
+   * How the pivots are computed: <code>legacy</code> (the default), or <code>json</code> to compute
+   * them as nested terms facets of the JSON Facet API, returned in the same format.
+   */
+  public static final String FACET_PIVOT_ENGINE = FACET_PIVOT + ".engine";
+
   /**
    * String option: "count" causes facets to be sorted by the count, "index" results in index order.
    */
@@ -22,6 +22,21 @@ public interface StreamParams {
   // parameters
   String EXPR = "expr";
 
+  /** Whether /export writes the tuples in batches of columns, with <code>wt=javabin</code> */
+  String COLUMNAR = "columnar";
+
+  /**
+   * The approximate number of bytes of tuples that each sort, hash join and hash rollup may hold
+   * in memory before spilling them to disk
+   */
+  String MEMORY_BUDGET = "memoryBudget";
+
+  /**
+   * Whether the rollups of the <code>/export</code> searches of the expression are pushed down to
+   * the shards
+   */
+  String PUSH_DOWN = "pushDown";
+
   // stream properties
   String TUPLE = "tuple";
   String DOCS = "docs";
@@ -211,6 +211,9 @@ public class TestHarness extends BaseTestHarness {
         .setCloudConfig(cloudConfig)
         .setUpdateShardHandlerConfig(UpdateShardHandlerConfig.TEST_DEFAULT)
         .setMetricsConfig(metricsConfig)
+        .setIndexSearcherExecutorThreads(4)
+        .setFacetExecutorThreads(Integer.getInteger("solr.tests.facetExecutorThreads", 0))
+        .setExportExecutorThreads(Integer.getInteger("solr.tests.exportExecutorThreads", 0))
         .build();
   }
 